@@ -0,0 +1,365 @@
+package dashboard;
+
+import javax.swing.*;
+import javax.swing.border.Border;
+
+import dashboard.event.AppointmentEvent;
+import dashboard.event.CalendarEvent;
+import dashboard.event.CalendarEventBus;
+import dashboard.event.CalendarSourceEvent;
+import dashboard.event.DayRange;
+import dashboard.event.FilterEvent;
+import dashboard.filter.AppointmentFilter;
+import dashboard.i18n.Calendar_i18n;
+import dashboard.store.AgendaPager;
+import dashboard.store.Appointment;
+import dashboard.store.CalendarAggregator;
+import dashboard.store.ZoneOffsetCache;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Agenda of the appointments to come: the next {@value #PAGE_SIZE} from now,
+ * grouped by day, and more as the list is scrolled to its end.
+ * Pages come from an {@link AgendaPager}, so each costs the same however far
+ * the agenda has gone and only the months it reaches are loaded. Changes to
+ * the days already listed, of the filters or of the other calendars read the
+ * listed pages again, once per burst of events. Nothing is read while the
+ * panel is not on screen, and it starts again from the current minute
+ * whenever it appears.
+ */
+public class AgendaPanel extends JPanel {
+    public static final int PAGE_SIZE = 50;
+
+    private static final Font DAY_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font TIME_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font TITLE_FONT = new Font("Arial", Font.PLAIN, 12);
+    private static final Font MESSAGE_FONT = new Font("Arial", Font.ITALIC, 12);
+
+    private final AgendaPager pager;
+    private final CalendarEventBus eventBus;
+    private final ZoneOffsetCache offsets;
+    private final Supplier<AppointmentFilter> filter;
+    private final BooleanSupplier personalVisible;
+    private final Function<CalendarAggregator.Source, Color> calendarColors;
+
+    private final RowListModel model = new RowListModel();
+    private final JList<Row> list = new JList<>(model);
+    private final JScrollPane scrollPane = new JScrollPane(list);
+    private final Consumer<CalendarEvent> changed = this::changed;
+
+    // Start of the agenda and of the page to read next
+    private AgendaPager.Cursor first;
+    private AgendaPager.Cursor next;
+    private boolean lastPageFull;
+    private boolean loading;
+    private boolean refreshScheduled;
+
+    /**
+     * A day heading, an appointment, or a message in italics.
+     */
+    private static final class Row {
+        final LocalDate day;
+        final CalendarAggregator.Entry entry;
+        final String message;
+
+        Row(LocalDate day, CalendarAggregator.Entry entry, String message) {
+            this.day = day;
+            this.entry = entry;
+            this.message = message;
+        }
+    }
+
+    /**
+     * List model growing by whole pages.
+     */
+    private static final class RowListModel extends AbstractListModel<Row> {
+        private final List<Row> rows = new ArrayList<>();
+
+        @Override
+        public int getSize() {
+            return rows.size();
+        }
+
+        @Override
+        public Row getElementAt(int index) {
+            return rows.get(index);
+        }
+
+        Row last() {
+            return rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        }
+
+        void removeLast() {
+            rows.remove(rows.size() - 1);
+            fireIntervalRemoved(this, rows.size(), rows.size());
+        }
+
+        void addAll(List<Row> added) {
+            if (!added.isEmpty()) {
+                rows.addAll(added);
+                fireIntervalAdded(this, rows.size() - added.size(), rows.size() - 1);
+            }
+        }
+
+        void setAll(List<Row> replaced) {
+            int oldSize = rows.size();
+            rows.clear();
+            rows.addAll(replaced);
+            if (oldSize > rows.size()) {
+                fireIntervalRemoved(this, rows.size(), oldSize - 1);
+            } else if (oldSize < rows.size()) {
+                fireIntervalAdded(this, oldSize, rows.size() - 1);
+            }
+            if (Math.min(oldSize, rows.size()) > 0) {
+                fireContentsChanged(this, 0, Math.min(oldSize, rows.size()) - 1);
+            }
+        }
+    }
+
+    /**
+     * Renders the three kinds of rows with one panel, caching a border for
+     * every bar color.
+     */
+    private final class RowRenderer extends JPanel implements ListCellRenderer<Row> {
+        private final JLabel timeLabel = new JLabel();
+        private final JLabel textLabel = new JLabel();
+        private final Map<Color, Border> borders = new HashMap<>();
+        private final Border dayBorder = BorderFactory.createCompoundBorder(
+            BorderFactory.createMatteBorder(0, 0, 1, 0, Color.LIGHT_GRAY),
+            BorderFactory.createEmptyBorder(6, 2, 2, 2));
+        private final Border messageBorder = BorderFactory.createEmptyBorder(5, 2, 5, 2);
+
+        RowRenderer() {
+            super(new BorderLayout(5, 0));
+            timeLabel.setFont(TIME_FONT);
+            add(timeLabel, BorderLayout.WEST);
+            add(textLabel, BorderLayout.CENTER);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<? extends Row> list, Row row, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            setBackground(isSelected && row.entry != null ? list.getSelectionBackground() : list.getBackground());
+            if (row.day != null) {
+                setBorder(dayBorder);
+                timeLabel.setText(null);
+                textLabel.setFont(DAY_FONT);
+                textLabel.setText(formatDay(row.day));
+            } else if (row.entry != null) {
+                Appointment appointment = row.entry.getAppointment();
+                Color color = row.entry.getSource() == null
+                    ? appointment.getCategory().getColor() : calendarColors.apply(row.entry.getSource());
+                setBorder(borders.computeIfAbsent(color, c -> BorderFactory.createCompoundBorder(
+                    BorderFactory.createMatteBorder(0, 3, 0, 0, c),
+                    BorderFactory.createEmptyBorder(3, 5, 3, 5))));
+                timeLabel.setText(Appuntamenti.formatTimeInZones(appointment, offsets));
+                textLabel.setFont(TITLE_FONT);
+                textLabel.setText(appointment.getTitle());
+            } else {
+                setBorder(messageBorder);
+                timeLabel.setText(null);
+                textLabel.setFont(MESSAGE_FONT);
+                textLabel.setText(row.message);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * @param pager Source of the pages
+     * @param eventBus Bus delivering the changes of the store, of the filters and of the other calendars
+     * @param offsets Time zone days are computed in
+     * @param filter Filter of the appointments currently shown
+     * @param personalVisible Whether the personal calendar is shown
+     * @param calendarColors Color of each of the other calendars
+     * @param daySelected Receives the day of the appointment clicked
+     */
+    public AgendaPanel(AgendaPager pager, CalendarEventBus eventBus, ZoneOffsetCache offsets,
+                       Supplier<AppointmentFilter> filter, BooleanSupplier personalVisible,
+                       Function<CalendarAggregator.Source, Color> calendarColors, Consumer<LocalDate> daySelected) {
+        super(new BorderLayout());
+        this.pager = pager;
+        this.eventBus = eventBus;
+        this.offsets = offsets;
+        this.filter = filter;
+        this.personalVisible = personalVisible;
+        this.calendarColors = calendarColors;
+
+        list.setCellRenderer(new RowRenderer());
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setVisibleRowCount(6);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = list.locationToIndex(e.getPoint());
+                if (index >= 0 && model.getElementAt(index).entry != null) {
+                    long start = model.getElementAt(index).entry.getAppointment().getStart();
+                    daySelected.accept(LocalDate.ofEpochDay(offsets.getEpochDay(start)));
+                }
+            }
+        });
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        // The next page is read when the end of the list comes into view
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            BoundedRangeModel range = scrollPane.getVerticalScrollBar().getModel();
+            if (lastPageFull && !loading && range.getValue() + range.getExtent() >= range.getMaximum()
+                    && range.getMaximum() > range.getExtent()) {
+                SwingUtilities.invokeLater(this::loadMore);
+            }
+        });
+
+        JButton moreButton = new JButton(Calendar_i18n.getString("button.load_more"));
+        moreButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        moreButton.addActionListener(e -> loadMore());
+
+        add(scrollPane, BorderLayout.CENTER);
+        add(moreButton, BorderLayout.SOUTH);
+        // Read only while on screen, from the minute it appears
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing()) {
+                reset();
+            }
+        });
+        eventBus.subscribe(AppointmentEvent.class, changed);
+        eventBus.subscribe(FilterEvent.class, changed);
+        eventBus.subscribe(CalendarSourceEvent.class, changed);
+    }
+
+    /**
+     * Starts the agenda again from the current minute.
+     */
+    public void reset() {
+        first = AgendaPager.Cursor.at(System.currentTimeMillis() / 60_000);
+        next = first;
+        model.setAll(new ArrayList<>());
+        loadMore();
+    }
+
+    /**
+     * @return The days from the start of the agenda to its next page, or null if it is not on screen
+     */
+    public DayRange getListedDays() {
+        if (first == null || !isShowing()) {
+            return null;
+        }
+        return DayRange.of(offsets.getEpochDay(first.getStart()), offsets.getEpochDay(next.getStart()));
+    }
+
+    /**
+     * Stops listening to the event bus.
+     */
+    public void dispose() {
+        eventBus.unsubscribe(AppointmentEvent.class, changed);
+        eventBus.unsubscribe(FilterEvent.class, changed);
+        eventBus.unsubscribe(CalendarSourceEvent.class, changed);
+    }
+
+    /**
+     * Appends the next page to the list.
+     */
+    private void loadMore() {
+        if (loading) {
+            return;
+        }
+        Row last = model.last();
+        if (last != null && last.message != null) {
+            model.removeLast();
+            last = model.last();
+        }
+        List<Row> rows = new ArrayList<>();
+        read(next, rows, last == null ? null : dayOf(last));
+        model.addAll(rows);
+    }
+
+    /**
+     * Reads a page from the cursor into the rows, preceded by a heading
+     * whenever the day changes, and moves the next cursor after it.
+     */
+    private void read(AgendaPager.Cursor cursor, List<Row> rows, LocalDate lastDay) {
+        loading = true;
+        try {
+            AppointmentFilter shown = filter.get();
+            AgendaPager.Page page = pager.page(cursor, PAGE_SIZE, personalVisible.getAsBoolean(), shown::test);
+            for (CalendarAggregator.Entry entry : page.getEntries()) {
+                LocalDate day = dayOf(entry);
+                if (!day.equals(lastDay)) {
+                    rows.add(new Row(day, null, null));
+                    lastDay = day;
+                }
+                rows.add(new Row(null, entry, null));
+            }
+            next = page.getNext();
+            lastPageFull = page.isFull();
+            if (!lastPageFull) {
+                rows.add(new Row(null, null, MessageFormat.format(Calendar_i18n.getString("agenda.none_until"),
+                    formatDay(LocalDate.ofEpochDay(offsets.getEpochDay(next.getStart()) - 1)))));
+            }
+        } finally {
+            loading = false;
+        }
+    }
+
+    /**
+     * Schedules a refresh when the change touches the days listed. The
+     * agenda's own loads are skipped: the page being read already sees them.
+     */
+    private void changed(CalendarEvent event) {
+        if (loading || refreshScheduled || first == null || !isShowing()
+                || !event.affects(offsets.getEpochDay(first.getStart()), offsets.getEpochDay(next.getStart()))) {
+            return;
+        }
+        refreshScheduled = true;
+        SwingUtilities.invokeLater(this::refresh);
+    }
+
+    /**
+     * Reads again the pages listed, from the start of the agenda up to the
+     * next page, keeping the scroll position.
+     */
+    private void refresh() {
+        refreshScheduled = false;
+        long end = next.getStart();
+        Point position = scrollPane.getViewport().getViewPosition();
+        List<Row> rows = new ArrayList<>();
+        AgendaPager.Cursor cursor = first;
+        do {
+            // A short page ends with a message, replaced by the following page
+            if (!rows.isEmpty() && rows.get(rows.size() - 1).message != null) {
+                rows.remove(rows.size() - 1);
+            }
+            read(cursor, rows, rows.isEmpty() ? null : dayOf(rows.get(rows.size() - 1)));
+            cursor = next;
+        } while (next.getStart() < end);
+        model.setAll(rows);
+        scrollPane.getViewport().setViewPosition(position);
+    }
+
+    // Day of a heading or of an appointment row
+    private LocalDate dayOf(Row row) {
+        return row.day != null ? row.day : dayOf(row.entry);
+    }
+
+    private LocalDate dayOf(CalendarAggregator.Entry entry) {
+        return LocalDate.ofEpochDay(offsets.getEpochDay(entry.getAppointment().getStart()));
+    }
+
+    private static String formatDay(LocalDate day) {
+        return MessageFormat.format(Calendar_i18n.getString("agenda.day"),
+                                    DayOfWeek.values()[day.getDayOfWeek().ordinal()].getDisplayName(),
+                                    day.getDayOfMonth(),
+                                    Month.fromCalendarMonth(day.getMonthValue() - 1).getDisplayName(),
+                                    day.getYear());
+    }
+}
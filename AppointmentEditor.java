@@ -0,0 +1,256 @@
+package dashboard;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import dashboard.i18n.Calendar_i18n;
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentStore;
+import dashboard.store.ConflictDetector;
+import dashboard.store.RepositoryLoader;
+import dashboard.store.ZoneOffsetCache;
+
+import java.awt.*;
+import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Dialog creating a new appointment.
+ * While the date and the times are typed, every change is checked against
+ * the appointments already in the calendars through their
+ * {@link ConflictDetector}s, and the overlapping ones are listed at once.
+ * Overlaps are a warning: the appointment can be saved anyway.
+ * The dialog is created once and hidden after each use.
+ */
+public class AppointmentEditor extends JDialog {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+    private static final Color CONFLICT_COLOR = new Color(0xC6, 0x28, 0x28);
+    private static final Color FREE_COLOR = new Color(0x2E, 0x7D, 0x32);
+
+    private final AppointmentStore store;
+    private final RepositoryLoader loader;
+    private final Function<LocalDate, List<ConflictDetector>> detectors;
+    private final ZoneOffsetCache offsets;
+    // Detectors of the calendars of the day last parsed
+    private List<ConflictDetector> dayDetectors;
+
+    private final JTextField titleField = new JTextField(20);
+    private final JComboBox<Category> categoryBox = new JComboBox<>(Category.values());
+    private final JTextField dateField = new JTextField(10);
+    private final JTextField startField = new JTextField(5);
+    private final JTextField endField = new JTextField(5);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final DefaultListModel<String> conflicts = new DefaultListModel<>();
+    private final JButton saveButton = new JButton(Calendar_i18n.getString("button.save"));
+
+    /**
+     * @param owner The calendar window
+     * @param store Store the new appointments are added to
+     * @param loader Loads the days being checked into the store
+     * @param detectors Detectors of the calendars to check on a day, the
+     *                  first one following the store; asked again as the day changes
+     * @param offsets Time zone the date and the times are typed in
+     */
+    public AppointmentEditor(Frame owner, AppointmentStore store, RepositoryLoader loader,
+                             Function<LocalDate, List<ConflictDetector>> detectors, ZoneOffsetCache offsets) {
+        super(owner, Calendar_i18n.getString("editor.title"), false);
+        this.store = store;
+        this.loader = loader;
+        this.detectors = detectors;
+        this.offsets = offsets;
+        setLayout(new BorderLayout(10, 10));
+        setDefaultCloseOperation(HIDE_ON_CLOSE);
+
+        categoryBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                setText(((Category) value).getDisplayName());
+                return this;
+            }
+        });
+
+        JPanel fieldsPanel = new JPanel(new GridBagLayout());
+        fieldsPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 0, 10));
+        addRow(fieldsPanel, 0, "editor.appointment_title", titleField);
+        addRow(fieldsPanel, 1, "editor.category", categoryBox);
+        addRow(fieldsPanel, 2, "editor.date", dateField);
+        JPanel timesPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        timesPanel.add(startField);
+        timesPanel.add(new JLabel("-"));
+        timesPanel.add(endField);
+        addRow(fieldsPanel, 3, "editor.time", timesPanel);
+
+        JPanel conflictsPanel = new JPanel(new BorderLayout(0, 5));
+        conflictsPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+        statusLabel.setFont(new Font("Arial", Font.BOLD, 12));
+        conflictsPanel.add(statusLabel, BorderLayout.NORTH);
+        JList<String> conflictList = new JList<>(conflicts);
+        conflictList.setFocusable(false);
+        conflictList.setVisibleRowCount(5);
+        conflictsPanel.add(new JScrollPane(conflictList), BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton cancelButton = new JButton(Calendar_i18n.getString("button.cancel"));
+        saveButton.addActionListener(e -> save());
+        cancelButton.addActionListener(e -> setVisible(false));
+        buttonPanel.add(saveButton);
+        buttonPanel.add(cancelButton);
+
+        // Every keystroke in the date and the times checks the new interval again
+        DocumentListener checker = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                check();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                check();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                check();
+            }
+        };
+        titleField.getDocument().addDocumentListener(checker);
+        dateField.getDocument().addDocumentListener(checker);
+        startField.getDocument().addDocumentListener(checker);
+        endField.getDocument().addDocumentListener(checker);
+
+        add(fieldsPanel, BorderLayout.NORTH);
+        add(conflictsPanel, BorderLayout.CENTER);
+        add(buttonPanel, BorderLayout.SOUTH);
+        getRootPane().setDefaultButton(saveButton);
+        setSize(420, 340);
+    }
+
+    /**
+     * Shows the dialog for a new appointment on a day, from 9:00 to 10:00.
+     */
+    public void showFor(LocalDate date) {
+        titleField.setText("");
+        categoryBox.setSelectedItem(Category.MEETING);
+        dateField.setText(DATE_FORMAT.format(date));
+        startField.setText("09:00");
+        endField.setText("10:00");
+        if (!isDisplayable()) {
+            setLocationRelativeTo(getOwner());
+        }
+        setVisible(true);
+        titleField.requestFocusInWindow();
+    }
+
+    /**
+     * Checks the typed interval again, as the other calendars arrive in the
+     * background; does nothing while the dialog is hidden.
+     */
+    public void recheck() {
+        if (isVisible()) {
+            check();
+        }
+    }
+
+    /**
+     * Checks the typed interval, listing the appointments it overlaps.
+     *
+     * @return The interval in epoch minutes, or null if the fields are not valid
+     */
+    private long[] check() {
+        conflicts.clear();
+        long[] interval = parseInterval();
+        if (interval == null) {
+            showStatus(Calendar_i18n.getString("editor.invalid_time"), CONFLICT_COLOR);
+            saveButton.setEnabled(false);
+            return null;
+        }
+        saveButton.setEnabled(!titleField.getText().trim().isEmpty());
+        List<ConflictDetector.Conflict> found = ConflictDetector.findConflicts(dayDetectors, interval[0], interval[1], -1);
+        if (found.isEmpty()) {
+            showStatus(Calendar_i18n.getString("editor.no_conflicts"), FREE_COLOR);
+            return interval;
+        }
+        showStatus(MessageFormat.format(Calendar_i18n.getString("editor.conflicts"), found.size()), CONFLICT_COLOR);
+        for (ConflictDetector.Conflict conflict : found) {
+            Appointment appointment = conflict.getAppointment();
+            String text = Appuntamenti.formatTimeInZones(appointment, offsets) + " - " + appointment.getTitle();
+            // Other calendars, such as those of rooms or colleagues, are named
+            if (conflict.getCalendar() != store) {
+                text += " (" + conflict.getCalendar().getName() + ")";
+            }
+            conflicts.addElement(text);
+        }
+        return interval;
+    }
+
+    private long[] parseInterval() {
+        LocalDate date;
+        LocalTime start;
+        LocalTime end;
+        try {
+            date = LocalDate.parse(dateField.getText().trim(), DATE_FORMAT);
+            start = LocalTime.parse(startField.getText().trim(), TIME_FORMAT);
+            end = LocalTime.parse(endField.getText().trim(), TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        if (!end.isAfter(start)) {
+            return null;
+        }
+        // The day must be in the store before its appointments can be checked
+        loader.ensureRange(date, date);
+        dayDetectors = detectors.apply(date);
+        long day = date.toEpochDay() * 24 * 60;
+        long from = offsets.toEpochMinute(day + start.toSecondOfDay() / 60);
+        long to = offsets.toEpochMinute(day + end.toSecondOfDay() / 60);
+        return to > from ? new long[] { from, to } : null;
+    }
+
+    private void save() {
+        long[] interval = check();
+        String title = titleField.getText().trim();
+        if (interval == null || title.isEmpty()) {
+            return;
+        }
+        store.add(new Appointment(newId(), interval[0], (int) (interval[1] - interval[0]), title,
+                                  (Category) categoryBox.getSelectedItem()));
+        setVisible(false);
+    }
+
+    // Random ids do not collide with those of other devices syncing the same calendar
+    private long newId() {
+        while (true) {
+            long id = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+            if (!store.contains(id) && loader.getRepository().findById(id) == null) {
+                return id;
+            }
+        }
+    }
+
+    private void showStatus(String text, Color color) {
+        statusLabel.setText(text);
+        statusLabel.setForeground(color);
+    }
+
+    private static void addRow(JPanel panel, int row, String labelKey, JComponent field) {
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.gridy = row;
+        constraints.anchor = GridBagConstraints.WEST;
+        constraints.insets = new Insets(3, 0, 3, 10);
+        panel.add(new JLabel(Calendar_i18n.getString(labelKey)), constraints);
+        constraints.gridx = 1;
+        constraints.weightx = 1;
+        constraints.insets = new Insets(3, 0, 3, 0);
+        panel.add(field, constraints);
+    }
+}
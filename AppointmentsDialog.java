@@ -0,0 +1,196 @@
+package dashboard;
+
+import javax.swing.*;
+import javax.swing.border.Border;
+
+import dashboard.i18n.Calendar_i18n;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dialog listing the appointments and the first free slots of a day, used
+ * in compact mode.
+ * The dialog is created once and hidden instead of disposed: showing another
+ * day replaces the contents of its two list models, so the window, its
+ * native peer and the cell renderer shared by both lists are reused.
+ */
+public class AppointmentsDialog extends JDialog {
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font SECTION_FONT = new Font("Arial", Font.BOLD, 12);
+
+    private final JLabel titleLabel = new JLabel();
+    private final JLabel freeSlotsLabel = new JLabel();
+    private final EntryListModel appointments = new EntryListModel();
+    private final EntryListModel freeSlots = new EntryListModel();
+
+    /**
+     * Row of one of the lists: a time, a description and the color of the
+     * left bar, or a message in italics when the color is null.
+     */
+    public static final class Entry {
+        private final String time;
+        private final String description;
+        private final Color color;
+
+        public Entry(String time, String description, Color color) {
+            this.time = time;
+            this.description = description;
+            this.color = color;
+        }
+
+        /**
+         * @return A row showing only a message in italics
+         */
+        public static Entry message(String text) {
+            return new Entry(null, text, null);
+        }
+    }
+
+    /**
+     * List model whose contents are replaced in one step.
+     */
+    private static final class EntryListModel extends AbstractListModel<Entry> {
+        private List<Entry> entries = new ArrayList<>();
+
+        @Override
+        public int getSize() {
+            return entries.size();
+        }
+
+        @Override
+        public Entry getElementAt(int index) {
+            return entries.get(index);
+        }
+
+        void setEntries(List<Entry> newEntries) {
+            int oldSize = entries.size();
+            entries = new ArrayList<>(newEntries);
+            int newSize = entries.size();
+            // One event per kind of change instead of one per row
+            if (newSize < oldSize) {
+                fireIntervalRemoved(this, newSize, oldSize - 1);
+            } else if (newSize > oldSize) {
+                fireIntervalAdded(this, oldSize, newSize - 1);
+            }
+            if (Math.min(oldSize, newSize) > 0) {
+                fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+            }
+        }
+    }
+
+    /**
+     * Renderer shared by both lists: one panel with a time and a description
+     * label, and a cached border for every bar color.
+     */
+    private static final class EntryRenderer extends JPanel implements ListCellRenderer<Entry> {
+        private static final Font TIME_FONT = new Font("Arial", Font.BOLD, 12);
+        private static final Font DESCRIPTION_FONT = new Font("Arial", Font.PLAIN, 12);
+        private static final Font MESSAGE_FONT = new Font("Arial", Font.ITALIC, 12);
+        private static final Border MESSAGE_BORDER = BorderFactory.createEmptyBorder(5, 0, 5, 0);
+
+        private final JLabel timeLabel = new JLabel();
+        private final JLabel descriptionLabel = new JLabel();
+        private final Map<Color, Border> borders = new HashMap<>();
+
+        EntryRenderer() {
+            super(new BorderLayout(5, 0));
+            timeLabel.setFont(TIME_FONT);
+            add(timeLabel, BorderLayout.WEST);
+            add(descriptionLabel, BorderLayout.CENTER);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<? extends Entry> list, Entry entry, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            setBackground(list.getBackground());
+            if (entry.color == null) {
+                setBorder(MESSAGE_BORDER);
+                timeLabel.setText(null);
+                descriptionLabel.setFont(MESSAGE_FONT);
+            } else {
+                setBorder(borders.computeIfAbsent(entry.color, color -> BorderFactory.createCompoundBorder(
+                    BorderFactory.createMatteBorder(0, 3, 0, 0, color),
+                    BorderFactory.createEmptyBorder(5, 5, 5, 5))));
+                timeLabel.setText(entry.time);
+                descriptionLabel.setFont(DESCRIPTION_FONT);
+            }
+            descriptionLabel.setText(entry.description);
+            return this;
+        }
+    }
+
+    public AppointmentsDialog(Frame owner) {
+        super(owner, Calendar_i18n.getString("dialog.appointments_title"), false);
+        setLayout(new BorderLayout(10, 10));
+        setSize(400, 300);
+        setDefaultCloseOperation(HIDE_ON_CLOSE);
+
+        titleLabel.setFont(TITLE_FONT);
+        titleLabel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        EntryRenderer renderer = new EntryRenderer();
+        JPanel listsPanel = new JPanel();
+        listsPanel.setLayout(new BoxLayout(listsPanel, BoxLayout.Y_AXIS));
+        listsPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        listsPanel.add(createList(appointments, renderer));
+        freeSlotsLabel.setFont(SECTION_FONT);
+        freeSlotsLabel.setBorder(BorderFactory.createEmptyBorder(10, 0, 5, 0));
+        listsPanel.add(freeSlotsLabel);
+        listsPanel.add(createList(freeSlots, renderer));
+        // Keep the lists at the top when the day has few rows
+        listsPanel.add(Box.createVerticalGlue());
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton closeButton = new JButton(Calendar_i18n.getString("button.close"));
+        closeButton.addActionListener(e -> setVisible(false));
+        buttonPanel.add(closeButton);
+
+        add(titleLabel, BorderLayout.NORTH);
+        add(new JScrollPane(listsPanel), BorderLayout.CENTER);
+        add(buttonPanel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Shows a day, replacing the contents of the dialog, and brings the
+     * dialog to the front; it is placed over its owner the first time.
+     *
+     * @param title Title of the day
+     * @param dayAppointments Appointments of the day
+     * @param freeSlotsTitle Title of the free slots section
+     * @param daySlots Free slots from the day on
+     */
+    public void showDay(String title, List<Entry> dayAppointments, String freeSlotsTitle, List<Entry> daySlots) {
+        titleLabel.setText(title);
+        appointments.setEntries(dayAppointments);
+        freeSlotsLabel.setText(freeSlotsTitle);
+        freeSlots.setEntries(daySlots);
+        if (!isVisible()) {
+            if (!isDisplayable()) {
+                setLocationRelativeTo(getOwner());
+            }
+            setVisible(true);
+        } else {
+            toFront();
+        }
+    }
+
+    /**
+     * Replaces the free slots of the day shown, once they are found.
+     */
+    public void showFreeSlots(List<Entry> daySlots) {
+        freeSlots.setEntries(daySlots);
+    }
+
+    private static JList<Entry> createList(EntryListModel model, EntryRenderer renderer) {
+        JList<Entry> list = new JList<>(model);
+        list.setCellRenderer(renderer);
+        // Rows are information only: the renderer ignores the selection
+        list.setFocusable(false);
+        list.setAlignmentX(Component.LEFT_ALIGNMENT);
+        return list;
+    }
+}
@@ -4,12 +4,23 @@ import javax.swing.*;
 import javax.swing.border.Border;
 
 import dashboard.i18n.Calendar_i18n;
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentRepository;
+import dashboard.store.AppointmentStore;
+import dashboard.store.AppointmentView;
+import dashboard.store.SampleAppointments;
+import dashboard.store.ZoneOffsetCache;
 
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * Utility class for handling appointments in the Calendar application.
@@ -22,6 +33,117 @@ public class Appuntamenti {
     private static final Color EMPTY_DAY_COLOR_BG = Calendar_i18n.getColor("color.empty_day_color_bg");
     private static final Color DAY_SELECTED_COLOR_BG = Calendar_i18n.getColor("color.day_selected_color_bg");
     
+    // Repository used by getAppointmentsForDay, the example appointments until one is set
+    private static AppointmentRepository repository;
+    // Time zone getAppointmentsForDay computes days in
+    private static ZoneOffsetCache displayOffsets = ZoneOffsetCache.of(ZoneId.systemDefault());
+    
+    /**
+     * Sets the repository read by {@link #getAppointmentsForDay(int, int, int)}
+     * 
+     * @param appointmentRepository The repository holding the appointments
+     */
+    public static synchronized void setRepository(AppointmentRepository appointmentRepository) {
+        repository = appointmentRepository;
+    }
+    
+    /**
+     * Sets the time zone {@link #getAppointmentsForDay(int, int, int)} computes days in
+     * 
+     * @param zone The display time zone
+     */
+    public static synchronized void setDisplayZone(ZoneId zone) {
+        displayOffsets = ZoneOffsetCache.of(zone);
+    }
+    
+    private static synchronized AppointmentRepository getRepository() {
+        if (repository == null) {
+            repository = new SampleAppointments(displayOffsets.getZone());
+        }
+        return repository;
+    }
+    
+    /**
+     * Formats the start time of an appointment as HH:mm
+     * 
+     * @param appointment The appointment
+     * @param offsets The time zone to display the time in
+     * @return The formatted start time
+     */
+    public static String formatTime(AppointmentView appointment, ZoneOffsetCache offsets) {
+        int minute = offsets.getMinuteOfDay(appointment.getStart());
+        return new String(new char[] {
+            (char) ('0' + minute / 600), (char) ('0' + minute / 60 % 10), ':',
+            (char) ('0' + minute % 60 / 10), (char) ('0' + minute % 10)
+        });
+    }
+    
+    /**
+     * Formats the start time of an appointment as HH:mm in the display time
+     * zone, followed by the time in the zone of the appointment when that
+     * zone has a different offset, as in "09:00 (15:00 London)"
+     * 
+     * @param appointment The appointment
+     * @param display The time zone the calendar is displayed in
+     * @return The formatted start time
+     */
+    public static String formatTimeInZones(AppointmentView appointment, ZoneOffsetCache display) {
+        String time = formatTime(appointment, display);
+        ZoneId zone = appointment.getZone();
+        if (zone == null) {
+            return time;
+        }
+        ZoneOffsetCache own = ZoneOffsetCache.of(zone);
+        long start = appointment.getStart();
+        if (own.getOffsetMinutes(start) == display.getOffsetMinutes(start)) {
+            return time;
+        }
+        return time + " (" + formatTime(appointment, own) + " " + zoneName(zone) + ")";
+    }
+    
+    // City part of a region id, "America/New_York" becoming "New York"
+    private static String zoneName(ZoneId zone) {
+        String id = zone.getId();
+        return id.substring(id.lastIndexOf('/') + 1).replace('_', ' ');
+    }
+    
+    /**
+     * Reads the appointments of a month with a single range query and
+     * groups them by the day they start on.
+     * 
+     * @param store The store to read from
+     * @param month The month
+     * @param offsets The time zone days are computed in
+     * @return One list per day of the month, each sorted by start time
+     */
+    public static List<List<Appointment>> groupByDay(AppointmentStore store, YearMonth month, ZoneOffsetCache offsets) {
+        int length = month.lengthOfMonth();
+        List<List<Appointment>> days = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            days.add(new ArrayList<>());
+        }
+        // Start of every day, and of the next month, in epoch minutes
+        long[] dayStarts = new long[length + 1];
+        long firstDay = month.atDay(1).toEpochDay();
+        for (int i = 0; i <= length; i++) {
+            dayStarts[i] = offsets.startOfDay(firstDay + i);
+        }
+        int[] day = {0};
+        // Read through flyweight views: only the appointments of the month become objects
+        store.forEachInRange(dayStarts[0], dayStarts[length], view -> {
+            if (view.getStart() < dayStarts[0]) {
+                // Started in the previous month
+                return;
+            }
+            // Appointments come sorted by start, so the day only moves forward
+            while (view.getStart() >= dayStarts[day[0] + 1]) {
+                day[0]++;
+            }
+            days.get(day[0]).add(view.toAppointment());
+        });
+        return days;
+    }
+    
     /**
      * Creates a border for appointment panels
      * 
@@ -231,16 +353,19 @@ public class Appuntamenti {
     public static String getAppointmentsForDay(int year, int month, int day) {
         StringBuilder appointments = new StringBuilder();
         
-        // Verifica se ci sono appuntamenti per questo giorno
-        // Questo è un esempio, dovresti adattarlo alla tua logica di gestione degli appuntamenti
-        if (day % 3 == 0) {
-            appointments.append("10:00 - Riunione\n");
+        // Legge dal repository solo gli appuntamenti che iniziano in questo giorno
+        ZoneOffsetCache offsets;
+        synchronized (Appuntamenti.class) {
+            offsets = displayOffsets;
         }
-        if (day % 5 == 0) {
-            appointments.append("14:30 - Pranzo di lavoro\n");
-        }
-        if (day % 7 == 0) {
-            appointments.append("16:00 - Conferenza\n");
+        long epochDay = LocalDate.of(year, month + 1, day).toEpochDay();
+        long from = offsets.startOfDay(epochDay);
+        long to = offsets.startOfDay(epochDay + 1);
+        for (Appointment appointment : getRepository().findRange(from, to)) {
+            if (appointment.getStart() >= from) {
+                appointments.append(formatTimeInZones(appointment, offsets)).append(" - ")
+                            .append(appointment.getTitle()).append("\n");
+            }
         }
         
         return appointments.toString();
@@ -0,0 +1,387 @@
+package dashboard;
+
+import dashboard.event.CalendarEventBus;
+import dashboard.event.CalendarSourceEvent;
+import dashboard.event.DayRange;
+import dashboard.holiday.HolidayCalendar;
+import dashboard.holiday.HolidayRules;
+import dashboard.i18n.Calendar_i18n;
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.EdtProbe;
+import dashboard.metrics.PrometheusEndpoint;
+import dashboard.store.AppointmentRepositories;
+import dashboard.store.AppointmentRepository;
+import dashboard.store.AppointmentStatistics;
+import dashboard.store.AppointmentStore;
+import dashboard.store.CalendarAggregator;
+import dashboard.store.CalendarDiff;
+import dashboard.store.CalendarFileProvider;
+import dashboard.store.CalendarFileWatcher;
+import dashboard.store.ConflictDetector;
+import dashboard.store.FreeBusyFinder;
+import dashboard.store.RepositoryException;
+import dashboard.store.RepositoryLoader;
+import dashboard.store.ZoneOffsetCache;
+import dashboard.sync.CalDavClient;
+import dashboard.sync.CalendarSync;
+import dashboard.sync.SyncException;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data shared by the calendar windows: the store with the loaded months,
+ * the aggregated calendars with their month cache, the sync engine and the
+ * metrics. It is built once, from the system properties, and each
+ * {@link Calendario} window opened on it only adds its own navigation,
+ * filters and views.
+ * <p>
+ * The changes of the data are published on a single {@link #getEventBus()
+ * event bus}; each window relays to its views only the ones touching the
+ * days it shows. The model is released when its last window closes.
+ */
+public class CalendarModel {
+    // Months kept in the store at the same time, for all the windows together; the months a
+    // window shows are pinned and kept even beyond it, so windows do not drop each other's months
+    private static final int LOADED_MONTHS = 36;
+    // Working hours searched for free slots
+    private static final LocalTime WORK_START = LocalTime.of(9, 0);
+    private static final LocalTime WORK_END = LocalTime.of(18, 0);
+    private static final int CALENDAR_COLORS = 6;
+    // Display time zone (id such as "Europe/Rome"), the system one if missing
+    private static final String DISPLAY_ZONE_PROPERTY = "calendario.zone";
+    // Highlighted holidays (id such as "it" or "it-milano"), see HolidayRules
+    private static final String HOLIDAYS_PROPERTY = "calendario.holidays";
+    // CalDAV collection to synchronize (URL), no sync if missing
+    private static final String SYNC_URL_PROPERTY = "calendario.sync.url";
+    // Seconds between one sync and the next
+    private static final String SYNC_INTERVAL_PROPERTY = "calendario.sync.interval";
+    private static final int SYNC_INTERVAL = 60;
+    private static final String SYNC_STATE_FILE = "sync.state";
+    // Port of the Prometheus metrics endpoint (loopback only), no endpoint if missing
+    private static final String METRICS_PORT_PROPERTY = "calendario.metrics.port";
+
+    private final ZoneId displayZone;
+    private final ZoneOffsetCache displayOffsets;
+    private final HolidayCalendar holidays;
+    private final AppointmentStore store;
+    private final AppointmentStatistics statistics;
+    private final CalendarEventBus eventBus = new CalendarEventBus();
+    private final RepositoryLoader repositoryLoader;
+    private final FreeBusyFinder freeBusyFinder;
+    private final CalendarAggregator calendarAggregator;
+    private final Map<CalendarAggregator.Source, Color> calendarColors = new HashMap<>();
+    private CalendarSync calendarSync;
+    private CalendarFileWatcher calendarFileWatcher;
+    private ScheduledExecutorService syncScheduler;
+    private EdtProbe edtProbe;
+    private PrometheusEndpoint metricsEndpoint;
+    // Created with the first appointment editor, then kept up to date by the store
+    private ConflictDetector conflictDetector;
+    // Same for the other calendars, each over the months it fetched
+    private final Map<CalendarAggregator.Source, ConflictDetector> calendarDetectors = new HashMap<>();
+    private int windows;
+
+    /**
+     * Builds the model from the system properties and starts the sync and
+     * the metrics.
+     */
+    public CalendarModel() {
+        displayZone = readDisplayZone();
+        displayOffsets = ZoneOffsetCache.of(displayZone);
+        holidays = readHolidays();
+
+        store = new AppointmentStore(Calendar_i18n.getString("app.title"));
+        // Statistics must observe the store before any appointment is added
+        statistics = new AppointmentStatistics(displayZone);
+        store.addListener(statistics);
+        eventBus.connect(store, displayOffsets);
+        AppointmentRepository repository = AppointmentRepositories.fromSystemProperties(displayZone);
+        String syncUrl = System.getProperty(SYNC_URL_PROPERTY);
+        if (syncUrl != null && !syncUrl.isEmpty()) {
+            // The sync engine goes between the store and the repository to see the local changes
+            String dataDir = System.getProperty(AppointmentRepositories.DATA_DIR_PROPERTY);
+            calendarSync = new CalendarSync(new CalDavClient(URI.create(syncUrl)), repository, store, displayZone,
+                                            dataDir == null || dataDir.isEmpty() ? null : Paths.get(dataDir, SYNC_STATE_FILE));
+            repository = calendarSync;
+        }
+        repositoryLoader = new RepositoryLoader(repository, store, displayZone, LOADED_MONTHS);
+        Appuntamenti.setRepository(repository);
+        Appuntamenti.setDisplayZone(displayZone);
+        freeBusyFinder = new FreeBusyFinder(WORK_START, WORK_END, displayZone);
+        calendarAggregator = createCalendarAggregator();
+        watchCalendarFiles();
+        startSync();
+        startMetrics();
+    }
+
+    public ZoneId getDisplayZone() {
+        return displayZone;
+    }
+
+    public ZoneOffsetCache getDisplayOffsets() {
+        return displayOffsets;
+    }
+
+    public HolidayCalendar getHolidays() {
+        return holidays;
+    }
+
+    public AppointmentStore getStore() {
+        return store;
+    }
+
+    public AppointmentStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return The bus of the changes of the data: appointments and aggregated calendars
+     */
+    public CalendarEventBus getEventBus() {
+        return eventBus;
+    }
+
+    public RepositoryLoader getRepositoryLoader() {
+        return repositoryLoader;
+    }
+
+    public FreeBusyFinder getFreeBusyFinder() {
+        return freeBusyFinder;
+    }
+
+    public CalendarAggregator getCalendarAggregator() {
+        return calendarAggregator;
+    }
+
+    /**
+     * @return The color of one of the aggregated calendars
+     */
+    public Color getCalendarColor(CalendarAggregator.Source source) {
+        return calendarColors.get(source);
+    }
+
+    /**
+     * @return The detector of the conflicts with the personal calendar, created on first use
+     */
+    public synchronized ConflictDetector getConflictDetector() {
+        if (conflictDetector == null) {
+            conflictDetector = new ConflictDetector(store);
+        }
+        return conflictDetector;
+    }
+
+    /**
+     * @return The detector of the conflicts with one of the other calendars,
+     *         created on first use over the months it fetched
+     */
+    public synchronized ConflictDetector getConflictDetector(CalendarAggregator.Source source) {
+        return calendarDetectors.computeIfAbsent(source, s -> new ConflictDetector(s.getStore()));
+    }
+
+    /**
+     * Counts a window opened on the model.
+     */
+    synchronized void windowOpened() {
+        windows++;
+    }
+
+    /**
+     * Counts a window closed; the last one releases the model.
+     *
+     * @return true if other windows are still open
+     */
+    synchronized boolean windowClosed() {
+        if (--windows > 0) {
+            return true;
+        }
+        close();
+        return false;
+    }
+
+    /**
+     * Stops the background work and releases the repository (database connections).
+     */
+    private void close() {
+        if (syncScheduler != null) {
+            syncScheduler.shutdownNow();
+        }
+        edtProbe.close();
+        if (metricsEndpoint != null) {
+            metricsEndpoint.close();
+        }
+        if (calendarFileWatcher != null) {
+            calendarFileWatcher.close();
+        }
+        calendarAggregator.close();
+        repositoryLoader.getRepository().close();
+    }
+
+    /**
+     * Creates the aggregator of the calendars listed in the system property,
+     * each with its own color. The calendars arrive in the background and
+     * refresh only the days they loaded.
+     */
+    private CalendarAggregator createCalendarAggregator() {
+        CalendarAggregator aggregator = new CalendarAggregator(displayOffsets, new CalendarAggregator.Listener() {
+            @Override
+            public void calendarLoaded(CalendarAggregator.Source source, LocalDate first, LocalDate last) {
+                eventBus.publish(new CalendarSourceEvent(source, DayRange.of(first.toEpochDay(), last.toEpochDay())));
+            }
+
+            @Override
+            public void calendarFailed(CalendarAggregator.Source source, RuntimeException error) {
+                System.err.println(MessageFormat.format(
+                    Calendar_i18n.getString("error.calendar"), source.getName(), error.getMessage()));
+            }
+        });
+        String calendars = System.getProperty(AppointmentRepositories.CALENDARS_PROPERTY, "");
+        for (String entry : calendars.split(";")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                CalendarAggregator.Source source = aggregator.add(
+                    AppointmentRepositories.createCalendar(entry, displayZone));
+                calendarColors.put(source, Calendar_i18n.getColor(
+                    "color.calendar_" + (calendarColors.size() % CALENDAR_COLORS + 1)));
+            } catch (IllegalArgumentException | RepositoryException e) {
+                System.err.println(MessageFormat.format(
+                    Calendar_i18n.getString("error.invalid_calendar"), entry));
+            }
+        }
+        return aggregator;
+    }
+
+    /**
+     * Reloads the calendars read from files when other programs change them,
+     * applying only the differences and refreshing only the days of the
+     * changed appointments.
+     */
+    private void watchCalendarFiles() {
+        Map<CalendarFileProvider, CalendarAggregator.Source> files = new HashMap<>();
+        for (CalendarAggregator.Source source : calendarAggregator.getSources()) {
+            if (source.getProvider() instanceof CalendarFileProvider) {
+                files.put((CalendarFileProvider) source.getProvider(), source);
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        try {
+            calendarFileWatcher = new CalendarFileWatcher(new CalendarFileWatcher.Listener() {
+                @Override
+                public void fileChanged(CalendarFileProvider provider, CalendarDiff diff) {
+                    CalendarAggregator.Source source = files.get(provider);
+                    calendarAggregator.apply(source, diff);
+                    eventBus.publish(new CalendarSourceEvent(source,
+                        DayRange.ofDays(diff.getStartDays(displayOffsets))));
+                }
+
+                @Override
+                public void fileFailed(CalendarFileProvider provider, RuntimeException error) {
+                    System.err.println(MessageFormat.format(
+                        Calendar_i18n.getString("error.calendar"), provider.getName(), error.getMessage()));
+                }
+            });
+            for (CalendarFileProvider provider : files.keySet()) {
+                calendarFileWatcher.watch(provider);
+            }
+        } catch (IOException e) {
+            System.err.println(MessageFormat.format(
+                Calendar_i18n.getString("error.calendar_watch"), e.getMessage()));
+        }
+    }
+
+    /**
+     * Starts the periodic sync, if configured, on a background thread; the
+     * downloaded changes refresh only the days involved.
+     */
+    private void startSync() {
+        if (calendarSync == null) {
+            return;
+        }
+        syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "calendar-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, Integer.getInteger(SYNC_INTERVAL_PROPERTY, SYNC_INTERVAL));
+        syncScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                // Downloaded changes reach the views as store events, one cell per changed day
+                calendarSync.sync();
+            } catch (SyncException | RepositoryException e) {
+                // Retried at the next interval, with the local changes still pending
+                System.err.println(MessageFormat.format(
+                    Calendar_i18n.getString("error.sync"), e.getMessage()));
+            }
+        }, 0, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Publishes the metrics as MBeans and, if a port is given, also in the
+     * Prometheus format.
+     */
+    private void startMetrics() {
+        CalendarMetrics metrics = CalendarMetrics.get();
+        metrics.setStoreSize(store::size);
+        if (calendarSync != null) {
+            metrics.setSyncBacklog(calendarSync::getPendingChanges);
+        }
+        edtProbe = EdtProbe.start(metrics);
+        metrics.registerMBeans();
+        Integer port = Integer.getInteger(METRICS_PORT_PROPERTY);
+        if (port != null) {
+            try {
+                metricsEndpoint = new PrometheusEndpoint(metrics, port);
+            } catch (IOException e) {
+                System.err.println(MessageFormat.format(
+                    Calendar_i18n.getString("error.metrics_endpoint"), port, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Reads the display time zone from the system property, using the
+     * system one if missing or invalid.
+     */
+    private static ZoneId readDisplayZone() {
+        String id = System.getProperty(DISPLAY_ZONE_PROPERTY);
+        if (id != null && !id.isEmpty()) {
+            try {
+                return ZoneId.of(id);
+            } catch (DateTimeException e) {
+                System.err.println(MessageFormat.format(
+                    Calendar_i18n.getString("error.invalid_zone"), id));
+            }
+        }
+        return ZoneId.systemDefault();
+    }
+
+    /**
+     * Reads the holiday set from the system property, using the default one
+     * if missing or unknown.
+     */
+    private static HolidayCalendar readHolidays() {
+        String region = System.getProperty(HOLIDAYS_PROPERTY, HolidayRules.DEFAULT_REGION);
+        if (HolidayRules.get(region) == null) {
+            System.err.println(MessageFormat.format(
+                Calendar_i18n.getString("error.invalid_holiday_region"), region));
+            region = HolidayRules.DEFAULT_REGION;
+        }
+        return HolidayCalendar.forRegion(region);
+    }
+}
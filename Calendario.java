@@ -2,13 +2,64 @@ package dashboard;
 
 import javax.swing.*;
 import javax.swing.border.Border;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
+import dashboard.cli.Agenda;
+import dashboard.event.AppointmentEvent;
+import dashboard.event.CalendarEvent;
+import dashboard.event.CalendarEventBus;
+import dashboard.event.CalendarSourceEvent;
+import dashboard.event.DayRange;
+import dashboard.event.FilterEvent;
+import dashboard.event.SelectionEvent;
+import dashboard.export.CalendarExporter;
+import dashboard.export.MonthPageRenderer;
+import dashboard.filter.AppointmentFilter;
+import dashboard.filter.FilterQuery;
+import dashboard.filter.FilterSyntaxException;
+import dashboard.filter.SavedFilters;
+import dashboard.holiday.HolidayCalendar;
 import dashboard.i18n.Calendar_i18n;
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.FlightRecording;
+import dashboard.metrics.Histogram;
+import dashboard.metrics.NavigationEvent;
+import dashboard.metrics.RenderEvent;
+import dashboard.store.AgendaPager;
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentStatistics;
+import dashboard.store.AppointmentStore;
+import dashboard.store.CalendarAggregator;
+import dashboard.store.ConflictDetector;
+import dashboard.store.FreeBusyFinder;
+import dashboard.store.RepositoryLoader;
+import dashboard.store.ZoneOffsetCache;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.print.PageFormat;
+import java.awt.print.PrinterAbortException;
+import java.awt.print.PrinterJob;
+import java.io.File;
+import java.io.IOException;
 import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 /**
  * Applicazione calendario per la visualizzazione e gestione degli appuntamenti.
@@ -27,11 +78,20 @@ public class Calendario extends JFrame {
     private MiniCalendarPanel miniCalendarPanel;
     private JPanel navigationPanel;
     private JPanel controlsPanel;
+    private StatisticsPanel statisticsPanel;
     
     // Checkbox filters
     private JCheckBox meetingsCheckbox;
     private JCheckBox lunchCheckbox;
     private JCheckBox conferenceCheckbox;
+    private JCheckBox personalCalendarCheckbox;
+    private JButton weekViewButton;
+    private JTextField filterQueryField;
+    private JComboBox<String> savedFiltersCombo;
+    private final SavedFilters savedFilters = new SavedFilters();
+    // Filtro della query e filtro completo, ricompilati solo quando cambiano
+    private AppointmentFilter queryFilter = AppointmentFilter.ALL;
+    private AppointmentFilter activeFilter = AppointmentFilter.ALL;
     
     // Main panel components
     private JPanel mainPanel;
@@ -41,6 +101,47 @@ public class Calendario extends JFrame {
      * Text area that displays details about the selected appointment.
      */
     private JTextArea appointmentDetails;
+    private JTabbedPane detailsTabs;
+    private AgendaPanel agendaPanel;
+    private JPanel leftSouthPanel;
+    
+    // Dati condivisi con le altre finestre: store, mesi caricati e altri calendari
+    private final CalendarModel model;
+    // Appointment data and free/busy engine
+    private AppointmentStore store;
+    private RepositoryLoader repositoryLoader;
+    // Mese selezionato, tenuto nello store finché questa finestra lo mostra
+    private RepositoryLoader.Pin selectedMonth;
+    // Anno delle statistiche, caricato in background e tenuto nello store finché è mostrato
+    private RepositoryLoader.Pin statisticsYear;
+    private int statisticsYearLoaded;
+    private FreeBusyFinder freeBusyFinder;
+    private AppointmentStatistics statistics;
+    // Eventi di modifica (appuntamenti, selezione, filtri) verso le viste di questa finestra
+    private CalendarEventBus eventBus;
+    private CalendarAggregator calendarAggregator;
+    // Inoltra dal modello condiviso solo le modifiche dei giorni mostrati dalla finestra
+    private final Consumer<CalendarEvent> modelEventRelay = this::relayModelEvent;
+    // Celle dei giorni della griglia mensile, per giorno del mese, e mese mostrato (null se da ricostruire)
+    private final JPanel[] dayPanels = new JPanel[32];
+    private YearMonth gridMonth;
+    // Giorni della griglia da aggiornare, raccolti dagli eventi e ricostruiti una volta sola
+    private final BitSet staleDays = new BitSet(32);
+    private boolean staleDaysRefreshScheduled;
+    // Finestra di dialogo della modalità compatta, riusata per ogni giorno
+    private AppointmentsDialog appointmentsDialog;
+    // Editor dei nuovi appuntamenti, creato al primo uso
+    private AppointmentEditor appointmentEditor;
+    // Giorno di cui si cercano le fasce libere: i risultati di un giorno precedente si scartano
+    private LocalDate freeSlotsDay;
+    // Vista continua per settimane, alternativa alla griglia del mese
+    private WeekScrollView weekScrollView;
+    private JScrollPane monthScrollPane;
+    // Fuso orario in cui il calendario mostra giorni e orari
+    private ZoneId displayZone;
+    private ZoneOffsetCache displayOffsets;
+    // Giorni festivi evidenziati nella griglia e nel mini calendario
+    private HolidayCalendar holidays;
     
     // Costanti per i colori
     private static final Color WEEKEND_COLOR_BG = Calendar_i18n.getColor("color.weekend_color_bg");
@@ -50,15 +151,23 @@ public class Calendario extends JFrame {
     private static final Color NAVIGATION_MONTH_COLOR = Calendar_i18n.getColor("color.navigation_month_color");
     private static final Color MINI_CALENDAR_COLOR_BG = Calendar_i18n.getColor("color.mini_calendar_color_bg");
     private static final Color DAY_SELECTED_COLOR_BD = Calendar_i18n.getColor("color.day_selected_color_bd");
+    private static final Color DAY_SELECTED_COLOR_BG = Calendar_i18n.getColor("color.day_selected_color_bg");
     private static final Color DAY_OF_WEEK_COLOR_BG = Calendar_i18n.getColor("color.day_of_week_color_bg");
     
-    private static final Color MEETING_COLOR_BG = Calendar_i18n.getColor("color.meeting_color_bg");
-    private static final Color LUNCH_COLOR_BG = Calendar_i18n.getColor("color.lunch_color_bg");
-    private static final Color CONFERENCE_COLOR_BG = Calendar_i18n.getColor("color.conference_color_bg");
     private static final Color HEADER_COLOR_BD = Calendar_i18n.getColor("color.header_color_bd");
+    private static final Color INVALID_QUERY_COLOR_BG = Calendar_i18n.getColor("color.invalid_query_color_bg");
     // Costanti per dimensioni
     private static final Dimension MINI_CALENDAR_SIZE = Calendar_i18n.getDimension("dimension.mini_calendar");
     
+    // Costanti per la ricerca delle fasce libere
+    private static final int FREE_SLOT_MINUTES = 30;
+    private static final int FREE_SLOT_SEARCH_DAYS = 7;
+    private static final int FREE_SLOTS_SHOWN = 5;
+    
+    // Tempi di costruzione della griglia mensile e delle singole celle aggiornate
+    private static final Histogram MONTH_RENDER_TIMES = CalendarMetrics.get().render("month");
+    private static final Histogram DAY_CELLS_RENDER_TIMES = CalendarMetrics.get().render("monthCells");
+    
     // Flag per tracciare la modalità di visualizzazione corrente
     private boolean compactMode = false;
 
@@ -96,6 +205,19 @@ public class Calendario extends JFrame {
      * Inizializza l'interfaccia grafica e configura tutti i componenti necessari.
      */
     public Calendario() {
+        this(new CalendarModel());
+    }
+    
+    /**
+     * Apre una finestra sui dati di un'altra: store, mesi caricati e altri
+     * calendari sono condivisi, mentre navigazione, selezione e filtri sono
+     * propri di ogni finestra.
+     * 
+     * @param model Dati condivisi tra le finestre
+     */
+    public Calendario(CalendarModel model) {
+        this.model = model;
+        model.windowOpened();
         initializeFrame();
         initializeCalendar();
         createMainLayout();
@@ -107,6 +229,25 @@ public class Calendario extends JFrame {
         setTitle(dashboard.i18n.Calendar_i18n.getString("app.title"));
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setupAccelerator();
+        
+        // The last window closed releases the shared model (database connections) and ends the application
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                model.getEventBus().unsubscribe(AppointmentEvent.class, modelEventRelay);
+                model.getEventBus().unsubscribe(CalendarSourceEvent.class, modelEventRelay);
+                store.removeListener(statisticsPanel);
+                agendaPanel.dispose();
+                if (weekScrollView != null) {
+                    weekScrollView.dispose();
+                }
+                selectedMonth.release();
+                statisticsYear.release();
+                if (model.windowClosed()) {
+                    setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+                }
+            }
+        });
         setLayout(new BoxLayout(getContentPane(), BoxLayout.X_AXIS));
         setMinimumSize(new Dimension(224, 224));
         setLocationRelativeTo(null);
@@ -125,7 +266,20 @@ public class Calendario extends JFrame {
 
     private void initializeCalendar() {
         // Initialize calendar instance
-        calendar = Calendar.getInstance();
+        displayZone = model.getDisplayZone();
+        displayOffsets = model.getDisplayOffsets();
+        calendar = Calendar.getInstance(TimeZone.getTimeZone(displayZone));
+        holidays = model.getHolidays();
+        
+        // Appointments and other calendars come from the shared model; the event bus is this window's
+        store = model.getStore();
+        statistics = model.getStatistics();
+        repositoryLoader = model.getRepositoryLoader();
+        selectedMonth = repositoryLoader.newPin();
+        statisticsYear = repositoryLoader.newPin();
+        freeBusyFinder = model.getFreeBusyFinder();
+        calendarAggregator = model.getCalendarAggregator();
+        eventBus = new CalendarEventBus();
         
         // Create main panel
         mainPanel = new JPanel(new BorderLayout(10, 10));
@@ -194,7 +348,7 @@ public class Calendario extends JFrame {
 
     private void createMiniCalendarPanel() {
         // Create the mini calendar panel using the dedicated class
-        miniCalendarPanel = new MiniCalendarPanel(calendar, monthLabel);
+        miniCalendarPanel = new MiniCalendarPanel(calendar, monthLabel, holidays);
         miniCalendarPanel.setBackground(MINI_CALENDAR_COLOR_BG);
         
         // Set references for appointment updates
@@ -204,7 +358,7 @@ public class Calendario extends JFrame {
             System.out.println("Setting appointment details to mini calendar");
         }
         miniCalendarPanel.setAppointmentDetails(appointmentDetails);
-        miniCalendarPanel.setAppointmentPanelUpdater(() -> updateAppointmentPanel());
+        miniCalendarPanel.setEventBus(eventBus);
     }
 
     private void createMainLayout() {
@@ -227,10 +381,16 @@ public class Calendario extends JFrame {
         // Create controls section
         createControlsPanel();
         
+        // Create statistics section, shown below the controls
+        createStatisticsPanel();
+        leftSouthPanel = new JPanel(new BorderLayout());
+        leftSouthPanel.add(controlsPanel, BorderLayout.NORTH);
+        leftSouthPanel.add(statisticsPanel, BorderLayout.CENTER);
+        
         // Add components to left panel
         leftPanel.add(navigationPanel, BorderLayout.NORTH);
         leftPanel.add(miniCalendarPanel, BorderLayout.CENTER);
-        leftPanel.add(controlsPanel, BorderLayout.SOUTH);
+        leftPanel.add(leftSouthPanel, BorderLayout.SOUTH);
         
         // Create and setup main appointment panel
         createAppointmentPanel();
@@ -242,29 +402,26 @@ public class Calendario extends JFrame {
 
     private void setupEventListeners() {
         // Add button listeners
-        prevButton.addActionListener(e -> {
-            calendar.add(Calendar.MONTH, -1);
-            miniCalendarPanel.updateDisplay();
-            updateAppointmentPanel();
-        });
+        // Views follow the changes through the event bus, updating only the days involved
+        eventBus.subscribe(SelectionEvent.class, this::selectionChanged);
+        eventBus.subscribe(AppointmentEvent.class, this::markStaleDays);
+        eventBus.subscribe(FilterEvent.class, this::markStaleDays);
+        eventBus.subscribe(CalendarSourceEvent.class, this::markStaleDays);
+        // Le modifiche dei dati condivisi arrivano dal modello, filtrate sui giorni mostrati
+        model.getEventBus().subscribe(AppointmentEvent.class, modelEventRelay);
+        model.getEventBus().subscribe(CalendarSourceEvent.class, modelEventRelay);
+
+        prevButton.addActionListener(e -> navigate("previous", () -> calendar.add(Calendar.MONTH, -1)));
         
-        nextButton.addActionListener(e -> {
-            calendar.add(Calendar.MONTH, 1);
-            miniCalendarPanel.updateDisplay();
-            updateAppointmentPanel();
-        });
+        nextButton.addActionListener(e -> navigate("next", () -> calendar.add(Calendar.MONTH, 1)));
         
-        todayButton.addActionListener(e -> {
+        todayButton.addActionListener(e -> navigate("today", () -> {
             // Instead of creating a new Calendar instance, update the current one
-            Calendar today = Calendar.getInstance();
+            Calendar today = Calendar.getInstance(calendar.getTimeZone());
             calendar.set(Calendar.YEAR, today.get(Calendar.YEAR));
             calendar.set(Calendar.MONTH, today.get(Calendar.MONTH));
             calendar.set(Calendar.DAY_OF_MONTH, today.get(Calendar.DAY_OF_MONTH));
-            
-            // Update displays
-            miniCalendarPanel.updateDisplay();
-            updateAppointmentPanel();
-        });
+        }));
 
         // Add component size logger
         ComponentListener sizeLogger = new ComponentAdapter() {
@@ -283,6 +440,27 @@ public class Calendario extends JFrame {
         mainPanel.addComponentListener(sizeLogger);
     }
 
+    /**
+     * Cambia il giorno selezionato con un pulsante di navigazione e aggiorna
+     * le viste, registrando l'operazione per il flight recorder.
+     */
+    private void navigate(String action, Runnable move) {
+        NavigationEvent event = FlightRecording.isRecording() ? new NavigationEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        LocalDate previous = getSelectedDate();
+        move.run();
+        // Update displays
+        eventBus.publish(new SelectionEvent(previous, getSelectedDate()));
+        scrollWeekViewToSelection();
+        if (event != null && event.shouldCommit()) {
+            event.action = action;
+            event.month = YearMonth.from(getSelectedDate()).toString();
+            event.commit();
+        }
+    }
+
     private void finalizeSetup() {
         // Initial updates
         miniCalendarPanel.updateDisplay();
@@ -305,13 +483,32 @@ public class Calendario extends JFrame {
         KeyStroke keyStroke = KeyStroke.getKeyStroke(KeyEvent.VK_X, 
             Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx());
         getRootPane().registerKeyboardAction(
-            e -> System.exit(0),
+            e -> dispatchEvent(new WindowEvent(this, WindowEvent.WINDOW_CLOSING)),
             keyStroke,
             JComponent.WHEN_IN_FOCUSED_WINDOW
         );
+        // Nuova finestra sugli stessi dati
+        getRootPane().registerKeyboardAction(
+            e -> openWindow(),
+            KeyStroke.getKeyStroke(KeyEvent.VK_N, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()),
+            JComponent.WHEN_IN_FOCUSED_WINDOW
+        );
     }
     
     private void updateAppointmentPanel() {
+        long started = System.nanoTime();
+        RenderEvent event = FlightRecording.isRecording() ? new RenderEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        // Il mese mostrato non viene scaricato per far posto a quelli delle altre finestre
+        int year = calendar.get(Calendar.YEAR);
+        YearMonth shownMonth = YearMonth.of(year, calendar.get(Calendar.MONTH) + 1);
+        selectedMonth.set(shownMonth, shownMonth);
+        repositoryLoader.ensureMonth(shownMonth);
+        loadStatisticsYear(year);
+        statisticsPanel.repaint();
+        
         appointmentPanel.removeAll();
         appointmentPanel.setLayout(new GridLayout(0, 7, 1, 1)); // Forza 7 colonne
         
@@ -340,53 +537,23 @@ public class Calendario extends JFrame {
     
         // Giorni del mese
         int daysInMonth = temp.getActualMaximum(Calendar.DAY_OF_MONTH);
-        Calendar today = Calendar.getInstance();
+        YearMonth month = YearMonth.of(year, calendar.get(Calendar.MONTH) + 1);
+        // La griglia viene ricostruita tutta: gli aggiornamenti dei singoli giorni in attesa non servono più
+        gridMonth = month;
+        staleDays.clear();
+        Arrays.fill(dayPanels, null);
+        
+        // Legge gli appuntamenti del mese con un'unica interrogazione
+        List<List<Appointment>> appointmentsByDay = Appuntamenti.groupByDay(store, month, displayOffsets);
+        // Gli altri calendari mostrano quanto hanno già caricato; il resto arriva in background
+        List<List<CalendarAggregator.Entry>> calendarEntriesByDay = groupCalendarEntriesByDay(month);
+        AppointmentFilter filter = activeFilter;
         
         for (int day = 1; day <= daysInMonth; day++) {
             JPanel dayPanel = new JPanel();
             dayPanel.setLayout(new BoxLayout(dayPanel, BoxLayout.Y_AXIS));
-            dayPanel.setBorder(createStandardDayBorder());
-            
-            // Verifica se questo è il giorno selezionato
-            boolean isSelectedDay = (day == calendar.get(Calendar.DAY_OF_MONTH));
-            
-            // Evidenzia il giorno corrente
-            boolean isToday = calendar.get(Calendar.YEAR) == today.get(Calendar.YEAR) &&
-                            calendar.get(Calendar.MONTH) == today.get(Calendar.MONTH) &&
-                            day == today.get(Calendar.DAY_OF_MONTH);
-            
-            if (isSelectedDay) {
-                Debug.logCalendarSelection("Found selected day in appointment panel", calendar);
-                // Highlight the selected day with a special border
-                dayPanel.setBorder(BorderFactory.createCompoundBorder(
-                    BorderFactory.createLineBorder(DAY_SELECTED_COLOR_BD, 2, true),
-                    BorderFactory.createEmptyBorder(2, 2, 2, 2)
-                ));
-                // Also set a background color to make it more visible
-                dayPanel.setBackground(new Color(229, 243, 255));
-                dayPanel.setOpaque(true);
-            } else if (isToday) {
-                dayPanel.setBorder(createTodayBorder());
-            } else {
-                dayPanel.setBorder(createStandardDayBorder());
-            }
-            
-            // Aggiungi numero del giorno
-            JLabel dayLabel = new JLabel(String.valueOf(day));
-            dayLabel.setFont(new Font("Arial", Font.BOLD, 14));
-            
-            // Set weekend days in red
-            temp.set(Calendar.DAY_OF_MONTH, day);
-            int dayOfWeek = temp.get(Calendar.DAY_OF_WEEK);
-            if (dayOfWeek == Calendar.SATURDAY || dayOfWeek == Calendar.SUNDAY) {
-                dayLabel.setForeground(new Color(220, 20, 60));
-            }
-            
-            dayPanel.add(dayLabel);
-    
-            // Aggiungi appuntamenti di esempio
-            addSampleAppointments(dayPanel, day);
-    
+            fillDayCell(dayPanel, day, appointmentsByDay.get(day - 1), calendarEntriesByDay.get(day - 1), filter);
+            dayPanels[day] = dayPanel;
             appointmentPanel.add(dayPanel);
         }
     
@@ -399,29 +566,258 @@ public class Calendario extends JFrame {
     
         appointmentPanel.revalidate();
         appointmentPanel.repaint();
+        MONTH_RENDER_TIMES.recordSince(started);
+        if (event != null && event.shouldCommit()) {
+            event.view = "month";
+            event.days = daysInMonth;
+            for (List<Appointment> dayAppointments : appointmentsByDay) {
+                event.appointments += dayAppointments.size();
+            }
+            for (List<CalendarAggregator.Entry> dayEntries : calendarEntriesByDay) {
+                event.appointments += dayEntries.size();
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * Raggruppa per giorno di inizio gli appuntamenti degli altri calendari
+     * nel mese indicato, già ordinati dall'aggregatore.
+     */
+    private List<List<CalendarAggregator.Entry>> groupCalendarEntriesByDay(YearMonth month) {
+        int length = month.lengthOfMonth();
+        List<List<CalendarAggregator.Entry>> days = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            days.add(new ArrayList<>());
+        }
+        long firstDay = month.atDay(1).toEpochDay();
+        List<CalendarAggregator.Entry> entries = calendarAggregator.query(
+            displayOffsets.startOfDay(firstDay), displayOffsets.startOfDay(firstDay + length));
+        for (CalendarAggregator.Entry entry : entries) {
+            int day = (int) (displayOffsets.getEpochDay(entry.getAppointment().getStart()) - firstDay);
+            days.get(day).add(entry);
+        }
+        return days;
+    }
+
+    /**
+     * Riempie la cella di un giorno del mese mostrato: bordo di selezione o
+     * di oggi, numero del giorno e appuntamenti visibili del calendario
+     * personale e degli altri calendari.
+     */
+    private void fillDayCell(JPanel dayPanel, int day, List<Appointment> appointments,
+                             List<CalendarAggregator.Entry> calendarEntries, AppointmentFilter filter) {
+        LocalDate date = gridMonth.atDay(day);
+        
+        // Verifica se questo è il giorno selezionato
+        boolean isSelectedDay = date.equals(getSelectedDate());
+        
+        // Evidenzia il giorno corrente
+        boolean isToday = date.equals(LocalDate.now(displayZone));
+        
+        if (isSelectedDay) {
+            Debug.logCalendarSelection("Found selected day in appointment panel", calendar);
+            // Highlight the selected day with a special border
+            dayPanel.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(DAY_SELECTED_COLOR_BD, 2, true),
+                BorderFactory.createEmptyBorder(2, 2, 2, 2)
+            ));
+            // Also set a background color to make it more visible
+            dayPanel.setBackground(DAY_SELECTED_COLOR_BG);
+        } else {
+            dayPanel.setBorder(isToday ? createTodayBorder() : createStandardDayBorder());
+            dayPanel.setBackground(appointmentPanel.getBackground());
+        }
+        
+        // Aggiungi numero del giorno
+        JLabel dayLabel = new JLabel(String.valueOf(day));
+        dayLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        
+        // Weekend e festività in rosso, con il nome della festività come suggerimento
+        HolidayCalendar.Year specialDays = holidays.getYear(date.getYear());
+        if (specialDays.isSpecial(date.getDayOfYear())) {
+            dayLabel.setForeground(WEEKEND_COLOR_BG);
+            dayLabel.setToolTipText(specialDays.getName(date.getDayOfYear()));
+        }
+        
+        dayPanel.add(dayLabel);
+        
+        // Aggiungi gli appuntamenti del giorno
+        addStoredAppointments(dayPanel, appointments, calendarEntries, filter);
+    }
+    
+    /**
+     * Segna da aggiornare i giorni del mese mostrato toccati da un evento;
+     * le celle vengono ricostruite una sola volta, anche dopo molti eventi.
+     */
+    private void markStaleDays(CalendarEvent event) {
+        if (gridMonth == null) {
+            return;
+        }
+        long firstDay = gridMonth.atDay(1).toEpochDay();
+        int length = gridMonth.lengthOfMonth();
+        if (!event.affects(firstDay, firstDay + length - 1)) {
+            return;
+        }
+        for (int day = 1; day <= length; day++) {
+            if (event.affects(firstDay + day - 1)) {
+                staleDays.set(day);
+            }
+        }
+        if (!staleDaysRefreshScheduled) {
+            staleDaysRefreshScheduled = true;
+            SwingUtilities.invokeLater(this::refreshStaleDays);
+        }
+    }
+    
+    /**
+     * Ricostruisce solo le celle dei giorni segnati, leggendo ciascun giorno dallo store.
+     */
+    private void refreshStaleDays() {
+        staleDaysRefreshScheduled = false;
+        if (gridMonth == null) {
+            staleDays.clear();
+            return;
+        }
+        long started = System.nanoTime();
+        RenderEvent event = FlightRecording.isRecording() ? new RenderEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int appointmentCount = 0;
+        AppointmentFilter filter = activeFilter;
+        for (int day = staleDays.nextSetBit(1); day >= 0; day = staleDays.nextSetBit(day + 1)) {
+            LocalDate date = gridMonth.atDay(day);
+            long dayStart = displayOffsets.startOfDay(date);
+            long dayEnd = displayOffsets.startOfDay(date.plusDays(1));
+            // Come nella griglia, ogni appuntamento sta nel giorno in cui inizia
+            List<Appointment> appointments = new ArrayList<>();
+            for (Appointment appointment : store.query(dayStart, dayEnd)) {
+                if (appointment.getStart() >= dayStart) {
+                    appointments.add(appointment);
+                }
+            }
+            List<CalendarAggregator.Entry> calendarEntries = calendarAggregator.query(dayStart, dayEnd);
+            appointmentCount += appointments.size() + calendarEntries.size();
+            JPanel dayPanel = dayPanels[day];
+            dayPanel.removeAll();
+            fillDayCell(dayPanel, day, appointments, calendarEntries, filter);
+            dayPanel.revalidate();
+            dayPanel.repaint();
+        }
+        if (event != null && event.shouldCommit()) {
+            event.view = "monthCells";
+            event.days = staleDays.cardinality();
+            event.appointments = appointmentCount;
+            event.commit();
+        }
+        staleDays.clear();
+        DAY_CELLS_RENDER_TIMES.recordSince(started);
+    }
+    
+    /**
+     * Passa alle viste della finestra una modifica dei dati condivisi, se
+     * tocca i giorni che mostrano: le modifiche degli altri mesi, ad esempio
+     * quelle fatte in un'altra finestra, non le raggiungono. Quando la
+     * finestra si sposta su quei giorni le viste li rileggono comunque dallo store.
+     */
+    private void relayModelEvent(CalendarEvent event) {
+        // L'editor controlla i conflitti anche con i calendari arrivati dopo
+        if (event instanceof CalendarSourceEvent && appointmentEditor != null) {
+            SwingUtilities.invokeLater(appointmentEditor::recheck);
+        }
+        // Mese selezionato: griglia, mini calendario e dettagli del giorno
+        LocalDate selected = getSelectedDate();
+        long firstDay = selected.withDayOfMonth(1).toEpochDay();
+        boolean shown = event.affects(firstDay, firstDay + selected.lengthOfMonth() - 1);
+        if (!shown && weekScrollView != null && weekScrollView.getParent() != null) {
+            DayRange weeks = weekScrollView.getLoadedDays();
+            shown = weeks != null && event.affects(weeks.getFirst(), weeks.getLast());
+        }
+        if (!shown) {
+            DayRange agenda = agendaPanel.getListedDays();
+            shown = agenda != null && event.affects(agenda.getFirst(), agenda.getLast());
+        }
+        if (shown) {
+            eventBus.publish(event);
+        }
+    }
+    
+    /**
+     * Apre un'altra finestra sugli stessi dati, posizionata sul giorno
+     * selezionato in questa e poi navigabile in modo indipendente.
+     */
+    private void openWindow() {
+        Calendario window = new Calendario(model);
+        window.selectDay(getSelectedDate());
+        window.setLocation(getX() + 30, getY() + 30);
+        window.setVisible(true);
+    }
+    
+    /**
+     * Aggiorna le viste dopo un cambio del giorno selezionato: nello stesso
+     * mese solo le celle del giorno precedente e di quello nuovo.
+     */
+    private void selectionChanged(SelectionEvent event) {
+        if (monthScrollPane.getParent() == null) {
+            // Griglia nascosta dalla vista continua: ricostruita quando torna visibile
+            gridMonth = null;
+        } else if (event.isMonthChanged() || gridMonth == null) {
+            updateAppointmentPanel();
+        } else {
+            markStaleDays(event);
+        }
+    }
+    
+    /**
+     * @return Il giorno selezionato nel calendario
+     */
+    private LocalDate getSelectedDate() {
+        return LocalDate.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                            calendar.get(Calendar.DAY_OF_MONTH));
     }
 
     private void addEmptyDay() {
         Appuntamenti.addEmptyDay(appointmentPanel);
     }
 
-    private void addSampleAppointments(JPanel dayPanel, int day) {
-        // Aggiungi appuntamenti di esempio in base ai filtri selezionati
-        if (day % 3 == 0 && meetingsCheckbox.isSelected()) {
-            Appuntamenti.addAppointment(dayPanel, "10:00", Calendar_i18n.getString("appointment.meeting"), MEETING_COLOR_BG, calendar, appointmentDetails);
-        }
-        if (day % 5 == 0 && lunchCheckbox.isSelected()) {
-            Appuntamenti.addAppointment(dayPanel, "14:30", Calendar_i18n.getString("appointment.lunch"), LUNCH_COLOR_BG, calendar, appointmentDetails);
+    /**
+     * Aggiunge alla cella gli appuntamenti del calendario personale, nel
+     * colore della categoria, e quelli degli altri calendari, nel colore del
+     * calendario, fondendo per ora di inizio le due liste già ordinate.
+     */
+    private void addStoredAppointments(JPanel dayPanel, List<Appointment> appointments,
+                                       List<CalendarAggregator.Entry> calendarEntries, AppointmentFilter filter) {
+        if (!personalCalendarCheckbox.isSelected()) {
+            appointments = Collections.emptyList();
         }
-        if (day % 7 == 0 && conferenceCheckbox.isSelected()) {
-            Appuntamenti.addAppointment(dayPanel, "16:00", Calendar_i18n.getString("appointment.conference"), CONFERENCE_COLOR_BG, calendar, appointmentDetails);
+        int personal = 0;
+        int other = 0;
+        while (personal < appointments.size() || other < calendarEntries.size()) {
+            Appointment appointment;
+            Color color;
+            if (other == calendarEntries.size()
+                    || personal < appointments.size()
+                       && appointments.get(personal).getStart() <= calendarEntries.get(other).getAppointment().getStart()) {
+                appointment = appointments.get(personal++);
+                color = appointment.getCategory().getColor();
+            } else {
+                CalendarAggregator.Entry entry = calendarEntries.get(other++);
+                appointment = entry.getAppointment();
+                color = model.getCalendarColor(entry.getSource());
+            }
+            // Aggiungi gli appuntamenti in base ai filtri selezionati
+            if (filter.test(appointment)) {
+                Appuntamenti.addAppointment(dayPanel, Appuntamenti.formatTimeInZones(appointment, displayOffsets), appointment.getTitle(),
+                                            color, calendar, appointmentDetails);
+            }
         }
     }
     
     /**
      * Toggles between compact and extended view modes
      */
-    private void toggleViewMode() {
+    void toggleViewMode() {
         compactMode = !compactMode;
         
         // Find the toggle button and update its text
@@ -444,10 +840,11 @@ public class Calendario extends JFrame {
         for (Component comp : controlsPanel.getComponents()) {
             if (comp instanceof JPanel) {
                 JPanel panel = (JPanel) comp;
-                // Check if this is the filter panel (has a label with "Filtri")
+                // Check if this is the filter or calendars panel (has a label with "Filtri" or "Calendari")
                 for (Component child : panel.getComponents()) {
                     if (child instanceof JLabel && 
-                        ((JLabel) child).getText().equals(Calendar_i18n.getString("label.filters"))) {
+                        (((JLabel) child).getText().equals(Calendar_i18n.getString("label.filters"))
+                         || ((JLabel) child).getText().equals(Calendar_i18n.getString("label.calendars")))) {
                         // This is the filter panel, toggle its visibility
                         panel.setVisible(!compactMode);
                         break;
@@ -456,11 +853,23 @@ public class Calendario extends JFrame {
             }
         }
         
+        // Statistics are only shown in extended mode
+        statisticsPanel.setVisible(!compactMode);
+        
+        // L'agenda passa sotto il mini calendario in modalità compatta
+        if (compactMode) {
+            detailsTabs.remove(agendaPanel);
+            leftSouthPanel.add(agendaPanel, BorderLayout.SOUTH);
+        } else {
+            leftSouthPanel.remove(agendaPanel);
+            detailsTabs.addTab(Calendar_i18n.getString("label.agenda"), agendaPanel);
+        }
+        
         if (compactMode) {
             // Switch to compact mode - show only mini calendar
             mainPanel.setVisible(false);
             // Resize the window to fit only the left panel
-            setSize(250, 400);
+            setSize(250, 600);
         } else {
             // Switch back to extended mode
             mainPanel.setVisible(true);
@@ -473,6 +882,54 @@ public class Calendario extends JFrame {
         repaint();
     }
     
+    /**
+     * Sostituisce la griglia del mese con la vista continua per settimane,
+     * posizionata sulla settimana del giorno selezionato, o ripristina la griglia.
+     * 
+     * @return true se ora è visibile la vista continua
+     */
+    private boolean toggleWeekView() {
+        boolean showWeeks = weekScrollView == null || weekScrollView.getParent() == null;
+        if (showWeeks) {
+            if (weekScrollView == null) {
+                weekScrollView = new WeekScrollView(store, eventBus, repositoryLoader, displayOffsets, holidays,
+                                                    () -> activeFilter, this::selectDay);
+            }
+            mainPanel.remove(monthScrollPane);
+            mainPanel.add(weekScrollView, BorderLayout.CENTER);
+            scrollWeekViewToSelection();
+        } else {
+            mainPanel.remove(weekScrollView);
+            mainPanel.add(monthScrollPane, BorderLayout.CENTER);
+            updateAppointmentPanel();
+        }
+        mainPanel.revalidate();
+        mainPanel.repaint();
+        return showWeeks;
+    }
+    
+    /**
+     * Porta la vista continua, se visibile, sulla settimana del giorno selezionato
+     */
+    private void scrollWeekViewToSelection() {
+        if (weekScrollView != null && weekScrollView.getParent() != null) {
+            weekScrollView.scrollTo(LocalDate.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                                                 calendar.get(Calendar.DAY_OF_MONTH)));
+        }
+    }
+    
+    /**
+     * Seleziona un giorno cliccato nella vista continua
+     */
+    private void selectDay(LocalDate date) {
+        LocalDate previous = getSelectedDate();
+        calendar.set(date.getYear(), date.getMonthValue() - 1, date.getDayOfMonth());
+        eventBus.publish(new SelectionEvent(previous, date));
+        if (compactMode) {
+            showAppointmentsInDialog();
+        }
+    }
+    
     /**
      * Restituisce lo stato della modalità compatta
      * @return true se il calendario è in modalità compatta, false altrimenti
@@ -486,90 +943,193 @@ public class Calendario extends JFrame {
      * quando il calendario è in modalità compatta.
      */
     public void showAppointmentsInDialog() {
-        // Crea una nuova finestra di dialogo
-        JDialog appointmentsDialog = new JDialog(this, dashboard.i18n.Calendar_i18n.getString("dialog.appointments_title"), false);
-        appointmentsDialog.setLayout(new BorderLayout(10, 10));
-        appointmentsDialog.setSize(400, 300);
-        appointmentsDialog.setLocationRelativeTo(this);
-        
-        // Crea un pannello per il titolo
-        JPanel titlePanel = new JPanel(new BorderLayout());
+        // La finestra di dialogo è creata una sola volta e poi aggiornata
+        if (appointmentsDialog == null) {
+            appointmentsDialog = new AppointmentsDialog(this);
+        }
         String dateText = calendar.get(Calendar.DAY_OF_MONTH) + " " + 
                         Month.fromCalendarMonth(calendar.get(Calendar.MONTH)).getDisplayName() + " " + 
                         calendar.get(Calendar.YEAR);
-        JLabel titleLabel = new JLabel(Calendar_i18n.getString("dialog.appointments_for") + " " + dateText);
-        titleLabel.setFont(new Font("Arial", Font.BOLD, 14));
-        titleLabel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        titlePanel.add(titleLabel, BorderLayout.CENTER);
         
-        // Crea un pannello per gli appuntamenti
-        JPanel appointmentsPanel = new JPanel();
-        appointmentsPanel.setLayout(new BoxLayout(appointmentsPanel, BoxLayout.Y_AXIS));
-        appointmentsPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        // Appuntamenti del giorno selezionato
+        LocalDate date = LocalDate.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                                      calendar.get(Calendar.DAY_OF_MONTH));
+        repositoryLoader.ensureRange(date, date);
+        long dayStart = displayOffsets.startOfDay(date);
+        long dayEnd = displayOffsets.startOfDay(date.plusDays(1));
+        AppointmentFilter filter = activeFilter;
+        List<AppointmentsDialog.Entry> appointments = new ArrayList<>();
+        
+        for (Appointment appointment : store.query(dayStart, dayEnd)) {
+            if (appointment.getStart() >= dayStart && filter.test(appointment)) {
+                appointments.add(new AppointmentsDialog.Entry(
+                    Appuntamenti.formatTimeInZones(appointment, displayOffsets),
+                    appointment.getTitle(), appointment.getCategory().getColor()));
+            }
+        }
         
-        // Aggiungi gli appuntamenti del giorno selezionato
-        int day = calendar.get(Calendar.DAY_OF_MONTH);
-        boolean hasAppointments = false;
+        // Se non ci sono appuntamenti, mostra un messaggio
+        if (appointments.isEmpty()) {
+            appointments.add(AppointmentsDialog.Entry.message(Calendar_i18n.getString("dialog.no_appointments")));
+        }
         
-        if (day % 3 == 0 && meetingsCheckbox.isSelected()) {
-            addAppointmentToPanel(appointmentsPanel, "10:00", 
-                                Calendar_i18n.getString("appointment.meeting"), MEETING_COLOR_BG);
-            hasAppointments = true;
+        appointmentsDialog.showDay(Calendar_i18n.getString("dialog.appointments_for") + " " + dateText, appointments,
+                                   MessageFormat.format(Calendar_i18n.getString("dialog.free_slots"), FREE_SLOT_MINUTES),
+                                   Collections.singletonList(AppointmentsDialog.Entry.message(
+                                       Calendar_i18n.getString("dialog.searching_free_slots"))));
+        findFreeSlots(date);
+    }
+
+    /**
+     * Chiude la finestra di dialogo degli appuntamenti, se aperta.
+     */
+    void hideAppointmentsDialog() {
+        if (appointmentsDialog != null) {
+            appointmentsDialog.setVisible(false);
         }
-        if (day % 5 == 0 && lunchCheckbox.isSelected()) {
-            addAppointmentToPanel(appointmentsPanel, "14:30", 
-                                Calendar_i18n.getString("appointment.lunch"), LUNCH_COLOR_BG);
-            hasAppointments = true;
+    }
+
+    /**
+     * Sposta il giorno selezionato di alcuni mesi, come i pulsanti di
+     * navigazione; usato dagli scenari di {@link ScenarioRunner}.
+     */
+    void navigateMonths(int months) {
+        navigate(months < 0 ? "previous" : "next", () -> calendar.add(Calendar.MONTH, months));
+    }
+
+    /**
+     * Sposta il giorno selezionato di alcuni anni.
+     */
+    void navigateYears(int years) {
+        navigate("year", () -> calendar.add(Calendar.YEAR, years));
+    }
+
+    /**
+     * Torna al giorno corrente, come il pulsante Oggi.
+     */
+    void navigateToday() {
+        todayButton.doClick(0);
+    }
+
+    /**
+     * Seleziona o deseleziona il filtro di una categoria, come un clic
+     * sulla sua casella.
+     */
+    void setCategoryVisible(Category category, boolean visible) {
+        JCheckBox checkbox = category == Category.MEETING ? meetingsCheckbox
+                : category == Category.LUNCH ? lunchCheckbox : conferenceCheckbox;
+        if (checkbox.isSelected() != visible) {
+            checkbox.doClick(0);
         }
-        if (day % 7 == 0 && conferenceCheckbox.isSelected()) {
-            addAppointmentToPanel(appointmentsPanel, "16:00", 
-                                Calendar_i18n.getString("appointment.conference"), CONFERENCE_COLOR_BG);
-            hasAppointments = true;
+    }
+
+    /**
+     * Sostituisce il testo della query di filtro, che viene compilata subito.
+     */
+    void setFilterQuery(String query) {
+        filterQueryField.setText(query);
+    }
+
+    /**
+     * Passa dalla griglia del mese alla vista continua e viceversa, come il
+     * pulsante della vista.
+     */
+    void switchWeekView() {
+        weekViewButton.doClick(0);
+    }
+
+    /**
+     * Apre l'editor di un nuovo appuntamento nel giorno selezionato.
+     */
+    private void showAppointmentEditor() {
+        if (appointmentEditor == null) {
+            appointmentEditor = new AppointmentEditor(this, store, repositoryLoader, this::conflictDetectors,
+                                                      displayOffsets);
         }
-        
-        // Se non ci sono appuntamenti, mostra un messaggio
-        if (!hasAppointments) {
-            JLabel noAppointmentsLabel = new JLabel(Calendar_i18n.getString("dialog.no_appointments"));
-            noAppointmentsLabel.setFont(new Font("Arial", Font.ITALIC, 12));
-            appointmentsPanel.add(noAppointmentsLabel);
+        appointmentEditor.showFor(getSelectedDate());
+    }
+
+    /**
+     * Rilevatori dei conflitti di un giorno: il calendario personale e i
+     * calendari abilitati. Chi non ha ancora il mese lo chiede in background
+     * e l'editor ricontrolla al suo arrivo.
+     */
+    private List<ConflictDetector> conflictDetectors(LocalDate date) {
+        List<ConflictDetector> detectors = new ArrayList<>();
+        detectors.add(model.getConflictDetector());
+        for (CalendarAggregator.Source source : calendarAggregator.getSources()) {
+            if (source.isEnabled()) {
+                source.request(date, date);
+                detectors.add(model.getConflictDetector(source));
+            }
         }
-        
-        // Crea un pannello per i pulsanti
-        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        JButton closeButton = new JButton(dashboard.i18n.Calendar_i18n.getString("button.close"));
-        closeButton.addActionListener(e -> appointmentsDialog.dispose());
-        buttonPanel.add(closeButton);
-        
-        // Aggiungi i pannelli alla finestra di dialogo
-        appointmentsDialog.add(titlePanel, BorderLayout.NORTH);
-        appointmentsDialog.add(new JScrollPane(appointmentsPanel), BorderLayout.CENTER);
-        appointmentsDialog.add(buttonPanel, BorderLayout.SOUTH);
-        
-        // Mostra la finestra di dialogo
-        appointmentsDialog.setVisible(true);
+        return detectors;
     }
-    
+
     /**
-     * Aggiunge un appuntamento al pannello degli appuntamenti nella finestra di dialogo.
+     * Cerca in background le prime fasce libere nell'orario di lavoro, a
+     * partire dal giorno indicato e per i giorni successivi, libere sia nel
+     * calendario personale sia nei calendari abilitati; la finestra di
+     * dialogo le mostra all'arrivo, se il giorno è ancora quello.
      */
-    private void addAppointmentToPanel(JPanel panel, String time, String description, Color color) {
-        JPanel appointmentPanel = new JPanel(new BorderLayout(5, 0));
-        appointmentPanel.setBorder(BorderFactory.createCompoundBorder(
-            BorderFactory.createMatteBorder(0, 3, 0, 0, color),
-            BorderFactory.createEmptyBorder(5, 5, 5, 5)
-        ));
-        
-        JLabel timeLabel = new JLabel(time);
-        timeLabel.setFont(new Font("Arial", Font.BOLD, 12));
-        
-        JLabel descriptionLabel = new JLabel(description);
-        descriptionLabel.setFont(new Font("Arial", Font.PLAIN, 12));
-        
-        appointmentPanel.add(timeLabel, BorderLayout.WEST);
-        appointmentPanel.add(descriptionLabel, BorderLayout.CENTER);
+    private void findFreeSlots(LocalDate from) {
+        LocalDate to = from.plusDays(FREE_SLOT_SEARCH_DAYS - 1);
+        List<CalendarAggregator.Source> sources = new ArrayList<>();
+        for (CalendarAggregator.Source source : calendarAggregator.getSources()) {
+            if (source.isEnabled()) {
+                sources.add(source);
+            }
+        }
+        freeSlotsDay = from;
+        new SwingWorker<List<FreeBusyFinder.Slot>, Void>() {
+            @Override
+            protected List<FreeBusyFinder.Slot> doInBackground() {
+                repositoryLoader.ensureRange(from, to);
+                List<AppointmentStore> calendars = new ArrayList<>();
+                calendars.add(store);
+                for (CalendarAggregator.Source source : sources) {
+                    source.ensureRange(from, to);
+                    calendars.add(source.getStore());
+                }
+                return freeBusyFinder.findFreeSlots(calendars, from, to, FREE_SLOT_MINUTES, FREE_SLOTS_SHOWN);
+            }
+
+            @Override
+            protected void done() {
+                if (!from.equals(freeSlotsDay) || appointmentsDialog == null) {
+                    return;
+                }
+                try {
+                    appointmentsDialog.showFreeSlots(toFreeSlotEntries(get()));
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    String message = MessageFormat.format(Calendar_i18n.getString("error.free_slots"),
+                                                          cause.getMessage());
+                    System.err.println(message);
+                    appointmentsDialog.showFreeSlots(
+                        Collections.singletonList(AppointmentsDialog.Entry.message(message)));
+                }
+            }
+        }.execute();
+    }
+
+    private List<AppointmentsDialog.Entry> toFreeSlotEntries(List<FreeBusyFinder.Slot> slots) {
+        List<AppointmentsDialog.Entry> entries = new ArrayList<>(slots.size());
+        if (slots.isEmpty()) {
+            entries.add(AppointmentsDialog.Entry.message(Calendar_i18n.getString("dialog.no_free_slots")));
+            return entries;
+        }
         
-        panel.add(appointmentPanel);
-        panel.add(Box.createVerticalStrut(5)); // Spazio tra gli appuntamenti
+        for (FreeBusyFinder.Slot slot : slots) {
+            LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochSecond(slot.getStart() * 60), displayZone);
+            LocalDateTime end = LocalDateTime.ofInstant(Instant.ofEpochSecond(slot.getEnd() * 60), displayZone);
+            String day = DayOfWeek.values()[start.getDayOfWeek().ordinal()].getDisplayName().substring(0, 3) + " " +
+                        start.getDayOfMonth() + " " + Month.fromCalendarMonth(start.getMonthValue() - 1).getDisplayName();
+            String time = String.format("%02d:%02d - %02d:%02d",
+                                        start.getHour(), start.getMinute(), end.getHour(), end.getMinute());
+            entries.add(new AppointmentsDialog.Entry(time, day, Color.LIGHT_GRAY));
+        }
+        return entries;
     }
 
     private void createControlsPanel() {
@@ -597,7 +1157,7 @@ public class Calendario extends JFrame {
         conferenceCheckbox.setSelected(true);
         
         // Add action listeners to checkboxes
-        ActionListener filterListener = e -> updateAppointmentPanel();
+        ActionListener filterListener = e -> updateFilter();
         meetingsCheckbox.addActionListener(filterListener);
         lunchCheckbox.addActionListener(filterListener);
         conferenceCheckbox.addActionListener(filterListener);
@@ -609,9 +1169,16 @@ public class Calendario extends JFrame {
         
         filterPanel.add(filterLabel, BorderLayout.NORTH);
         filterPanel.add(checkboxPanel, BorderLayout.CENTER);
+        filterPanel.add(createQueryPanel(), BorderLayout.SOUTH);
+        
+        // Il calendario personale è sempre presente; la sezione compare se ce ne sono altri
+        personalCalendarCheckbox = new JCheckBox(Calendar_i18n.getString("calendar.personal"));
+        personalCalendarCheckbox.setSelected(true);
+        personalCalendarCheckbox.addActionListener(e -> eventBus.publish(new FilterEvent(activeFilter)));
+        JPanel calendarsPanel = createCalendarsPanel();
         
         // Create buttons panel
-        JPanel buttonsPanel = new JPanel(new GridLayout(3, 1, 0, 5)); // Changed from 2 to 3 rows
+        JPanel buttonsPanel = new JPanel(new GridLayout(5, 1, 0, 5));
         buttonsPanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 0));
         
         JButton addButton = new JButton(Calendar_i18n.getString("button.new_appointment"));
@@ -622,36 +1189,376 @@ public class Calendario extends JFrame {
         toggleViewButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
         toggleViewButton.addActionListener(e -> toggleViewMode());
         
+        // Passa dalla griglia del mese alla vista continua per settimane e viceversa
+        weekViewButton = new JButton(Calendar_i18n.getString("button.week_view"));
+        weekViewButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        weekViewButton.addActionListener(e -> weekViewButton.setText(toggleWeekView()
+            ? Calendar_i18n.getString("button.month_view") : Calendar_i18n.getString("button.week_view")));
+        
         // Set hand cursor for buttons
         addButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
         printButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
         
-        // Add action listeners (placeholder functionality)
-        addButton.addActionListener(e -> {
-            JOptionPane.showMessageDialog(this, 
-                MessageFormat.format(Calendar_i18n.getString("info.feature_not_implemented"), 
-                    Calendar_i18n.getString("button.new_appointment").toLowerCase()),
-                Calendar_i18n.getString("info.title"), 
-                JOptionPane.INFORMATION_MESSAGE);
-        });
+        addButton.addActionListener(e -> showAppointmentEditor());
         
-        printButton.addActionListener(e -> {
-            JOptionPane.showMessageDialog(this, 
-                MessageFormat.format(Calendar_i18n.getString("info.feature_not_implemented"), 
-                    Calendar_i18n.getString("button.print_calendar").toLowerCase()),
-                Calendar_i18n.getString("info.title"), 
-                JOptionPane.INFORMATION_MESSAGE);
-        });
+        printButton.addActionListener(e -> showPrintDialog());
         
         buttonsPanel.add(addButton);
         buttonsPanel.add(printButton);
         buttonsPanel.add(toggleViewButton); // Add the toggle button
+        buttonsPanel.add(weekViewButton);
+        
+        // Un'altra finestra sugli stessi dati, ad esempio con un altro mese su un secondo schermo
+        JButton newWindowButton = new JButton(Calendar_i18n.getString("button.new_window"));
+        newWindowButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        newWindowButton.addActionListener(e -> openWindow());
+        buttonsPanel.add(newWindowButton);
         
         // Add components to controls panel
         controlsPanel.add(filterPanel);
+        if (calendarsPanel != null) {
+            controlsPanel.add(calendarsPanel);
+        }
         controlsPanel.add(buttonsPanel);
     }
 
+    /**
+     * Crea la sezione con un interruttore di visibilità per ogni calendario,
+     * sullo sfondo del suo colore, o null se c'è solo quello personale.
+     */
+    private JPanel createCalendarsPanel() {
+        List<CalendarAggregator.Source> sources = calendarAggregator.getSources();
+        if (sources.isEmpty()) {
+            return null;
+        }
+        JPanel calendarsPanel = new JPanel(new BorderLayout(5, 0));
+        calendarsPanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 0));
+        JLabel calendarsLabel = new JLabel(Calendar_i18n.getString("label.calendars"));
+        calendarsLabel.setFont(new Font("Arial", Font.BOLD, 12));
+        
+        JPanel checkboxPanel = new JPanel();
+        checkboxPanel.setLayout(new BoxLayout(checkboxPanel, BoxLayout.Y_AXIS));
+        checkboxPanel.add(personalCalendarCheckbox);
+        for (CalendarAggregator.Source source : sources) {
+            JCheckBox checkbox = new JCheckBox(source.getName(), source.isEnabled());
+            checkbox.setOpaque(true);
+            checkbox.setBackground(model.getCalendarColor(source));
+            checkbox.addActionListener(e -> {
+                source.setEnabled(checkbox.isSelected());
+                // La visibilità dei calendari è condivisa: le altre finestre aggiornano la propria casella
+                model.getEventBus().publish(new CalendarSourceEvent(source, DayRange.ALL));
+            });
+            eventBus.subscribe(CalendarSourceEvent.class, event -> {
+                if (event.getSource() == source) {
+                    checkbox.setSelected(source.isEnabled());
+                }
+            });
+            checkboxPanel.add(checkbox);
+        }
+        
+        calendarsPanel.add(calendarsLabel, BorderLayout.NORTH);
+        calendarsPanel.add(checkboxPanel, BorderLayout.CENTER);
+        return calendarsPanel;
+    }
+
+    /**
+     * Crea il campo della query di filtro, compilata a ogni modifica, e la
+     * scelta dei filtri salvati.
+     */
+    private JPanel createQueryPanel() {
+        JPanel queryPanel = new JPanel();
+        queryPanel.setLayout(new BoxLayout(queryPanel, BoxLayout.Y_AXIS));
+        queryPanel.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
+        
+        filterQueryField = new JTextField();
+        filterQueryField.setToolTipText(Calendar_i18n.getString("filter.query_help"));
+        Color validBackground = filterQueryField.getBackground();
+        filterQueryField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            private void queryChanged() {
+                // Una query non valida lascia applicato il filtro precedente
+                try {
+                    queryFilter = FilterQuery.compile(filterQueryField.getText(), displayOffsets);
+                    filterQueryField.setBackground(validBackground);
+                    filterQueryField.setToolTipText(Calendar_i18n.getString("filter.query_help"));
+                    updateFilter();
+                } catch (FilterSyntaxException ex) {
+                    filterQueryField.setBackground(INVALID_QUERY_COLOR_BG);
+                    filterQueryField.setToolTipText(MessageFormat.format(
+                        Calendar_i18n.getString("filter.invalid_query"), ex.getPosition() + 1));
+                }
+            }
+        });
+        
+        savedFiltersCombo = new JComboBox<>();
+        reloadSavedFilters(null);
+        savedFiltersCombo.addActionListener(e -> {
+            String name = (String) savedFiltersCombo.getSelectedItem();
+            String query = name == null || name.isEmpty() ? null : savedFilters.get(name);
+            if (query != null && !query.equals(filterQueryField.getText())) {
+                filterQueryField.setText(query);
+            }
+        });
+        
+        JButton saveButton = new JButton(Calendar_i18n.getString("button.save"));
+        saveButton.addActionListener(e -> saveFilter());
+        JButton deleteButton = new JButton(Calendar_i18n.getString("button.delete"));
+        deleteButton.addActionListener(e -> {
+            String name = (String) savedFiltersCombo.getSelectedItem();
+            if (name != null && !name.isEmpty()) {
+                savedFilters.remove(name);
+                reloadSavedFilters(null);
+            }
+        });
+        JPanel buttons = new JPanel(new GridLayout(1, 2, 5, 0));
+        buttons.add(saveButton);
+        buttons.add(deleteButton);
+        
+        for (JComponent component : new JComponent[] { filterQueryField, savedFiltersCombo, buttons }) {
+            component.setAlignmentX(Component.LEFT_ALIGNMENT);
+            component.setMaximumSize(new Dimension(Integer.MAX_VALUE, component.getPreferredSize().height));
+            queryPanel.add(component);
+            queryPanel.add(Box.createVerticalStrut(3));
+        }
+        return queryPanel;
+    }
+    
+    /**
+     * Salva la query corrente con il nome chiesto all'utente.
+     */
+    private void saveFilter() {
+        String query = filterQueryField.getText().trim();
+        if (query.isEmpty()) {
+            return;
+        }
+        String name = (String) JOptionPane.showInputDialog(this, Calendar_i18n.getString("filter.save_name"),
+            Calendar_i18n.getString("label.filters"), JOptionPane.QUESTION_MESSAGE, null, null,
+            savedFiltersCombo.getSelectedItem());
+        if (name == null || name.trim().isEmpty()) {
+            return;
+        }
+        try {
+            savedFilters.put(name.trim(), query);
+            reloadSavedFilters(name.trim());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, MessageFormat.format(
+                Calendar_i18n.getString("filter.save_error"), name),
+                Calendar_i18n.getString("info.title"), JOptionPane.WARNING_MESSAGE);
+        }
+    }
+    
+    /**
+     * Ricarica l'elenco dei filtri salvati, selezionando quello indicato.
+     */
+    private void reloadSavedFilters(String selected) {
+        DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>();
+        model.addElement("");
+        for (String name : savedFilters.getNames()) {
+            model.addElement(name);
+        }
+        model.setSelectedItem(selected == null ? "" : selected);
+        savedFiltersCombo.setModel(model);
+    }
+    
+    /**
+     * Ricompone il filtro dalle categorie selezionate e dalla query e lo
+     * comunica alle viste.
+     */
+    private void updateFilter() {
+        activeFilter = AppointmentFilter.and(AppointmentFilter.categories(getVisibleCategories()), queryFilter);
+        eventBus.publish(new FilterEvent(activeFilter));
+    }
+
+    /**
+     * Restituisce le categorie selezionate nei filtri
+     */
+    private Set<Category> getVisibleCategories() {
+        Set<Category> categories = EnumSet.noneOf(Category.class);
+        if (meetingsCheckbox.isSelected()) {
+            categories.add(Category.MEETING);
+        }
+        if (lunchCheckbox.isSelected()) {
+            categories.add(Category.LUNCH);
+        }
+        if (conferenceCheckbox.isSelected()) {
+            categories.add(Category.CONFERENCE);
+        }
+        return categories;
+    }
+    
+    /**
+     * Chiede periodo e destinazione, poi stampa o esporta il calendario.
+     * Il rendering delle pagine avviene fuori dall'EDT.
+     */
+    private void showPrintDialog() {
+        JComboBox<String> scopeCombo = new JComboBox<>(new String[] {
+            Calendar_i18n.getString("export.scope_month"), Calendar_i18n.getString("export.scope_year")
+        });
+        JComboBox<String> outputCombo = new JComboBox<>(new String[] {
+            Calendar_i18n.getString("export.output_printer"), Calendar_i18n.getString("export.output_png"),
+            Calendar_i18n.getString("export.output_pdf")
+        });
+        JPanel optionsPanel = new JPanel(new GridLayout(2, 2, 5, 5));
+        optionsPanel.add(new JLabel(Calendar_i18n.getString("export.scope")));
+        optionsPanel.add(scopeCombo);
+        optionsPanel.add(new JLabel(Calendar_i18n.getString("export.output")));
+        optionsPanel.add(outputCombo);
+        
+        int choice = JOptionPane.showConfirmDialog(this, optionsPanel, Calendar_i18n.getString("export.title"),
+                                                   JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION) {
+            return;
+        }
+        
+        int year = calendar.get(Calendar.YEAR);
+        boolean wholeYear = scopeCombo.getSelectedIndex() == 1;
+        List<YearMonth> months = wholeYear
+            ? CalendarExporter.monthsOf(year)
+            : Collections.singletonList(YearMonth.of(year, calendar.get(Calendar.MONTH) + 1));
+        CalendarExporter exporter = new CalendarExporter(
+            new MonthPageRenderer(store, displayZone, activeFilter));
+        
+        if (outputCombo.getSelectedIndex() == 0) {
+            PrinterJob job = PrinterJob.getPrinterJob();
+            PageFormat format = job.defaultPage();
+            format.setOrientation(PageFormat.LANDSCAPE);
+            job.setPrintable(exporter.createPrintable(months), format);
+            if (job.printDialog()) {
+                runInBackground(months, () -> {
+                    job.print();
+                    return Collections.emptyList();
+                });
+            }
+            return;
+        }
+        
+        boolean pdf = outputCombo.getSelectedIndex() == 2;
+        // L'anno in PNG diventa un file per mese, a cui l'esportazione aggiunge "-aaaa-mm"
+        String name = Calendar_i18n.getString("app.title").replace(' ', '_');
+        if (pdf || !wholeYear) {
+            name += "-" + (wholeYear ? String.valueOf(year) : months.get(0).toString());
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(name + (pdf ? ".pdf" : ".png")));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File target = chooser.getSelectedFile();
+        runInBackground(months, () -> {
+            if (pdf) {
+                exporter.exportPdf(months, target);
+                return Collections.singletonList(target);
+            }
+            return exporter.exportPng(months, target);
+        });
+    }
+    
+    /**
+     * Task di stampa o esportazione eseguito fuori dall'EDT, che restituisce i file scritti
+     */
+    private interface ExportTask {
+        List<File> run() throws Exception;
+    }
+    
+    /**
+     * Esegue un task di stampa/esportazione con uno SwingWorker e ne notifica l'esito.
+     * I mesi esportati sono caricati nello stesso SwingWorker e restano nello
+     * store fino alla fine del task, anche se altre finestre caricano altri mesi.
+     */
+    private void runInBackground(List<YearMonth> months, ExportTask task) {
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        RepositoryLoader.Pin exported = repositoryLoader.newPin();
+        exported.set(months.get(0), months.get(months.size() - 1));
+        new SwingWorker<List<File>, Void>() {
+            @Override
+            protected List<File> doInBackground() throws Exception {
+                repositoryLoader.ensureRange(months.get(0).atDay(1), months.get(months.size() - 1).atEndOfMonth());
+                return task.run();
+            }
+            
+            @Override
+            protected void done() {
+                exported.release();
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    List<File> files = get();
+                    if (!files.isEmpty()) {
+                        String written = files.size() == 1 ? files.get(0).getPath()
+                            : MessageFormat.format(Calendar_i18n.getString("export.files"), files.size(),
+                                                   files.get(0).getPath(), files.get(files.size() - 1).getName());
+                        JOptionPane.showMessageDialog(Calendario.this,
+                            MessageFormat.format(Calendar_i18n.getString("export.completed"), written),
+                            Calendar_i18n.getString("info.title"), JOptionPane.INFORMATION_MESSAGE);
+                    }
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    // A print job cancelled by the user is not an error
+                    if (!(cause instanceof PrinterAbortException)) {
+                        JOptionPane.showMessageDialog(Calendario.this,
+                            MessageFormat.format(Calendar_i18n.getString("export.error"), cause.getMessage()),
+                            Calendar_i18n.getString("info.title"), JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Carica in background i mesi dell'anno mostrato, su cui sono calcolate
+     * le statistiche, senza bloccare l'EDT: il pannello si ridisegna man mano
+     * che gli appuntamenti arrivano nello store.
+     */
+    private void loadStatisticsYear(int year) {
+        if (year == statisticsYearLoaded) {
+            return;
+        }
+        statisticsYearLoaded = year;
+        statisticsYear.set(YearMonth.of(year, 1), YearMonth.of(year, 12));
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                repositoryLoader.ensureRange(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println(MessageFormat.format(
+                        Calendar_i18n.getString("error.statistics_year"), String.valueOf(year), cause.getMessage()));
+                    // Riprovato al prossimo ritorno sull'anno
+                    if (statisticsYearLoaded == year) {
+                        statisticsYearLoaded = 0;
+                    }
+                }
+                statisticsPanel.repaint();
+            }
+        }.execute();
+    }
+
+    private void createStatisticsPanel() {
+        // Create the statistics panel, repainted on every change of the store
+        statisticsPanel = new StatisticsPanel(statistics, calendar);
+        store.addListener(statisticsPanel);
+    }
+
     private void createAppointmentPanel() {
         // Create appointment panel with grid layout
         appointmentPanel = new JPanel();
@@ -659,13 +1566,13 @@ public class Calendario extends JFrame {
         appointmentPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
         
         // Create a scroll pane for the appointment panel
-        JScrollPane scrollPane = new JScrollPane(appointmentPanel);
-        scrollPane.setBorder(BorderFactory.createEmptyBorder());
-        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        monthScrollPane = new JScrollPane(appointmentPanel);
+        monthScrollPane.setBorder(BorderFactory.createEmptyBorder());
+        monthScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+        monthScrollPane.getVerticalScrollBar().setUnitIncrement(16);
         
         // Add the scroll pane to the main panel
-        mainPanel.add(scrollPane, BorderLayout.CENTER);
+        mainPanel.add(monthScrollPane, BorderLayout.CENTER);
         
         // Initial update of the appointment panel
         updateAppointmentPanel();
@@ -679,10 +1586,6 @@ public class Calendario extends JFrame {
             BorderFactory.createEmptyBorder(10, 0, 0, 0)
         ));
         
-        // Create label for the details section
-        JLabel detailsLabel = new JLabel(Calendar_i18n.getString("label.details"));
-        detailsLabel.setFont(new Font("Arial", Font.BOLD, 14));
-        
         // Create text area for appointment details
         appointmentDetails = new JTextArea(5, 20);
         appointmentDetails.setEditable(false);
@@ -696,23 +1599,27 @@ public class Calendario extends JFrame {
         JScrollPane scrollPane = new JScrollPane(appointmentDetails);
         scrollPane.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY));
 
+        // The agenda of the next appointments shares the space of the details, in a second tab
+        agendaPanel = new AgendaPanel(new AgendaPager(store, repositoryLoader, calendarAggregator, displayOffsets),
+                                      eventBus, displayOffsets, () -> activeFilter,
+                                      () -> personalCalendarCheckbox.isSelected(), model::getCalendarColor, this::selectDay);
+        detailsTabs = new JTabbedPane();
+        detailsTabs.setFont(new Font("Arial", Font.BOLD, 14));
+        detailsTabs.addTab(Calendar_i18n.getString("label.details"), scrollPane);
+        detailsTabs.addTab(Calendar_i18n.getString("label.agenda"), agendaPanel);
+
         // Add components to details panel
-        detailsPanel.add(detailsLabel, BorderLayout.NORTH);
-        detailsPanel.add(scrollPane, BorderLayout.CENTER);
+        detailsPanel.add(detailsTabs, BorderLayout.CENTER);
         
         // Add details panel to main panel
         mainPanel.add(detailsPanel, BorderLayout.SOUTH);
     }
 
     /**
-     * Metodo principale che avvia l'applicazione Calendario.
-     * Imposta il look and feel Nimbus e crea l'istanza del calendario.
-     * 
-     * @param args argomenti da linea di comando (non utilizzati)
+     * Imposta l'aspetto Nimbus, se disponibile.
      */
-    public static void main(String[] args) {
+    static void installLookAndFeel() {
         try {
-            // Set Nimbus Look and Feel
             for (UIManager.LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
                 if ("Nimbus".equals(info.getName())) {
                     UIManager.setLookAndFeel(info.getClassName());
@@ -722,6 +1629,30 @@ public class Calendario extends JFrame {
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * Metodo principale che avvia l'applicazione Calendario.
+     * Imposta il look and feel Nimbus e crea l'istanza del calendario.
+     * 
+     * @param args argomenti da linea di comando (non utilizzati)
+     */
+    public static void main(String[] args) {
+        // Con argomenti risponde come l'agenda a riga di comando, senza aprire la finestra
+        if (args.length > 0) {
+            Agenda.main(args);
+            return;
+        }
+        // Registrazione del flight recorder, se richiesta, dall'avvio fino all'uscita
+        try {
+            FlightRecording.startFromSystemProperty();
+        } catch (IOException | IllegalStateException e) {
+            System.err.println(MessageFormat.format(
+                Calendar_i18n.getString("error.flight_recording"), e.getMessage()));
+        }
+        // Anche le registrazioni avviate da Mission Control o jcmd ricevono gli eventi del calendario
+        FlightRecording.watchRecordings();
+        installLookAndFeel();
         
         SwingUtilities.invokeLater(() -> {
             Calendario calendar = new Calendario();
@@ -0,0 +1,55 @@
+package dashboard;
+
+import java.awt.Color;
+
+import dashboard.i18n.Calendar_i18n;
+
+/**
+ * Enum representing the appointment categories.
+ * Provides display names and background colors for each category.
+ */
+public enum Category {
+    MEETING("appointment.meeting", "color.meeting_color_bg"),
+    LUNCH("appointment.lunch", "color.lunch_color_bg"),
+    CONFERENCE("appointment.conference", "color.conference_color_bg");
+
+    private final String resourceKey;
+    private final String colorKey;
+    private String displayName;
+    private Color color;
+
+    /**
+     * Constructor for Category enum.
+     *
+     * @param resourceKey The resource key for the display name
+     * @param colorKey The resource key for the background color
+     */
+    Category(String resourceKey, String colorKey) {
+        this.resourceKey = resourceKey;
+        this.colorKey = colorKey;
+    }
+
+    /**
+     * Gets the display name of the category.
+     *
+     * @return The display name
+     */
+    public String getDisplayName() {
+        if (displayName == null) {
+            displayName = Calendar_i18n.getString(resourceKey);
+        }
+        return displayName;
+    }
+
+    /**
+     * Gets the background color used to paint appointments of this category.
+     *
+     * @return The category color
+     */
+    public Color getColor() {
+        if (color == null) {
+            color = Calendar_i18n.getColor(colorKey);
+        }
+        return color;
+    }
+}
@@ -2,243 +2,400 @@ package dashboard;
 
 import javax.swing.*;
 
+import dashboard.event.CalendarEventBus;
+import dashboard.event.SelectionEvent;
+import dashboard.holiday.HolidayCalendar;
 import dashboard.i18n.Calendar_i18n;
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.FlightRecording;
+import dashboard.metrics.Histogram;
+import dashboard.metrics.RenderEvent;
+import dashboard.store.ZoneOffsetCache;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.time.LocalDate;
 import java.util.Calendar;
 
+/**
+ * Mini calendar of the selected month, painted by a single component.
+ * Day headers and the 6x7 day grid are drawn in {@link #paintComponent(Graphics)}
+ * with strings and font metrics computed once, and one mouse listener maps
+ * coordinates to days: moving the mouse repaints only the cells whose hover
+ * state changes, and neither hovering nor changing month creates objects.
+ */
 public class MiniCalendarPanel extends JPanel {
     private Calendar calendar;
     private JLabel monthLabel;
     private JTextArea appointmentDetails;
-    private Runnable appointmentPanelUpdater;
-    
+    private CalendarEventBus eventBus;
+    private final HolidayCalendar holidays;
+    private final ZoneOffsetCache offsets;
+
     // Add color constants
-    private static final Color DAY_HOVER_COLOR_BG = Calendar_i18n.getColor("color.day_hover_color_bg"); 
-    private static final Color DAY_SELECTED_COLOR_BG = Calendar_i18n.getColor("color.day_selected_color_bg"); 
-    
-    public MiniCalendarPanel(Calendar calendar, JLabel monthLabel) {
+    private static final Color DAY_HOVER_COLOR_BG = Calendar_i18n.getColor("color.day_hover_color_bg");
+    private static final Color DAY_SELECTED_COLOR_BG = Calendar_i18n.getColor("color.day_selected_color_bg");
+    private static final Color WEEKEND_COLOR_BG = Calendar_i18n.getColor("color.weekend_color_bg");
+    private static final Color TODAY_HIGHLIGHT_COLOR = Calendar_i18n.getColor("color.today_highlight_color");
+
+    private static final Font HEADER_FONT = new Font("Arial", Font.BOLD, 9);
+    private static final Font DAY_FONT = new Font("Arial", Font.PLAIN, 9);
+    private static final int COLUMNS = 7;
+    // Header row plus six weeks
+    private static final int ROWS = 7;
+    private static final int GAP = 1;
+    private static final Histogram RENDER_TIMES = CalendarMetrics.get().render("miniCalendar");
+    private static final int NO_DAY = 0;
+    private static final String[] DAY_NUMBERS = new String[32];
+    private static final int[] MONTH_LENGTHS = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final DayOfWeek[] DAYS_OF_WEEK = DayOfWeek.values();
+
+    static {
+        for (int day = 1; day < DAY_NUMBERS.length; day++) {
+            DAY_NUMBERS[day] = String.valueOf(day);
+        }
+    }
+
+    // Text metrics, computed on first paint
+    private final String[] headers = new String[COLUMNS];
+    private final int[] headerWidths = new int[COLUMNS];
+    private final int[] dayWidths = new int[DAY_NUMBERS.length];
+    private int headerAscent;
+    private int dayAscent;
+    private int textHeight;
+    private boolean metricsReady;
+
+    // Grid geometry, recomputed when the size changes
+    private int layoutWidth = -1;
+    private int layoutHeight = -1;
+    private int gridX;
+    private int gridY;
+    private int cellWidth;
+    private int cellHeight;
+    // Reused by every paint to read the clip
+    private final Rectangle clip = new Rectangle();
+
+    // Displayed month
+    private int firstColumn;
+    private int daysInMonth;
+    private int firstDayOfYear;
+    private HolidayCalendar.Year specialDays;
+    private int selectedDay;
+    private int todayDay;
+    // Month titles of the displayed year, built once per year
+    private final String[] monthTitles = new String[12];
+    private int titlesYear = Integer.MIN_VALUE;
+
+    private int hoverDay = NO_DAY;
+
+    public MiniCalendarPanel(Calendar calendar, JLabel monthLabel, HolidayCalendar holidays) {
         this.calendar = calendar;
         this.monthLabel = monthLabel;
+        this.holidays = holidays;
+        this.offsets = ZoneOffsetCache.of(calendar.getTimeZone().toZoneId());
         initialize();
     }
-    
+
     public void setAppointmentDetails(JTextArea appointmentDetails) {
         this.appointmentDetails = appointmentDetails;
         System.out.println("Appointment details text area set: " + (appointmentDetails != null));
     }
-    
-    public void setAppointmentPanelUpdater(Runnable updater) {
-        this.appointmentPanelUpdater = updater;
+
+    /**
+     * Connects the panel to the event bus: clicks on a day are published as
+     * {@link SelectionEvent}s, and selection changes made elsewhere repaint
+     * the panel, only the two cells involved when the month stays the same.
+     */
+    public void setEventBus(CalendarEventBus eventBus) {
+        this.eventBus = eventBus;
+        eventBus.subscribe(SelectionEvent.class, this::selectionChanged);
+    }
+
+    private void selectionChanged(SelectionEvent event) {
+        if (event.isMonthChanged() || specialDays == null) {
+            updateDisplay();
+            return;
+        }
+        int previous = selectedDay;
+        selectedDay = event.getCurrent().getDayOfMonth();
+        repaintDay(previous);
+        repaintDay(selectedDay);
     }
-    
+
     private void initialize() {
-        setLayout(new GridLayout(7, 7, 1, 1));
         setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
         setMinimumSize(new Dimension(224, 224));
         setPreferredSize(new Dimension(224, 224));
         setMaximumSize(new Dimension(224, 224));
+
+        MouseAdapter mouseHandler = new MouseAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                setHoverDay(dayAt(e.getX(), e.getY()));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                setHoverDay(NO_DAY);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int day = dayAt(e.getX(), e.getY());
+                if (day != NO_DAY) {
+                    selectDay(day);
+                }
+            }
+        };
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+        // Holiday names are shown as tooltips, see getToolTipText(MouseEvent)
+        ToolTipManager.sharedInstance().registerComponent(this);
     }
-    
+
+    /**
+     * Reads the selected month and day from the calendar and repaints.
+     */
     public void updateDisplay() {
-        this.removeAll();
-        
-        // Aggiorna l'etichetta del mese
-        int month = calendar.get(Calendar.MONTH);
+        RenderEvent event = FlightRecording.isRecording() ? new RenderEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
         int year = calendar.get(Calendar.YEAR);
-        
-        // Usa l'enum Month per ottenere il nome del mese
-        String monthName = Month.fromCalendarMonth(month).getDisplayName();
-        monthLabel.setText(monthName + " " + year);
-        
-        // Use populateDaysPanel to add day headers
-        populateDaysPanel();
-        
-        // Get first day of month and total days
-        Calendar temp = (Calendar) calendar.clone();
-        temp.set(Calendar.DAY_OF_MONTH, 1);
-        int firstDay = temp.get(Calendar.DAY_OF_WEEK);
-        // Adjust for Monday as first day of week
-        firstDay = firstDay == Calendar.SUNDAY ? 6 : firstDay - 2;
-        int daysInMonth = temp.getActualMaximum(Calendar.DAY_OF_MONTH);
-        
+        int month = calendar.get(Calendar.MONTH);
+
+        // Aggiorna l'etichetta del mese
+        if (year != titlesYear) {
+            for (int i = 0; i < monthTitles.length; i++) {
+                // Usa l'enum Month per ottenere il nome del mese
+                monthTitles[i] = Month.fromCalendarMonth(i).getDisplayName() + " " + year;
+            }
+            titlesYear = year;
+        }
+        monthLabel.setText(monthTitles[month]);
+
+        long firstEpochDay = epochDay(year, month + 1, 1);
+        // Adjust for Monday as first day of week (1970-01-01 was a Thursday)
+        firstColumn = (int) Math.floorMod(firstEpochDay + 3, 7L);
+        daysInMonth = MONTH_LENGTHS[month] + (month == 1 && isLeapYear(year) ? 1 : 0);
+        firstDayOfYear = (int) (firstEpochDay - epochDay(year, 1, 1)) + 1;
+        specialDays = holidays.getYear(year);
+        selectedDay = calendar.get(Calendar.DAY_OF_MONTH);
+
         // Get current day for highlighting
-        Calendar today = Calendar.getInstance();
-        
-        // Add empty labels before first day
-        for (int i = 0; i < firstDay; i++) {
-            this.add(new JLabel(""));
-        }
-        
-        // Add day buttons
+        long today = offsets.getEpochDay(System.currentTimeMillis() / 60_000);
+        todayDay = today >= firstEpochDay && today < firstEpochDay + daysInMonth ? (int) (today - firstEpochDay) + 1 : NO_DAY;
+
+        if (hoverDay > daysInMonth) {
+            hoverDay = NO_DAY;
+        }
+        repaint();
+        if (event != null && event.shouldCommit()) {
+            event.view = "miniCalendar";
+            event.days = daysInMonth;
+            event.commit();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long started = System.nanoTime();
+        paintCalendar(g);
+        RENDER_TIMES.recordSince(started);
+    }
+
+    private void paintCalendar(Graphics g) {
+        super.paintComponent(g);
+        if (specialDays == null) {
+            return;
+        }
+        prepareMetrics();
+        updateLayout();
+
+        // Day headers, using the DayOfWeek enum
+        g.setFont(HEADER_FONT);
+        int headerBaseline = gridY + (cellHeight - textHeight) / 2 + headerAscent;
+        for (int column = 0; column < COLUMNS; column++) {
+            g.setColor(DAYS_OF_WEEK[column].isWeekend() ? WEEKEND_COLOR_BG : Color.BLACK);
+            g.drawString(headers[column], cellX(column) + (cellWidth - headerWidths[column]) / 2, headerBaseline);
+        }
+
+        // Days, painting only the cells inside the clip
+        clip.setBounds(0, 0, getWidth(), getHeight());
+        g.getClipBounds(clip);
+        g.setFont(DAY_FONT);
         for (int day = 1; day <= daysInMonth; day++) {
-            final int currentDay = day;
-            JLabel dayLabel = new JLabel(String.valueOf(day), SwingConstants.CENTER);
-            dayLabel.setFont(new Font("Arial", Font.PLAIN, 9));
-            dayLabel.setBorder(BorderFactory.createEmptyBorder(1, 1, 1, 1));
-            
-            // Calculate day of week
-            temp.set(Calendar.DAY_OF_MONTH, day);
-            int dayOfWeek = temp.get(Calendar.DAY_OF_WEEK);
-            boolean isWeekend = (dayOfWeek == Calendar.SATURDAY || dayOfWeek == Calendar.SUNDAY);
-            
-            // Highlight current day
-            if (calendar.get(Calendar.YEAR) == today.get(Calendar.YEAR) &&
-                calendar.get(Calendar.MONTH) == today.get(Calendar.MONTH) &&
-                day == today.get(Calendar.DAY_OF_MONTH)) {
-                dayLabel.setBorder(BorderFactory.createLineBorder(new Color(0, 120, 215), 1, true));
-                dayLabel.setBackground(DAY_SELECTED_COLOR_BG);
-                dayLabel.setOpaque(true);
+            int cell = firstColumn + day - 1;
+            int x = cellX(cell % COLUMNS);
+            int y = cellY(cell / COLUMNS + 1);
+            if (x >= clip.x + clip.width || x + cellWidth <= clip.x || y >= clip.y + clip.height || y + cellHeight <= clip.y) {
+                continue;
             }
-            
-            // Set weekend days in red
-            if (isWeekend) {
-                dayLabel.setForeground(new Color(220, 20, 60));
+            paintDay(g, day, x, y);
+        }
+    }
+
+    private void paintDay(Graphics g, int day, int x, int y) {
+        Color background = day == hoverDay ? DAY_HOVER_COLOR_BG
+                         : day == todayDay || day == selectedDay ? DAY_SELECTED_COLOR_BG : null;
+        if (background != null) {
+            g.setColor(background);
+            g.fillRect(x, y, cellWidth, cellHeight);
+        }
+        if (day == todayDay) {
+            g.setColor(TODAY_HIGHLIGHT_COLOR);
+            g.drawRoundRect(x, y, cellWidth - 1, cellHeight - 1, 4, 4);
+        }
+        // Set weekends and holidays in red
+        g.setColor(specialDays.isSpecial(firstDayOfYear + day - 1) ? WEEKEND_COLOR_BG : Color.BLACK);
+        g.drawString(DAY_NUMBERS[day], x + (cellWidth - dayWidths[day]) / 2,
+                     y + (cellHeight - textHeight) / 2 + dayAscent);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int day = dayAt(e.getX(), e.getY());
+        return day == NO_DAY ? null : specialDays.getName(firstDayOfYear + day - 1);
+    }
+
+    private void setHoverDay(int day) {
+        if (day == hoverDay) {
+            return;
+        }
+        repaintDay(hoverDay);
+        hoverDay = day;
+        repaintDay(day);
+        // Set hand cursor to indicate clickable element
+        setCursor(Cursor.getPredefinedCursor(day == NO_DAY ? Cursor.DEFAULT_CURSOR : Cursor.HAND_CURSOR));
+    }
+
+    private void repaintDay(int day) {
+        if (day != NO_DAY) {
+            int cell = firstColumn + day - 1;
+            repaint(cellX(cell % COLUMNS), cellY(cell / COLUMNS + 1), cellWidth, cellHeight);
+        }
+    }
+
+    /**
+     * @return The day of the month painted at the given point, or NO_DAY
+     */
+    private int dayAt(int x, int y) {
+        if (specialDays == null) {
+            return NO_DAY;
+        }
+        updateLayout();
+        int column = (x - gridX) / (cellWidth + GAP);
+        int row = (y - gridY) / (cellHeight + GAP);
+        if (x < gridX || y < gridY || column >= COLUMNS || row < 1 || row >= ROWS
+                || x >= cellX(column) + cellWidth || y >= cellY(row) + cellHeight) {
+            return NO_DAY;
+        }
+        int day = (row - 1) * COLUMNS + column - firstColumn + 1;
+        return day >= 1 && day <= daysInMonth ? day : NO_DAY;
+    }
+
+    private void selectDay(int day) {
+        System.out.println("Mini calendar day clicked: " + day);
+
+        // Update the calendar to the selected day
+        LocalDate previous = LocalDate.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                                          calendar.get(Calendar.DAY_OF_MONTH));
+        calendar.set(Calendar.DAY_OF_MONTH, day);
+
+        // Log the calendar selection
+        Debug.logCalendarSelection("Day selected in mini calendar", calendar);
+
+        // This panel and the appointment views update the cells of the two days
+        if (eventBus != null) {
+            eventBus.publish(new SelectionEvent(previous, previous.withDayOfMonth(day)));
+        } else {
+            updateDisplay();
+        }
+
+        // Se siamo in modalità compatta, mostra la finestra di dialogo degli appuntamenti
+        Container parent = getParent();
+        while (parent != null && !(parent instanceof Calendario)) {
+            parent = parent.getParent();
+        }
+
+        if (parent instanceof Calendario) {
+            Calendario parentCalendar = (Calendario) parent;
+            if (parentCalendar.isCompactMode()) {
+                parentCalendar.showAppointmentsInDialog();
             }
-            
-            // Add click listener to select day
-            dayLabel.addMouseListener(new MouseAdapter() {
-                // Nel metodo mouseClicked della classe MiniCalendarPanel
-                @Override
-                public void mouseClicked(MouseEvent e) {
-                    System.out.println("Mini calendar day clicked: " + currentDay);
-                    
-                    // Update the calendar to the selected day
-                    calendar.set(Calendar.DAY_OF_MONTH, currentDay);
-                    System.out.println("Calendar updated to: " + calendar.get(Calendar.YEAR) + "-" + 
-                                    (calendar.get(Calendar.MONTH) + 1) + "-" + 
-                                    calendar.get(Calendar.DAY_OF_MONTH));
-                    
-                    // Log the calendar selection
-                    Debug.logCalendarSelection("Day selected in mini calendar", calendar);
-                    
-                    // Update the mini calendar display
-                    updateDisplay();
-                    
-                    // Run the appointment panel updater
-                    System.out.println("Running appointment panel updater");
-                    if (appointmentPanelUpdater != null) {
-                        appointmentPanelUpdater.run();
-                        System.out.println("Appointment panel updater completed");
-                    }
-                    
-                    // Se siamo in modalità compatta, mostra la finestra di dialogo degli appuntamenti
-                    Container parent = getParent();
-                    while (parent != null && !(parent instanceof Calendario)) {
-                        parent = parent.getParent();
-                    }
-                    
-                    if (parent instanceof Calendario) {
-                        Calendario parentCalendar = (Calendario) parent;
-                        if (parentCalendar.isCompactMode()) {
-                            parentCalendar.showAppointmentsInDialog();
-                        }
-                    }
-                    
-                    // Update the appointment details
-                    System.out.println("Updating appointment details text area");
-                    if (appointmentDetails != null) {
-                        appointmentDetails.setText(Calendar_i18n.getString("label.select_appointment"));
-                        
-                        // Get the parent container and revalidate/repaint
-                        Container parent2 = appointmentDetails.getParent();
-                        if (parent2 != null) {
-                            parent2.revalidate();
-                            parent2.repaint();
-                            System.out.println("Appointment details parent revalidated and repainted");
-                        }
-                    }
-                    
-                    // Revalidate and repaint the mini calendar panel
-                    revalidate();
-                    repaint();
-                    System.out.println("Mini calendar panel revalidated and repainted");
-                }
-                
-                @Override
-                public void mouseEntered(MouseEvent e) {
-                    // Get the day label that triggered the event
-                    if (e.getSource() instanceof JLabel) {
-                        JLabel dayLabel = (JLabel) e.getSource();
-                        String dayText = dayLabel.getText();
-                        
-                        // Only change cursor for actual day numbers (not empty cells)
-                        if (!dayText.isEmpty()) {
-                            // Set hand cursor to indicate clickable element
-                            dayLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
-                            
-                            // Highlight the day
-                            dayLabel.setBackground(DAY_HOVER_COLOR_BG);
-                            dayLabel.setOpaque(true);
-                        }
-                    }
-                }
-                
-                @Override
-                public void mouseExited(MouseEvent e) {
-                    // Get the day label that triggered the event
-                    if (e.getSource() instanceof JLabel) {
-                        JLabel dayLabel = (JLabel) e.getSource();
-                        String dayText = dayLabel.getText();
-                        
-                        // Only process for actual day numbers
-                        if (!dayText.isEmpty()) {
-                            // Reset cursor
-                            dayLabel.setCursor(Cursor.getDefaultCursor());
-                            
-                            // Reset background color
-                            int day = Integer.parseInt(dayText);
-                            
-                            // Get current day for highlighting
-                            Calendar today = Calendar.getInstance();
-                            boolean isToday = (calendar.get(Calendar.YEAR) == today.get(Calendar.YEAR) &&
-                                calendar.get(Calendar.MONTH) == today.get(Calendar.MONTH) &&
-                                day == today.get(Calendar.DAY_OF_MONTH));
-                            
-                            // Check if this is the selected day
-                            boolean isSelectedDay = (day == calendar.get(Calendar.DAY_OF_MONTH));
-                            
-                            if (isToday) {
-                                // Keep today's highlight
-                                dayLabel.setBackground(new Color(229, 243, 255));
-                                dayLabel.setOpaque(true);
-                            } else if (isSelectedDay) {
-                                dayLabel.setBackground(DAY_SELECTED_COLOR_BG);
-                                dayLabel.setOpaque(true);
-                            } else {
-                                dayLabel.setBackground(null);
-                                dayLabel.setOpaque(false);
-                            }
-                        }
-                    }
-                }
-            });
-            
-            this.add(dayLabel);
-        }
-        
-        // Add remaining empty cells to complete the grid
-        int remainingCells = 42 - (firstDay + daysInMonth); // 42 = 6 rows × 7 columns
-        for (int i = 0; i < remainingCells; i++) {
-            this.add(new JLabel(""));
-        }
-        
-        // Refresh the panel
-        this.revalidate();
-        this.repaint();
-    }
-
-    // Quando devi visualizzare i giorni nel mini calendario
-    private void populateDaysPanel() {
-        // Usa l'enum DayOfWeek per le intestazioni dei giorni
-        for (DayOfWeek day : DayOfWeek.values()) {
-            JLabel dayLabel = new JLabel(day.getDisplayName().substring(0, 3), SwingConstants.CENTER);
-            dayLabel.setFont(new Font("Arial", Font.BOLD, 9));
-            if (day.isWeekend()) {
-                dayLabel.setForeground(new Color(220, 20, 60));
+        }
+
+        // Update the appointment details
+        if (appointmentDetails != null) {
+            appointmentDetails.setText(Calendar_i18n.getString("label.select_appointment"));
+
+            // Get the parent container and revalidate/repaint
+            Container parent2 = appointmentDetails.getParent();
+            if (parent2 != null) {
+                parent2.revalidate();
+                parent2.repaint();
             }
-            this.add(dayLabel);
         }
     }
-}
\ No newline at end of file
+
+    // Measures the header and day strings once; the fonts never change
+    private void prepareMetrics() {
+        if (metricsReady) {
+            return;
+        }
+        FontMetrics headerMetrics = getFontMetrics(HEADER_FONT);
+        FontMetrics dayMetrics = getFontMetrics(DAY_FONT);
+        for (int column = 0; column < COLUMNS; column++) {
+            headers[column] = DAYS_OF_WEEK[column].getDisplayName().substring(0, 3);
+            headerWidths[column] = headerMetrics.stringWidth(headers[column]);
+        }
+        for (int day = 1; day < DAY_NUMBERS.length; day++) {
+            dayWidths[day] = dayMetrics.stringWidth(DAY_NUMBERS[day]);
+        }
+        headerAscent = headerMetrics.getAscent();
+        dayAscent = dayMetrics.getAscent();
+        textHeight = Math.max(headerMetrics.getAscent() + headerMetrics.getDescent(),
+                              dayMetrics.getAscent() + dayMetrics.getDescent());
+        metricsReady = true;
+    }
+
+    // Splits the area inside the border into equal cells, centering the leftover pixels like GridLayout
+    private void updateLayout() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width == layoutWidth && height == layoutHeight) {
+            return;
+        }
+        Insets insets = getInsets();
+        int innerWidth = width - insets.left - insets.right;
+        int innerHeight = height - insets.top - insets.bottom;
+        cellWidth = Math.max(0, (innerWidth - (COLUMNS - 1) * GAP) / COLUMNS);
+        cellHeight = Math.max(0, (innerHeight - (ROWS - 1) * GAP) / ROWS);
+        gridX = insets.left + (innerWidth - (cellWidth * COLUMNS + (COLUMNS - 1) * GAP)) / 2;
+        gridY = insets.top + (innerHeight - (cellHeight * ROWS + (ROWS - 1) * GAP)) / 2;
+        layoutWidth = width;
+        layoutHeight = height;
+    }
+
+    private int cellX(int column) {
+        return gridX + column * (cellWidth + GAP);
+    }
+
+    private int cellY(int row) {
+        return gridY + row * (cellHeight + GAP);
+    }
+
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    // Days since 1970-01-01 of a date, without creating a LocalDate (H. Hinnant's days_from_civil)
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+}
@@ -0,0 +1,331 @@
+package dashboard;
+
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.swing.JFrame;
+
+import dashboard.metrics.Histogram;
+import dashboard.store.AppointmentRepositories;
+
+/**
+ * Replays a scripted sequence of interactions against the calendar window
+ * and reports the latency of each kind of interaction. Every step runs on
+ * the event dispatch thread and is timed until the events it queued, such as
+ * the refresh of the stale days and the repaint, have been handled too.
+ * <p>
+ * The window needs a display: on a server without one, run under a virtual
+ * display such as Xvfb. The calendar is usually filled with
+ * {@code --events}, which generates a synthetic calendar of that size.
+ * <p>
+ * Usage: {@code java dashboard.ScenarioRunner [--events n | --synthetic spec]
+ * [--scenario file] [--iterations n] [--warmup n] [--max-p99 ms]}
+ * <p>
+ * A scenario has one command per line; {@code #} starts a comment:
+ * <pre>
+ * next [n]            previous [n]        year [n]         today
+ * category meeting|lunch|conference on|off
+ * query [text]        compact             dialog           close-dialog
+ * weekview            pause ms            repeat n ... end
+ * </pre>
+ */
+public class ScenarioRunner {
+    static final String DEFAULT_SCENARIO = String.join("\n",
+        "# Browse a few years, forwards and backwards",
+        "repeat 12",
+        "  next",
+        "end",
+        "year 1",
+        "year -3",
+        "repeat 12",
+        "  previous",
+        "end",
+        "today",
+        "# Filters",
+        "category meeting off",
+        "category lunch off",
+        "category meeting on",
+        "category lunch on",
+        "query riunione",
+        "query weekday:mon-fri AND time>=9 AND time<13",
+        "query -cat:lunch duration>=1h",
+        "query",
+        "# Week view",
+        "weekview",
+        "repeat 8",
+        "  next",
+        "end",
+        "year -1",
+        "weekview",
+        "# Compact mode, with the dialog of the selected day",
+        "compact",
+        "repeat 6",
+        "  next",
+        "  dialog",
+        "end",
+        "close-dialog",
+        "compact");
+
+    private final List<Step> steps;
+
+    ScenarioRunner(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * One interaction of a scenario.
+     */
+    static final class Step {
+        final String name;
+        final Consumer<Calendario> action;
+        // Milliseconds to wait before the step, not measured
+        final long pause;
+
+        Step(String name, Consumer<Calendario> action, long pause) {
+            this.name = name;
+            this.action = action;
+            this.pause = pause;
+        }
+    }
+
+    /**
+     * Parses a scenario, expanding the repeated blocks.
+     *
+     * @throws IllegalArgumentException If a line is not a valid command
+     */
+    static ScenarioRunner parse(String script) {
+        Deque<List<Step>> blocks = new ArrayDeque<>();
+        Deque<Integer> repeats = new ArrayDeque<>();
+        blocks.push(new ArrayList<>());
+        long pause = 0;
+        String[] lines = script.split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int comment = line.indexOf('#');
+            String[] words = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+", 2);
+            String command = words[0].toLowerCase(Locale.ROOT);
+            String argument = words.length > 1 ? words[1].trim() : "";
+            try {
+                switch (command) {
+                    case "":
+                        continue;
+                    case "repeat":
+                        repeats.push(positive(argument));
+                        blocks.push(new ArrayList<>());
+                        continue;
+                    case "end":
+                        if (repeats.isEmpty()) {
+                            throw new IllegalArgumentException("end without repeat");
+                        }
+                        List<Step> body = blocks.pop();
+                        for (int n = repeats.pop(); n > 0; n--) {
+                            blocks.peek().addAll(body);
+                        }
+                        continue;
+                    case "pause":
+                        pause += positive(argument);
+                        continue;
+                    default:
+                        blocks.peek().add(new Step(command, action(command, argument), pause));
+                        pause = 0;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        if (!repeats.isEmpty()) {
+            throw new IllegalArgumentException("repeat without end");
+        }
+        return new ScenarioRunner(blocks.pop());
+    }
+
+    private static Consumer<Calendario> action(String command, String argument) {
+        switch (command) {
+            case "next":
+            case "previous": {
+                int months = argument.isEmpty() ? 1 : positive(argument);
+                return c -> c.navigateMonths(command.equals("next") ? months : -months);
+            }
+            case "year": {
+                int years = argument.isEmpty() ? 1 : Integer.parseInt(argument.replace("+", ""));
+                return c -> c.navigateYears(years);
+            }
+            case "today":
+                return Calendario::navigateToday;
+            case "category": {
+                String[] words = argument.split("\\s+");
+                if (words.length != 2 || !words[1].matches("on|off")) {
+                    throw new IllegalArgumentException("Expected category <name> on|off");
+                }
+                Category category = Category.valueOf(words[0].toUpperCase(Locale.ROOT));
+                boolean visible = words[1].equals("on");
+                return c -> c.setCategoryVisible(category, visible);
+            }
+            case "query":
+                return c -> c.setFilterQuery(argument);
+            case "compact":
+                return Calendario::toggleViewMode;
+            case "dialog":
+                return Calendario::showAppointmentsInDialog;
+            case "close-dialog":
+                return Calendario::hideAppointmentsDialog;
+            case "weekview":
+                return Calendario::switchWeekView;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    private static int positive(String argument) {
+        int value = Integer.parseInt(argument);
+        if (value < 1) {
+            throw new IllegalArgumentException("Expected a positive number: " + argument);
+        }
+        return value;
+    }
+
+    List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Runs the scenario once, recording the latency of every step in the
+     * histogram of its command when histograms are given.
+     */
+    void run(Calendario calendar, Map<String, Histogram> histograms)
+            throws InterruptedException, InvocationTargetException {
+        for (Step step : steps) {
+            if (step.pause > 0) {
+                Thread.sleep(step.pause);
+            }
+            long start = System.nanoTime();
+            EventQueue.invokeAndWait(() -> step.action.accept(calendar));
+            // The events published by the step, and then the repaints they request
+            EventQueue.invokeAndWait(() -> { });
+            EventQueue.invokeAndWait(() -> { });
+            long nanos = System.nanoTime() - start;
+            if (histograms != null) {
+                histograms.computeIfAbsent(step.name, Histogram::new).record(nanos);
+                histograms.computeIfAbsent("all", Histogram::new).record(nanos);
+            }
+        }
+    }
+
+    /**
+     * Formats the percentiles of the histograms, in milliseconds.
+     */
+    static String report(Map<String, Histogram> histograms) {
+        StringBuilder report = new StringBuilder(String.format("%-14s %7s %9s %9s %9s %9s%n",
+                                                               "interaction", "count", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Histogram histogram : histograms.values()) {
+            report.append(String.format(Locale.ROOT, "%-14s %7d %9.2f %9.2f %9.2f %9.2f%n", histogram.getName(),
+                                        histogram.getCount(), histogram.getPercentile(50) / 1e6,
+                                        histogram.getPercentile(90) / 1e6, histogram.getPercentile(99) / 1e6,
+                                        histogram.getMaxMicros() / 1e3));
+        }
+        return report.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String script = DEFAULT_SCENARIO;
+        int iterations = 5;
+        int warmup = 1;
+        double maxP99 = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--events":
+                    case "--synthetic":
+                        if (value == null) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        System.setProperty(AppointmentRepositories.SYNTHETIC_PROPERTY, value);
+                        break;
+                    case "--scenario":
+                        script = new String(Files.readAllBytes(Paths.get(value)), StandardCharsets.UTF_8);
+                        break;
+                    case "--iterations":
+                        iterations = positive(value);
+                        break;
+                    case "--warmup":
+                        warmup = Integer.parseInt(value);
+                        break;
+                    case "--max-p99":
+                        maxP99 = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(args[i]);
+                }
+                i++;
+            }
+        } catch (IllegalArgumentException | NullPointerException | IOException e) {
+            System.err.println("Usage: ScenarioRunner [--events n | --synthetic spec] [--scenario file]"
+                               + " [--iterations n] [--warmup n] [--max-p99 ms]");
+            System.exit(2);
+        }
+        ScenarioRunner runner;
+        try {
+            runner = parse(script);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid scenario: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("The scenarios need a display; on a server run them under Xvfb or another virtual display");
+            System.exit(2);
+        }
+
+        Calendario.installLookAndFeel();
+        Calendario[] window = new Calendario[1];
+        long start = System.nanoTime();
+        EventQueue.invokeAndWait(() -> {
+            window[0] = new Calendario();
+            window[0].setVisible(true);
+        });
+        System.out.printf("Window opened in %d ms, %d steps per iteration%n",
+                          (System.nanoTime() - start) / 1_000_000, runner.getSteps().size());
+        Calendario calendar = window[0];
+
+        for (int i = 0; i < warmup; i++) {
+            runner.run(calendar, null);
+        }
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        histograms.put("all", new Histogram("all"));
+        for (int i = 0; i < iterations; i++) {
+            runner.run(calendar, histograms);
+        }
+        System.out.print(report(histograms));
+
+        int status = 0;
+        if (maxP99 > 0) {
+            for (Histogram histogram : histograms.values()) {
+                if (histogram.getPercentile(99) / 1e6 > maxP99) {
+                    System.err.printf(Locale.ROOT, "%s: p99 above %.2f ms%n", histogram.getName(), maxP99);
+                    status = 1;
+                }
+            }
+        }
+        // Close the window as the user would, releasing the repository
+        EventQueue.invokeAndWait(() -> {
+            calendar.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+            calendar.dispatchEvent(new WindowEvent(calendar, WindowEvent.WINDOW_CLOSING));
+        });
+        System.exit(status);
+    }
+}
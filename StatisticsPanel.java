@@ -0,0 +1,194 @@
+package dashboard;
+
+import javax.swing.*;
+
+import dashboard.i18n.Calendar_i18n;
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.Histogram;
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentStatistics;
+import dashboard.store.AppointmentStore;
+
+import java.awt.*;
+import java.text.MessageFormat;
+import java.time.YearMonth;
+import java.util.Calendar;
+
+/**
+ * Panel painting the appointment statistics as small bar charts:
+ * booked hours per category in the displayed month, booked hours per month
+ * of the displayed year and number of appointments per weekday in the
+ * displayed year. All the values are read from {@link AppointmentStatistics},
+ * so a repaint never scans the appointments; the window keeps the displayed
+ * year loaded, so that they cover all of it.
+ */
+public class StatisticsPanel extends JPanel implements AppointmentStore.Listener {
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 9);
+    private static final Color BAR_COLOR = Calendar_i18n.getColor("color.today_highlight_color");
+    private static final Color BAR_LIGHT_COLOR = new Color(153, 201, 239);
+    private static final Color WEEKEND_COLOR = Calendar_i18n.getColor("color.weekend_color_bg");
+    private static final int LINE_HEIGHT = 14;
+    private static final int CHART_HEIGHT = 40;
+    private static final Histogram RENDER_TIMES = CalendarMetrics.get().render("statistics");
+
+    private final AppointmentStatistics statistics;
+    private final Calendar calendar;
+
+    public StatisticsPanel(AppointmentStatistics statistics, Calendar calendar) {
+        this.statistics = statistics;
+        this.calendar = calendar;
+        setBorder(BorderFactory.createEmptyBorder(10, 5, 5, 5));
+        setPreferredSize(new Dimension(224, 250));
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        repaint();
+    }
+
+    @Override
+    public void appointmentRemoved(Appointment appointment) {
+        repaint();
+    }
+
+    @Override
+    public void appointmentUpdated(Appointment previous, Appointment current) {
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long started = System.nanoTime();
+        paintCharts(g);
+        RENDER_TIMES.recordSince(started);
+    }
+
+    private void paintCharts(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        Insets insets = getInsets();
+        int x = insets.left;
+        int width = getWidth() - insets.left - insets.right;
+        int y = insets.top;
+
+        YearMonth month = YearMonth.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
+
+        g2.setFont(TITLE_FONT);
+        g2.setColor(Color.BLACK);
+        g2.drawString(Calendar_i18n.getString("label.statistics"), x, y + LINE_HEIGHT - 2);
+        y += LINE_HEIGHT + 4;
+
+        y = paintCategoryBars(g2, x, y, width, month);
+        y = paintMonthBars(g2, x, y + 6, width, month.getYear());
+        paintWeekdayBars(g2, x, y + 6, width, month.getYear());
+
+        g2.dispose();
+    }
+
+    /**
+     * Booked hours per category in the displayed month, as horizontal bars.
+     */
+    private int paintCategoryBars(Graphics2D g2, int x, int y, int width, YearMonth month) {
+        g2.setFont(LABEL_FONT);
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString(MessageFormat.format(Calendar_i18n.getString("statistics.hours_per_category"),
+                Month.fromCalendarMonth(month.getMonthValue() - 1).getDisplayName()), x, y + LINE_HEIGHT - 4);
+        y += LINE_HEIGHT;
+
+        Category[] categories = Category.values();
+        long[] minutes = new long[categories.length];
+        long max = 1;
+        for (Category category : categories) {
+            minutes[category.ordinal()] = statistics.getMinutes(category, month, month);
+            max = Math.max(max, minutes[category.ordinal()]);
+        }
+
+        int labelWidth = 70;
+        int barWidth = width - labelWidth - 30;
+        FontMetrics metrics = g2.getFontMetrics();
+        for (Category category : categories) {
+            long value = minutes[category.ordinal()];
+            int length = (int) (barWidth * value / max);
+            g2.setColor(Color.DARK_GRAY);
+            g2.drawString(category.getDisplayName(), x, y + metrics.getAscent());
+            g2.setColor(category.getColor().darker());
+            g2.fillRect(x + labelWidth, y + 2, length, LINE_HEIGHT - 4);
+            g2.setColor(Color.DARK_GRAY);
+            g2.drawString(formatHours(value), x + labelWidth + length + 3, y + metrics.getAscent());
+            y += LINE_HEIGHT;
+        }
+        return y;
+    }
+
+    /**
+     * Booked hours per month of the displayed year, as vertical bars.
+     */
+    private int paintMonthBars(Graphics2D g2, int x, int y, int width, int year) {
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString(MessageFormat.format(Calendar_i18n.getString("statistics.hours_per_month"),
+                String.valueOf(year)), x, y + LINE_HEIGHT - 4);
+        y += LINE_HEIGHT;
+
+        long[] minutes = new long[12];
+        long max = 1;
+        for (int m = 0; m < 12; m++) {
+            YearMonth month = YearMonth.of(year, m + 1);
+            minutes[m] = statistics.getMinutes(null, month, month);
+            max = Math.max(max, minutes[m]);
+        }
+
+        int slot = width / 12;
+        FontMetrics metrics = g2.getFontMetrics();
+        for (int m = 0; m < 12; m++) {
+            int height = (int) (CHART_HEIGHT * minutes[m] / max);
+            g2.setColor(m == calendar.get(Calendar.MONTH) ? BAR_COLOR : BAR_LIGHT_COLOR);
+            g2.fillRect(x + m * slot + 1, y + CHART_HEIGHT - height, slot - 2, height);
+            String label = Month.fromCalendarMonth(m).getDisplayName().substring(0, 1);
+            g2.setColor(Color.DARK_GRAY);
+            g2.drawString(label, x + m * slot + (slot - metrics.stringWidth(label)) / 2,
+                    y + CHART_HEIGHT + metrics.getAscent());
+        }
+        return y + CHART_HEIGHT + LINE_HEIGHT;
+    }
+
+    /**
+     * Number of appointments per weekday in the displayed year, as vertical bars.
+     */
+    private int paintWeekdayBars(Graphics2D g2, int x, int y, int width, int year) {
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString(MessageFormat.format(Calendar_i18n.getString("statistics.appointments_per_weekday"),
+                String.valueOf(year)), x, y + LINE_HEIGHT - 4);
+        y += LINE_HEIGHT;
+
+        DayOfWeek[] days = DayOfWeek.values();
+        YearMonth first = YearMonth.of(year, 1);
+        YearMonth last = YearMonth.of(year, 12);
+        long[] counts = new long[days.length];
+        long max = 1;
+        for (DayOfWeek day : days) {
+            counts[day.ordinal()] = statistics.getCount(day, first, last);
+            max = Math.max(max, counts[day.ordinal()]);
+        }
+
+        int slot = width / days.length;
+        FontMetrics metrics = g2.getFontMetrics();
+        for (DayOfWeek day : days) {
+            int i = day.ordinal();
+            int height = (int) (CHART_HEIGHT * counts[i] / max);
+            g2.setColor(day.isWeekend() ? WEEKEND_COLOR : BAR_COLOR);
+            g2.fillRect(x + i * slot + 2, y + CHART_HEIGHT - height, slot - 4, height);
+            String label = day.getDisplayName().substring(0, 3);
+            g2.setColor(Color.DARK_GRAY);
+            g2.drawString(label, x + i * slot + (slot - metrics.stringWidth(label)) / 2,
+                    y + CHART_HEIGHT + metrics.getAscent());
+        }
+        return y + CHART_HEIGHT + LINE_HEIGHT;
+    }
+
+    private static String formatHours(long minutes) {
+        return minutes % 60 == 0 ? (minutes / 60) + "h" : String.format("%.1fh", minutes / 60.0);
+    }
+}
@@ -0,0 +1,514 @@
+package dashboard;
+
+import javax.swing.*;
+
+import dashboard.event.AppointmentEvent;
+import dashboard.event.CalendarEventBus;
+import dashboard.event.DayRange;
+import dashboard.event.FilterEvent;
+import dashboard.filter.AppointmentFilter;
+import dashboard.holiday.HolidayCalendar;
+import dashboard.i18n.Calendar_i18n;
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.Histogram;
+import dashboard.store.AppointmentStore;
+import dashboard.store.AppointmentView;
+import dashboard.store.RepositoryLoader;
+import dashboard.store.ZoneOffsetCache;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Continuous vertical view over weeks, from 1900 to 2199.
+ * Only the rows on screen plus a small buffer exist: they are kept in a ring
+ * indexed by week number and refilled, with one range query on the store, when
+ * a week scrolls in and takes the place of one that scrolled out. Painting
+ * reads the filled rows only, so scrolling costs a store query per new week
+ * and no layout at all.
+ * <p>
+ * Months are loaded into the store in chunks ahead of the scroll direction,
+ * on a background thread. Appointment events from the {@link CalendarEventBus},
+ * including the ones of those loads, refill only the rows of the weeks they
+ * touch and repaint only the cells of their days.
+ */
+public class WeekScrollView extends JPanel {
+    private static final Color WEEKEND_COLOR_BG = Calendar_i18n.getColor("color.weekend_color_bg");
+    private static final Color TODAY_HIGHLIGHT_COLOR = Calendar_i18n.getColor("color.today_highlight_color");
+    private static final Color HEADER_COLOR_BD = Calendar_i18n.getColor("color.header_color_bd");
+    private static final Color EMPTY_DAY_COLOR_BG = Calendar_i18n.getColor("color.empty_day_color_bg");
+
+    private static final Font HEADER_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font MONTH_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font DAY_FONT = new Font("Arial", Font.BOLD, 13);
+    private static final Font LINE_FONT = new Font("Arial", Font.PLAIN, 11);
+
+    private static final int ROW_HEIGHT = 110;
+    private static final int HEADER_HEIGHT = 44;
+    private static final Histogram RENDER_TIMES = CalendarMetrics.get().render("week");
+    private static final int LINE_HEIGHT = 15;
+    private static final int MAX_LINES = 5;
+    // Rows kept beyond the visible ones, above and below
+    private static final int BUFFER_ROWS = 3;
+    // Months loaded by each background request
+    private static final int PREFETCH_MONTHS = 3;
+    // Months remembered as requested; fewer than the months the loader keeps, so they are still loaded
+    private static final int REQUESTED_MONTHS = 18;
+    // 1900-01-01 was a Monday: weeks are counted from it
+    private static final long FIRST_MONDAY = LocalDate.of(1900, 1, 1).toEpochDay();
+    private static final int WEEK_COUNT = (int) ((LocalDate.of(2200, 1, 1).toEpochDay() - FIRST_MONDAY) / 7);
+    private static final DayOfWeek[] DAYS_OF_WEEK = DayOfWeek.values();
+    private static final String[] DAY_NUMBERS = new String[32];
+
+    static {
+        for (int day = 1; day < DAY_NUMBERS.length; day++) {
+            DAY_NUMBERS[day] = String.valueOf(day);
+        }
+    }
+
+    private final AppointmentStore store;
+    private final CalendarEventBus eventBus;
+    private final RepositoryLoader loader;
+    // Months of the visible weeks, kept in the store while this view shows them
+    private final RepositoryLoader.Pin visibleMonths;
+    private final ZoneOffsetCache offsets;
+    private final HolidayCalendar holidays;
+    private final Supplier<AppointmentFilter> filter;
+    private final Consumer<LocalDate> daySelected;
+
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final WeekCanvas canvas = new WeekCanvas();
+    // Ring of rows, indexed by week modulo its length; resized with the view
+    private WeekRow[] rows = new WeekRow[0];
+
+    // Prefetch state, used on the EDT only
+    private final Set<YearMonth> requestedMonths = new LinkedHashSet<>();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "week-view-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int lastScroll;
+    private boolean scrollingUp;
+    private final Consumer<AppointmentEvent> appointmentsChanged = this::appointmentsChanged;
+    private final Consumer<FilterEvent> filterChanged = event -> refresh();
+
+    // Header title of the first visible month, rebuilt only when that month changes
+    private int titleMonthKey = -1;
+    private String title = "";
+
+    /**
+     * Contents of one week: day numbers and the first appointments of each day.
+     */
+    private static final class WeekRow {
+        long week = -1;
+        final int[] dayOfMonth = new int[7];
+        final boolean[] special = new boolean[7];
+        final String[] holidayNames = new String[7];
+        final String[][] lines = new String[7][MAX_LINES];
+        final Color[][] colors = new Color[7][MAX_LINES];
+        final int[] lineCount = new int[7];
+        // "+N" label of the days with more appointments than lines
+        final String[] more = new String[7];
+    }
+
+    /**
+     * @param store Store read by the rows
+     * @param eventBus Bus delivering the changes of the store and of the filters
+     * @param loader Loader filling the store with the months scrolled to
+     * @param offsets Time zone days are computed in
+     * @param holidays Special days shown in red
+     * @param filter Filter of the appointments currently shown
+     * @param daySelected Receives the day clicked
+     */
+    public WeekScrollView(AppointmentStore store, CalendarEventBus eventBus, RepositoryLoader loader,
+                          ZoneOffsetCache offsets, HolidayCalendar holidays,
+                          Supplier<AppointmentFilter> filter, Consumer<LocalDate> daySelected) {
+        super(new BorderLayout());
+        this.store = store;
+        this.eventBus = eventBus;
+        this.loader = loader;
+        this.visibleMonths = loader.newPin();
+        this.offsets = offsets;
+        this.holidays = holidays;
+        this.filter = filter;
+        this.daySelected = daySelected;
+
+        scrollBar.setValues(0, 0, 0, WEEK_COUNT * ROW_HEIGHT);
+        scrollBar.setUnitIncrement(16);
+        scrollBar.setBlockIncrement(ROW_HEIGHT);
+        scrollBar.addAdjustmentListener(e -> scrolled());
+        canvas.addMouseWheelListener(e -> scrollBar.setValue(
+            scrollBar.getValue() + e.getUnitsToScroll() * scrollBar.getUnitIncrement()));
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                long day = dayAt(e.getX(), e.getY());
+                if (day != Long.MIN_VALUE) {
+                    daySelected.accept(LocalDate.ofEpochDay(day));
+                }
+            }
+        });
+        canvas.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateScrollBar();
+            }
+        });
+        ToolTipManager.sharedInstance().registerComponent(canvas);
+        add(canvas, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+        eventBus.subscribe(AppointmentEvent.class, appointmentsChanged);
+        eventBus.subscribe(FilterEvent.class, filterChanged);
+    }
+
+    /**
+     * Scrolls so that the week of the given date is the first visible one.
+     */
+    public void scrollTo(LocalDate date) {
+        int week = (int) Math.floorDiv(date.toEpochDay() - FIRST_MONDAY, 7);
+        scrollBar.setValue(Math.max(0, week) * ROW_HEIGHT);
+        canvas.repaint();
+    }
+
+    /**
+     * Refills every row, after the filters change.
+     */
+    public void refresh() {
+        invalidateRows();
+        canvas.repaint();
+    }
+
+    /**
+     * @return The days of the weeks held by the rows, on screen or just around it, or null if none is filled yet
+     */
+    public DayRange getLoadedDays() {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (WeekRow row : rows) {
+            if (row.week >= 0) {
+                first = Math.min(first, row.week);
+                last = Math.max(last, row.week);
+            }
+        }
+        return first > last ? null : DayRange.of(FIRST_MONDAY + first * 7, FIRST_MONDAY + last * 7 + 6);
+    }
+
+    /**
+     * Stops listening to the event bus and the background loads, and
+     * releases the months pinned.
+     */
+    public void dispose() {
+        eventBus.unsubscribe(AppointmentEvent.class, appointmentsChanged);
+        eventBus.unsubscribe(FilterEvent.class, filterChanged);
+        prefetcher.shutdownNow();
+        visibleMonths.release();
+    }
+
+    /**
+     * Marks the rows of the weeks touched by the change for refilling, and
+     * repaints the cells of the changed days that are on screen.
+     */
+    private void appointmentsChanged(AppointmentEvent event) {
+        int scroll = scrollBar.getValue();
+        int cellWidth = canvas.getWidth() / 7;
+        for (WeekRow row : rows) {
+            long monday = FIRST_MONDAY + row.week * 7;
+            if (row.week < 0 || !event.affects(monday, monday + 6)) {
+                continue;
+            }
+            row.week = -1;
+            long y = HEADER_HEIGHT + (monday - FIRST_MONDAY) / 7 * ROW_HEIGHT - scroll;
+            if (y + ROW_HEIGHT <= HEADER_HEIGHT || y >= canvas.getHeight()) {
+                continue;
+            }
+            for (int d = 0; d < 7; d++) {
+                if (event.affects(monday + d)) {
+                    canvas.repaint(d * cellWidth, (int) y, cellWidth, ROW_HEIGHT);
+                }
+            }
+        }
+    }
+
+    private void scrolled() {
+        int value = scrollBar.getValue();
+        if (value != lastScroll) {
+            scrollingUp = value < lastScroll;
+            lastScroll = value;
+        }
+        requestVisibleMonths();
+        canvas.repaint();
+    }
+
+    /**
+     * Pins and prefetches the months of the visible weeks. Called when the
+     * view scrolls or is resized, never while painting: pinning and loading
+     * change the store, whose listeners must not run inside a paint.
+     */
+    private void requestVisibleMonths() {
+        if (rows.length == 0) {
+            return;
+        }
+        int scroll = scrollBar.getValue();
+        long firstWeek = scroll / ROW_HEIGHT;
+        long lastWeek = Math.min(WEEK_COUNT - 1, (scroll + canvas.getHeight() - HEADER_HEIGHT) / ROW_HEIGHT);
+        prefetch(firstWeek, Math.max(firstWeek, lastWeek));
+    }
+
+    private void updateScrollBar() {
+        int viewHeight = Math.max(0, canvas.getHeight() - HEADER_HEIGHT);
+        scrollBar.setValues(scrollBar.getValue(), viewHeight, 0, WEEK_COUNT * ROW_HEIGHT);
+        int needed = viewHeight / ROW_HEIGHT + 2 + 2 * BUFFER_ROWS;
+        if (needed != rows.length) {
+            rows = new WeekRow[needed];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new WeekRow();
+            }
+        }
+        requestVisibleMonths();
+    }
+
+    private void invalidateRows() {
+        for (WeekRow row : rows) {
+            row.week = -1;
+        }
+    }
+
+    /**
+     * @return The row of the week, refilling the ring slot if it held another week
+     */
+    private WeekRow row(long week) {
+        WeekRow row = rows[(int) Math.floorMod(week, (long) rows.length)];
+        if (row.week != week) {
+            fill(row, week);
+        }
+        return row;
+    }
+
+    private void fill(WeekRow row, long week) {
+        row.week = week;
+        long monday = FIRST_MONDAY + week * 7;
+        HolidayCalendar.Year year = null;
+        LocalDate date = LocalDate.ofEpochDay(monday);
+        long[] dayStarts = new long[8];
+        for (int d = 0; d < 7; d++, date = date.plusDays(1)) {
+            if (year == null || year.getYear() != date.getYear()) {
+                year = holidays.getYear(date.getYear());
+            }
+            row.dayOfMonth[d] = date.getDayOfMonth();
+            row.special[d] = year.isSpecial(date.getDayOfYear());
+            row.holidayNames[d] = year.getName(date.getDayOfYear());
+            row.lineCount[d] = 0;
+            row.more[d] = null;
+            dayStarts[d] = offsets.startOfDay(monday + d);
+        }
+        dayStarts[7] = offsets.startOfDay(monday + 7);
+
+        AppointmentFilter shown = filter.get();
+        int[] hidden = new int[7];
+        int[] day = {0};
+        store.forEachInRange(dayStarts[0], dayStarts[7], view -> {
+            if (view.getStart() < dayStarts[0] || !shown.test(view)) {
+                return;
+            }
+            // Appointments come sorted by start, so the day only moves forward
+            while (view.getStart() >= dayStarts[day[0] + 1]) {
+                day[0]++;
+            }
+            int d = day[0];
+            if (row.lineCount[d] < MAX_LINES) {
+                row.lines[d][row.lineCount[d]] = line(view);
+                row.colors[d][row.lineCount[d]] = view.getCategory().getColor();
+                row.lineCount[d]++;
+            } else {
+                hidden[d]++;
+            }
+        });
+        for (int d = 0; d < 7; d++) {
+            if (hidden[d] > 0) {
+                row.more[d] = MessageFormat.format(Calendar_i18n.getString("week.more"), hidden[d]);
+            }
+        }
+    }
+
+    private String line(AppointmentView view) {
+        return Appuntamenti.formatTime(view, offsets) + " " + view.getTitle();
+    }
+
+    /**
+     * Pins the months of the visible weeks, and requests them and a chunk of
+     * months ahead of the scroll direction, that were not requested recently.
+     */
+    private void prefetch(long firstWeek, long lastWeek) {
+        YearMonth first = YearMonth.from(LocalDate.ofEpochDay(FIRST_MONDAY + firstWeek * 7));
+        YearMonth last = YearMonth.from(LocalDate.ofEpochDay(FIRST_MONDAY + lastWeek * 7 + 6));
+        visibleMonths.set(first, last);
+        if (requestedMonths.contains(first) && requestedMonths.contains(last)
+                && requestedMonths.contains(scrollingUp ? first.minusMonths(1) : last.plusMonths(1))) {
+            return;
+        }
+        // Visible months first, then the chunk ahead
+        YearMonth from = scrollingUp ? first.minusMonths(PREFETCH_MONTHS) : first;
+        YearMonth to = scrollingUp ? last : last.plusMonths(PREFETCH_MONTHS);
+        YearMonth[] months = new YearMonth[(int) (to.getYear() * 12L + to.getMonthValue()
+                                                  - from.getYear() * 12L - from.getMonthValue()) + 1];
+        for (int i = 0; i < months.length; i++) {
+            months[i] = scrollingUp ? to.minusMonths(i) : from.plusMonths(i);
+            requestedMonths.remove(months[i]);
+            requestedMonths.add(months[i]);
+        }
+        Iterator<YearMonth> eldest = requestedMonths.iterator();
+        while (requestedMonths.size() > REQUESTED_MONTHS) {
+            eldest.next();
+            eldest.remove();
+        }
+        prefetcher.execute(() -> {
+            for (YearMonth month : months) {
+                loader.ensureMonth(month);
+            }
+        });
+    }
+
+    /**
+     * @return The epoch day painted at the given point, or Long.MIN_VALUE
+     */
+    private long dayAt(int x, int y) {
+        if (y < HEADER_HEIGHT || rows.length == 0) {
+            return Long.MIN_VALUE;
+        }
+        int cellWidth = canvas.getWidth() / 7;
+        int column = Math.min(6, x / Math.max(1, cellWidth));
+        long week = (scrollBar.getValue() + y - HEADER_HEIGHT) / ROW_HEIGHT;
+        return week < WEEK_COUNT ? FIRST_MONDAY + week * 7 + column : Long.MIN_VALUE;
+    }
+
+    /**
+     * Paints the header and the visible rows; allocates only when a row is refilled.
+     */
+    private final class WeekCanvas extends JComponent {
+        // Reused by every paint to read the clip
+        private final Rectangle clip = new Rectangle();
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            long day = dayAt(e.getX(), e.getY());
+            if (day == Long.MIN_VALUE) {
+                return null;
+            }
+            long week = Math.floorDiv(day - FIRST_MONDAY, 7);
+            return row(week).holidayNames[(int) (day - FIRST_MONDAY - week * 7)];
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            long started = System.nanoTime();
+            paintWeeks(g);
+            RENDER_TIMES.recordSince(started);
+        }
+
+        private void paintWeeks(Graphics g) {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            if (rows.length == 0) {
+                return;
+            }
+            int scroll = scrollBar.getValue();
+            int cellWidth = getWidth() / 7;
+            long firstWeek = scroll / ROW_HEIGHT;
+            long lastWeek = Math.min(WEEK_COUNT - 1, (scroll + getHeight() - HEADER_HEIGHT) / ROW_HEIGHT);
+            long today = offsets.getEpochDay(System.currentTimeMillis() / 60_000);
+
+            // Rows outside the clip, as when a single cell changed, are neither refilled nor painted
+            clip.setBounds(0, 0, getWidth(), getHeight());
+            g.getClipBounds(clip);
+            Graphics rowsGraphics = g.create(0, HEADER_HEIGHT, getWidth(), getHeight() - HEADER_HEIGHT);
+            try {
+                for (long week = firstWeek; week <= lastWeek; week++) {
+                    int y = (int) (week * ROW_HEIGHT - scroll);
+                    if (HEADER_HEIGHT + y < clip.y + clip.height && HEADER_HEIGHT + y + ROW_HEIGHT > clip.y) {
+                        paintRow(rowsGraphics, row(week), y, cellWidth, today);
+                    }
+                }
+            } finally {
+                rowsGraphics.dispose();
+            }
+            if (clip.y < HEADER_HEIGHT) {
+                paintHeader(g, firstWeek, cellWidth);
+            }
+        }
+
+        private void paintHeader(Graphics g, long firstWeek, int cellWidth) {
+            g.setColor(getBackground() != null ? getBackground() : Color.WHITE);
+            g.fillRect(0, 0, getWidth(), HEADER_HEIGHT);
+            // Month of the first visible Thursday, the day that decides which month a week belongs to
+            long thursday = FIRST_MONDAY + firstWeek * 7 + 3;
+            int monthKey = ZoneOffsetCache.monthKeyOfDay(thursday);
+            if (monthKey != titleMonthKey) {
+                title = Month.fromCalendarMonth(monthKey % 12).getDisplayName() + " " + monthKey / 12;
+                titleMonthKey = monthKey;
+            }
+            g.setFont(MONTH_FONT);
+            g.setColor(Color.BLACK);
+            g.drawString(title, 5, 18);
+            g.setFont(HEADER_FONT);
+            FontMetrics metrics = g.getFontMetrics();
+            for (int d = 0; d < 7; d++) {
+                String name = DAYS_OF_WEEK[d].getDisplayName();
+                g.setColor(DAYS_OF_WEEK[d].isWeekend() ? WEEKEND_COLOR_BG : Color.BLACK);
+                g.drawString(name, d * cellWidth + (cellWidth - metrics.stringWidth(name)) / 2, HEADER_HEIGHT - 8);
+            }
+            g.setColor(HEADER_COLOR_BD);
+            g.drawLine(0, HEADER_HEIGHT - 1, getWidth(), HEADER_HEIGHT - 1);
+        }
+
+        private void paintRow(Graphics g, WeekRow row, int y, int cellWidth, long today) {
+            long monday = FIRST_MONDAY + row.week * 7;
+            Shape clip = g.getClip();
+            for (int d = 0; d < 7; d++) {
+                int x = d * cellWidth;
+                // Long titles are cut at the cell border
+                g.setClip(clip);
+                g.clipRect(x, y, cellWidth, ROW_HEIGHT);
+                // Alternate months get a tinted background, so month boundaries stand out
+                boolean oddMonth = ZoneOffsetCache.monthKeyOfDay(monday + d) % 2 != 0;
+                g.setColor(oddMonth ? EMPTY_DAY_COLOR_BG : Color.WHITE);
+                g.fillRect(x, y, cellWidth, ROW_HEIGHT);
+                g.setColor(HEADER_COLOR_BD);
+                g.drawRect(x, y, cellWidth - 1, ROW_HEIGHT - 1);
+                if (monday + d == today) {
+                    g.setColor(TODAY_HIGHLIGHT_COLOR);
+                    g.drawRect(x + 1, y + 1, cellWidth - 3, ROW_HEIGHT - 3);
+                }
+
+                g.setFont(DAY_FONT);
+                g.setColor(row.special[d] ? WEEKEND_COLOR_BG : Color.BLACK);
+                g.drawString(DAY_NUMBERS[row.dayOfMonth[d]], x + 5, y + 16);
+
+                g.setFont(LINE_FONT);
+                int lineY = y + 20;
+                for (int i = 0; i < row.lineCount[d]; i++) {
+                    g.setColor(row.colors[d][i]);
+                    g.fillRect(x + 4, lineY + 2, 3, LINE_HEIGHT - 4);
+                    g.setColor(Color.BLACK);
+                    g.drawString(row.lines[d][i], x + 10, lineY + LINE_HEIGHT - 3);
+                    lineY += LINE_HEIGHT;
+                }
+                if (row.more[d] != null) {
+                    g.setColor(Color.GRAY);
+                    g.drawString(row.more[d], x + 10, lineY + LINE_HEIGHT - 3);
+                }
+            }
+            g.setClip(clip);
+        }
+    }
+}
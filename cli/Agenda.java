@@ -0,0 +1,303 @@
+package dashboard.cli;
+
+import java.text.MessageFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import dashboard.DayOfWeek;
+import dashboard.Month;
+import dashboard.filter.AppointmentFilter;
+import dashboard.filter.FilterQuery;
+import dashboard.filter.SavedFilters;
+import dashboard.i18n.Calendar_i18n;
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentRepositories;
+import dashboard.store.AppointmentRepository;
+import dashboard.store.AppointmentStore;
+import dashboard.store.RepositoryException;
+import dashboard.store.RepositoryLoader;
+import dashboard.store.ZoneOffsetCache;
+
+/**
+ * Command line agenda, for scripts and scheduled jobs:
+ * <pre>
+ * java -cp bin dashboard.cli.Agenda --agenda today [--days 7]
+ * java -cp bin dashboard.cli.Agenda --month 2026-11 --json
+ * java -cp bin dashboard.cli.Agenda --search riunione [--from 2026-01-01] [--to 2026-12-31]
+ * java -cp bin dashboard.cli.Agenda --month 2026-11 --filter "category:meeting AND duration&gt;30m"
+ * </pre>
+ * The agenda reads the repository configured by the same system properties
+ * as the calendar window, loading only the months of the requested range,
+ * and prints text or JSON. Filters use the query language of
+ * {@link FilterQuery}, given on the command line or saved from the window. It never touches AWT or Swing, so it starts in
+ * the time the JVM takes to read the data.
+ * <p>
+ * The exit status is 0 on success, 1 if the repository cannot be read and
+ * 2 for wrong arguments.
+ */
+public final class Agenda {
+    private static final String DISPLAY_ZONE_PROPERTY = "calendario.zone";
+    // Search range when not given: one year before and after today
+    private static final int SEARCH_YEARS = 1;
+
+    private final AppointmentStore store = new AppointmentStore("agenda");
+    private final RepositoryLoader loader;
+    private final ZoneOffsetCache offsets;
+
+    /**
+     * The options of one invocation.
+     */
+    static final class Options {
+        LocalDate from;
+        LocalDate to;
+        String search;
+        AppointmentFilter filter = AppointmentFilter.ALL;
+        boolean json;
+        ZoneId zone;
+    }
+
+    Agenda(AppointmentRepository repository, ZoneId zone) {
+        this.loader = new RepositoryLoader(repository, store, zone);
+        this.offsets = ZoneOffsetCache.of(zone);
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Calendar_i18n.getString("cli.usage"));
+            System.exit(2);
+            return;
+        }
+        if (options == null) {
+            System.out.println(Calendar_i18n.getString("cli.usage"));
+            return;
+        }
+        AppointmentRepository repository = null;
+        try {
+            // Read only: the window may be writing the same folder
+            repository = AppointmentRepositories.fromSystemProperties(options.zone, true);
+            System.out.print(new Agenda(repository, options.zone).run(options));
+            System.out.flush();
+        } catch (RepositoryException | IllegalArgumentException e) {
+            System.err.println(MessageFormat.format(Calendar_i18n.getString("cli.error"), e.getMessage()));
+            System.exit(1);
+        } finally {
+            if (repository != null) {
+                repository.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the command line.
+     *
+     * @return The options, or null if only the usage is requested
+     * @throws IllegalArgumentException If an argument is not valid
+     * @throws DateTimeException If a date or the zone is not valid
+     */
+    static Options parse(String[] args) {
+        Options options = new Options();
+        String zone = System.getProperty(DISPLAY_ZONE_PROPERTY);
+        options.zone = zone == null || zone.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(zone);
+        String agenda = null;
+        String month = null;
+        int days = 1;
+        LocalDate from = null;
+        LocalDate to = null;
+        String query = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--agenda":
+                    agenda = value(args, ++i);
+                    break;
+                case "--days":
+                    try {
+                        days = Integer.parseInt(value(args, ++i));
+                    } catch (NumberFormatException e) {
+                        days = 0;
+                    }
+                    if (days < 1) {
+                        throw invalid(args[i]);
+                    }
+                    break;
+                case "--month":
+                    month = value(args, ++i);
+                    break;
+                case "--search":
+                    options.search = value(args, ++i);
+                    break;
+                case "--filter":
+                    query = value(args, ++i);
+                    break;
+                case "--saved":
+                    query = new SavedFilters().get(value(args, ++i));
+                    if (query == null) {
+                        throw invalid(args[i]);
+                    }
+                    break;
+                case "--from":
+                    from = LocalDate.parse(value(args, ++i));
+                    break;
+                case "--to":
+                    to = LocalDate.parse(value(args, ++i));
+                    break;
+                case "--zone":
+                    options.zone = ZoneId.of(value(args, ++i));
+                    break;
+                case "--json":
+                    options.json = true;
+                    break;
+                case "--help":
+                    return null;
+                default:
+                    throw invalid(args[i]);
+            }
+        }
+        if (query != null) {
+            options.filter = FilterQuery.compile(query, ZoneOffsetCache.of(options.zone));
+        }
+        LocalDate today = LocalDate.now(options.zone);
+        if (agenda != null) {
+            options.from = "today".equals(agenda) ? today
+                         : "tomorrow".equals(agenda) ? today.plusDays(1) : LocalDate.parse(agenda);
+            options.to = options.from.plusDays(days - 1);
+        } else if (month != null) {
+            YearMonth yearMonth = YearMonth.parse(month);
+            options.from = yearMonth.atDay(1);
+            options.to = yearMonth.atEndOfMonth();
+        } else if (options.search != null || query != null) {
+            options.from = from != null ? from : today.minusYears(SEARCH_YEARS);
+            options.to = to != null ? to : today.plusYears(SEARCH_YEARS);
+        } else {
+            return null;
+        }
+        if (options.to.isBefore(options.from)) {
+            throw invalid(options.to.toString());
+        }
+        return options;
+    }
+
+    /**
+     * Loads the months of the range and prints the appointments overlapping it.
+     */
+    String run(Options options) {
+        loader.ensureRange(options.from, options.to);
+        long from = offsets.startOfDay(options.from);
+        long to = offsets.startOfDay(options.to.plusDays(1));
+        AppointmentFilter filter = options.search == null ? options.filter
+            : AppointmentFilter.and(AppointmentFilter.titleContains(options.search), options.filter);
+        List<Appointment> appointments = new ArrayList<>();
+        for (Appointment appointment : store.query(from, to)) {
+            if (filter.test(appointment)) {
+                appointments.add(appointment);
+            }
+        }
+        return options.json ? toJson(options, appointments) : toText(options, appointments);
+    }
+
+    private String toText(Options options, List<Appointment> appointments) {
+        StringBuilder out = new StringBuilder(64 + appointments.size() * 48);
+        if (appointments.isEmpty()) {
+            return out.append(Calendar_i18n.getString("cli.no_appointments")).append('\n').toString();
+        }
+        long day = Long.MIN_VALUE;
+        for (Appointment appointment : appointments) {
+            // Appointments begun before the range are listed on its first day
+            long startDay = Math.max(offsets.getEpochDay(appointment.getStart()), options.from.toEpochDay());
+            if (startDay != day) {
+                day = startDay;
+                LocalDate date = LocalDate.ofEpochDay(day);
+                out.append(DayOfWeek.values()[date.getDayOfWeek().ordinal()].getDisplayName()).append(' ')
+                   .append(date.getDayOfMonth()).append(' ')
+                   .append(Month.fromCalendarMonth(date.getMonthValue() - 1).getDisplayName()).append(' ')
+                   .append(date.getYear()).append('\n');
+            }
+            out.append("  ").append(localTime(appointment.getStart())).append('-').append(localTime(appointment.getEnd()))
+               .append("  ").append(appointment.getCategory().getDisplayName())
+               .append("  ").append(appointment.getTitle()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private String toJson(Options options, List<Appointment> appointments) {
+        StringBuilder out = new StringBuilder(64 + appointments.size() * 160);
+        out.append("{\"from\":\"").append(options.from).append("\",\"to\":\"").append(options.to)
+           .append("\",\"zone\":\"").append(options.zone.getId()).append("\",\"appointments\":[");
+        for (int i = 0; i < appointments.size(); i++) {
+            Appointment appointment = appointments.get(i);
+            out.append(i == 0 ? "\n" : ",\n").append("{\"id\":").append(appointment.getId())
+               .append(",\"start\":\"").append(localDateTime(appointment.getStart()))
+               .append("\",\"end\":\"").append(localDateTime(appointment.getEnd()))
+               .append("\",\"duration\":").append(appointment.getDuration())
+               .append(",\"title\":");
+            appendJsonString(out, appointment.getTitle());
+            out.append(",\"category\":\"").append(appointment.getCategory().name().toLowerCase(Locale.ROOT)).append('"');
+            if (appointment.getZone() != null) {
+                out.append(",\"zone\":\"").append(appointment.getZone().getId()).append('"');
+            }
+            out.append('}');
+        }
+        return out.append(appointments.isEmpty() ? "]}\n" : "\n]}\n").toString();
+    }
+
+    private String localTime(long epochMinute) {
+        int minuteOfDay = offsets.getMinuteOfDay(epochMinute);
+        return String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    private LocalDateTime localDateTime(long epochMinute) {
+        return LocalDateTime.ofEpochSecond(offsets.toLocalMinute(epochMinute) * 60, 0, ZoneOffset.UTC);
+    }
+
+    private static void appendJsonString(StringBuilder out, String text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw invalid(args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static IllegalArgumentException invalid(String argument) {
+        return new IllegalArgumentException(MessageFormat.format(Calendar_i18n.getString("cli.invalid_argument"), argument));
+    }
+}
@@ -0,0 +1,71 @@
+package dashboard.event;
+
+import dashboard.store.Appointment;
+
+/**
+ * An appointment was added, removed or changed in the store. The affected
+ * days are the ones the appointment covers, before and after the change.
+ */
+public abstract class AppointmentEvent extends CalendarEvent {
+
+    AppointmentEvent(DayRange... ranges) {
+        super(ranges);
+    }
+
+    /**
+     * @return The appointment after the change, or the removed one
+     */
+    public abstract Appointment getAppointment();
+
+    public static final class Added extends AppointmentEvent {
+        private final Appointment appointment;
+
+        public Added(Appointment appointment, DayRange days) {
+            super(days);
+            this.appointment = appointment;
+        }
+
+        @Override
+        public Appointment getAppointment() {
+            return appointment;
+        }
+    }
+
+    public static final class Removed extends AppointmentEvent {
+        private final Appointment appointment;
+
+        public Removed(Appointment appointment, DayRange days) {
+            super(days);
+            this.appointment = appointment;
+        }
+
+        @Override
+        public Appointment getAppointment() {
+            return appointment;
+        }
+    }
+
+    public static final class Updated extends AppointmentEvent {
+        private final Appointment previous;
+        private final Appointment current;
+
+        /**
+         * @param previousDays Days of the previous version
+         * @param currentDays Days of the new version; the same range is given once
+         */
+        public Updated(Appointment previous, Appointment current, DayRange previousDays, DayRange currentDays) {
+            super(previousDays.equals(currentDays) ? new DayRange[] {currentDays} : new DayRange[] {previousDays, currentDays});
+            this.previous = previous;
+            this.current = current;
+        }
+
+        public Appointment getPrevious() {
+            return previous;
+        }
+
+        @Override
+        public Appointment getAppointment() {
+            return current;
+        }
+    }
+}
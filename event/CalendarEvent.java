@@ -0,0 +1,54 @@
+package dashboard.event;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A change published on the {@link CalendarEventBus}.
+ * Every event carries the days it affects, so that a view can update only
+ * the cells of those days, or nothing when none of them is on screen.
+ */
+public abstract class CalendarEvent {
+    private final List<DayRange> ranges;
+
+    protected CalendarEvent(DayRange... ranges) {
+        this.ranges = Collections.unmodifiableList(Arrays.asList(ranges));
+    }
+
+    /**
+     * @return The ranges of days affected by the change
+     */
+    public List<DayRange> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * @return true if the change affects the given epoch day
+     */
+    public boolean affects(long epochDay) {
+        for (DayRange range : ranges) {
+            if (range.contains(epochDay)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the change affects a day of [from, to]
+     */
+    public boolean affects(long from, long to) {
+        for (DayRange range : ranges) {
+            if (range.overlaps(from, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + ranges;
+    }
+}
@@ -0,0 +1,125 @@
+package dashboard.event;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentStore;
+import dashboard.store.ZoneOffsetCache;
+
+/**
+ * Typed publish/subscribe channel between the calendar and its views.
+ * <p>
+ * Subscribers register for an event class and receive the events of that
+ * class and of its subclasses, always on the EDT and in publishing order.
+ * Events published on the EDT are delivered at once; events published on
+ * other threads, such as the changes of a background sync, are queued and
+ * delivered together by a single task on the EDT.
+ * <p>
+ * {@link #connect(AppointmentStore, ZoneOffsetCache)} turns the changes of
+ * a store into {@link AppointmentEvent}s carrying the days of the appointment.
+ */
+public class CalendarEventBus {
+    private final Map<Class<?>, List<Consumer<? super CalendarEvent>>> subscribers = new ConcurrentHashMap<>();
+    private final Queue<CalendarEvent> pending = new ConcurrentLinkedQueue<>();
+    // Set while a task delivering the queued events is scheduled on the EDT
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /**
+     * Registers a subscriber for the events of a class and of its subclasses.
+     *
+     * @param type The event class
+     * @param subscriber Called on the EDT with each event
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends CalendarEvent> void subscribe(Class<T> type, Consumer<? super T> subscriber) {
+        subscribers.computeIfAbsent(type, key -> new CopyOnWriteArrayList<>())
+                   .add((Consumer<? super CalendarEvent>) subscriber);
+    }
+
+    public <T extends CalendarEvent> void unsubscribe(Class<T> type, Consumer<? super T> subscriber) {
+        List<Consumer<? super CalendarEvent>> list = subscribers.get(type);
+        if (list != null) {
+            list.remove(subscriber);
+        }
+    }
+
+    /**
+     * Publishes an event, from any thread.
+     */
+    public void publish(CalendarEvent event) {
+        if (SwingUtilities.isEventDispatchThread() && pending.isEmpty()) {
+            deliver(event);
+            return;
+        }
+        // Queued behind the events still waiting, so the order is kept
+        pending.add(event);
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    /**
+     * Publishes the changes of a store as {@link AppointmentEvent}s.
+     *
+     * @param store The store to observe
+     * @param offsets Time zone the days of the appointments are computed in
+     * @return The store listener, to remove with {@link AppointmentStore#removeListener}
+     */
+    public AppointmentStore.Listener connect(AppointmentStore store, ZoneOffsetCache offsets) {
+        AppointmentStore.Listener listener = new AppointmentStore.Listener() {
+            @Override
+            public void appointmentAdded(Appointment appointment) {
+                publish(new AppointmentEvent.Added(appointment, days(appointment, offsets)));
+            }
+
+            @Override
+            public void appointmentRemoved(Appointment appointment) {
+                publish(new AppointmentEvent.Removed(appointment, days(appointment, offsets)));
+            }
+
+            @Override
+            public void appointmentUpdated(Appointment previous, Appointment current) {
+                publish(new AppointmentEvent.Updated(previous, current, days(previous, offsets), days(current, offsets)));
+            }
+        };
+        store.addListener(listener);
+        return listener;
+    }
+
+    /**
+     * @return The days from the start of the appointment to the day of its last minute
+     */
+    public static DayRange days(Appointment appointment, ZoneOffsetCache offsets) {
+        long first = offsets.getEpochDay(appointment.getStart());
+        long last = offsets.getEpochDay(Math.max(appointment.getStart(), appointment.getEnd() - 1));
+        return DayRange.of(first, last);
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        CalendarEvent event;
+        while ((event = pending.poll()) != null) {
+            deliver(event);
+        }
+    }
+
+    private void deliver(CalendarEvent event) {
+        for (Class<?> type = event.getClass(); type != Object.class; type = type.getSuperclass()) {
+            List<Consumer<? super CalendarEvent>> list = subscribers.get(type);
+            if (list != null) {
+                for (Consumer<? super CalendarEvent> subscriber : list) {
+                    subscriber.accept(event);
+                }
+            }
+        }
+    }
+}
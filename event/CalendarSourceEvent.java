@@ -0,0 +1,20 @@
+package dashboard.event;
+
+import dashboard.store.CalendarAggregator;
+
+/**
+ * One of the aggregated calendars changed what it shows: it was shown or
+ * hidden, it fetched the appointments of some days, or its file changed.
+ */
+public final class CalendarSourceEvent extends CalendarEvent {
+    private final CalendarAggregator.Source source;
+
+    public CalendarSourceEvent(CalendarAggregator.Source source, DayRange... days) {
+        super(days);
+        this.source = source;
+    }
+
+    public CalendarAggregator.Source getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,87 @@
+package dashboard.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inclusive range of days, as epoch days, touched by a {@link CalendarEvent}.
+ */
+public final class DayRange {
+    /** Every day: the change affects the whole calendar. */
+    public static final DayRange ALL = new DayRange(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    private final long first;
+    private final long last;
+
+    private DayRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * @param first First epoch day
+     * @param last Last epoch day, inclusive
+     * @throws IllegalArgumentException if last is before first
+     */
+    public static DayRange of(long first, long last) {
+        if (last < first) {
+            throw new IllegalArgumentException("Empty day range: " + first + " > " + last);
+        }
+        return new DayRange(first, last);
+    }
+
+    public static DayRange ofDay(long epochDay) {
+        return new DayRange(epochDay, epochDay);
+    }
+
+    /**
+     * @param epochDays Sorted epoch days, without repetitions
+     * @return One range per run of consecutive days
+     */
+    public static DayRange[] ofDays(long... epochDays) {
+        List<DayRange> ranges = new ArrayList<>();
+        for (int i = 0; i < epochDays.length; ) {
+            int last = i;
+            while (last + 1 < epochDays.length && epochDays[last + 1] == epochDays[last] + 1) {
+                last++;
+            }
+            ranges.add(new DayRange(epochDays[i], epochDays[last]));
+            i = last + 1;
+        }
+        return ranges.toArray(new DayRange[0]);
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public boolean contains(long epochDay) {
+        return epochDay >= first && epochDay <= last;
+    }
+
+    /**
+     * @return true if the range shares a day with [from, to]
+     */
+    public boolean overlaps(long from, long to) {
+        return first <= to && last >= from;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof DayRange && ((DayRange) other).first == first && ((DayRange) other).last == last;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(first) * 31 + Long.hashCode(last);
+    }
+
+    @Override
+    public String toString() {
+        return this == ALL ? "[all]" : "[" + first + ".." + last + "]";
+    }
+}
@@ -0,0 +1,23 @@
+package dashboard.event;
+
+import dashboard.filter.AppointmentFilter;
+
+/**
+ * The filter of the appointments shown changed. Every day may show
+ * different appointments, so the event affects all of them.
+ */
+public final class FilterEvent extends CalendarEvent {
+    private final AppointmentFilter filter;
+
+    public FilterEvent(AppointmentFilter filter) {
+        super(DayRange.ALL);
+        this.filter = filter;
+    }
+
+    /**
+     * @return The filter now applied, categories and query together
+     */
+    public AppointmentFilter getFilter() {
+        return filter;
+    }
+}
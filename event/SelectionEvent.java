@@ -0,0 +1,34 @@
+package dashboard.event;
+
+import java.time.LocalDate;
+
+/**
+ * The selected day changed, by navigation or by a click. The affected days
+ * are the previous and the new selection.
+ */
+public final class SelectionEvent extends CalendarEvent {
+    private final LocalDate previous;
+    private final LocalDate current;
+
+    public SelectionEvent(LocalDate previous, LocalDate current) {
+        super(previous.equals(current) ? new DayRange[] {DayRange.ofDay(current.toEpochDay())}
+              : new DayRange[] {DayRange.ofDay(previous.toEpochDay()), DayRange.ofDay(current.toEpochDay())});
+        this.previous = previous;
+        this.current = current;
+    }
+
+    public LocalDate getPrevious() {
+        return previous;
+    }
+
+    public LocalDate getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return true if the new selection is in a different month, so month views show other days
+     */
+    public boolean isMonthChanged() {
+        return previous.getYear() != current.getYear() || previous.getMonthValue() != current.getMonthValue();
+    }
+}
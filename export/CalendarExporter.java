@@ -0,0 +1,181 @@
+package dashboard.export;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Printable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Prints and exports months rendered by a {@link MonthPageRenderer}.
+ * Exports render each month in parallel on a fork-join pool and stream the
+ * encoded pages to the output in order; at most a few pages are in flight
+ * at any time, so a whole year never sits in memory as raw images.
+ * All methods block and must be called outside the EDT.
+ */
+public class CalendarExporter {
+    // A4 landscape, in points, rendered at 150 dpi
+    private static final double PAGE_WIDTH = 842;
+    private static final double PAGE_HEIGHT = 595;
+    private static final int IMAGE_WIDTH = 1754;
+    private static final int IMAGE_HEIGHT = 1240;
+    private static final float JPEG_QUALITY = 0.9f;
+
+    private final MonthPageRenderer renderer;
+    private final ForkJoinPool pool;
+
+    public CalendarExporter(MonthPageRenderer renderer) {
+        this(renderer, ForkJoinPool.commonPool());
+    }
+
+    public CalendarExporter(MonthPageRenderer renderer, ForkJoinPool pool) {
+        this.renderer = renderer;
+        this.pool = pool;
+    }
+
+    /**
+     * @return The twelve months of a year
+     */
+    public static List<YearMonth> monthsOf(int year) {
+        List<YearMonth> months = new ArrayList<>(12);
+        for (int m = 1; m <= 12; m++) {
+            months.add(YearMonth.of(year, m));
+        }
+        return months;
+    }
+
+    /**
+     * Exports the months as PNG images.
+     * A single month is written to the target file; several months are
+     * written next to it, one file per month with a "-yyyy-MM" suffix.
+     *
+     * @param months The months to export
+     * @param target The target file
+     * @return The written files
+     */
+    public List<File> exportPng(List<YearMonth> months, File target) throws IOException {
+        List<File> files = new ArrayList<>(months.size());
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(months.size());
+        for (YearMonth month : months) {
+            File file = months.size() == 1 ? target : fileForMonth(target, month);
+            files.add(file);
+            // Each task renders, encodes and releases its own image
+            tasks.add(pool.submit(() -> {
+                try {
+                    ImageIO.write(renderer.render(month, IMAGE_WIDTH, IMAGE_HEIGHT), "png", file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return files;
+    }
+
+    /**
+     * Exports the months as a PDF document, one page per month.
+     *
+     * @param months The months to export
+     * @param target The target file
+     */
+    public void exportPdf(List<YearMonth> months, File target) throws IOException {
+        try (OutputStream out = new FileOutputStream(target)) {
+            exportPdf(months, out);
+        }
+    }
+
+    /**
+     * Writes the months as a PDF document on a stream, one page per month.
+     */
+    public void exportPdf(List<YearMonth> months, OutputStream out) throws IOException {
+        int window = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+        int next = 0;
+        try (PdfWriter pdf = new PdfWriter(out)) {
+            while (next < months.size() || !pending.isEmpty()) {
+                // Keep a bounded number of pages rendering ahead of the writer
+                while (next < months.size() && pending.size() < window) {
+                    YearMonth month = months.get(next++);
+                    pending.add(pool.submit(() -> encodeJpeg(renderer.render(month, IMAGE_WIDTH, IMAGE_HEIGHT))));
+                }
+                byte[] jpeg;
+                try {
+                    jpeg = pending.poll().join();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                pdf.addJpegPage(jpeg, IMAGE_WIDTH, IMAGE_HEIGHT, PAGE_WIDTH, PAGE_HEIGHT);
+            }
+        } finally {
+            for (ForkJoinTask<byte[]> task : pending) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Creates a printable with one page per month, painted directly on the
+     * printer graphics at the printer resolution.
+     */
+    public Printable createPrintable(List<YearMonth> months) {
+        return (Graphics graphics, PageFormat format, int pageIndex) -> {
+            if (pageIndex >= months.size()) {
+                return Printable.NO_SUCH_PAGE;
+            }
+            renderer.paint((Graphics2D) graphics, months.get(pageIndex), new Rectangle2D.Double(
+                    format.getImageableX(), format.getImageableY(),
+                    format.getImageableWidth(), format.getImageableHeight()));
+            return Printable.PAGE_EXISTS;
+        };
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image) {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * 1024);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static File fileForMonth(File target, YearMonth month) {
+        String name = target.getName();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        return new File(target.getAbsoluteFile().getParentFile(), stem + "-" + month + ".png");
+    }
+}
@@ -0,0 +1,188 @@
+package dashboard.export;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+
+import dashboard.Appuntamenti;
+import dashboard.Category;
+import dashboard.DayOfWeek;
+import dashboard.Month;
+import dashboard.filter.AppointmentFilter;
+import dashboard.i18n.Calendar_i18n;
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentStore;
+import dashboard.store.ZoneOffsetCache;
+
+/**
+ * Paints a month page (title, weekday headers and a 6x7 grid with the
+ * appointments of each day) on any Graphics2D.
+ * It uses no Swing component, so pages can be painted off-screen and from
+ * any thread, either on a printer graphics or on an image.
+ */
+public class MonthPageRenderer {
+    private static final Color WEEKEND_COLOR = Calendar_i18n.getColor("color.weekend_color_bg");
+    private static final Color HEADER_COLOR_BD = Calendar_i18n.getColor("color.header_color_bd");
+    private static final Color EMPTY_DAY_COLOR_BG = Calendar_i18n.getColor("color.empty_day_color_bg");
+
+    private final AppointmentStore store;
+    private final ZoneOffsetCache offsets;
+    private final AppointmentFilter filter;
+
+    /**
+     * Creates a renderer.
+     *
+     * @param store The store the appointments are read from
+     * @param zone Time zone used to place appointments on days
+     * @param categories Categories to print, the others are skipped
+     */
+    public MonthPageRenderer(AppointmentStore store, ZoneId zone, Set<Category> categories) {
+        this(store, zone, AppointmentFilter.categories(categories));
+    }
+
+    /**
+     * Creates a renderer.
+     *
+     * @param store The store the appointments are read from
+     * @param zone Time zone used to place appointments on days
+     * @param filter Filter of the appointments to print
+     */
+    public MonthPageRenderer(AppointmentStore store, ZoneId zone, AppointmentFilter filter) {
+        this.store = store;
+        this.offsets = ZoneOffsetCache.of(zone);
+        this.filter = filter;
+    }
+
+    /**
+     * Renders a month on a new RGB image.
+     *
+     * @param month The month to render
+     * @param width Image width in pixels
+     * @param height Image height in pixels
+     * @return The rendered page
+     */
+    public BufferedImage render(YearMonth month, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            paint(g, month, new Rectangle2D.Double(0, 0, width, height));
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Paints a month inside the given area.
+     *
+     * @param g The graphics to paint on
+     * @param month The month to paint
+     * @param area The area, in the units of the graphics
+     */
+    public void paint(Graphics2D g, YearMonth month, Rectangle2D area) {
+        double margin = area.getHeight() * 0.04;
+        double x = area.getX() + margin;
+        double y = area.getY() + margin;
+        double width = area.getWidth() - 2 * margin;
+        double height = area.getHeight() - 2 * margin;
+
+        // Title
+        double titleHeight = height * 0.07;
+        g.setColor(Color.BLACK);
+        g.setFont(new Font("Arial", Font.BOLD, (int) Math.max(1, titleHeight * 0.7)));
+        String title = Month.fromCalendarMonth(month.getMonthValue() - 1).getDisplayName() + " " + month.getYear();
+        g.drawString(title, (float) x, (float) (y + titleHeight * 0.75));
+        y += titleHeight;
+
+        // Weekday headers
+        double cellWidth = width / 7;
+        double headerHeight = height * 0.04;
+        g.setFont(new Font("Arial", Font.BOLD, (int) Math.max(1, headerHeight * 0.6)));
+        FontMetrics metrics = g.getFontMetrics();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            String name = day.getDisplayName();
+            g.setColor(day.isWeekend() ? WEEKEND_COLOR : Color.BLACK);
+            g.drawString(name, (float) (x + day.ordinal() * cellWidth + (cellWidth - metrics.stringWidth(name)) / 2),
+                    (float) (y + headerHeight * 0.7));
+        }
+        y += headerHeight;
+        g.setColor(HEADER_COLOR_BD);
+        g.draw(new Rectangle2D.Double(x, y, width, 0));
+
+        // Day grid
+        double cellHeight = (height - titleHeight - headerHeight) / 6;
+        List<List<Appointment>> days = appointmentsByDay(month);
+        int offset = month.atDay(1).getDayOfWeek().ordinal();
+        Font dayFont = new Font("Arial", Font.BOLD, (int) Math.max(1, cellHeight * 0.14));
+        Font appointmentFont = new Font("Arial", Font.PLAIN, (int) Math.max(1, cellHeight * 0.11));
+        for (int cell = 0; cell < 42; cell++) {
+            Rectangle2D bounds = new Rectangle2D.Double(x + (cell % 7) * cellWidth, y + (cell / 7) * cellHeight,
+                    cellWidth, cellHeight);
+            int day = cell - offset + 1;
+            if (day < 1 || day > month.lengthOfMonth()) {
+                g.setColor(EMPTY_DAY_COLOR_BG);
+                g.fill(bounds);
+            } else {
+                paintDay(g, month.atDay(day), days.get(day - 1), bounds, dayFont, appointmentFont);
+            }
+            g.setColor(Color.LIGHT_GRAY);
+            g.draw(bounds);
+        }
+    }
+
+    private void paintDay(Graphics2D g, LocalDate date, List<Appointment> appointments, Rectangle2D bounds,
+                          Font dayFont, Font appointmentFont) {
+        double padding = bounds.getHeight() * 0.05;
+        g.setFont(dayFont);
+        FontMetrics dayMetrics = g.getFontMetrics();
+        boolean weekend = DayOfWeek.values()[date.getDayOfWeek().ordinal()].isWeekend();
+        g.setColor(weekend ? WEEKEND_COLOR : Color.BLACK);
+        double y = bounds.getY() + padding + dayMetrics.getAscent();
+        g.drawString(String.valueOf(date.getDayOfMonth()), (float) (bounds.getX() + padding), (float) y);
+        y += padding;
+
+        g.setFont(appointmentFont);
+        FontMetrics metrics = g.getFontMetrics();
+        double lineHeight = metrics.getHeight() * 1.1;
+        double bottom = bounds.getMaxY() - padding;
+        for (int i = 0; i < appointments.size(); i++) {
+            if (y + 2 * lineHeight > bottom && i < appointments.size() - 1) {
+                // Not enough room: summarize the remaining appointments
+                g.setColor(Color.DARK_GRAY);
+                g.drawString("+" + (appointments.size() - i), (float) (bounds.getX() + padding),
+                        (float) (y + metrics.getAscent()));
+                return;
+            }
+            Appointment appointment = appointments.get(i);
+            Color color = appointment.getCategory().getColor();
+            g.setColor(color);
+            g.fill(new Rectangle2D.Double(bounds.getX() + padding, y, bounds.getWidth() - 2 * padding, lineHeight));
+            g.setColor(color.darker());
+            g.fill(new Rectangle2D.Double(bounds.getX() + padding, y, Math.max(1, padding / 2), lineHeight));
+            String text = Appuntamenti.formatTime(appointment, offsets) + " " + appointment.getTitle();
+            g.setColor(Color.BLACK);
+            g.drawString(text, (float) (bounds.getX() + padding * 2), (float) (y + metrics.getAscent()));
+            y += lineHeight + padding / 2;
+        }
+    }
+
+    /**
+     * Reads the appointments of the month and drops the ones the filter skips.
+     */
+    private List<List<Appointment>> appointmentsByDay(YearMonth month) {
+        List<List<Appointment>> days = Appuntamenti.groupByDay(store, month, offsets);
+        for (List<Appointment> day : days) {
+            day.removeIf(appointment -> !filter.test(appointment));
+        }
+        return days;
+    }
+}
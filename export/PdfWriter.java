@@ -0,0 +1,112 @@
+package dashboard.export;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Minimal PDF writer producing one full-page JPEG image per page.
+ * Pages are written to the stream as soon as they are added, so a document
+ * never needs to be held in memory as a whole.
+ */
+public class PdfWriter implements Closeable {
+    // Objects 1 and 2 are reserved for the catalog and the page tree, written on close
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+
+    private final OutputStream out;
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<Integer> pageIds = new ArrayList<>();
+    private long position;
+
+    public PdfWriter(OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        offsets.add(0L);
+        offsets.add(0L);
+        write("%PDF-1.4\n");
+        // Binary marker, tells transfer tools the file is not plain text
+        write(new byte[] { '%', (byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3, '\n' });
+    }
+
+    /**
+     * Adds a page filled with a JPEG image.
+     *
+     * @param jpeg The JPEG-encoded image
+     * @param imageWidth Image width in pixels
+     * @param imageHeight Image height in pixels
+     * @param pageWidth Page width in points
+     * @param pageHeight Page height in points
+     */
+    public void addJpegPage(byte[] jpeg, int imageWidth, int imageHeight, double pageWidth, double pageHeight)
+            throws IOException {
+        int image = beginObject();
+        write("<< /Type /XObject /Subtype /Image /Width " + imageWidth + " /Height " + imageHeight
+                + " /ColorSpace /DeviceRGB /BitsPerComponent 8 /Filter /DCTDecode /Length " + jpeg.length
+                + " >>\nstream\n");
+        write(jpeg);
+        write("\nendstream\nendobj\n");
+
+        byte[] content = String.format(Locale.ROOT, "q %.2f 0 0 %.2f 0 0 cm /Im0 Do Q\n", pageWidth, pageHeight)
+                .getBytes(StandardCharsets.ISO_8859_1);
+        int contents = beginObject();
+        write("<< /Length " + content.length + " >>\nstream\n");
+        write(content);
+        write("endstream\nendobj\n");
+
+        int page = beginObject();
+        write(String.format(Locale.ROOT, "<< /Type /Page /Parent %d 0 R /MediaBox [0 0 %.2f %.2f]"
+                + " /Resources << /XObject << /Im0 %d 0 R >> >> /Contents %d 0 R >>\nendobj\n",
+                PAGES, pageWidth, pageHeight, image, contents));
+        pageIds.add(page);
+    }
+
+    @Override
+    public void close() throws IOException {
+        StringBuilder kids = new StringBuilder();
+        for (int id : pageIds) {
+            kids.append(id).append(" 0 R ");
+        }
+        beginObject(PAGES);
+        write("<< /Type /Pages /Kids [" + kids + "] /Count " + pageIds.size() + " >>\nendobj\n");
+        beginObject(CATALOG);
+        write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+
+        long xref = position;
+        StringBuilder table = new StringBuilder();
+        table.append("xref\n0 ").append(offsets.size() + 1).append('\n');
+        table.append("0000000000 65535 f \n");
+        for (long offset : offsets) {
+            table.append(String.format(Locale.ROOT, "%010d 00000 n \n", offset));
+        }
+        table.append("trailer\n<< /Size ").append(offsets.size() + 1).append(" /Root ").append(CATALOG)
+                .append(" 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+        write(table.toString());
+        out.close();
+    }
+
+    private int beginObject() throws IOException {
+        offsets.add(0L);
+        int id = offsets.size();
+        beginObject(id);
+        return id;
+    }
+
+    private void beginObject(int id) throws IOException {
+        offsets.set(id - 1, position);
+        write(id + " 0 obj\n");
+    }
+
+    private void write(String text) throws IOException {
+        write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+}
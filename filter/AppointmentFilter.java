@@ -0,0 +1,444 @@
+package dashboard.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dashboard.Category;
+import dashboard.store.AppointmentView;
+import dashboard.store.ZoneOffsetCache;
+
+/**
+ * A compiled test over appointments, built by {@link FilterQuery} or by the
+ * factory methods. Terms on the same field are folded when the tree is
+ * built: categories and weekdays become single bitmask tests, durations and
+ * start times single ranges, and the children of AND and OR are ordered
+ * so that the cheap tests come first. Title tests are remembered per
+ * distinct title, which the store keeps in a dictionary, so the text of
+ * each title is searched only once.
+ * <p>
+ * Filters are immutable and can be used from any thread, also on the
+ * flyweight views of {@link dashboard.store.AppointmentStore#forEachInRange}.
+ */
+public abstract class AppointmentFilter {
+    public static final AppointmentFilter ALL = new Constant(true);
+    public static final AppointmentFilter NONE = new Constant(false);
+
+    private static final int ALL_CATEGORIES = (1 << Category.values().length) - 1;
+    private static final int ALL_WEEKDAYS = (1 << 7) - 1;
+
+    AppointmentFilter() {
+    }
+
+    public abstract boolean test(AppointmentView appointment);
+
+    /**
+     * @return Relative cost of the test, the cheaper terms being tested first
+     */
+    abstract int cost();
+
+    AppointmentFilter negate() {
+        return new Not(this);
+    }
+
+    /**
+     * @return A filter that keeps the appointments of the given categories
+     */
+    public static AppointmentFilter categories(Set<Category> categories) {
+        int mask = 0;
+        for (Category category : categories) {
+            mask |= 1 << category.ordinal();
+        }
+        return categoryMask(mask);
+    }
+
+    /**
+     * @return A filter that keeps the appointments whose title contains the text, ignoring case
+     */
+    public static AppointmentFilter titleContains(String text) {
+        return text.isEmpty() ? ALL : new TitleContains(text);
+    }
+
+    /**
+     * @return A filter that keeps the appointments all the given filters keep
+     */
+    public static AppointmentFilter and(AppointmentFilter... filters) {
+        return and(Arrays.asList(filters));
+    }
+
+    static AppointmentFilter categoryMask(int mask) {
+        mask &= ALL_CATEGORIES;
+        return mask == 0 ? NONE : mask == ALL_CATEGORIES ? ALL : new CategoryMask(mask);
+    }
+
+    /**
+     * @param mask Bit 0 for Monday to bit 6 for Sunday
+     */
+    static AppointmentFilter weekdayMask(int mask, ZoneOffsetCache offsets) {
+        mask &= ALL_WEEKDAYS;
+        return mask == 0 ? NONE : mask == ALL_WEEKDAYS ? ALL : new WeekdayMask(mask, offsets);
+    }
+
+    /**
+     * @param min Shortest duration kept, in minutes
+     * @param max Longest duration kept, in minutes
+     */
+    static AppointmentFilter duration(long min, long max) {
+        return min > max ? NONE : min <= 0 && max >= Integer.MAX_VALUE ? ALL : new DurationRange(min, max);
+    }
+
+    /**
+     * @param min Earliest start kept, in minutes of the local day
+     * @param max Latest start kept, in minutes of the local day
+     */
+    static AppointmentFilter startTime(int min, int max, ZoneOffsetCache offsets) {
+        return min > max ? NONE : min <= 0 && max >= 24 * 60 - 1 ? ALL : new StartTimeRange(min, max, offsets);
+    }
+
+    static AppointmentFilter titleEquals(String text) {
+        return new TitleEquals(text);
+    }
+
+    static AppointmentFilter not(AppointmentFilter filter) {
+        return filter.negate();
+    }
+
+    static AppointmentFilter and(List<AppointmentFilter> filters) {
+        List<AppointmentFilter> terms = new ArrayList<>();
+        int categories = ALL_CATEGORIES;
+        WeekdayMask weekdays = null;
+        DurationRange duration = null;
+        StartTimeRange startTime = null;
+        for (AppointmentFilter filter : flatten(filters, And.class)) {
+            if (filter == NONE) {
+                return NONE;
+            } else if (filter instanceof CategoryMask) {
+                categories &= ((CategoryMask) filter).mask;
+            } else if (filter instanceof WeekdayMask && (weekdays == null || weekdays.offsets == ((WeekdayMask) filter).offsets)) {
+                WeekdayMask term = (WeekdayMask) filter;
+                weekdays = weekdays == null ? term : new WeekdayMask(weekdays.mask & term.mask, term.offsets);
+            } else if (filter instanceof DurationRange) {
+                DurationRange term = (DurationRange) filter;
+                duration = duration == null ? term
+                         : new DurationRange(Math.max(duration.min, term.min), Math.min(duration.max, term.max));
+            } else if (filter instanceof StartTimeRange && (startTime == null || startTime.offsets == ((StartTimeRange) filter).offsets)) {
+                StartTimeRange term = (StartTimeRange) filter;
+                startTime = startTime == null ? term : new StartTimeRange(Math.max(startTime.min, term.min),
+                                                                          Math.min(startTime.max, term.max), term.offsets);
+            } else if (filter != ALL) {
+                terms.add(filter);
+            }
+        }
+        terms.add(categoryMask(categories));
+        if (weekdays != null) {
+            terms.add(weekdayMask(weekdays.mask, weekdays.offsets));
+        }
+        if (duration != null) {
+            terms.add(duration(duration.min, duration.max));
+        }
+        if (startTime != null) {
+            terms.add(startTime(startTime.min, startTime.max, startTime.offsets));
+        }
+        if (terms.contains(NONE)) {
+            return NONE;
+        }
+        terms.removeIf(term -> term == ALL);
+        return terms.isEmpty() ? ALL : terms.size() == 1 ? terms.get(0) : new And(sortByCost(terms));
+    }
+
+    static AppointmentFilter or(List<AppointmentFilter> filters) {
+        List<AppointmentFilter> terms = new ArrayList<>();
+        int categories = 0;
+        WeekdayMask weekdays = null;
+        for (AppointmentFilter filter : flatten(filters, Or.class)) {
+            if (filter == ALL) {
+                return ALL;
+            } else if (filter instanceof CategoryMask) {
+                categories |= ((CategoryMask) filter).mask;
+            } else if (filter instanceof WeekdayMask && (weekdays == null || weekdays.offsets == ((WeekdayMask) filter).offsets)) {
+                WeekdayMask term = (WeekdayMask) filter;
+                weekdays = weekdays == null ? term : new WeekdayMask(weekdays.mask | term.mask, term.offsets);
+            } else if (filter != NONE) {
+                terms.add(filter);
+            }
+        }
+        if (categories != 0) {
+            terms.add(categoryMask(categories));
+        }
+        if (weekdays != null) {
+            terms.add(weekdayMask(weekdays.mask, weekdays.offsets));
+        }
+        if (terms.contains(ALL)) {
+            return ALL;
+        }
+        return terms.isEmpty() ? NONE : terms.size() == 1 ? terms.get(0) : new Or(sortByCost(terms));
+    }
+
+    private static List<AppointmentFilter> flatten(List<AppointmentFilter> filters, Class<? extends Group> type) {
+        List<AppointmentFilter> flat = new ArrayList<>();
+        for (AppointmentFilter filter : filters) {
+            if (type.isInstance(filter)) {
+                flat.addAll(Arrays.asList(((Group) filter).terms));
+            } else {
+                flat.add(filter);
+            }
+        }
+        return flat;
+    }
+
+    private static AppointmentFilter[] sortByCost(List<AppointmentFilter> terms) {
+        terms.sort(Comparator.comparingInt(AppointmentFilter::cost));
+        return terms.toArray(new AppointmentFilter[0]);
+    }
+
+    private static final class Constant extends AppointmentFilter {
+        private final boolean value;
+
+        Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            return value;
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+
+        @Override
+        AppointmentFilter negate() {
+            return value ? NONE : ALL;
+        }
+    }
+
+    private static final class CategoryMask extends AppointmentFilter {
+        final int mask;
+
+        CategoryMask(int mask) {
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            return (mask >>> appointment.getCategory().ordinal() & 1) != 0;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+
+        @Override
+        AppointmentFilter negate() {
+            return categoryMask(~mask);
+        }
+    }
+
+    private static final class WeekdayMask extends AppointmentFilter {
+        final int mask;
+        final ZoneOffsetCache offsets;
+
+        WeekdayMask(int mask, ZoneOffsetCache offsets) {
+            this.mask = mask;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            // 1970-01-01 was a Thursday, bit 3
+            int weekday = Math.floorMod(offsets.getEpochDay(appointment.getStart()) + 3, 7);
+            return (mask >>> weekday & 1) != 0;
+        }
+
+        @Override
+        int cost() {
+            return 3;
+        }
+
+        @Override
+        AppointmentFilter negate() {
+            return weekdayMask(~mask, offsets);
+        }
+    }
+
+    private static final class DurationRange extends AppointmentFilter {
+        final long min;
+        final long max;
+
+        DurationRange(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            int duration = appointment.getDuration();
+            return duration >= min && duration <= max;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class StartTimeRange extends AppointmentFilter {
+        final int min;
+        final int max;
+        final ZoneOffsetCache offsets;
+
+        StartTimeRange(int min, int max, ZoneOffsetCache offsets) {
+            this.min = min;
+            this.max = max;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            int minute = offsets.getMinuteOfDay(appointment.getStart());
+            return minute >= min && minute <= max;
+        }
+
+        @Override
+        int cost() {
+            return 3;
+        }
+    }
+
+    /**
+     * A test on the title, computed once per distinct title.
+     */
+    private abstract static class TitleTerm extends AppointmentFilter {
+        // Titles are few compared to the appointments; the memo stops growing past this size
+        private static final int MEMO_SIZE = 8192;
+        final String text;
+        private final ConcurrentHashMap<String, Boolean> matches = new ConcurrentHashMap<>();
+
+        TitleTerm(String text) {
+            this.text = text.toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            String title = appointment.getTitle();
+            Boolean match = matches.get(title);
+            if (match == null) {
+                match = matches(title.toLowerCase(Locale.ROOT));
+                if (matches.size() < MEMO_SIZE) {
+                    matches.put(title, match);
+                }
+            }
+            return match;
+        }
+
+        abstract boolean matches(String title);
+
+        @Override
+        int cost() {
+            return 5;
+        }
+    }
+
+    private static final class TitleContains extends TitleTerm {
+        TitleContains(String text) {
+            super(text);
+        }
+
+        @Override
+        boolean matches(String title) {
+            return title.contains(text);
+        }
+    }
+
+    private static final class TitleEquals extends TitleTerm {
+        TitleEquals(String text) {
+            super(text);
+        }
+
+        @Override
+        boolean matches(String title) {
+            return title.equals(text);
+        }
+    }
+
+    private static final class Not extends AppointmentFilter {
+        private final AppointmentFilter filter;
+
+        Not(AppointmentFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            return !filter.test(appointment);
+        }
+
+        @Override
+        int cost() {
+            return filter.cost();
+        }
+
+        @Override
+        AppointmentFilter negate() {
+            return filter;
+        }
+    }
+
+    private abstract static class Group extends AppointmentFilter {
+        final AppointmentFilter[] terms;
+        private final int cost;
+
+        Group(AppointmentFilter[] terms) {
+            this.terms = terms;
+            int sum = 0;
+            for (AppointmentFilter term : terms) {
+                sum += term.cost();
+            }
+            cost = sum;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+    }
+
+    private static final class And extends Group {
+        And(AppointmentFilter[] terms) {
+            super(terms);
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            for (AppointmentFilter term : terms) {
+                if (!term.test(appointment)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends Group {
+        Or(AppointmentFilter[] terms) {
+            super(terms);
+        }
+
+        @Override
+        public boolean test(AppointmentView appointment) {
+            for (AppointmentFilter term : terms) {
+                if (term.test(appointment)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
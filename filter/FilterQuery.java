@@ -0,0 +1,383 @@
+package dashboard.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import dashboard.Category;
+import dashboard.DayOfWeek;
+import dashboard.store.ZoneOffsetCache;
+
+/**
+ * Parses filter queries such as
+ * <pre>
+ * category:meeting AND title~budget AND weekday:mon-fri AND duration&gt;30m
+ * (cat:lunch OR time&lt;9:00) -title:"stand-up"
+ * </pre>
+ * and compiles them into an {@link AppointmentFilter}. Terms are joined by
+ * {@code AND} (also implied between adjacent terms), {@code OR} and
+ * {@code NOT} (or a leading {@code -}), with parentheses for grouping;
+ * keywords are case insensitive. The fields are:
+ * <ul>
+ * <li>{@code category} ({@code cat}): {@code :} followed by a comma separated
+ * list of categories, by name ({@code meeting}) or shown name ({@code riunione})</li>
+ * <li>{@code weekday} ({@code day}): {@code :} followed by a comma separated
+ * list of days ({@code mon}, {@code lun}, {@code sat}, ...), ranges
+ * ({@code mon-fri}) or {@code weekend}</li>
+ * <li>{@code title}: {@code ~} for the titles containing the text, {@code :}
+ * for the titles equal to it, ignoring case</li>
+ * <li>{@code duration}: compared with {@code : > >= < <=} to minutes
+ * ({@code 30}, {@code 30m}, {@code 1h}, {@code 1h30m})</li>
+ * <li>{@code time}: start time of day, compared like the duration to
+ * {@code 9} or {@code 9:30}</li>
+ * </ul>
+ * A term without a field, such as {@code budget} or {@code "sala riunioni"},
+ * looks in the title like {@code title~}. The empty query keeps everything.
+ */
+public final class FilterQuery {
+    private static final String[][] WEEKDAY_NAMES = {
+        { "mon", "monday", "lun", "lunedi", "lunedì" },
+        { "tue", "tuesday", "mar", "martedi", "martedì" },
+        { "wed", "wednesday", "mer", "mercoledi", "mercoledì" },
+        { "thu", "thursday", "gio", "giovedi", "giovedì" },
+        { "fri", "friday", "ven", "venerdi", "venerdì" },
+        { "sat", "saturday", "sab", "sabato" },
+        { "sun", "sunday", "dom", "domenica" },
+    };
+
+    private final String query;
+    private final ZoneOffsetCache offsets;
+    private int position;
+
+    private FilterQuery(String query, ZoneOffsetCache offsets) {
+        this.query = query;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Parses and compiles a query.
+     *
+     * @param offsets Time zone the weekdays and the start times are computed in
+     * @throws FilterSyntaxException If the query is not valid
+     */
+    public static AppointmentFilter compile(String query, ZoneOffsetCache offsets) {
+        FilterQuery parser = new FilterQuery(query, offsets);
+        parser.skipSpaces();
+        if (parser.atEnd()) {
+            return AppointmentFilter.ALL;
+        }
+        AppointmentFilter filter = parser.parseOr();
+        parser.skipSpaces();
+        if (!parser.atEnd()) {
+            throw parser.error("Unexpected '" + query.charAt(parser.position) + "'");
+        }
+        return filter;
+    }
+
+    private AppointmentFilter parseOr() {
+        List<AppointmentFilter> terms = new ArrayList<>();
+        terms.add(parseAnd());
+        while (acceptKeyword("OR")) {
+            terms.add(parseAnd());
+        }
+        return AppointmentFilter.or(terms);
+    }
+
+    private AppointmentFilter parseAnd() {
+        List<AppointmentFilter> terms = new ArrayList<>();
+        terms.add(parseNot());
+        while (true) {
+            skipSpaces();
+            if (atEnd() || query.charAt(position) == ')' || isKeyword("OR")) {
+                break;
+            }
+            acceptKeyword("AND");
+            terms.add(parseNot());
+        }
+        return AppointmentFilter.and(terms);
+    }
+
+    private AppointmentFilter parseNot() {
+        skipSpaces();
+        if (acceptKeyword("NOT")) {
+            return AppointmentFilter.not(parseNot());
+        }
+        if (!atEnd() && query.charAt(position) == '-') {
+            position++;
+            return AppointmentFilter.not(parseNot());
+        }
+        return parsePrimary();
+    }
+
+    private AppointmentFilter parsePrimary() {
+        skipSpaces();
+        if (atEnd() || isKeyword("AND") || isKeyword("OR")) {
+            throw error("Missing term");
+        }
+        if (query.charAt(position) == '(') {
+            position++;
+            AppointmentFilter filter = parseOr();
+            skipSpaces();
+            if (atEnd() || query.charAt(position) != ')') {
+                throw error("Missing ')'");
+            }
+            position++;
+            return filter;
+        }
+        int start = position;
+        int end = start;
+        while (end < query.length() && Character.isLetter(query.charAt(end))) {
+            end++;
+        }
+        if (end > start && end < query.length() && "~:=<>".indexOf(query.charAt(end)) >= 0) {
+            String field = query.substring(start, end).toLowerCase(Locale.ROOT);
+            position = end;
+            return parseTerm(field, start);
+        }
+        return AppointmentFilter.titleContains(readValue());
+    }
+
+    private AppointmentFilter parseTerm(String field, int fieldStart) {
+        String operator = readOperator();
+        int valueStart = position;
+        String value = readValue();
+        switch (field) {
+            case "category":
+            case "cat":
+                requireEquality(operator, valueStart);
+                return parseCategories(value, valueStart);
+            case "weekday":
+            case "day":
+                requireEquality(operator, valueStart);
+                return parseWeekdays(value, valueStart);
+            case "title":
+                if ("~".equals(operator)) {
+                    return AppointmentFilter.titleContains(value);
+                }
+                requireEquality(operator, valueStart);
+                return AppointmentFilter.titleEquals(value);
+            case "duration": {
+                long minutes = parseDuration(value, valueStart);
+                long[] range = range(operator, minutes, valueStart);
+                return AppointmentFilter.duration(range[0], range[1]);
+            }
+            case "time": {
+                int minute = parseTime(value, valueStart);
+                long[] range = range(operator, minute, valueStart);
+                return AppointmentFilter.startTime((int) Math.max(range[0], 0), (int) Math.min(range[1], 24 * 60 - 1),
+                                                   offsets);
+            }
+            default:
+                throw new FilterSyntaxException("Unknown field '" + field + "'", fieldStart);
+        }
+    }
+
+    private AppointmentFilter parseCategories(String value, int valueStart) {
+        int mask = 0;
+        for (String name : value.split(",")) {
+            Category category = findCategory(name.trim());
+            if (category == null) {
+                throw new FilterSyntaxException("Unknown category '" + name + "'", valueStart);
+            }
+            mask |= 1 << category.ordinal();
+        }
+        return AppointmentFilter.categoryMask(mask);
+    }
+
+    private static Category findCategory(String name) {
+        for (Category category : Category.values()) {
+            if (category.name().equalsIgnoreCase(name) || category.getDisplayName().equalsIgnoreCase(name)) {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    private AppointmentFilter parseWeekdays(String value, int valueStart) {
+        int mask = 0;
+        for (String item : value.split(",")) {
+            item = item.trim().toLowerCase(Locale.ROOT);
+            if ("weekend".equals(item)) {
+                mask |= weekendMask();
+                continue;
+            }
+            int dash = item.indexOf('-');
+            int first = findWeekday(dash < 0 ? item : item.substring(0, dash), valueStart);
+            int last = dash < 0 ? first : findWeekday(item.substring(dash + 1), valueStart);
+            // Ranges can wrap around the end of the week, as in fri-mon
+            for (int day = first; ; day = (day + 1) % 7) {
+                mask |= 1 << day;
+                if (day == last) {
+                    break;
+                }
+            }
+        }
+        return AppointmentFilter.weekdayMask(mask, offsets);
+    }
+
+    private static int weekendMask() {
+        int mask = 0;
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (day.isWeekend()) {
+                mask |= 1 << day.ordinal();
+            }
+        }
+        return mask;
+    }
+
+    private static int findWeekday(String name, int valueStart) {
+        for (int day = 0; day < WEEKDAY_NAMES.length; day++) {
+            for (String candidate : WEEKDAY_NAMES[day]) {
+                if (candidate.equals(name)) {
+                    return day;
+                }
+            }
+        }
+        throw new FilterSyntaxException("Unknown weekday '" + name + "'", valueStart);
+    }
+
+    /**
+     * Reads a number of minutes, optionally as hours and minutes: 45, 45m, 2h, 1h30m.
+     */
+    private static long parseDuration(String value, int valueStart) {
+        long minutes = 0;
+        int i = 0;
+        String text = value.toLowerCase(Locale.ROOT);
+        while (i < text.length()) {
+            int digits = i;
+            while (i < text.length() && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == digits || i - digits > 6) {
+                throw new FilterSyntaxException("Invalid duration '" + value + "'", valueStart);
+            }
+            long amount = Long.parseLong(text.substring(digits, i));
+            if (text.startsWith("h", i)) {
+                minutes += amount * 60;
+                i++;
+            } else {
+                minutes += amount;
+                if (text.startsWith("min", i)) {
+                    i += 3;
+                } else if (text.startsWith("m", i)) {
+                    i++;
+                } else if (i < text.length()) {
+                    throw new FilterSyntaxException("Invalid duration '" + value + "'", valueStart);
+                }
+            }
+        }
+        if (text.isEmpty()) {
+            throw new FilterSyntaxException("Missing duration", valueStart);
+        }
+        return minutes;
+    }
+
+    /**
+     * Reads a time of day, 9 or 9:30, as minutes from midnight.
+     */
+    private static int parseTime(String value, int valueStart) {
+        int colon = value.indexOf(':');
+        try {
+            int hours = Integer.parseInt(colon < 0 ? value : value.substring(0, colon));
+            int minutes = colon < 0 ? 0 : Integer.parseInt(value.substring(colon + 1));
+            if (hours >= 0 && hours < 24 && minutes >= 0 && minutes < 60) {
+                return hours * 60 + minutes;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new FilterSyntaxException("Invalid time '" + value + "'", valueStart);
+    }
+
+    /**
+     * @return The inclusive bounds of the values the comparison keeps
+     */
+    private static long[] range(String operator, long value, int valueStart) {
+        switch (operator) {
+            case ":":
+            case "=":
+                return new long[] { value, value };
+            case ">":
+                return new long[] { value + 1, Long.MAX_VALUE };
+            case ">=":
+                return new long[] { value, Long.MAX_VALUE };
+            case "<":
+                return new long[] { Long.MIN_VALUE, value - 1 };
+            case "<=":
+                return new long[] { Long.MIN_VALUE, value };
+            default:
+                throw new FilterSyntaxException("Invalid operator '" + operator + "'", valueStart);
+        }
+    }
+
+    private static void requireEquality(String operator, int valueStart) {
+        if (!":".equals(operator) && !"=".equals(operator)) {
+            throw new FilterSyntaxException("Invalid operator '" + operator + "'", valueStart);
+        }
+    }
+
+    private String readOperator() {
+        char first = query.charAt(position++);
+        if ((first == '<' || first == '>') && !atEnd() && query.charAt(position) == '=') {
+            position++;
+            return first + "=";
+        }
+        return String.valueOf(first);
+    }
+
+    /**
+     * Reads a word, up to a space or a closing parenthesis, or a quoted text.
+     */
+    private String readValue() {
+        if (atEnd()) {
+            throw error("Missing value");
+        }
+        if (query.charAt(position) == '"') {
+            int close = query.indexOf('"', position + 1);
+            if (close < 0) {
+                throw error("Missing '\"'");
+            }
+            String value = query.substring(position + 1, close);
+            position = close + 1;
+            return value;
+        }
+        int start = position;
+        while (!atEnd() && !Character.isWhitespace(query.charAt(position)) && query.charAt(position) != ')'
+               && query.charAt(position) != '(') {
+            position++;
+        }
+        if (position == start) {
+            throw error("Missing value");
+        }
+        return query.substring(start, position);
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        skipSpaces();
+        if (isKeyword(keyword)) {
+            position += keyword.length();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isKeyword(String keyword) {
+        int end = position + keyword.length();
+        return query.regionMatches(true, position, keyword, 0, keyword.length())
+               && (end == query.length() || Character.isWhitespace(query.charAt(end)) || query.charAt(end) == '(');
+    }
+
+    private void skipSpaces() {
+        while (!atEnd() && Character.isWhitespace(query.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean atEnd() {
+        return position >= query.length();
+    }
+
+    private FilterSyntaxException error(String message) {
+        return new FilterSyntaxException(message, position);
+    }
+}
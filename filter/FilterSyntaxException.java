@@ -0,0 +1,20 @@
+package dashboard.filter;
+
+/**
+ * A filter query that cannot be parsed.
+ */
+public class FilterSyntaxException extends IllegalArgumentException {
+    private final int position;
+
+    public FilterSyntaxException(String message, int position) {
+        super(message + " at " + position);
+        this.position = position;
+    }
+
+    /**
+     * @return Index in the query of the character where the error was found
+     */
+    public int getPosition() {
+        return position;
+    }
+}
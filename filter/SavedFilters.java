@@ -0,0 +1,71 @@
+package dashboard.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Filter queries saved by name in the user preferences, shared by the
+ * calendar window and the command line agenda. Only the text is kept: each
+ * user of a filter compiles it once for its own time zone.
+ */
+public final class SavedFilters {
+    private final Preferences preferences;
+
+    public SavedFilters() {
+        this(Preferences.userNodeForPackage(SavedFilters.class).node("filters"));
+    }
+
+    SavedFilters(Preferences preferences) {
+        this.preferences = preferences;
+    }
+
+    /**
+     * @return The names of the saved filters, in alphabetical order
+     */
+    public List<String> getNames() {
+        try {
+            List<String> names = new ArrayList<>();
+            Collections.addAll(names, preferences.keys());
+            Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+            return names;
+        } catch (BackingStoreException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return The query saved with the name, or null
+     */
+    public String get(String name) {
+        return preferences.get(name, null);
+    }
+
+    /**
+     * Saves a query, replacing the one with the same name.
+     *
+     * @throws IllegalArgumentException If the name or the query are too long to be saved
+     */
+    public void put(String name, String query) {
+        if (name.isEmpty() || name.length() > Preferences.MAX_KEY_LENGTH || query.length() > Preferences.MAX_VALUE_LENGTH) {
+            throw new IllegalArgumentException(name);
+        }
+        preferences.put(name, query);
+        flush();
+    }
+
+    public void remove(String name) {
+        preferences.remove(name);
+        flush();
+    }
+
+    private void flush() {
+        try {
+            preferences.flush();
+        } catch (BackingStoreException e) {
+            // The preferences are written anyway when the JVM exits
+        }
+    }
+}
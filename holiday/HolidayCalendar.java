@@ -0,0 +1,145 @@
+package dashboard.holiday;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dashboard.DayOfWeek;
+
+/**
+ * Special days (weekends and holidays) of a set of holiday rules.
+ * The rules are evaluated once per year, the first time the year is asked
+ * for, into a bitset of the days of the year: telling whether a day is
+ * special is then a single bit test, cheap enough for every cell of every
+ * repaint.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class HolidayCalendar {
+    private final List<HolidayRule> rules;
+    private final Map<Integer, Year> years = new ConcurrentHashMap<>();
+
+    /**
+     * Special days of one year, indexed by day of the year (1-366).
+     */
+    public static final class Year {
+        private final int year;
+        // One bit per day of the year: weekend or holiday, and holiday only
+        private final long[] special = new long[6];
+        private final long[] holidays = new long[6];
+        // Holiday names by day of the year, null for working days and plain weekends
+        private final String[] names = new String[367];
+
+        private Year(int year) {
+            this.year = year;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        /**
+         * @param dayOfYear Day of the year, 1-366
+         * @return true if the day is a weekend day or a holiday
+         */
+        public boolean isSpecial(int dayOfYear) {
+            return (special[dayOfYear >>> 6] & 1L << dayOfYear) != 0;
+        }
+
+        /**
+         * @param dayOfYear Day of the year, 1-366
+         * @return true if the day is a holiday
+         */
+        public boolean isHoliday(int dayOfYear) {
+            return (holidays[dayOfYear >>> 6] & 1L << dayOfYear) != 0;
+        }
+
+        /**
+         * @param dayOfYear Day of the year, 1-366
+         * @return The names of the holidays of the day, separated by " / ", or null if it is not a holiday
+         */
+        public String getName(int dayOfYear) {
+            return names[dayOfYear];
+        }
+
+        private void mark(long[] bits, int dayOfYear) {
+            bits[dayOfYear >>> 6] |= 1L << dayOfYear;
+        }
+    }
+
+    /**
+     * @param rules The holiday rules; weekends come from {@link DayOfWeek#isWeekend()}
+     */
+    public HolidayCalendar(Collection<? extends HolidayRule> rules) {
+        this.rules = new ArrayList<>(rules);
+    }
+
+    /**
+     * Creates the calendar of a registered region.
+     *
+     * @param region Id of a set registered in {@link HolidayRules}
+     * @throws IllegalArgumentException if no set has that id
+     */
+    public static HolidayCalendar forRegion(String region) {
+        List<HolidayRule> rules = HolidayRules.get(region);
+        if (rules == null) {
+            throw new IllegalArgumentException("Unknown holiday region: " + region);
+        }
+        return new HolidayCalendar(rules);
+    }
+
+    /**
+     * @return The special days of the year, computed on first use
+     */
+    public Year getYear(int year) {
+        Year cached = years.get(year);
+        return cached != null ? cached : years.computeIfAbsent(year, this::compute);
+    }
+
+    public boolean isSpecial(LocalDate date) {
+        return getYear(date.getYear()).isSpecial(date.getDayOfYear());
+    }
+
+    public boolean isHoliday(LocalDate date) {
+        return getYear(date.getYear()).isHoliday(date.getDayOfYear());
+    }
+
+    /**
+     * @return The holiday names of the date, or null if it is not a holiday
+     */
+    public String getName(LocalDate date) {
+        return getYear(date.getYear()).getName(date.getDayOfYear());
+    }
+
+    private Year compute(int year) {
+        Year result = new Year(year);
+        int length = LocalDate.of(year, 1, 1).lengthOfYear();
+        // Day of the week of January 1st, 0 for Monday
+        int weekday = LocalDate.of(year, 1, 1).getDayOfWeek().ordinal();
+        DayOfWeek[] days = DayOfWeek.values();
+        for (int day = 1; day <= length; day++) {
+            if (days[(weekday + day - 1) % 7].isWeekend()) {
+                result.mark(result.special, day);
+            }
+        }
+        for (HolidayRule rule : rules) {
+            LocalDate date = rule.dateIn(year);
+            if (date == null || date.getYear() != year) {
+                continue;
+            }
+            int day = date.getDayOfYear();
+            result.mark(result.special, day);
+            result.mark(result.holidays, day);
+            String name = rule.getName();
+            if (result.names[day] == null) {
+                result.names[day] = name;
+            } else if (!result.names[day].equals(name)) {
+                result.names[day] += " / " + name;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package dashboard.holiday;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.function.IntFunction;
+
+import dashboard.i18n.Calendar_i18n;
+
+/**
+ * Rule giving the date of a holiday in any year.
+ * The factory methods cover the usual kinds of rules: fixed dates, feasts
+ * moving with Easter and the n-th weekday of a month; other rules can
+ * implement the interface directly.
+ */
+public interface HolidayRule {
+
+    /**
+     * @param year The year
+     * @return The date of the holiday in that year, or null if it is not observed that year
+     */
+    LocalDate dateIn(int year);
+
+    /**
+     * @return The name shown for the holiday
+     */
+    String getName();
+
+    /**
+     * @param firstYear First year the holiday is observed
+     * @return The same rule, not observed before the given year
+     */
+    default HolidayRule since(int firstYear) {
+        HolidayRule rule = this;
+        return new HolidayRule() {
+            @Override
+            public LocalDate dateIn(int year) {
+                return year < firstYear ? null : rule.dateIn(year);
+            }
+
+            @Override
+            public String getName() {
+                return rule.getName();
+            }
+        };
+    }
+
+    /**
+     * Holiday on the same day every year.
+     *
+     * @param month Month, 1-12
+     * @param day Day of the month
+     * @param nameKey Resource key of the name
+     */
+    static HolidayRule fixed(int month, int day, String nameKey) {
+        return named(nameKey, year -> LocalDate.of(year, month, day));
+    }
+
+    /**
+     * Holiday a number of days after Easter Sunday (Gregorian computus).
+     *
+     * @param days Days after Easter, negative for days before it
+     * @param nameKey Resource key of the name
+     */
+    static HolidayRule easter(int days, String nameKey) {
+        return named(nameKey, year -> easterSunday(year).plusDays(days));
+    }
+
+    /**
+     * Holiday on the n-th given weekday of a month.
+     *
+     * @param month Month, 1-12
+     * @param weekday Day of the week
+     * @param ordinal 1 for the first weekday of the month, 2 for the second and so on, -1 for the last
+     * @param nameKey Resource key of the name
+     */
+    static HolidayRule nthWeekday(int month, DayOfWeek weekday, int ordinal, String nameKey) {
+        if (ordinal == 0 || ordinal < -1 || ordinal > 5) {
+            throw new IllegalArgumentException("Invalid ordinal: " + ordinal);
+        }
+        return named(nameKey, year -> {
+            LocalDate date = LocalDate.of(year, month, 1).with(TemporalAdjusters.dayOfWeekInMonth(ordinal, weekday));
+            // A fifth weekday missing from the month moves into the next one
+            return date.getMonthValue() == month ? date : null;
+        });
+    }
+
+    /**
+     * @return Easter Sunday of the given year, by the anonymous Gregorian algorithm
+     */
+    static LocalDate easterSunday(int year) {
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int day = (h + l - 7 * m + 114) % 31 + 1;
+        return LocalDate.of(year, month, day);
+    }
+
+    /**
+     * Rule whose dates come from a function and whose name is a resource key.
+     */
+    private static HolidayRule named(String nameKey, IntFunction<LocalDate> dates) {
+        return new HolidayRule() {
+            @Override
+            public LocalDate dateIn(int year) {
+                return dates.apply(year);
+            }
+
+            @Override
+            public String getName() {
+                return Calendar_i18n.getString(nameKey);
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+package dashboard.holiday;
+
+import static dashboard.holiday.HolidayRule.easter;
+import static dashboard.holiday.HolidayRule.fixed;
+import static dashboard.holiday.HolidayRule.nthWeekday;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Regional holiday rule sets, by id.
+ * National sets are named by country ("it", "de", "us"); regional ones add
+ * local holidays to them, as "it-milano" adds Sant'Ambrogio to the Italian
+ * holidays. Further sets can be added with {@link #register(String, List)}.
+ */
+public final class HolidayRules {
+    public static final String DEFAULT_REGION = "it";
+
+    private static final Map<String, List<HolidayRule>> REGIONS = new TreeMap<>();
+
+    static {
+        List<HolidayRule> italy = Arrays.asList(
+            fixed(1, 1, "holiday.new_year"),
+            fixed(1, 6, "holiday.epiphany"),
+            easter(0, "holiday.easter"),
+            easter(1, "holiday.easter_monday"),
+            fixed(4, 25, "holiday.liberation_day").since(1946),
+            fixed(5, 1, "holiday.labour_day"),
+            fixed(6, 2, "holiday.republic_day").since(1947),
+            fixed(8, 15, "holiday.assumption"),
+            fixed(10, 4, "holiday.saint_francis").since(2026),
+            fixed(11, 1, "holiday.all_saints"),
+            fixed(12, 8, "holiday.immaculate_conception"),
+            fixed(12, 25, "holiday.christmas"),
+            fixed(12, 26, "holiday.saint_stephen"));
+        register("it", italy);
+        // Patron saints of the main cities
+        register("it-bari", italy, fixed(12, 6, "holiday.saint_nicholas"));
+        register("it-bologna", italy, fixed(10, 4, "holiday.saint_petronius"));
+        register("it-firenze", italy, fixed(6, 24, "holiday.saint_john"));
+        register("it-genova", italy, fixed(6, 24, "holiday.saint_john"));
+        register("it-milano", italy, fixed(12, 7, "holiday.saint_ambrose"));
+        register("it-napoli", italy, fixed(9, 19, "holiday.saint_januarius"));
+        register("it-palermo", italy, fixed(7, 15, "holiday.saint_rosalia"));
+        register("it-roma", italy, fixed(6, 29, "holiday.saints_peter_paul"));
+        register("it-torino", italy, fixed(6, 24, "holiday.saint_john"));
+        register("it-trieste", italy, fixed(11, 3, "holiday.saint_justus"));
+        register("it-venezia", italy, fixed(4, 25, "holiday.saint_mark"));
+
+        register("de", Arrays.asList(
+            fixed(1, 1, "holiday.new_year"),
+            easter(-2, "holiday.good_friday"),
+            easter(1, "holiday.easter_monday"),
+            fixed(5, 1, "holiday.labour_day"),
+            easter(39, "holiday.ascension"),
+            easter(50, "holiday.whit_monday"),
+            fixed(10, 3, "holiday.german_unity").since(1990),
+            fixed(12, 25, "holiday.christmas"),
+            fixed(12, 26, "holiday.saint_stephen")));
+
+        register("us", Arrays.asList(
+            fixed(1, 1, "holiday.new_year"),
+            nthWeekday(1, DayOfWeek.MONDAY, 3, "holiday.martin_luther_king").since(1986),
+            nthWeekday(2, DayOfWeek.MONDAY, 3, "holiday.presidents_day"),
+            nthWeekday(5, DayOfWeek.MONDAY, -1, "holiday.memorial_day"),
+            fixed(6, 19, "holiday.juneteenth").since(2021),
+            fixed(7, 4, "holiday.independence_day"),
+            nthWeekday(9, DayOfWeek.MONDAY, 1, "holiday.labor_day"),
+            nthWeekday(10, DayOfWeek.MONDAY, 2, "holiday.columbus_day"),
+            fixed(11, 11, "holiday.veterans_day"),
+            nthWeekday(11, DayOfWeek.THURSDAY, 4, "holiday.thanksgiving"),
+            fixed(12, 25, "holiday.christmas")));
+    }
+
+    private HolidayRules() {
+    }
+
+    /**
+     * Registers a rule set, replacing any set with the same id.
+     *
+     * @param region Id of the set
+     * @param rules The rules
+     */
+    public static synchronized void register(String region, List<HolidayRule> rules) {
+        REGIONS.put(region, Collections.unmodifiableList(new ArrayList<>(rules)));
+    }
+
+    /**
+     * Registers a rule set extending another one.
+     *
+     * @param region Id of the set
+     * @param base Rules of the set it extends
+     * @param extra Rules added to the base ones
+     */
+    public static void register(String region, List<HolidayRule> base, HolidayRule... extra) {
+        List<HolidayRule> rules = new ArrayList<>(base);
+        rules.addAll(Arrays.asList(extra));
+        register(region, rules);
+    }
+
+    /**
+     * @param region Id of the set
+     * @return The rules of the set, or null if no set has that id
+     */
+    public static synchronized List<HolidayRule> get(String region) {
+        return REGIONS.get(region);
+    }
+
+    /**
+     * @return The ids of the registered sets, sorted
+     */
+    public static synchronized Set<String> getRegions() {
+        return Collections.unmodifiableSet(new TreeSet<>(REGIONS.keySet()));
+    }
+}
@@ -13,18 +13,26 @@ import java.util.MissingResourceException;
 public class Calendar_i18n {
     private static final Map<String, String> resources = new HashMap<>();
     
-    // Color constants
-    private static final Map<String, Color> colorResources = new HashMap<>();
-    
-    // Dimension constants
-    private static final Map<String, Dimension> dimensionResources = new HashMap<>();
-    
     static {
         resources.put("app.title", "Calendario Appuntamenti");
         resources.put("dialog.appointments_title", "Appuntamenti");
         resources.put("dialog.appointments_for", "Appuntamenti del");
         resources.put("dialog.no_appointments", "Nessun appuntamento per questo giorno");
+        resources.put("dialog.free_slots", "Prime fasce libere ({0} min)");
+        resources.put("dialog.no_free_slots", "Nessuna fascia libera nei prossimi giorni");
+        resources.put("dialog.searching_free_slots", "Ricerca nei calendari in corso...");
         resources.put("button.close", "Chiudi");
+        resources.put("button.save", "Salva");
+        resources.put("button.cancel", "Annulla");
+        resources.put("button.delete", "Elimina");
+        resources.put("editor.title", "Nuovo appuntamento");
+        resources.put("editor.appointment_title", "Titolo");
+        resources.put("editor.category", "Categoria");
+        resources.put("editor.date", "Data (gg/mm/aaaa)");
+        resources.put("editor.time", "Orario (hh:mm)");
+        resources.put("editor.invalid_time", "Data o orario non validi");
+        resources.put("editor.no_conflicts", "Nessuna sovrapposizione");
+        resources.put("editor.conflicts", "Si sovrappone a {0,choice,1#un appuntamento|1<{0} appuntamenti}");
         // Day names
         resources.put("day.monday", "Lunedì");
         resources.put("day.tuesday", "Martedì");
@@ -55,8 +63,28 @@ public class Calendar_i18n {
         resources.put("button.your_mode", "Modalità");
         resources.put("button.compact_mode", "Modalità Compatta");
         resources.put("button.extended_mode", "Modalità Estesa");
+        resources.put("button.week_view", "Vista Continua");
+        resources.put("button.month_view", "Vista Mensile");
+        resources.put("button.new_window", "Nuova Finestra");
+        resources.put("week.more", "+{0} altri");
         resources.put("label.filters", "Filtri");
+        resources.put("label.calendars", "Calendari");
+        resources.put("filter.query_help", "<html>Filtro, ad esempio <tt>category:meeting AND title~budget AND weekday:mon-fri AND duration&gt;30m</tt><br>"
+            + "Campi: category, weekday (mon-fri, weekend), title (~ contiene, : uguale), duration (30m, 1h), time (9:30)<br>"
+            + "Operatori: AND, OR, NOT o -, parentesi; una parola senza campo cerca nel titolo</html>");
+        resources.put("filter.invalid_query", "Filtro non valido al carattere {0}");
+        resources.put("filter.save_name", "Nome del filtro:");
+        resources.put("filter.save_error", "Impossibile salvare il filtro {0}");
+        resources.put("calendar.personal", "Personale");
         resources.put("label.details", "Dettagli");
+        resources.put("label.agenda", "Prossimi");
+        resources.put("button.load_more", "Carica altri");
+        resources.put("agenda.day", "{0} {1} {2} {3,number,#}");
+        resources.put("agenda.none_until", "Nessun altro appuntamento fino a {0}");
+        resources.put("label.statistics", "Statistiche");
+        resources.put("statistics.hours_per_category", "Ore per categoria - {0}");
+        resources.put("statistics.hours_per_month", "Ore per mese - {0}");
+        resources.put("statistics.appointments_per_weekday", "Appuntamenti per giorno - {0}");
         resources.put("label.select_appointment", "Seleziona un appuntamento per visualizzare i dettagli.");
         resources.put("appointment.meeting", "Riunione");
         resources.put("appointment.lunch", "Pranzo");
@@ -67,28 +95,121 @@ public class Calendar_i18n {
         resources.put("details.description", "Descrizione: {0}");
         resources.put("info.feature_not_implemented", "La funzionalità di {0} non è ancora implementata.");
         resources.put("info.title", "Informazione");
+        resources.put("export.title", "Stampa ed esportazione");
+        resources.put("export.scope", "Periodo");
+        resources.put("export.scope_month", "Mese visualizzato");
+        resources.put("export.scope_year", "Anno visualizzato");
+        resources.put("export.output", "Destinazione");
+        resources.put("export.output_printer", "Stampante");
+        resources.put("export.output_png", "Immagine PNG");
+        resources.put("export.output_pdf", "Documento PDF");
+        resources.put("export.completed", "Esportazione completata: {0}");
+        resources.put("export.files", "{0} file, da {1} a {2}");
+        resources.put("export.error", "Errore durante la stampa o l''esportazione: {0}");
         resources.put("error.icon_load", "Impossibile caricare l''icona: {0}");
+        resources.put("error.invalid_zone", "Fuso orario non valido: {0}, uso quello di sistema");
+        resources.put("error.sync", "Sincronizzazione non riuscita: {0}");
+        resources.put("error.flight_recording", "Impossibile avviare la registrazione del flight recorder: {0}");
+        resources.put("error.metrics_endpoint", "Impossibile avviare l''endpoint delle metriche sulla porta {0,number,#}: {1}");
+        resources.put("error.calendar", "Impossibile leggere il calendario {0}: {1}");
+        resources.put("error.invalid_calendar", "Calendario non valido: {0}");
+        resources.put("error.statistics_year", "Impossibile caricare le statistiche del {0}: {1}");
+        resources.put("error.free_slots", "Impossibile cercare le fasce libere: {0}");
+        resources.put("error.calendar_watch", "Impossibile controllare le modifiche ai file dei calendari: {0}");
+        resources.put("cli.usage", "Uso: java -cp bin dashboard.cli.Agenda [opzioni]\n"
+            + "  --agenda today|tomorrow|aaaa-mm-gg [--days n]  appuntamenti di uno o più giorni\n"
+            + "  --month aaaa-mm                               appuntamenti di un mese\n"
+            + "  --search testo [--from aaaa-mm-gg] [--to aaaa-mm-gg]\n"
+            + "                                                appuntamenti il cui titolo contiene il testo\n"
+            + "  --filter query                                solo gli appuntamenti che soddisfano il filtro,\n"
+            + "                                                ad esempio \"category:meeting AND duration>30m\"\n"
+            + "  --saved nome                                  come --filter, con un filtro salvato nella finestra\n"
+            + "  --json                                        risultato in formato JSON\n"
+            + "  --zone fuso                                   fuso orario (ad esempio Europe/Rome)");
+        resources.put("cli.invalid_argument", "Argomento non valido: {0}");
+        resources.put("cli.no_appointments", "Nessun appuntamento");
+        resources.put("cli.error", "Impossibile leggere gli appuntamenti: {0}");
 
-        // Initialize color resources
-        colorResources.put("color.weekend_color_bg", new Color(220, 20, 60));
-        colorResources.put("color.day_hover_color_bg", new Color(240, 240, 240));
-        colorResources.put("color.day_selected_color_bd", new Color(229, 243, 255));
-        colorResources.put("color.today_highlight_color", new Color(0, 120, 215));
-        colorResources.put("color.navigation_button_color_bg", new Color(240, 240, 240));
-        colorResources.put("color.navigation_button_color", new Color(50, 50, 50));
-        colorResources.put("color.navigation_button_color_bd", new Color(214, 217, 223));
-        colorResources.put("color.navigation_month_color", new Color(50, 50, 50));
-        colorResources.put("color.mini_calendar_color_bg", new Color(255, 255, 255));
-        colorResources.put("color.day_selected_color_bg", new Color(229, 243, 255));
-        colorResources.put("color.day_of_week_color_bg", new Color(255, 255, 255));
-        colorResources.put("color.empty_day_color_bg", new Color(245, 245, 245));
-        colorResources.put("color.meeting_color_bg", new Color(200, 230, 255));
-        colorResources.put("color.lunch_color_bg", new Color(255, 230, 230));
-        colorResources.put("color.conference_color_bg", new Color(230, 255, 230));
-        colorResources.put("color.header_color_bd", new Color(130, 130, 130));
+        // Holiday names
+        resources.put("holiday.new_year", "Capodanno");
+        resources.put("holiday.epiphany", "Epifania");
+        resources.put("holiday.easter", "Pasqua");
+        resources.put("holiday.easter_monday", "Pasquetta");
+        resources.put("holiday.liberation_day", "Festa della Liberazione");
+        resources.put("holiday.labour_day", "Festa del Lavoro");
+        resources.put("holiday.republic_day", "Festa della Repubblica");
+        resources.put("holiday.assumption", "Ferragosto");
+        resources.put("holiday.saint_francis", "San Francesco d'Assisi");
+        resources.put("holiday.all_saints", "Ognissanti");
+        resources.put("holiday.immaculate_conception", "Immacolata Concezione");
+        resources.put("holiday.christmas", "Natale");
+        resources.put("holiday.saint_stephen", "Santo Stefano");
+        resources.put("holiday.saint_nicholas", "San Nicola");
+        resources.put("holiday.saint_petronius", "San Petronio");
+        resources.put("holiday.saint_john", "San Giovanni Battista");
+        resources.put("holiday.saint_ambrose", "Sant'Ambrogio");
+        resources.put("holiday.saint_januarius", "San Gennaro");
+        resources.put("holiday.saint_rosalia", "Santa Rosalia");
+        resources.put("holiday.saints_peter_paul", "Santi Pietro e Paolo");
+        resources.put("holiday.saint_justus", "San Giusto");
+        resources.put("holiday.saint_mark", "San Marco");
+        resources.put("holiday.good_friday", "Venerdì Santo");
+        resources.put("holiday.ascension", "Ascensione");
+        resources.put("holiday.whit_monday", "Lunedì di Pentecoste");
+        resources.put("holiday.german_unity", "Giorno dell'Unità Tedesca");
+        resources.put("holiday.martin_luther_king", "Martin Luther King Day");
+        resources.put("holiday.presidents_day", "Presidents' Day");
+        resources.put("holiday.memorial_day", "Memorial Day");
+        resources.put("holiday.juneteenth", "Juneteenth");
+        resources.put("holiday.independence_day", "Giorno dell'Indipendenza");
+        resources.put("holiday.labor_day", "Labor Day");
+        resources.put("holiday.columbus_day", "Columbus Day");
+        resources.put("holiday.veterans_day", "Veterans Day");
+        resources.put("holiday.thanksgiving", "Festa del Ringraziamento");
+        resources.put("error.invalid_holiday_region", "Festività sconosciute: {0}, uso quelle predefinite");
+    }
+
+    /**
+     * Colors and dimensions, created on first use: the strings alone do not
+     * load AWT, so the command line agenda starts without it.
+     */
+    private static final class AwtResources {
+        // Color constants
+        static final Map<String, Color> colorResources = new HashMap<>();
+        
+        // Dimension constants
+        static final Map<String, Dimension> dimensionResources = new HashMap<>();
         
-        // Initialize dimension resources
-        dimensionResources.put("dimension.mini_calendar", new Dimension(200, 200));
+        static {
+            // Initialize color resources
+            colorResources.put("color.weekend_color_bg", new Color(220, 20, 60));
+            colorResources.put("color.day_hover_color_bg", new Color(240, 240, 240));
+            colorResources.put("color.day_selected_color_bd", new Color(229, 243, 255));
+            colorResources.put("color.today_highlight_color", new Color(0, 120, 215));
+            colorResources.put("color.navigation_button_color_bg", new Color(240, 240, 240));
+            colorResources.put("color.navigation_button_color", new Color(50, 50, 50));
+            colorResources.put("color.navigation_button_color_bd", new Color(214, 217, 223));
+            colorResources.put("color.navigation_month_color", new Color(50, 50, 50));
+            colorResources.put("color.mini_calendar_color_bg", new Color(255, 255, 255));
+            colorResources.put("color.day_selected_color_bg", new Color(229, 243, 255));
+            colorResources.put("color.day_of_week_color_bg", new Color(255, 255, 255));
+            colorResources.put("color.empty_day_color_bg", new Color(245, 245, 245));
+            colorResources.put("color.meeting_color_bg", new Color(200, 230, 255));
+            colorResources.put("color.lunch_color_bg", new Color(255, 230, 230));
+            colorResources.put("color.conference_color_bg", new Color(230, 255, 230));
+            colorResources.put("color.header_color_bd", new Color(130, 130, 130));
+            colorResources.put("color.invalid_query_color_bg", new Color(255, 220, 220));
+            // Aggregated calendars, in the order they are configured
+            colorResources.put("color.calendar_1", new Color(255, 240, 200));
+            colorResources.put("color.calendar_2", new Color(232, 222, 255));
+            colorResources.put("color.calendar_3", new Color(210, 245, 245));
+            colorResources.put("color.calendar_4", new Color(255, 222, 245));
+            colorResources.put("color.calendar_5", new Color(238, 238, 210));
+            colorResources.put("color.calendar_6", new Color(225, 225, 225));
+        
+            // Initialize dimension resources
+            dimensionResources.put("dimension.mini_calendar", new Dimension(200, 200));
+        }
     }
 
     /**
@@ -114,8 +235,8 @@ public class Calendar_i18n {
      * @throws MissingResourceException if no object for the given key can be found
      */
     public static Color getColor(String key) {
-        if (colorResources.containsKey(key)) {
-            return colorResources.get(key);
+        if (AwtResources.colorResources.containsKey(key)) {
+            return AwtResources.colorResources.get(key);
         }
         throw new MissingResourceException("Can't find color resource for key " + key, 
                                         Calendar_i18n.class.getName(), key);
@@ -129,8 +250,8 @@ public class Calendar_i18n {
      * @throws MissingResourceException if no object for the given key can be found
      */
     public static Dimension getDimension(String key) {
-        if (dimensionResources.containsKey(key)) {
-            return dimensionResources.get(key);
+        if (AwtResources.dimensionResources.containsKey(key)) {
+            return AwtResources.dimensionResources.get(key);
         }
         throw new MissingResourceException("Can't find dimension resource for key " + key, 
                                         Calendar_i18n.class.getName(), key);
@@ -0,0 +1,15 @@
+package dashboard.metrics;
+
+/**
+ * Management view of a {@link CacheStatistics}.
+ */
+public interface CacheStatisticsMXBean {
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return The share of the lookups answered by the cache, from 0 to 1
+     */
+    double getHitRatio();
+}
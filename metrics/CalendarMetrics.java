@@ -0,0 +1,226 @@
+package dashboard.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of the calendar, shared by the whole process.
+ * <p>
+ * Components record into it directly: latencies go into {@link Histogram}s,
+ * one for the store queries and one per rendered view, cache lookups into
+ * {@link CacheStatistics}, synchronizations and imports into counters.
+ * Recording is cheap enough to stay always on. Gauges read their value
+ * from the component only when asked.
+ * <p>
+ * {@link #registerMBeans()} publishes everything as MXBeans in the
+ * {@value #DOMAIN} domain, for JConsole or VisualVM; {@link PrometheusEndpoint}
+ * serves the same values as text. Neither loads AWT, so the command line
+ * agenda can record too.
+ */
+public final class CalendarMetrics implements CalendarMetricsMXBean {
+    public static final String DOMAIN = "dashboard";
+    private static final CalendarMetrics INSTANCE = new CalendarMetrics();
+
+    private final Histogram storeQueries = new Histogram("storeQuery");
+    private final Histogram syncs = new Histogram("sync");
+    private final Histogram edtQueueDelays = new Histogram("edtQueueDelay");
+    private final Map<String, Histogram> renders = new ConcurrentHashMap<>();
+    private final Map<String, CacheStatistics> caches = new ConcurrentHashMap<>();
+    private final LongAdder syncedAppointments = new LongAdder();
+    private final LongAdder importedAppointments = new LongAdder();
+    private final LongAdder importNanos = new LongAdder();
+    private volatile LongSupplier storeSize = () -> 0;
+    private volatile LongSupplier syncBacklog = () -> 0;
+    private volatile LongSupplier edtQueueDelay = () -> 0;
+    // Set once the beans are registered: later histograms and caches are registered when created
+    private volatile MBeanServer server;
+
+    private CalendarMetrics() {
+    }
+
+    public static CalendarMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Durations of the range queries of the stores
+     */
+    public Histogram storeQueries() {
+        return storeQueries;
+    }
+
+    /**
+     * @return Durations of the synchronization cycles
+     */
+    public Histogram syncs() {
+        return syncs;
+    }
+
+    /**
+     * @return Waits of the probes in the event queue, see {@link EdtProbe}
+     */
+    public Histogram edtQueueDelays() {
+        return edtQueueDelays;
+    }
+
+    /**
+     * @param view Name of the view, such as "month" or "week"
+     * @return Rendering durations of the view
+     */
+    public Histogram render(String view) {
+        Histogram histogram = renders.get(view);
+        if (histogram == null) {
+            histogram = renders.computeIfAbsent(view, key -> {
+                Histogram created = new Histogram(key);
+                register(created, "type=Render,name=" + key);
+                return created;
+            });
+        }
+        return histogram;
+    }
+
+    /**
+     * @param name Name of the cache, such as "store"
+     * @return Hits and misses of the cache
+     */
+    public CacheStatistics cache(String name) {
+        CacheStatistics statistics = caches.get(name);
+        if (statistics == null) {
+            statistics = caches.computeIfAbsent(name, key -> {
+                CacheStatistics created = new CacheStatistics(key);
+                register(created, "type=MonthCache,name=" + key);
+                return created;
+            });
+        }
+        return statistics;
+    }
+
+    Collection<Histogram> getRenders() {
+        return Collections.unmodifiableCollection(renders.values());
+    }
+
+    Collection<CacheStatistics> getCaches() {
+        return Collections.unmodifiableCollection(caches.values());
+    }
+
+    /**
+     * Records a synchronization cycle.
+     *
+     * @param appointments Appointments sent, received or removed
+     * @param nanos Duration of the cycle
+     */
+    public void recordSync(int appointments, long nanos) {
+        syncs.record(nanos);
+        syncedAppointments.add(appointments);
+    }
+
+    /**
+     * Records appointments read into the store in one batch.
+     *
+     * @param appointments Appointments read
+     * @param nanos Duration of the batch
+     */
+    public void recordImport(int appointments, long nanos) {
+        importedAppointments.add(appointments);
+        importNanos.add(nanos);
+    }
+
+    public void setStoreSize(LongSupplier storeSize) {
+        this.storeSize = storeSize;
+    }
+
+    public void setSyncBacklog(LongSupplier syncBacklog) {
+        this.syncBacklog = syncBacklog;
+    }
+
+    /**
+     * @param edtQueueDelay Current delay of the event queue in nanoseconds, see {@link EdtProbe}
+     */
+    public void setEdtQueueDelay(LongSupplier edtQueueDelay) {
+        this.edtQueueDelay = edtQueueDelay;
+    }
+
+    @Override
+    public long getStoreSize() {
+        return storeSize.getAsLong();
+    }
+
+    @Override
+    public double getEdtQueueDelayMillis() {
+        return edtQueueDelay.getAsLong() / 1e6;
+    }
+
+    @Override
+    public long getSyncBacklog() {
+        return syncBacklog.getAsLong();
+    }
+
+    @Override
+    public long getSyncCycles() {
+        return syncs.getCount();
+    }
+
+    @Override
+    public long getSyncedAppointments() {
+        return syncedAppointments.sum();
+    }
+
+    @Override
+    public double getSyncThroughput() {
+        long nanos = syncs.getSum();
+        return nanos == 0 ? 0 : syncedAppointments.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public long getImportedAppointments() {
+        return importedAppointments.sum();
+    }
+
+    @Override
+    public double getImportThroughput() {
+        long nanos = importNanos.sum();
+        return nanos == 0 ? 0 : importedAppointments.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server; the views and
+     * caches appearing later are registered as they are first used.
+     */
+    public synchronized void registerMBeans() {
+        if (server != null) {
+            return;
+        }
+        server = ManagementFactory.getPlatformMBeanServer();
+        register(this, "type=Calendar");
+        register(storeQueries, "type=Latency,name=" + storeQueries.getName());
+        register(syncs, "type=Latency,name=" + syncs.getName());
+        register(edtQueueDelays, "type=Latency,name=" + edtQueueDelays.getName());
+        renders.forEach((name, histogram) -> register(histogram, "type=Render,name=" + name));
+        caches.forEach((name, statistics) -> register(statistics, "type=MonthCache,name=" + name));
+    }
+
+    private void register(Object bean, String properties) {
+        MBeanServer target = server;
+        if (target == null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (!target.isRegistered(name)) {
+                target.registerMBean(bean, name);
+            }
+        } catch (JMException e) {
+            // Metrics must never stop the calendar
+            System.err.println("Metrics bean not registered: " + properties + " (" + e + ")");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package dashboard.metrics;
+
+/**
+ * Management view of the {@link CalendarMetrics} gauges and counters; the
+ * latencies and the caches have a bean each.
+ */
+public interface CalendarMetricsMXBean {
+    /**
+     * @return Appointments held in the store of the interface
+     */
+    long getStoreSize();
+
+    /**
+     * @return How long the last probe waited in the event queue before the EDT ran it, in milliseconds
+     */
+    double getEdtQueueDelayMillis();
+
+    /**
+     * @return Local changes waiting to be sent to the server
+     */
+    long getSyncBacklog();
+
+    long getSyncCycles();
+
+    long getSyncedAppointments();
+
+    /**
+     * @return Appointments sent or received per second of synchronization
+     */
+    double getSyncThroughput();
+
+    /**
+     * @return Appointments read from the repository or from files into the store
+     */
+    long getImportedAppointments();
+
+    /**
+     * @return Appointments imported per second of import
+     */
+    double getImportThroughput();
+}
@@ -0,0 +1,69 @@
+package dashboard.metrics;
+
+import java.awt.EventQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how far behind the event dispatch thread is.
+ * The length of the AWT event queue cannot be read, so a probe task is
+ * posted to it at a fixed interval and the time it waits before running is
+ * recorded: it grows with the work queued in front of it. While a probe is
+ * still waiting no other one is posted, and the reported delay is the time
+ * it has waited so far, so a blocked EDT shows up at once.
+ */
+public final class EdtProbe implements AutoCloseable {
+    private static final long INTERVAL_MILLIS = 500;
+
+    private final ScheduledExecutorService scheduler;
+    private final Histogram delays;
+    // nanoTime when the probe waiting in the queue was posted, 0 if none is waiting
+    private volatile long postedAt;
+    private volatile long lastDelay;
+
+    private EdtProbe(CalendarMetrics metrics) {
+        delays = metrics.edtQueueDelays();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "edt-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts probing and publishes the delay as {@link CalendarMetrics#getEdtQueueDelayMillis()}.
+     */
+    public static EdtProbe start(CalendarMetrics metrics) {
+        EdtProbe probe = new EdtProbe(metrics);
+        metrics.setEdtQueueDelay(probe::getDelay);
+        probe.scheduler.scheduleWithFixedDelay(probe::post, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return probe;
+    }
+
+    /**
+     * @return The wait of the last probe, or of the one still waiting, in nanoseconds
+     */
+    public long getDelay() {
+        long posted = postedAt;
+        return posted != 0 ? Math.max(lastDelay, System.nanoTime() - posted) : lastDelay;
+    }
+
+    private void post() {
+        if (postedAt != 0) {
+            return;
+        }
+        long posted = System.nanoTime();
+        postedAt = posted;
+        EventQueue.invokeLater(() -> {
+            lastDelay = System.nanoTime() - posted;
+            delays.record(lastDelay);
+            postedAt = 0;
+        });
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
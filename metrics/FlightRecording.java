@@ -0,0 +1,112 @@
+package dashboard.metrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Starts a flight recording of the calendar events on request.
+ * The events are disabled by default and cost next to nothing until a
+ * recording enables them: with {@code -Dcalendario.jfr=file.jfr} the
+ * calendar records its own events together with the default JDK ones and
+ * writes the file when it exits, ready for JDK Mission Control. They can
+ * also be enabled in a recording started from Mission Control or jcmd.
+ * <p>
+ * Creating the first event loads the flight recorder, which takes a few
+ * hundred milliseconds even when nothing records: the events are therefore
+ * created only while {@link #isRecording()}, which holds from
+ * {@link #start(Path)} on, or, after {@link #watchRecordings()}, while any
+ * recording of the JVM runs.
+ */
+public final class FlightRecording {
+    public static final String FILE_PROPERTY = "calendario.jfr";
+    // Queries are frequent and keep their stack trace: only the slower ones are recorded
+    private static final Duration QUERY_THRESHOLD = Duration.ofNanos(100_000);
+
+    // Whether a recording runs, read before creating each event
+    private static volatile boolean running;
+
+    private FlightRecording() {
+    }
+
+    /**
+     * @return true if a recording may enable the calendar events, so that they are worth creating
+     */
+    public static boolean isRecording() {
+        return running;
+    }
+
+    /**
+     * Follows the recordings started and stopped outside the calendar, as
+     * from Mission Control or jcmd, so that the events are created while
+     * one of them runs. Registering costs far less than loading the events.
+     */
+    public static void watchRecordings() {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                // Also called at once when the JVM was started with a recording
+                update(recorder);
+            }
+
+            @Override
+            public void recordingStateChanged(Recording changed) {
+                update(FlightRecorder.getFlightRecorder());
+            }
+        });
+    }
+
+    private static void update(FlightRecorder recorder) {
+        boolean any = false;
+        for (Recording recording : recorder.getRecordings()) {
+            any |= recording.getState() == RecordingState.RUNNING;
+        }
+        running = any;
+    }
+
+    /**
+     * Starts the recording if the system property names a file.
+     *
+     * @return The recording, or null if none was requested
+     * @throws IOException If the file cannot be written
+     */
+    public static Recording startFromSystemProperty() throws IOException {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        return start(Paths.get(file));
+    }
+
+    /**
+     * Starts recording the calendar and JDK events, written to the file at exit.
+     */
+    public static Recording start(Path file) throws IOException {
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (ParseException e) {
+            throw new IOException(e);
+        }
+        recording.setName("Calendario");
+        recording.enable(NavigationEvent.class);
+        recording.enable(RenderEvent.class);
+        recording.enable(StoreQueryEvent.class).withThreshold(QUERY_THRESHOLD);
+        recording.enable(ImportEvent.class);
+        recording.enable(SyncEvent.class);
+        recording.setToDisk(true);
+        recording.setDestination(file);
+        recording.setDumpOnExit(true);
+        running = true;
+        recording.start();
+        return recording;
+    }
+}
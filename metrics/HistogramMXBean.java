@@ -0,0 +1,18 @@
+package dashboard.metrics;
+
+/**
+ * Management view of a {@link Histogram}, with durations in microseconds.
+ */
+public interface HistogramMXBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+}
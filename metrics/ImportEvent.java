@@ -0,0 +1,26 @@
+package dashboard.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a batch of appointments read into the store.
+ * Disabled unless a recording enables it.
+ */
+@Name("dashboard.Import")
+@Label("Import Batch")
+@Description("Batch of appointments read into the store from a repository or a file")
+@Category({ "Calendario", "Store" })
+@Enabled(false)
+@StackTrace(false)
+public class ImportEvent extends jdk.jfr.Event {
+    @Label("Source")
+    public String source;
+
+    @Label("Appointments")
+    public int appointments;
+}
@@ -0,0 +1,27 @@
+package dashboard.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a move between months, from the click to the
+ * updated views. Disabled unless a recording enables it.
+ */
+@Name("dashboard.Navigation")
+@Label("Month Navigation")
+@Description("Move to another month with the navigation buttons, including the update of the views")
+@Category({ "Calendario", "Interface" })
+@Enabled(false)
+@StackTrace(false)
+public class NavigationEvent extends jdk.jfr.Event {
+    @Label("Action")
+    @Description("previous, next or today")
+    public String action;
+
+    @Label("Month")
+    public String month;
+}
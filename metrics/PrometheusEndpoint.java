@@ -0,0 +1,149 @@
+package dashboard.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the {@link CalendarMetrics} in the Prometheus text format at
+ * {@value #PATH}, on the loopback address. Latencies are exported as
+ * summaries in seconds with the 0.5, 0.9 and 0.99 quantiles.
+ */
+public class PrometheusEndpoint implements AutoCloseable {
+    public static final String PATH = "/metrics";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    private final CalendarMetrics metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts serving.
+     *
+     * @param port The port, or 0 for any free port
+     */
+    public PrometheusEndpoint(CalendarMetrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape(metrics).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return The metrics in the Prometheus text format
+     */
+    static String scrape(CalendarMetrics metrics) {
+        StringBuilder out = new StringBuilder(2048);
+        gauge(out, "calendario_store_size", "Appointments held in the store", metrics.getStoreSize());
+        summary(out, "calendario_store_query_seconds", "Duration of the store range queries", null,
+                metrics.storeQueries(), true);
+
+        boolean first = true;
+        for (Histogram render : metrics.getRenders()) {
+            summary(out, "calendario_render_seconds", "Rendering time per view", "view=\"" + render.getName() + "\"",
+                    render, first);
+            first = false;
+        }
+
+        if (!metrics.getCaches().isEmpty()) {
+            header(out, "calendario_month_cache_hits_total", "Month cache hits", "counter");
+            for (CacheStatistics cache : metrics.getCaches()) {
+                out.append("calendario_month_cache_hits_total{cache=\"").append(cache.getName()).append("\"} ")
+                   .append(cache.getHits()).append('\n');
+            }
+            header(out, "calendario_month_cache_misses_total", "Month cache misses", "counter");
+            for (CacheStatistics cache : metrics.getCaches()) {
+                out.append("calendario_month_cache_misses_total{cache=\"").append(cache.getName()).append("\"} ")
+                   .append(cache.getMisses()).append('\n');
+            }
+        }
+
+        gauge(out, "calendario_edt_queue_delay_seconds", "Wait of the last probe in the event queue",
+              metrics.getEdtQueueDelayMillis() / 1000);
+        summary(out, "calendario_edt_queue_delay_probe_seconds", "Waits of the probes in the event queue", null,
+                metrics.edtQueueDelays(), true);
+        gauge(out, "calendario_sync_backlog", "Local changes waiting to be sent", metrics.getSyncBacklog());
+        summary(out, "calendario_sync_seconds", "Duration of the synchronization cycles", null, metrics.syncs(), true);
+        counter(out, "calendario_sync_appointments_total", "Appointments sent or received", metrics.getSyncedAppointments());
+        counter(out, "calendario_import_appointments_total", "Appointments imported into the store",
+                metrics.getImportedAppointments());
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String help, String labels, Histogram histogram,
+                                boolean withHeader) {
+        if (withHeader) {
+            header(out, name, help, "summary");
+        }
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+               .append(format(histogram.getPercentile(quantile * 100) / 1e9)).append('\n');
+        }
+        String suffix = labels == null ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(format(histogram.getSum() / 1e9)).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,29 @@
+package dashboard.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the rebuild of a view. Disabled unless a
+ * recording enables it.
+ */
+@Name("dashboard.Render")
+@Label("View Render")
+@Description("Rebuild of a calendar view")
+@Category({ "Calendario", "Interface" })
+@Enabled(false)
+@StackTrace(false)
+public class RenderEvent extends jdk.jfr.Event {
+    @Label("View")
+    public String view;
+
+    @Label("Days")
+    public int days;
+
+    @Label("Appointments")
+    public int appointments;
+}
@@ -0,0 +1,36 @@
+package dashboard.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * Flight recorder event of a range query of an appointment store. Disabled
+ * unless a recording enables it; it keeps the stack trace, so that the
+ * caller of a slow query can be found.
+ */
+@Name("dashboard.StoreQuery")
+@Label("Store Query")
+@Description("Range query of an appointment store")
+@Category({ "Calendario", "Store" })
+@Enabled(false)
+@StackTrace(true)
+public class StoreQueryEvent extends jdk.jfr.Event {
+    @Label("Store")
+    public String store;
+
+    @Label("From")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    public long from;
+
+    @Label("To")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    public long to;
+
+    @Label("Results")
+    public int results;
+}
@@ -0,0 +1,38 @@
+package dashboard.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a synchronization cycle. Disabled unless a
+ * recording enables it.
+ */
+@Name("dashboard.Sync")
+@Label("Sync Cycle")
+@Description("Synchronization with the CalDAV server")
+@Category({ "Calendario", "Sync" })
+@Enabled(false)
+@StackTrace(false)
+public class SyncEvent extends jdk.jfr.Event {
+    @Label("Pushed")
+    public int pushed;
+
+    @Label("Pulled")
+    public int pulled;
+
+    @Label("Removed")
+    public int removed;
+
+    @Label("Conflicts")
+    public int conflicts;
+
+    @Label("Requests")
+    public long requests;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,170 @@
+package dashboard.store;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Pages through the appointments to come, in start order, for the agenda.
+ * A page starts from a {@link Cursor} and reads only the months it needs:
+ * each is loaded into the store if missing, its personal appointments are
+ * read from the start index of the store from the cursor on, and the ones
+ * of the other calendars are merged in as the page reaches their month. A
+ * page therefore costs O(log n) plus its own length, however far the
+ * agenda has been scrolled, and a year of agenda is never read at once.
+ * <p>
+ * Appointments with the same start are ordered as in the month grid: the
+ * personal ones first, in the order they were added, then the other
+ * calendars in their order. The cursor counts the appointments already
+ * returned at its start minute, so appointments added meanwhile at that
+ * minute are not lost; one removed there may make the next page skip one.
+ * <p>
+ * Pages are read on the calling thread; the other calendars contribute the
+ * months they have already fetched, and the views are told through the
+ * {@link CalendarAggregator.Listener} when the others arrive.
+ */
+public class AgendaPager {
+    // Months searched by a page before it is returned short
+    public static final int MONTHS_PER_PAGE = 12;
+
+    private final AppointmentStore store;
+    private final RepositoryLoader loader;
+    private final CalendarAggregator aggregator;
+    private final ZoneOffsetCache offsets;
+
+    /**
+     * @param aggregator Other calendars merged in, or null
+     */
+    public AgendaPager(AppointmentStore store, RepositoryLoader loader, CalendarAggregator aggregator,
+                       ZoneOffsetCache offsets) {
+        this.store = store;
+        this.loader = loader;
+        this.aggregator = aggregator;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Position of a page in the agenda.
+     */
+    public static final class Cursor {
+        private final long start;
+        private final int skip;
+
+        private Cursor(long start, int skip) {
+            this.start = start;
+            this.skip = skip;
+        }
+
+        /**
+         * @return A cursor before the appointments starting at or after the given time
+         */
+        public static Cursor at(long epochMinute) {
+            return new Cursor(epochMinute, 0);
+        }
+
+        /**
+         * @return The epoch minute the next page starts from
+         */
+        public long getStart() {
+            return start;
+        }
+    }
+
+    /**
+     * Appointments of one page and the cursor of the following one.
+     */
+    public static final class Page {
+        private final List<CalendarAggregator.Entry> entries;
+        private final Cursor next;
+        private final boolean full;
+
+        private Page(List<CalendarAggregator.Entry> entries, Cursor next, boolean full) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.next = next;
+            this.full = full;
+        }
+
+        /**
+         * @return The appointments in start order; the source is null for the personal calendar
+         */
+        public List<CalendarAggregator.Entry> getEntries() {
+            return entries;
+        }
+
+        public Cursor getNext() {
+            return next;
+        }
+
+        /**
+         * @return false if the page ended at {@value AgendaPager#MONTHS_PER_PAGE}
+         *         months from its cursor before reaching its size
+         */
+        public boolean isFull() {
+            return full;
+        }
+    }
+
+    /**
+     * Reads a page of appointments.
+     *
+     * @param cursor Where the page starts
+     * @param size Maximum number of appointments
+     * @param personal Whether the personal calendar is shown
+     * @param filter Appointments shown, of every calendar
+     */
+    public Page page(Cursor cursor, int size, boolean personal, Predicate<? super AppointmentView> filter) {
+        List<CalendarAggregator.Entry> entries = new ArrayList<>(size);
+        // Appointments at the cursor minute still to skip, and returned at the minute of the last one
+        int skip = cursor.skip;
+        long lastStart = cursor.start;
+        int atLastStart = cursor.skip;
+        long from = cursor.start;
+        YearMonth month = YearMonth.from(LocalDate.ofEpochDay(offsets.getEpochDay(from)));
+        for (int m = 0; m < MONTHS_PER_PAGE; m++, month = month.plusMonths(1)) {
+            long to = offsets.startOfDay(month.plusMonths(1).atDay(1));
+            loader.ensureMonth(month);
+            // Enough personal appointments for the rest of the page even if none of the others come first
+            int wanted = size - entries.size() + skip;
+            List<Appointment> own = new ArrayList<>();
+            if (personal) {
+                store.forEachStartingIn(from, to, view -> {
+                    if (filter.test(view)) {
+                        own.add(view.toAppointment());
+                    }
+                    return own.size() < wanted;
+                });
+            }
+            List<CalendarAggregator.Entry> others = aggregator == null
+                ? Collections.emptyList() : aggregator.query(from, to);
+            int o = 0;
+            for (int p = 0; p < own.size() || o < others.size(); ) {
+                CalendarAggregator.Entry entry;
+                if (o == others.size()
+                        || p < own.size() && own.get(p).getStart() <= others.get(o).getAppointment().getStart()) {
+                    entry = new CalendarAggregator.Entry(null, own.get(p++));
+                } else {
+                    entry = others.get(o++);
+                    if (!filter.test(entry.getAppointment())) {
+                        continue;
+                    }
+                }
+                long start = entry.getAppointment().getStart();
+                if (skip > 0 && start == cursor.start) {
+                    skip--;
+                    continue;
+                }
+                entries.add(entry);
+                atLastStart = start == lastStart ? atLastStart + 1 : 1;
+                lastStart = start;
+                if (entries.size() == size) {
+                    return new Page(entries, new Cursor(lastStart, atLastStart), true);
+                }
+            }
+            from = to;
+        }
+        return new Page(entries, Cursor.at(from), false);
+    }
+}
@@ -0,0 +1,110 @@
+package dashboard.store;
+
+import java.time.ZoneId;
+
+import dashboard.Category;
+
+/**
+ * Immutable appointment held by an {@link AppointmentStore}.
+ * Times are expressed in epoch minutes (minutes since 1970-01-01T00:00Z),
+ * so that comparisons and interval arithmetic never need a Calendar.
+ * An appointment may record the time zone it was scheduled in, so that its
+ * local time there can be shown next to the time in the calendar's zone.
+ */
+public final class Appointment implements AppointmentView {
+    private final long id;
+    private final long start;
+    private final int duration;
+    private final String title;
+    private final Category category;
+    private final ZoneId zone;
+
+    /**
+     * Creates a new appointment without a zone of its own.
+     *
+     * @param id Unique identifier inside the store
+     * @param start Start time in epoch minutes
+     * @param duration Duration in minutes
+     * @param title Title of the appointment
+     * @param category Category of the appointment
+     */
+    public Appointment(long id, long start, int duration, String title, Category category) {
+        this(id, start, duration, title, category, null);
+    }
+
+    /**
+     * Creates a new appointment.
+     *
+     * @param id Unique identifier inside the store
+     * @param start Start time in epoch minutes
+     * @param duration Duration in minutes
+     * @param title Title of the appointment
+     * @param category Category of the appointment
+     * @param zone Time zone the appointment was scheduled in, or null
+     */
+    public Appointment(long id, long start, int duration, String title, Category category, ZoneId zone) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Negative duration: " + duration);
+        }
+        this.id = id;
+        this.start = start;
+        this.duration = duration;
+        this.title = title;
+        this.category = category;
+        this.zone = zone;
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return Start time in epoch minutes
+     */
+    @Override
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return End time (exclusive) in epoch minutes
+     */
+    @Override
+    public long getEnd() {
+        return start + duration;
+    }
+
+    /**
+     * @return Duration in minutes
+     */
+    @Override
+    public int getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public Category getCategory() {
+        return category;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Appointment toAppointment() {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "Appointment[" + id + ", " + start + "+" + duration + ", " + title + "]";
+    }
+}
@@ -0,0 +1,502 @@
+package dashboard.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only archive of the appointments of past months, kept off the Java
+ * heap in a memory-mapped file.
+ * Every month is a separate {@link CompactFormat} block, so reading a month
+ * decodes only that month and the operating system pages in only its bytes.
+ * An index of the ids, sorted and also mapped, tells which month holds an
+ * appointment. The months decoded most recently are kept in a bounded LRU
+ * cache.
+ * <p>
+ * An archive is never modified: archiving more months writes a new file
+ * with the next generation number, copying the unchanged months as they are.
+ */
+final class AppointmentArchive {
+    private static final int MAGIC = 0x43415243; // "CARC"
+    private static final int VERSION = 1;
+    // Magic, version, generation, month count, id count and longest duration
+    private static final int HEADER_SIZE = 28;
+    // Month, offset, length, appointment count and CRC of the block
+    private static final int MONTH_ENTRY_SIZE = 24;
+    // Id and month slot
+    private static final int ID_ENTRY_SIZE = 12;
+    private static final String PREFIX = "archive-";
+    private static final String SUFFIX = ".arc";
+
+    private final Path path;
+    private final long generation;
+    private final ByteBuffer buffer;
+    // Month directory, sorted by month; a few bytes per month
+    private final int[] months;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] counts;
+    private final int[] crcs;
+    private final int idCount;
+    private final int idIndexOffset;
+    private final int maxDuration;
+    private final int count;
+    private final Map<YearMonth, List<Appointment>> cache;
+
+    private AppointmentArchive(Path path, long generation, ByteBuffer buffer, int monthCount, int idCount,
+                               int maxDuration, int cachedMonths) {
+        this.path = path;
+        this.generation = generation;
+        this.buffer = buffer;
+        this.months = new int[monthCount];
+        this.offsets = new long[monthCount];
+        this.lengths = new int[monthCount];
+        this.counts = new int[monthCount];
+        this.crcs = new int[monthCount];
+        this.idCount = idCount;
+        this.idIndexOffset = HEADER_SIZE + monthCount * MONTH_ENTRY_SIZE;
+        this.maxDuration = maxDuration;
+        int total = 0;
+        for (int i = 0; i < monthCount; i++) {
+            int entry = HEADER_SIZE + i * MONTH_ENTRY_SIZE;
+            months[i] = buffer.getInt(entry);
+            offsets[i] = buffer.getLong(entry + 4);
+            lengths[i] = buffer.getInt(entry + 12);
+            counts[i] = buffer.getInt(entry + 16);
+            crcs[i] = buffer.getInt(entry + 20);
+            total += counts[i];
+        }
+        this.count = total;
+        this.cache = new LinkedHashMap<YearMonth, List<Appointment>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<YearMonth, List<Appointment>> eldest) {
+                return size() > cachedMonths;
+            }
+        };
+    }
+
+    /**
+     * @return An archive without months, as generation 0
+     */
+    static AppointmentArchive empty() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        return new AppointmentArchive(null, 0, header, 0, 0, 0, 0);
+    }
+
+    /**
+     * Maps an archive file and checks its directory and id index.
+     * The month blocks are checked when first read.
+     *
+     * @param directory The directory holding the archives
+     * @param generation The generation to open, 0 for the empty archive
+     * @param cachedMonths Maximum number of decoded months kept in memory
+     * @throws IOException if the file is missing or damaged
+     */
+    static AppointmentArchive open(Path directory, long generation, int cachedMonths) throws IOException {
+        if (generation == 0) {
+            return empty();
+        }
+        Path path = pathOf(directory, generation);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archive too large: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE + 4 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an appointment archive: " + path);
+        }
+        if (buffer.getLong(8) != generation) {
+            throw new IOException("Archive generation does not match its name: " + path);
+        }
+        int monthCount = buffer.getInt(16);
+        int idCount = buffer.getInt(20);
+        long indexEnd = HEADER_SIZE + (long) monthCount * MONTH_ENTRY_SIZE + (long) idCount * ID_ENTRY_SIZE;
+        if (monthCount < 0 || idCount < 0 || indexEnd + 4 > buffer.limit()) {
+            throw new IOException("Damaged archive: " + path);
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer index = buffer.duplicate();
+        index.position(0).limit((int) indexEnd);
+        crc.update(index);
+        if (buffer.getInt((int) indexEnd) != (int) crc.getValue()) {
+            throw new IOException("Damaged archive: " + path);
+        }
+        AppointmentArchive archive = new AppointmentArchive(path, generation, buffer, monthCount, idCount,
+                                                            buffer.getInt(24), cachedMonths);
+        for (int i = 0; i < monthCount; i++) {
+            if (archive.offsets[i] < indexEnd + 4 || archive.offsets[i] + archive.lengths[i] > buffer.limit()) {
+                throw new IOException("Damaged archive: " + path);
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Writes the next generation of an archive.
+     * Months of the previous archive that are neither replaced nor extended
+     * are copied byte for byte, without being decoded.
+     *
+     * @param directory The directory holding the archives
+     * @param previous The current archive
+     * @param replaced Months whose content in the previous archive is dropped
+     * @param added Appointments to archive, by month of their start
+     * @param cachedMonths Maximum number of decoded months kept in memory by the new archive
+     * @return The new archive, mapped
+     */
+    static AppointmentArchive write(Path directory, AppointmentArchive previous, Set<YearMonth> replaced,
+                                    Map<YearMonth, List<Appointment>> added, int cachedMonths) throws IOException {
+        long generation = previous.generation + 1;
+        TreeSet<YearMonth> monthSet = new TreeSet<>(added.keySet());
+        for (int key : previous.months) {
+            YearMonth month = monthOf(key);
+            if (!replaced.contains(month)) {
+                monthSet.add(month);
+            }
+        }
+
+        // Encodes the new and extended months; the others are copied from the previous file
+        List<YearMonth> newMonths = new ArrayList<>();
+        List<byte[]> blocks = new ArrayList<>();
+        List<long[]> encodedIds = new ArrayList<>();
+        int[] counts = new int[monthSet.size()];
+        int maxDuration = 0;
+        int[] copiedSlots = new int[previous.months.length];
+        Arrays.fill(copiedSlots, -1);
+        for (YearMonth month : monthSet) {
+            int slot = newMonths.size();
+            newMonths.add(month);
+            int previousSlot = replaced.contains(month) ? -1 : previous.slotOf(month);
+            List<Appointment> extra = added.get(month);
+            if (extra == null) {
+                copiedSlots[previousSlot] = slot;
+                counts[slot] = previous.counts[previousSlot];
+                maxDuration = Math.max(maxDuration, previous.maxDuration);
+                blocks.add(null);
+                encodedIds.add(null);
+                continue;
+            }
+            List<Appointment> appointments = new ArrayList<>(extra);
+            if (previousSlot >= 0) {
+                appointments.addAll(previous.read(month));
+            }
+            appointments.sort(Comparator.comparingLong(Appointment::getStart));
+            long[] ids = new long[appointments.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = appointments.get(i).getId();
+                maxDuration = Math.max(maxDuration, appointments.get(i).getDuration());
+            }
+            Arrays.sort(ids);
+            counts[slot] = ids.length;
+            blocks.add(CompactFormat.encode(appointments));
+            encodedIds.add(ids);
+        }
+
+        int monthCount = newMonths.size();
+        long idCount = 0;
+        for (int value : counts) {
+            idCount += value;
+        }
+        long indexEnd = HEADER_SIZE + (long) monthCount * MONTH_ENTRY_SIZE + idCount * ID_ENTRY_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + monthCount * MONTH_ENTRY_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(monthCount).putInt((int) idCount)
+              .putInt(maxDuration);
+        long offset = indexEnd + 4;
+        for (int slot = 0; slot < monthCount; slot++) {
+            YearMonth month = newMonths.get(slot);
+            byte[] block = blocks.get(slot);
+            int length;
+            int crc;
+            if (block == null) {
+                int previousSlot = previous.slotOf(month);
+                length = previous.lengths[previousSlot];
+                crc = previous.crcs[previousSlot];
+            } else {
+                CRC32 blockCrc = new CRC32();
+                blockCrc.update(block);
+                length = block.length;
+                crc = (int) blockCrc.getValue();
+            }
+            header.putInt(keyOf(month)).putLong(offset).putInt(length).putInt(counts[slot]).putInt(crc);
+            offset += length;
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Archive too large");
+        }
+        header.flip();
+
+        Path path = pathOf(directory, generation);
+        Path temporary = directory.resolve(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32 crc = new CRC32();
+            crc.update(header.duplicate());
+            writeFully(channel, header);
+            writeIdIndex(channel, crc, previous, copiedSlots, encodedIds);
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            trailer.putInt((int) crc.getValue()).flip();
+            writeFully(channel, trailer);
+            for (int slot = 0; slot < monthCount; slot++) {
+                byte[] block = blocks.get(slot);
+                if (block == null) {
+                    int previousSlot = previous.slotOf(newMonths.get(slot));
+                    writeFully(channel, previous.block(previousSlot));
+                } else {
+                    writeFully(channel, ByteBuffer.wrap(block));
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(directory, generation, cachedMonths);
+    }
+
+    /**
+     * Lists the generations of the archives in a directory.
+     * Temporary files left by an interrupted write are deleted.
+     */
+    static List<Long> list(Path directory) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    generations.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } else {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    static void delete(Path directory, long generation) throws IOException {
+        Files.deleteIfExists(pathOf(directory, generation));
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    boolean isEmpty() {
+        return months.length == 0;
+    }
+
+    /**
+     * @return The number of archived appointments
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of archived appointments starting in the month
+     */
+    int getCount(YearMonth month) {
+        int slot = slotOf(month);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * @return The longest duration of an archived appointment, at least
+     */
+    int getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * @return The archived months between the two, inclusive, in order
+     */
+    List<YearMonth> getMonths(YearMonth first, YearMonth last) {
+        List<YearMonth> result = new ArrayList<>();
+        int from = lowerBound(keyOf(first));
+        for (int slot = from; slot < months.length && months[slot] <= keyOf(last); slot++) {
+            result.add(monthOf(months[slot]));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the month of an archived appointment with a binary search of the mapped id index.
+     *
+     * @return The month holding the appointment, or null if it is not archived
+     */
+    YearMonth findMonth(long id) {
+        int low = 0;
+        int high = idCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = buffer.getLong(idIndexOffset + mid * ID_ENTRY_SIZE);
+            if (value < id) {
+                low = mid + 1;
+            } else if (value > id) {
+                high = mid - 1;
+            } else {
+                return monthOf(months[buffer.getInt(idIndexOffset + mid * ID_ENTRY_SIZE + 8)]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the appointments starting in a month, sorted by start, decoding
+     * them unless the month is cached.
+     *
+     * @return The appointments, not modifiable; empty if the month is not archived
+     * @throws IOException if the block of the month is damaged
+     */
+    synchronized List<Appointment> read(YearMonth month) throws IOException {
+        List<Appointment> appointments = cache.get(month);
+        if (appointments != null) {
+            return appointments;
+        }
+        int slot = slotOf(month);
+        if (slot < 0) {
+            return Collections.emptyList();
+        }
+        ByteBuffer block = block(slot);
+        CRC32 crc = new CRC32();
+        crc.update(block.duplicate());
+        if ((int) crc.getValue() != crcs[slot]) {
+            throw new IOException("Damaged archive month " + month + ": " + path);
+        }
+        List<Appointment> decoded = CompactFormat.decode(block);
+        if (decoded.size() != counts[slot] || block.hasRemaining()) {
+            throw new IOException("Damaged archive month " + month + ": " + path);
+        }
+        appointments = Collections.unmodifiableList(decoded);
+        cache.put(month, appointments);
+        return appointments;
+    }
+
+    private ByteBuffer block(int slot) {
+        ByteBuffer block = buffer.duplicate();
+        block.position((int) offsets[slot]).limit((int) offsets[slot] + lengths[slot]);
+        return block.slice();
+    }
+
+    private int slotOf(YearMonth month) {
+        int slot = lowerBound(keyOf(month));
+        return slot < months.length && months[slot] == keyOf(month) ? slot : -1;
+    }
+
+    private int lowerBound(int key) {
+        int low = 0;
+        int high = months.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (months[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes the id index sorted by id, merging the entries of the copied
+     * months, read from the previous index, with the ids of every encoded month.
+     */
+    private static void writeIdIndex(FileChannel channel, CRC32 crc, AppointmentArchive previous, int[] copiedSlots,
+                                     List<long[]> encodedIds) throws IOException {
+        // One sorted run per source: the previous index, then each encoded month
+        int runs = 1 + encodedIds.size();
+        int[] positions = new int[runs];
+        PriorityQueue<long[]> heads = new PriorityQueue<>(runs, Comparator.comparingLong(head -> head[0]));
+        long[] first = nextCopied(previous, copiedSlots, positions);
+        if (first != null) {
+            heads.add(first);
+        }
+        for (int slot = 0; slot < encodedIds.size(); slot++) {
+            long[] ids = encodedIds.get(slot);
+            if (ids != null && ids.length > 0) {
+                heads.add(new long[] {ids[0], slot, 1 + slot});
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+        long lastId = 0;
+        boolean started = false;
+        while (!heads.isEmpty()) {
+            long[] head = heads.poll();
+            if (started && head[0] == lastId) {
+                throw new IOException("Appointment " + head[0] + " archived twice");
+            }
+            started = true;
+            lastId = head[0];
+            if (out.remaining() < ID_ENTRY_SIZE) {
+                out.flip();
+                crc.update(out.duplicate());
+                writeFully(channel, out);
+                out.clear();
+            }
+            out.putLong(head[0]).putInt((int) head[1]);
+            int run = (int) head[2];
+            long[] next;
+            if (run == 0) {
+                next = nextCopied(previous, copiedSlots, positions);
+            } else {
+                long[] ids = encodedIds.get(run - 1);
+                int position = ++positions[run];
+                next = position < ids.length ? new long[] {ids[position], run - 1, run} : null;
+            }
+            if (next != null) {
+                heads.add(next);
+            }
+        }
+        out.flip();
+        crc.update(out.duplicate());
+        writeFully(channel, out);
+    }
+
+    // Next entry of the previous index belonging to a copied month, as {id, new slot, run 0}
+    private static long[] nextCopied(AppointmentArchive previous, int[] copiedSlots, int[] positions) {
+        while (positions[0] < previous.idCount) {
+            int entry = previous.idIndexOffset + positions[0]++ * ID_ENTRY_SIZE;
+            int slot = copiedSlots[previous.buffer.getInt(entry + 8)];
+            if (slot >= 0) {
+                return new long[] {previous.buffer.getLong(entry), slot, 0};
+            }
+        }
+        return null;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static Path pathOf(Path directory, long generation) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, generation, SUFFIX));
+    }
+
+    private static int keyOf(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static YearMonth monthOf(int key) {
+        return YearMonth.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1);
+    }
+}
@@ -0,0 +1,101 @@
+package dashboard.store;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+
+/**
+ * Creates the appointment repository configured by the system properties,
+ * shared by the calendar window and the command line agenda.
+ */
+public final class AppointmentRepositories {
+    // Database connection; without it the local folder or the sample appointments are used
+    public static final String JDBC_URL_PROPERTY = "calendario.jdbc.url";
+    public static final String JDBC_USER_PROPERTY = "calendario.jdbc.user";
+    public static final String JDBC_PASSWORD_PROPERTY = "calendario.jdbc.password";
+    private static final int JDBC_POOL_SIZE = 4;
+    private static final int CACHED_MONTHS = 24;
+    public static final String DATA_DIR_PROPERTY = "calendario.data.dir";
+    // Months older than this horizon are archived off the heap (0 to disable)
+    public static final String ARCHIVE_MONTHS_PROPERTY = "calendario.archive.months";
+    private static final int ARCHIVE_MONTHS = 24;
+    // Generated calendar for load tests, such as "1000000,seed=7"; see SyntheticAppointments#parse
+    public static final String SYNTHETIC_PROPERTY = "calendario.synthetic";
+    // Further calendars shown beside the personal one, as "name=path" entries separated by ';'
+    public static final String CALENDARS_PROPERTY = "calendario.calendars";
+
+    private AppointmentRepositories() {
+    }
+
+    /**
+     * Creates the repository: a generated calendar for load tests, if
+     * requested, otherwise a JDBC database, with a cache of the most recent
+     * months, if configured, otherwise a local folder with write-ahead log,
+     * snapshots and archive of the past months, if given, otherwise the
+     * sample appointments.
+     *
+     * @param zone Time zone the months are computed in
+     * @throws IllegalArgumentException If the generated calendar is not valid
+     */
+    public static AppointmentRepository fromSystemProperties(ZoneId zone) {
+        return fromSystemProperties(zone, false);
+    }
+
+    /**
+     * Creates the repository as {@link #fromSystemProperties(ZoneId)} does,
+     * optionally for reading only: a local folder is then read while the
+     * window may be writing it, without taking its lock nor changing its files.
+     *
+     * @param zone Time zone the months are computed in
+     * @param readOnly Whether the repository is only read
+     * @throws IllegalArgumentException If the generated calendar is not valid
+     */
+    public static AppointmentRepository fromSystemProperties(ZoneId zone, boolean readOnly) {
+        String synthetic = System.getProperty(SYNTHETIC_PROPERTY);
+        if (synthetic != null && !synthetic.isEmpty()) {
+            return SyntheticAppointments.parse(synthetic, zone);
+        }
+        String url = System.getProperty(JDBC_URL_PROPERTY);
+        if (url == null || url.isEmpty()) {
+            String dataDir = System.getProperty(DATA_DIR_PROPERTY);
+            if (dataDir != null && !dataDir.isEmpty()) {
+                if (readOnly) {
+                    return WalAppointmentRepository.openReadOnly(Paths.get(dataDir), zone);
+                }
+                return new WalAppointmentRepository(Paths.get(dataDir), WalAppointmentRepository.DEFAULT_SNAPSHOT_INTERVAL,
+                                                    zone, Integer.getInteger(ARCHIVE_MONTHS_PROPERTY, ARCHIVE_MONTHS));
+            }
+            return new SampleAppointments(zone);
+        }
+        ConnectionPool pool = new ConnectionPool(url, System.getProperty(JDBC_USER_PROPERTY),
+                                                 System.getProperty(JDBC_PASSWORD_PROPERTY), JDBC_POOL_SIZE);
+        return new CachingAppointmentRepository(new JdbcAppointmentRepository(pool), zone, CACHED_MONTHS);
+    }
+
+    /**
+     * Creates one of the calendars of {@value #CALENDARS_PROPERTY}: an
+     * iCalendar or CSV file or the folder of another repository, read only.
+     * Without a name the calendar takes the one of the file.
+     *
+     * @param entry The path, optionally preceded by the name and '='
+     * @throws IllegalArgumentException If the path is neither an .ics or .csv file nor a folder
+     */
+    public static CalendarProvider createCalendar(String entry, ZoneId zone) {
+        int separator = entry.indexOf('=');
+        Path path = Paths.get(entry.substring(separator + 1).trim());
+        String name = separator > 0 ? entry.substring(0, separator).trim() : null;
+        if (name == null || name.isEmpty()) {
+            String fileName = path.getFileName() == null ? path.toString() : path.getFileName().toString();
+            name = CalendarFileProvider.isCalendarFile(path) ? fileName.substring(0, fileName.length() - 4) : fileName;
+        }
+        if (Files.isRegularFile(path) && CalendarFileProvider.isCalendarFile(path)) {
+            return new CalendarFileProvider(name, path, zone);
+        }
+        if (Files.isDirectory(path)) {
+            // The folder may belong to a running calendar: it is read without taking its lock
+            return CalendarProvider.of(name, WalAppointmentRepository.openReadOnly(path, zone));
+        }
+        throw new IllegalArgumentException(entry);
+    }
+}
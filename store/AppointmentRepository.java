@@ -0,0 +1,54 @@
+package dashboard.store;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistent storage of appointments.
+ * Implementations can be backed by files, a database or generated data;
+ * the calendar only loads from them the months it actually shows.
+ */
+public interface AppointmentRepository extends AutoCloseable {
+
+    /**
+     * Inserts an appointment, or replaces the one with the same id.
+     */
+    void save(Appointment appointment);
+
+    /**
+     * Inserts or replaces several appointments at once.
+     * Implementations should write them in a single batch.
+     */
+    void saveAll(Collection<Appointment> appointments);
+
+    /**
+     * Deletes an appointment.
+     *
+     * @param id The id of the appointment
+     * @return true if the appointment existed
+     */
+    boolean delete(long id);
+
+    /**
+     * @return The appointment with the given id, or null
+     */
+    Appointment findById(long id);
+
+    /**
+     * Returns the appointments overlapping the interval [from, to), sorted by start time.
+     *
+     * @param from Start of the interval in epoch minutes (inclusive)
+     * @param to End of the interval in epoch minutes (exclusive)
+     */
+    List<Appointment> findRange(long from, long to);
+
+    /**
+     * @return true if the repository does not accept writes
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    void close();
+}
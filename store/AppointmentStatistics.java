@@ -0,0 +1,156 @@
+package dashboard.store;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+
+import dashboard.Category;
+import dashboard.DayOfWeek;
+
+/**
+ * Appointment statistics kept up to date incrementally.
+ * Every insert, update or delete in the observed stores adjusts plain counters
+ * (per category and per weekday) and Fenwick trees indexed by month, so that
+ * any range aggregate, like the hours spent in meetings in a quarter, costs
+ * O(log n) and never requires scanning the appointments.
+ * <p>
+ * The statistics cover the appointments in the observed stores: with a
+ * {@link RepositoryLoader}, the loaded months. The plain counters span all
+ * of them, so a range aggregate is exact only for the months kept loaded.
+ */
+public class AppointmentStatistics implements AppointmentStore.Listener {
+    // Months covered by the range aggregates
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 2199;
+    private static final int MONTHS = (LAST_YEAR - FIRST_YEAR + 1) * 12;
+
+    private final ZoneOffsetCache offsets;
+    private final int categories = Category.values().length;
+    private final long[] categoryCount = new long[categories];
+    private final long[] categoryMinutes = new long[categories];
+    private final long[] weekdayCount = new long[7];
+    private final long[] weekdayMinutes = new long[7];
+    private final FenwickTree[] monthCount = new FenwickTree[categories];
+    private final FenwickTree[] monthMinutes = new FenwickTree[categories];
+    private final FenwickTree[] weekdayMonthCount = new FenwickTree[7];
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param zone Time zone used to assign appointments to months and weekdays
+     */
+    public AppointmentStatistics(ZoneId zone) {
+        this.offsets = ZoneOffsetCache.of(zone);
+        for (int i = 0; i < categories; i++) {
+            monthCount[i] = new FenwickTree(MONTHS);
+            monthMinutes[i] = new FenwickTree(MONTHS);
+        }
+        for (int i = 0; i < weekdayMonthCount.length; i++) {
+            weekdayMonthCount[i] = new FenwickTree(MONTHS);
+        }
+    }
+
+    @Override
+    public synchronized void appointmentAdded(Appointment appointment) {
+        apply(appointment, 1);
+    }
+
+    @Override
+    public synchronized void appointmentRemoved(Appointment appointment) {
+        apply(appointment, -1);
+    }
+
+    @Override
+    public synchronized void appointmentUpdated(Appointment previous, Appointment current) {
+        apply(previous, -1);
+        apply(current, 1);
+    }
+
+    private void apply(Appointment appointment, int sign) {
+        int category = appointment.getCategory().ordinal();
+        long minutes = (long) sign * appointment.getDuration();
+        int weekday = offsets.getDayOfWeek(appointment.getStart()).ordinal();
+
+        categoryCount[category] += sign;
+        categoryMinutes[category] += minutes;
+        weekdayCount[weekday] += sign;
+        weekdayMinutes[weekday] += minutes;
+
+        int month = offsets.getMonthKey(appointment.getStart()) - FIRST_YEAR * 12;
+        if (month >= 0 && month < MONTHS) {
+            monthCount[category].add(month, sign);
+            monthMinutes[category].add(month, minutes);
+            weekdayMonthCount[weekday].add(month, sign);
+        }
+    }
+
+    public synchronized long getCount(Category category) {
+        return categoryCount[category.ordinal()];
+    }
+
+    public synchronized long getMinutes(Category category) {
+        return categoryMinutes[category.ordinal()];
+    }
+
+    public synchronized long getCount(DayOfWeek day) {
+        return weekdayCount[day.ordinal()];
+    }
+
+    public synchronized long getMinutes(DayOfWeek day) {
+        return weekdayMinutes[day.ordinal()];
+    }
+
+    /**
+     * Counts the appointments of a category in a range of months.
+     *
+     * @param category The category, or null for every category
+     * @param from First month (inclusive)
+     * @param to Last month (inclusive)
+     * @return The number of appointments
+     */
+    public synchronized long getCount(Category category, YearMonth from, YearMonth to) {
+        return sum(monthCount, category, from, to);
+    }
+
+    /**
+     * Sums the booked minutes of a category in a range of months.
+     *
+     * @param category The category, or null for every category
+     * @param from First month (inclusive)
+     * @param to Last month (inclusive)
+     * @return The booked minutes
+     */
+    public synchronized long getMinutes(Category category, YearMonth from, YearMonth to) {
+        return sum(monthMinutes, category, from, to);
+    }
+
+    /**
+     * Counts the appointments starting on a weekday in a range of months.
+     *
+     * @param day The weekday
+     * @param from First month (inclusive)
+     * @param to Last month (inclusive)
+     * @return The number of appointments
+     */
+    public synchronized long getCount(DayOfWeek day, YearMonth from, YearMonth to) {
+        int first = Math.max(0, monthIndex(from.getYear(), from.getMonthValue()));
+        int last = Math.min(MONTHS - 1, monthIndex(to.getYear(), to.getMonthValue()));
+        return weekdayMonthCount[day.ordinal()].rangeSum(first, last);
+    }
+
+    private long sum(FenwickTree[] trees, Category category, YearMonth from, YearMonth to) {
+        int first = Math.max(0, monthIndex(from.getYear(), from.getMonthValue()));
+        int last = Math.min(MONTHS - 1, monthIndex(to.getYear(), to.getMonthValue()));
+        if (category != null) {
+            return trees[category.ordinal()].rangeSum(first, last);
+        }
+        long total = 0;
+        for (FenwickTree tree : trees) {
+            total += tree.rangeSum(first, last);
+        }
+        return total;
+    }
+
+    private static int monthIndex(int year, int month) {
+        return (year - FIRST_YEAR) * 12 + month - 1;
+    }
+}
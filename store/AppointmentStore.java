@@ -0,0 +1,311 @@
+package dashboard.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.FlightRecording;
+import dashboard.metrics.Histogram;
+import dashboard.metrics.StoreQueryEvent;
+
+/**
+ * In-memory appointment store of a single calendar.
+ * Appointments are kept in a columnar table sorted by start time and
+ * indexed by id, so that range queries return results already sorted by
+ * start without scanning the whole calendar, and a long history costs a
+ * few primitive array slots per appointment instead of objects.
+ * All methods are synchronized: the store can be read from background threads
+ * while the EDT is updating it.
+ */
+public class AppointmentStore {
+
+    /**
+     * Receives every change made to the store.
+     * Listeners are called synchronously, on the thread that made the change,
+     * while the store lock is held: they must be quick and must not call back
+     * into a different store.
+     */
+    public interface Listener {
+        void appointmentAdded(Appointment appointment);
+
+        void appointmentRemoved(Appointment appointment);
+
+        void appointmentUpdated(Appointment previous, Appointment current);
+    }
+
+    private static final Histogram QUERY_TIMES = CalendarMetrics.get().storeQueries();
+
+    private final String name;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AppointmentTable table;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param name Name of the calendar this store belongs to
+     */
+    public AppointmentStore(String name) {
+        this(name, 16);
+    }
+
+    /**
+     * Creates an empty store sized for the given number of appointments, so
+     * that loading them does not have to grow the index repeatedly.
+     *
+     * @param name Name of the calendar this store belongs to
+     * @param expectedSize Number of appointments expected
+     */
+    public AppointmentStore(String name, int expectedSize) {
+        this.name = name;
+        this.table = new AppointmentTable(expectedSize);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Adds an appointment to the store.
+     *
+     * @param appointment The appointment to add
+     * @throws IllegalArgumentException if an appointment with the same id already exists
+     */
+    public synchronized void add(Appointment appointment) {
+        if (!table.insert(appointment)) {
+            throw new IllegalArgumentException("Duplicate appointment id: " + appointment.getId());
+        }
+        for (Listener listener : listeners) {
+            listener.appointmentAdded(appointment);
+        }
+    }
+
+    /**
+     * Adds many appointments at once.
+     * Appointments sorted by start, as they are in a snapshot, are appended
+     * to the table without moving the stored ones.
+     *
+     * @param appointments The appointments to add
+     * @throws IllegalArgumentException if an id is duplicated; the preceding appointments stay added
+     */
+    public synchronized void addAll(List<Appointment> appointments) {
+        for (Appointment appointment : appointments) {
+            add(appointment);
+        }
+    }
+
+    /**
+     * Adds an appointment unless one with the same id is already stored.
+     *
+     * @param appointment The appointment to add
+     * @return true if the appointment was added
+     */
+    public synchronized boolean addIfAbsent(Appointment appointment) {
+        if (!table.insert(appointment)) {
+            return false;
+        }
+        for (Listener listener : listeners) {
+            listener.appointmentAdded(appointment);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the appointment having the same id.
+     *
+     * @param appointment The new version of the appointment
+     * @return The previous version
+     * @throws IllegalArgumentException if no appointment with that id exists
+     */
+    public synchronized Appointment update(Appointment appointment) {
+        Appointment previous = table.remove(appointment.getId());
+        if (previous == null) {
+            throw new IllegalArgumentException("Unknown appointment id: " + appointment.getId());
+        }
+        table.insert(appointment);
+        for (Listener listener : listeners) {
+            listener.appointmentUpdated(previous, appointment);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes an appointment from the store.
+     *
+     * @param id The id of the appointment
+     * @return The removed appointment, or null if it was not found
+     */
+    public synchronized Appointment remove(long id) {
+        Appointment removed = table.remove(id);
+        if (removed != null) {
+            for (Listener listener : listeners) {
+                listener.appointmentRemoved(removed);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes every appointment starting before the given time, dropping
+     * whole blocks of the table instead of removing the rows one by one.
+     *
+     * @param time Epoch minute (exclusive)
+     * @return The number of removed appointments
+     */
+    public synchronized int removeStartingBefore(long time) {
+        return table.removeStartingBefore(time, listeners.isEmpty() ? null : removed -> {
+            for (Listener listener : listeners) {
+                listener.appointmentRemoved(removed);
+            }
+        });
+    }
+
+    /**
+     * Applies a set of changes as one transaction: readers never see only
+     * part of them, because the store lock is held until all are applied.
+     *
+     * @param upserts Appointments to add, or to replace the ones with the same id
+     * @param removals Ids of the appointments to remove; unknown ids are ignored
+     * @return The number of appointments added, replaced or removed
+     */
+    public synchronized int apply(Collection<Appointment> upserts, Collection<Long> removals) {
+        int changes = 0;
+        for (Appointment appointment : upserts) {
+            Appointment previous = table.remove(appointment.getId());
+            table.insert(appointment);
+            for (Listener listener : listeners) {
+                if (previous == null) {
+                    listener.appointmentAdded(appointment);
+                } else {
+                    listener.appointmentUpdated(previous, appointment);
+                }
+            }
+            changes++;
+        }
+        for (long id : removals) {
+            if (remove(id) != null) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return The appointment with the given id, or null
+     */
+    public synchronized Appointment get(long id) {
+        return table.get(id);
+    }
+
+    public synchronized boolean contains(long id) {
+        return table.contains(id);
+    }
+
+    public synchronized int size() {
+        return table.size();
+    }
+
+    /**
+     * Returns every appointment in the store, sorted by start time.
+     *
+     * @return A new list with all the appointments
+     */
+    public synchronized List<Appointment> getAll() {
+        return table.getAll();
+    }
+
+    /**
+     * Returns the appointments overlapping the interval [from, to), sorted by start time.
+     *
+     * @param from Start of the interval in epoch minutes (inclusive)
+     * @param to End of the interval in epoch minutes (exclusive)
+     * @return A new list with the matching appointments
+     */
+    public synchronized List<Appointment> query(long from, long to) {
+        long started = System.nanoTime();
+        StoreQueryEvent event = beginQuery();
+        List<Appointment> result = new ArrayList<>();
+        table.forEachInRange(from, to, view -> result.add(view.toAppointment()));
+        QUERY_TIMES.recordSince(started);
+        commit(event, from, to, result.size());
+        return result;
+    }
+
+    /**
+     * Visits the appointments overlapping the interval [from, to), sorted by
+     * start time, without creating an object for each of them.
+     * The view is a flyweight moved from one appointment to the next: it is
+     * valid only during the call. The store lock is held meanwhile, so the
+     * action must be quick.
+     *
+     * @param from Start of the interval in epoch minutes (inclusive)
+     * @param to End of the interval in epoch minutes (exclusive)
+     * @param action Receives a view of every matching appointment
+     */
+    public synchronized void forEachInRange(long from, long to, Consumer<? super AppointmentView> action) {
+        long started = System.nanoTime();
+        StoreQueryEvent event = beginQuery();
+        if (event != null && event.isEnabled()) {
+            // Counted only while recording, to keep the disabled path free
+            int[] results = new int[1];
+            table.forEachInRange(from, to, view -> {
+                results[0]++;
+                action.accept(view);
+            });
+            QUERY_TIMES.recordSince(started);
+            commit(event, from, to, results[0]);
+        } else {
+            table.forEachInRange(from, to, action);
+            QUERY_TIMES.recordSince(started);
+        }
+    }
+
+    /**
+     * Visits the appointments starting in [from, to), sorted by start time,
+     * until the action returns false; appointments with the same start come
+     * in the order they were added. Reading a page from any point costs
+     * O(log n) plus the page, which is what cursor-based paging needs.
+     * The view is a flyweight valid only during the call, and the store
+     * lock is held meanwhile.
+     *
+     * @param from Earliest start in epoch minutes (inclusive)
+     * @param to Latest start in epoch minutes (exclusive)
+     * @param action Receives a view of every appointment, and returns false to stop
+     */
+    public synchronized void forEachStartingIn(long from, long to, Predicate<? super AppointmentView> action) {
+        long started = System.nanoTime();
+        table.forEachStartingIn(from, to, action);
+        QUERY_TIMES.recordSince(started);
+    }
+
+    // Null while nothing records: the first event created loads the flight recorder
+    private static StoreQueryEvent beginQuery() {
+        if (!FlightRecording.isRecording()) {
+            return null;
+        }
+        StoreQueryEvent event = new StoreQueryEvent();
+        event.begin();
+        return event;
+    }
+
+    private void commit(StoreQueryEvent event, long from, long to, int results) {
+        if (event != null && event.shouldCommit()) {
+            event.store = name;
+            event.from = from * 60_000;
+            event.to = to * 60_000;
+            event.results = results;
+            event.commit();
+        }
+    }
+}
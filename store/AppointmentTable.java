@@ -0,0 +1,414 @@
+package dashboard.store;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import dashboard.Category;
+
+/**
+ * Columnar table holding the appointments of an {@link AppointmentStore}.
+ * Rows are kept sorted by start time in blocks of primitive arrays (one
+ * array per column: id, start, duration, category id, title dictionary id
+ * and zone dictionary id), so a stored appointment costs about 28 bytes plus
+ * its id entry and no object at all. Range scans binary-search the blocks and then the start
+ * column; inserting shifts at most one block, which is split when full.
+ * <p>
+ * The table is not thread-safe: the store synchronizes it.
+ */
+final class AppointmentTable {
+    static final int BLOCK_SIZE = 4096;
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final List<Block> blocks = new ArrayList<>();
+    // Start of every appointment by id, used to find its row
+    private final LongLongHashMap startsById;
+    private final List<String> titles = new ArrayList<>();
+    private final Map<String, Integer> titleIds = new HashMap<>();
+    // Zone dictionary; id 0 stands for no zone
+    private final List<ZoneId> zones = new ArrayList<>();
+    private final Map<ZoneId, Integer> zoneIds = new HashMap<>();
+
+    // Longest duration ever stored, used to find appointments starting before a range
+    private int maxDuration;
+
+    /**
+     * A run of rows sorted by start.
+     */
+    private static final class Block {
+        final long[] ids = new long[BLOCK_SIZE];
+        final long[] starts = new long[BLOCK_SIZE];
+        final int[] durations = new int[BLOCK_SIZE];
+        final short[] categories = new short[BLOCK_SIZE];
+        final int[] titles = new int[BLOCK_SIZE];
+        final short[] zones = new short[BLOCK_SIZE];
+        int size;
+
+        long lastStart() {
+            return starts[size - 1];
+        }
+
+        /**
+         * Moves the rows from the given one on by the given offset (positive to open a gap).
+         */
+        void shift(int from, int offset) {
+            int count = size - from;
+            System.arraycopy(ids, from, ids, from + offset, count);
+            System.arraycopy(starts, from, starts, from + offset, count);
+            System.arraycopy(durations, from, durations, from + offset, count);
+            System.arraycopy(categories, from, categories, from + offset, count);
+            System.arraycopy(titles, from, titles, from + offset, count);
+            System.arraycopy(zones, from, zones, from + offset, count);
+            size += offset;
+        }
+
+        /**
+         * Moves the rows from the given one on into a new block.
+         */
+        Block split(int from) {
+            Block next = new Block();
+            int count = size - from;
+            System.arraycopy(ids, from, next.ids, 0, count);
+            System.arraycopy(starts, from, next.starts, 0, count);
+            System.arraycopy(durations, from, next.durations, 0, count);
+            System.arraycopy(categories, from, next.categories, 0, count);
+            System.arraycopy(titles, from, next.titles, 0, count);
+            System.arraycopy(zones, from, next.zones, 0, count);
+            next.size = count;
+            size = from;
+            return next;
+        }
+    }
+
+    /**
+     * Flyweight view over one row.
+     */
+    private final class Row implements AppointmentView {
+        Block block;
+        int index;
+
+        @Override
+        public long getId() {
+            return block.ids[index];
+        }
+
+        @Override
+        public long getStart() {
+            return block.starts[index];
+        }
+
+        @Override
+        public long getEnd() {
+            return block.starts[index] + block.durations[index];
+        }
+
+        @Override
+        public int getDuration() {
+            return block.durations[index];
+        }
+
+        @Override
+        public String getTitle() {
+            return titles.get(block.titles[index]);
+        }
+
+        @Override
+        public Category getCategory() {
+            return CATEGORIES[block.categories[index]];
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zones.get(block.zones[index]);
+        }
+
+        @Override
+        public Appointment toAppointment() {
+            return new Appointment(getId(), getStart(), getDuration(), getTitle(), getCategory(), getZone());
+        }
+    }
+
+    AppointmentTable(int expectedSize) {
+        startsById = new LongLongHashMap(expectedSize);
+        zones.add(null);
+    }
+
+    int size() {
+        return startsById.size();
+    }
+
+    boolean contains(long id) {
+        return startsById.containsKey(id);
+    }
+
+    /**
+     * @return The appointment with the given id, or null
+     */
+    Appointment get(long id) {
+        Row row = find(id);
+        return row == null ? null : row.toAppointment();
+    }
+
+    /**
+     * Inserts an appointment after the ones with the same start, unless its
+     * id is already in the table. Appointments arriving in start order, as
+     * when loading a snapshot, are appended and fill whole blocks.
+     *
+     * @return false if an appointment with the same id is already stored
+     */
+    boolean insert(Appointment appointment) {
+        long start = appointment.getStart();
+        if (!startsById.putIfAbsent(appointment.getId(), start)) {
+            return false;
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(new Block());
+        }
+        // Last block starting at or before the appointment
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).starts[0] <= start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int blockIndex = Math.max(0, low - 1);
+        Block block = blocks.get(blockIndex);
+        int index = upperBound(block, start);
+        if (block.size == BLOCK_SIZE && index == BLOCK_SIZE && blockIndex == blocks.size() - 1) {
+            block = new Block();
+            blocks.add(block);
+            index = 0;
+        } else if (block.size == BLOCK_SIZE) {
+            Block next = block.split(BLOCK_SIZE / 2);
+            blocks.add(blockIndex + 1, next);
+            if (index > block.size) {
+                index -= block.size;
+                block = next;
+            }
+        }
+        block.shift(index, 1);
+        block.ids[index] = appointment.getId();
+        block.starts[index] = start;
+        block.durations[index] = appointment.getDuration();
+        block.categories[index] = (short) appointment.getCategory().ordinal();
+        block.titles[index] = titleId(appointment.getTitle());
+        block.zones[index] = zoneId(appointment.getZone());
+        maxDuration = Math.max(maxDuration, appointment.getDuration());
+        return true;
+    }
+
+    /**
+     * @return The removed appointment, or null if there is no appointment with that id
+     */
+    Appointment remove(long id) {
+        Row row = find(id);
+        if (row == null) {
+            return null;
+        }
+        Appointment removed = row.toAppointment();
+        Block block = row.block;
+        block.shift(row.index + 1, -1);
+        if (block.size == 0) {
+            blocks.remove(block);
+        }
+        startsById.remove(id);
+        return removed;
+    }
+
+    /**
+     * Removes the rows starting before the given time: the leading blocks are
+     * dropped whole and the first remaining one is shifted once.
+     *
+     * @param action Receives every removed appointment, unless null
+     * @return The number of removed rows
+     */
+    int removeStartingBefore(long time, Consumer<? super Appointment> action) {
+        int removed = 0;
+        int dropped = 0;
+        Row row = new Row();
+        while (dropped < blocks.size()) {
+            Block block = blocks.get(dropped);
+            int end = lowerBound(block, time);
+            row.block = block;
+            for (int i = 0; i < end; i++) {
+                startsById.remove(block.ids[i]);
+                if (action != null) {
+                    row.index = i;
+                    action.accept(row.toAppointment());
+                }
+            }
+            removed += end;
+            if (end < block.size) {
+                block.shift(end, -end);
+                break;
+            }
+            dropped++;
+        }
+        blocks.subList(0, dropped).clear();
+        return removed;
+    }
+
+    /**
+     * Visits the rows overlapping the interval [from, to), sorted by start,
+     * with the same semantics as {@link AppointmentStore#query(long, long)}.
+     */
+    void forEachInRange(long from, long to, Consumer<? super AppointmentView> action) {
+        if (to <= from || blocks.isEmpty()) {
+            return;
+        }
+        long lowest = from >= Long.MIN_VALUE + maxDuration ? from - maxDuration : Long.MIN_VALUE;
+        Row row = new Row();
+        int first = firstBlockEndingAtOrAfter(lowest);
+        for (int b = first; b < blocks.size(); b++) {
+            Block block = blocks.get(b);
+            row.block = block;
+            // Only the first block can hold rows starting before the lowest start
+            for (int i = b == first ? lowerBound(block, lowest) : 0; i < block.size; i++) {
+                long start = block.starts[i];
+                if (start >= to) {
+                    return;
+                }
+                // Zero-length appointments are kept when they fall inside the interval
+                if (start + block.durations[i] > from || start >= from) {
+                    row.index = i;
+                    action.accept(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits the rows starting in [from, to), sorted by start, until the
+     * action returns false. Finding the first row costs two binary searches,
+     * so reading a page of rows from any point costs O(log n + page).
+     */
+    void forEachStartingIn(long from, long to, Predicate<? super AppointmentView> action) {
+        Row row = new Row();
+        int first = firstBlockEndingAtOrAfter(from);
+        for (int b = first; b < blocks.size(); b++) {
+            Block block = blocks.get(b);
+            row.block = block;
+            for (int i = b == first ? lowerBound(block, from) : 0; i < block.size; i++) {
+                if (block.starts[i] >= to) {
+                    return;
+                }
+                row.index = i;
+                if (!action.test(row)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Every appointment, sorted by start time
+     */
+    List<Appointment> getAll() {
+        List<Appointment> result = new ArrayList<>(size());
+        Row row = new Row();
+        for (Block block : blocks) {
+            row.block = block;
+            for (int i = 0; i < block.size; i++) {
+                row.index = i;
+                result.add(row.toAppointment());
+            }
+        }
+        return result;
+    }
+
+    private int titleId(String title) {
+        Integer id = titleIds.get(title);
+        if (id == null) {
+            id = titles.size();
+            titles.add(title);
+            titleIds.put(title, id);
+        }
+        return id;
+    }
+
+    private short zoneId(ZoneId zone) {
+        if (zone == null) {
+            return 0;
+        }
+        Integer id = zoneIds.get(zone);
+        if (id == null) {
+            id = zones.size();
+            zones.add(zone);
+            zoneIds.put(zone, id);
+        }
+        return id.shortValue();
+    }
+
+    // Row of the appointment with the given id, found among the rows with its start
+    private Row find(long id) {
+        if (!startsById.containsKey(id)) {
+            return null;
+        }
+        long start = startsById.get(id, 0);
+        for (int b = firstBlockEndingAtOrAfter(start); b < blocks.size(); b++) {
+            Block block = blocks.get(b);
+            for (int i = lowerBound(block, start); i < block.size && block.starts[i] == start; i++) {
+                if (block.ids[i] == id) {
+                    Row row = new Row();
+                    row.block = block;
+                    row.index = i;
+                    return row;
+                }
+            }
+        }
+        throw new IllegalStateException("Appointment " + id + " indexed but not stored");
+    }
+
+    private int firstBlockEndingAtOrAfter(long start) {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).lastStart() < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First row starting at or after the given time
+    private static int lowerBound(Block block, long start) {
+        int low = 0;
+        int high = block.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (block.starts[mid] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First row starting after the given time
+    private static int upperBound(Block block, long start) {
+        int low = 0;
+        int high = block.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (block.starts[mid] <= start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
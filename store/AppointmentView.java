@@ -0,0 +1,45 @@
+package dashboard.store;
+
+import java.time.ZoneId;
+
+import dashboard.Category;
+
+/**
+ * Read-only view of a stored appointment.
+ * The views passed to {@link AppointmentStore#forEachInRange} are
+ * flyweights: the same object is moved from row to row of the store, so it
+ * is valid only during the call and must be copied with
+ * {@link #toAppointment()} to be kept.
+ */
+public interface AppointmentView {
+    long getId();
+
+    /**
+     * @return Start time in epoch minutes
+     */
+    long getStart();
+
+    /**
+     * @return End time (exclusive) in epoch minutes
+     */
+    long getEnd();
+
+    /**
+     * @return Duration in minutes
+     */
+    int getDuration();
+
+    String getTitle();
+
+    Category getCategory();
+
+    /**
+     * @return The time zone the appointment was scheduled in, or null if it has none
+     */
+    ZoneId getZone();
+
+    /**
+     * @return An immutable appointment with the values currently seen by the view
+     */
+    Appointment toAppointment();
+}
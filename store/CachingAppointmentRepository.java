@@ -0,0 +1,177 @@
+package dashboard.store;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dashboard.metrics.CacheStatistics;
+import dashboard.metrics.CalendarMetrics;
+
+/**
+ * Write-through cache in front of another repository.
+ * Range reads are served from whole months kept in a bounded LRU cache, so
+ * moving back and forth between months does not hit the backing repository;
+ * writes go to the backing repository first and are then applied to the
+ * cached months, which therefore never hold stale data.
+ */
+public class CachingAppointmentRepository implements AppointmentRepository {
+    private static final CacheStatistics CACHE = CalendarMetrics.get().cache("repository");
+
+    private final AppointmentRepository backing;
+    private final ZoneId zone;
+    private final int maxMonths;
+    private final Map<YearMonth, List<Appointment>> months;
+
+    /**
+     * Creates the cache.
+     *
+     * @param backing The repository holding the data
+     * @param zone Time zone used to split the data into months
+     * @param maxMonths Maximum number of months kept in memory
+     */
+    public CachingAppointmentRepository(AppointmentRepository backing, ZoneId zone, int maxMonths) {
+        this.backing = backing;
+        this.zone = zone;
+        this.maxMonths = maxMonths;
+        this.months = new LinkedHashMap<YearMonth, List<Appointment>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<YearMonth, List<Appointment>> eldest) {
+                return size() > CachingAppointmentRepository.this.maxMonths;
+            }
+        };
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        saveAll(Collections.singletonList(appointment));
+    }
+
+    @Override
+    public synchronized void saveAll(Collection<Appointment> appointments) {
+        backing.saveAll(appointments);
+        Set<Long> ids = new HashSet<>();
+        for (Appointment appointment : appointments) {
+            ids.add(appointment.getId());
+        }
+        evict(ids);
+        for (Appointment appointment : appointments) {
+            insert(appointment);
+        }
+    }
+
+    @Override
+    public synchronized boolean delete(long id) {
+        boolean deleted = backing.delete(id);
+        evict(Collections.singleton(id));
+        return deleted;
+    }
+
+    @Override
+    public synchronized Appointment findById(long id) {
+        for (List<Appointment> bucket : months.values()) {
+            for (Appointment appointment : bucket) {
+                if (appointment.getId() == id) {
+                    return appointment;
+                }
+            }
+        }
+        return backing.findById(id);
+    }
+
+    @Override
+    public synchronized List<Appointment> findRange(long from, long to) {
+        if (to <= from) {
+            return new ArrayList<>();
+        }
+        YearMonth first = monthOf(from);
+        YearMonth last = monthOf(to - 1);
+        if (first.plusMonths(maxMonths).isBefore(last)) {
+            // Larger than the cache: reading it would only flush useful months
+            return backing.findRange(from, to);
+        }
+
+        List<Appointment> result = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        // Every bucket is sorted by start and an appointment spanning two months is
+        // always met first in the earlier one, so the concatenation stays sorted
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            for (Appointment appointment : load(month)) {
+                if (overlaps(appointment, from, to) && seen.add(appointment.getId())) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return backing.isReadOnly();
+    }
+
+    @Override
+    public synchronized void close() {
+        months.clear();
+        backing.close();
+    }
+
+    private List<Appointment> load(YearMonth month) {
+        List<Appointment> bucket = months.get(month);
+        if (bucket == null) {
+            CACHE.miss();
+            bucket = new ArrayList<>(backing.findRange(start(month), start(month.plusMonths(1))));
+            months.put(month, bucket);
+        } else {
+            CACHE.hit();
+        }
+        return bucket;
+    }
+
+    private void evict(Set<Long> ids) {
+        for (List<Appointment> bucket : months.values()) {
+            bucket.removeIf(appointment -> ids.contains(appointment.getId()));
+        }
+    }
+
+    // Adds an appointment to the cached months it overlaps, keeping them sorted by start
+    private void insert(Appointment appointment) {
+        YearMonth last = monthOf(Math.max(appointment.getStart(), appointment.getEnd() - 1));
+        for (YearMonth month = monthOf(appointment.getStart()); !month.isAfter(last); month = month.plusMonths(1)) {
+            List<Appointment> bucket = months.get(month);
+            if (bucket == null) {
+                continue;
+            }
+            int low = 0;
+            int high = bucket.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (bucket.get(mid).getStart() <= appointment.getStart()) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            bucket.add(low, appointment);
+        }
+    }
+
+    private static boolean overlaps(Appointment appointment, long from, long to) {
+        return appointment.getStart() < to && (appointment.getEnd() > from || appointment.getStart() >= from);
+    }
+
+    private YearMonth monthOf(long epochMinute) {
+        return YearMonth.from(Instant.ofEpochSecond(epochMinute * 60).atZone(zone));
+    }
+
+    private long start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(zone).toEpochSecond() / 60;
+    }
+}
@@ -0,0 +1,486 @@
+package dashboard.store;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dashboard.metrics.CacheStatistics;
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.FlightRecording;
+import dashboard.metrics.ImportEvent;
+
+/**
+ * Shows several {@link CalendarProvider calendars} together.
+ * Queries never wait for a provider: they merge the months already fetched
+ * and ask the missing ones to every enabled provider at once, each on its
+ * own thread. The {@link Listener} is told as soon as a provider answers, so
+ * the views show each calendar when it arrives and a slow one delays only
+ * itself. Appointments are kept by the month they start in, the months used
+ * least recently being dropped beyond {@value #CACHED_MONTHS} per calendar.
+ */
+public class CalendarAggregator implements AutoCloseable {
+    public static final int CACHED_MONTHS = 24;
+    // A calendar that failed is not asked again before this many milliseconds
+    private static final long RETRY_MILLIS = 30_000;
+    private static final CacheStatistics CACHE = CalendarMetrics.get().cache("calendars");
+
+    /**
+     * Receives the outcome of the background fetches, on the provider's thread.
+     */
+    public interface Listener {
+        /**
+         * The appointments starting in the given days are now available.
+         */
+        void calendarLoaded(Source source, LocalDate first, LocalDate last);
+
+        void calendarFailed(Source source, RuntimeException error);
+    }
+
+    private final ZoneOffsetCache offsets;
+    private final Listener listener;
+    private final ExecutorService executor;
+    private final List<Source> sources = new ArrayList<>();
+
+    public CalendarAggregator(ZoneOffsetCache offsets, Listener listener) {
+        this.offsets = offsets;
+        this.listener = listener;
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "calendar-provider");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a calendar, enabled.
+     */
+    public synchronized Source add(CalendarProvider provider) {
+        Source source = new Source(provider, sources.size());
+        sources.add(source);
+        return source;
+    }
+
+    public synchronized List<Source> getSources() {
+        return new ArrayList<>(sources);
+    }
+
+    /**
+     * Returns the appointments of the enabled calendars starting in [from, to),
+     * merged by start time; at the same start the calendar added first comes
+     * first. Calendars that have not fetched these days yet are asked for
+     * them in the background and contribute nothing for now.
+     *
+     * @param from Start of the interval in epoch minutes (inclusive)
+     * @param to End of the interval in epoch minutes (exclusive)
+     */
+    public List<Entry> query(long from, long to) {
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        YearMonth first = YearMonth.from(LocalDate.ofEpochDay(offsets.getEpochDay(from)));
+        YearMonth last = YearMonth.from(LocalDate.ofEpochDay(offsets.getEpochDay(to - 1)));
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparingLong(Cursor::headStart)
+                                                                    .thenComparingInt(cursor -> cursor.source.index));
+        int size = 0;
+        for (Source source : getSources()) {
+            if (!source.isEnabled()) {
+                continue;
+            }
+            List<Appointment> appointments = source.collect(first, last, from, to);
+            if (!appointments.isEmpty()) {
+                queue.add(new Cursor(source, appointments));
+                size += appointments.size();
+            }
+        }
+        // Every list is sorted: a k-way merge keeps the result sorted in O(n log k)
+        List<Entry> merged = new ArrayList<>(size);
+        while (!queue.isEmpty()) {
+            Cursor cursor = queue.poll();
+            merged.add(new Entry(cursor.source, cursor.appointments.get(cursor.position++)));
+            if (cursor.position < cursor.appointments.size()) {
+                queue.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Applies the changes of a calendar to the months it has fetched, so that
+     * only the changed appointments are replaced; months not fetched yet will
+     * be read from the provider, which already holds the changes.
+     */
+    public void apply(Source source, CalendarDiff diff) {
+        synchronized (source) {
+            source.version++;
+            Set<Long> storeRemovals = new HashSet<>();
+            List<Appointment> storeUpserts = new ArrayList<>();
+            Map<YearMonth, Set<Long>> removals = new HashMap<>();
+            for (Appointment appointment : diff.getRemoved()) {
+                removals.computeIfAbsent(monthOf(appointment.getStart()), month -> new HashSet<>())
+                        .add(appointment.getId());
+            }
+            removals.forEach((month, ids) -> {
+                List<Appointment> appointments = source.months.get(month);
+                if (appointments != null) {
+                    appointments.removeIf(cached -> ids.contains(cached.getId()));
+                    storeRemovals.addAll(ids);
+                }
+            });
+            for (Appointment appointment : diff.getAdded()) {
+                List<Appointment> appointments = source.months.get(monthOf(appointment.getStart()));
+                if (appointments != null) {
+                    // After the ones with the same start, as the provider sorts them
+                    int low = 0;
+                    int high = appointments.size();
+                    while (low < high) {
+                        int mid = (low + high) >>> 1;
+                        if (appointments.get(mid).getStart() <= appointment.getStart()) {
+                            low = mid + 1;
+                        } else {
+                            high = mid;
+                        }
+                    }
+                    appointments.add(low, appointment);
+                    storeUpserts.add(appointment);
+                    storeRemovals.remove(appointment.getId());
+                }
+            }
+            source.store.apply(storeUpserts, storeRemovals);
+        }
+    }
+
+    /**
+     * Stops the fetches in progress and closes the providers.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Source source : getSources()) {
+            source.provider.close();
+        }
+    }
+
+    private YearMonth monthOf(long epochMinute) {
+        return YearMonth.from(LocalDate.ofEpochDay(offsets.getEpochDay(epochMinute)));
+    }
+
+    private long startOf(YearMonth month) {
+        return offsets.startOfDay(month.atDay(1));
+    }
+
+    /**
+     * A calendar of the aggregator, with its visibility and fetched months.
+     */
+    public final class Source {
+        private final CalendarProvider provider;
+        private final int index;
+        private volatile boolean enabled = true;
+        // Appointments by start month, sorted by start; the least recently used month first
+        private final Map<YearMonth, List<Appointment>> months = new LinkedHashMap<>(16, 0.75f, true);
+        private final Set<YearMonth> pending = new HashSet<>();
+        // The fetched months again, as a store for the free/busy search and the conflict detectors
+        private final AppointmentStore store;
+        private long failedAt;
+        // Incremented by every applied change, to discard fetches that started before it
+        private int version;
+
+        private Source(CalendarProvider provider, int index) {
+            this.provider = provider;
+            this.index = index;
+            this.store = new AppointmentStore(provider.getName());
+        }
+
+        public String getName() {
+            return provider.getName();
+        }
+
+        public CalendarProvider getProvider() {
+            return provider;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * @return A store holding the months fetched so far, and only them; it
+         *         follows the fetches, the evictions and the applied changes
+         */
+        public AppointmentStore getStore() {
+            return store;
+        }
+
+        /**
+         * Asks the provider in the background for the months of the given
+         * days that are not fetched yet, as {@link CalendarAggregator#query} does.
+         */
+        public void request(LocalDate first, LocalDate last) {
+            YearMonth missingFirst = null;
+            YearMonth missingLast = null;
+            synchronized (this) {
+                for (YearMonth month = YearMonth.from(first); !month.isAfter(YearMonth.from(last));
+                     month = month.plusMonths(1)) {
+                    if (!months.containsKey(month) && !pending.contains(month)) {
+                        missingFirst = missingFirst == null ? month : missingFirst;
+                        missingLast = month;
+                    }
+                }
+                if (!markPending(missingFirst, missingLast)) {
+                    return;
+                }
+            }
+            YearMonth fetchFirst = missingFirst;
+            YearMonth fetchLast = missingLast;
+            executor.execute(() -> fetch(fetchFirst, fetchLast));
+        }
+
+        /**
+         * Fetches on the calling thread the months of the given days that
+         * are not fetched yet, for the callers that need every appointment.
+         *
+         * @throws RepositoryException If the calendar cannot be read
+         */
+        public void ensureRange(LocalDate first, LocalDate last) {
+            YearMonth missingFirst = null;
+            YearMonth missingLast = null;
+            int fetchVersion;
+            synchronized (this) {
+                for (YearMonth month = YearMonth.from(first); !month.isAfter(YearMonth.from(last));
+                     month = month.plusMonths(1)) {
+                    if (!months.containsKey(month)) {
+                        missingFirst = missingFirst == null ? month : missingFirst;
+                        missingLast = month;
+                    }
+                }
+                fetchVersion = version;
+            }
+            if (missingFirst == null) {
+                return;
+            }
+            long from = startOf(missingFirst);
+            List<Appointment> appointments = provider.findRange(from, startOf(missingLast.plusMonths(1)));
+            synchronized (this) {
+                // Read before a change was applied: left to the next fetch
+                if (version == fetchVersion) {
+                    cache(appointments, missingFirst, missingLast, from);
+                }
+            }
+            listener.calendarLoaded(this, missingFirst.atDay(1), missingLast.atEndOfMonth());
+        }
+
+        /**
+         * Shows or hides the calendar. Its fetched months are kept, so it
+         * appears again at once.
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Returns the fetched appointments starting in [from, to), and asks
+         * the provider for the months in between that are missing.
+         */
+        private List<Appointment> collect(YearMonth first, YearMonth last, long from, long to) {
+            List<Appointment> result = new ArrayList<>();
+            YearMonth missingFirst = null;
+            YearMonth missingLast = null;
+            synchronized (this) {
+                for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                    List<Appointment> appointments = months.get(month);
+                    if (appointments != null) {
+                        CACHE.hit();
+                        addStartingIn(appointments, from, to, result);
+                    } else if (!pending.contains(month)) {
+                        CACHE.miss();
+                        missingFirst = missingFirst == null ? month : missingFirst;
+                        missingLast = month;
+                    }
+                }
+                if (!markPending(missingFirst, missingLast)) {
+                    return result;
+                }
+            }
+            YearMonth fetchFirst = missingFirst;
+            YearMonth fetchLast = missingLast;
+            executor.execute(() -> fetch(fetchFirst, fetchLast));
+            return result;
+        }
+
+        /**
+         * Marks the missing months as being fetched, unless there are none or
+         * the last fetch failed too recently; called holding the lock.
+         *
+         * @return true if the caller has to fetch them
+         */
+        private boolean markPending(YearMonth missingFirst, YearMonth missingLast) {
+            if (missingFirst == null || System.currentTimeMillis() - failedAt < RETRY_MILLIS) {
+                return false;
+            }
+            for (YearMonth month = missingFirst; !month.isAfter(missingLast); month = month.plusMonths(1)) {
+                pending.add(month);
+            }
+            return true;
+        }
+
+        private void fetch(YearMonth first, YearMonth last) {
+            int fetchVersion;
+            synchronized (this) {
+                fetchVersion = version;
+            }
+            long from = startOf(first);
+            long to = startOf(last.plusMonths(1));
+            // Created only while recording: the first event loads the flight recorder
+            ImportEvent event = FlightRecording.isRecording() ? new ImportEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            List<Appointment> appointments;
+            try {
+                appointments = provider.findRange(from, to);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    pending.clear();
+                    failedAt = System.currentTimeMillis();
+                }
+                listener.calendarFailed(this, e);
+                return;
+            }
+            if (event != null && event.shouldCommit()) {
+                event.source = "calendar " + provider.getName() + " " + first + ".." + last;
+                event.appointments = appointments.size();
+                event.commit();
+            }
+            synchronized (this) {
+                if (version != fetchVersion) {
+                    // Read before a change was applied: the views ask again and get a new fetch
+                    for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                        pending.remove(month);
+                    }
+                } else {
+                    cache(appointments, first, last, from);
+                }
+            }
+            listener.calendarLoaded(this, first.atDay(1), last.atEndOfMonth());
+        }
+
+        /**
+         * Keeps fetched appointments by start month, skipping the ones that
+         * started before the range.
+         */
+        private void cache(List<Appointment> appointments, YearMonth first, YearMonth last, long from) {
+            int position = 0;
+            while (position < appointments.size() && appointments.get(position).getStart() < from) {
+                position++;
+            }
+            Set<Long> removals = new HashSet<>();
+            for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                long monthEnd = startOf(month.plusMonths(1));
+                int monthStart = position;
+                while (position < appointments.size() && appointments.get(position).getStart() < monthEnd) {
+                    position++;
+                }
+                List<Appointment> fetched = new ArrayList<>(appointments.subList(monthStart, position));
+                List<Appointment> previous = months.put(month, fetched);
+                if (previous != null) {
+                    addIds(previous, removals);
+                }
+                pending.remove(month);
+            }
+            while (months.size() > CACHED_MONTHS) {
+                Iterator<List<Appointment>> eldest = months.values().iterator();
+                addIds(eldest.next(), removals);
+                eldest.remove();
+            }
+            // Only the fetched months still cached go to the store
+            List<Appointment> upserts = new ArrayList<>();
+            for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                List<Appointment> fetched = months.get(month);
+                if (fetched != null) {
+                    upserts.addAll(fetched);
+                }
+            }
+            for (Appointment appointment : upserts) {
+                removals.remove(appointment.getId());
+            }
+            store.apply(upserts, removals);
+        }
+
+        private void addIds(List<Appointment> appointments, Set<Long> ids) {
+            for (Appointment appointment : appointments) {
+                ids.add(appointment.getId());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+
+    /**
+     * Adds the appointments of a sorted list that start in [from, to).
+     */
+    private static void addStartingIn(List<Appointment> appointments, long from, long to, List<Appointment> result) {
+        int low = 0;
+        int high = appointments.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (appointments.get(mid).getStart() < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < appointments.size() && appointments.get(i).getStart() < to; i++) {
+            result.add(appointments.get(i));
+        }
+    }
+
+    /**
+     * An appointment together with the calendar it comes from.
+     */
+    public static final class Entry {
+        private final Source source;
+        private final Appointment appointment;
+
+        Entry(Source source, Appointment appointment) {
+            this.source = source;
+            this.appointment = appointment;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+
+        public Appointment getAppointment() {
+            return appointment;
+        }
+    }
+
+    private static final class Cursor {
+        final Source source;
+        final List<Appointment> appointments;
+        int position;
+
+        Cursor(Source source, List<Appointment> appointments) {
+            this.source = source;
+            this.appointments = appointments;
+        }
+
+        long headStart() {
+            return appointments.get(position).getStart();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package dashboard.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Differences between two versions of a calendar, matched by id (the UID
+ * of the event): the appointments added, the ones removed and, for the
+ * changed ones, both versions.
+ */
+public final class CalendarDiff {
+    private final List<Appointment> added;
+    private final List<Appointment> removed;
+    private final int changed;
+
+    private CalendarDiff(List<Appointment> added, List<Appointment> removed, int changed) {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.changed = changed;
+    }
+
+    /**
+     * Compares two versions of a calendar in O(n).
+     */
+    public static CalendarDiff between(List<Appointment> before, List<Appointment> after) {
+        Map<Long, Appointment> previous = new HashMap<>(before.size() * 2);
+        for (Appointment appointment : before) {
+            previous.put(appointment.getId(), appointment);
+        }
+        List<Appointment> added = new ArrayList<>();
+        List<Appointment> removed = new ArrayList<>();
+        for (Appointment appointment : after) {
+            Appointment old = previous.remove(appointment.getId());
+            if (old == null || !sameContent(old, appointment)) {
+                added.add(appointment);
+                if (old != null) {
+                    removed.add(old);
+                }
+            }
+        }
+        int changed = removed.size();
+        removed.addAll(previous.values());
+        return new CalendarDiff(added, removed, changed);
+    }
+
+    /**
+     * @return The new version of the added and changed appointments
+     */
+    public List<Appointment> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return The old version of the removed and changed appointments
+     */
+    public List<Appointment> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * @return The number of appointments added, removed or changed
+     */
+    public int size() {
+        return added.size() + removed.size() - changed;
+    }
+
+    /**
+     * @return The epoch days the old and new versions start in, sorted, without repetitions
+     */
+    public long[] getStartDays(ZoneOffsetCache offsets) {
+        TreeSet<Long> days = new TreeSet<>();
+        for (Appointment appointment : added) {
+            days.add(offsets.getEpochDay(appointment.getStart()));
+        }
+        for (Appointment appointment : removed) {
+            days.add(offsets.getEpochDay(appointment.getStart()));
+        }
+        return days.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static boolean sameContent(Appointment a, Appointment b) {
+        return a.getStart() == b.getStart() && a.getDuration() == b.getDuration()
+            && a.getTitle().equals(b.getTitle()) && a.getCategory() == b.getCategory()
+            && Objects.equals(a.getZone(), b.getZone());
+    }
+}
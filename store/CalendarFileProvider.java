@@ -0,0 +1,141 @@
+package dashboard.store;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.FlightRecording;
+import dashboard.metrics.ImportEvent;
+
+/**
+ * A calendar imported from a file edited by other tools: iCalendar (.ics)
+ * or comma-separated values (.csv, see {@link CsvFormat}).
+ * The file is parsed the first time it is read, on the aggregator's thread,
+ * and then queried through an in-memory {@link AppointmentStore}. After the
+ * file changes, {@link #reload()} parses it again and applies only the
+ * differences to that store.
+ */
+public class CalendarFileProvider implements CalendarProvider {
+    private final String name;
+    private final Path file;
+    private final ZoneId zone;
+    private AppointmentStore appointments;
+
+    public CalendarFileProvider(String name, Path file, ZoneId zone) {
+        this.name = name;
+        this.file = file;
+        this.zone = zone;
+    }
+
+    /**
+     * @return true if the file has an extension this provider reads
+     */
+    public static boolean isCalendarFile(Path file) {
+        String fileName = file.toString().toLowerCase(Locale.ROOT);
+        return fileName.endsWith(".ics") || fileName.endsWith(".csv");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<Appointment> findRange(long from, long to) {
+        return load().query(from, to);
+    }
+
+    /**
+     * Parses the file again and applies to the loaded appointments the ones
+     * added, removed or changed since the last read. A missing file counts
+     * as an empty calendar. Nothing is read if the calendar was never loaded:
+     * its first query reads the file as it is then.
+     *
+     * @return The differences applied, empty if none
+     * @throws RepositoryException if the file cannot be read or parsed; the appointments are left as they were
+     */
+    public synchronized CalendarDiff reload() {
+        if (appointments == null) {
+            return CalendarDiff.between(Collections.emptyList(), Collections.emptyList());
+        }
+        long started = System.nanoTime();
+        // Created only while recording: the first event loads the flight recorder
+        ImportEvent event = FlightRecording.isRecording() ? new ImportEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        List<Appointment> parsed;
+        try {
+            parsed = read();
+        } catch (NoSuchFileException e) {
+            parsed = Collections.emptyList();
+        }
+        CalendarDiff diff = CalendarDiff.between(appointments.getAll(), parsed);
+        // Changed appointments are replaced by their new version, in the same transaction
+        Set<Long> removals = new HashSet<>();
+        for (Appointment appointment : diff.getRemoved()) {
+            removals.add(appointment.getId());
+        }
+        for (Appointment appointment : diff.getAdded()) {
+            removals.remove(appointment.getId());
+        }
+        appointments.apply(diff.getAdded(), removals);
+        CalendarMetrics.get().recordImport(diff.size(), System.nanoTime() - started);
+        if (event != null && event.shouldCommit()) {
+            event.source = "file " + file.getFileName();
+            event.appointments = diff.size();
+            event.commit();
+        }
+        return diff;
+    }
+
+    private synchronized AppointmentStore load() {
+        if (appointments == null) {
+            List<Appointment> parsed;
+            try {
+                parsed = read();
+            } catch (NoSuchFileException e) {
+                throw new RepositoryException("Cannot read " + file, e);
+            }
+            AppointmentStore store = new AppointmentStore(name, parsed.size());
+            store.addAll(parsed);
+            appointments = store;
+        }
+        return appointments;
+    }
+
+    // The appointments of the file, the last one of each UID only
+    private List<Appointment> read() throws NoSuchFileException {
+        List<Appointment> parsed;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            parsed = file.toString().toLowerCase(Locale.ROOT).endsWith(".csv")
+                ? CsvFormat.parse(reader, zone) : ICalendarFormat.parse(reader, zone);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new RepositoryException("Cannot read " + file + ": " + e.getMessage(), e);
+        }
+        Map<Long, Appointment> byId = new LinkedHashMap<>(parsed.size() * 2);
+        for (Appointment appointment : parsed) {
+            byId.put(appointment.getId(), appointment);
+        }
+        return byId.size() == parsed.size() ? parsed : new ArrayList<>(byId.values());
+    }
+}
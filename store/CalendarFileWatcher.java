@@ -0,0 +1,166 @@
+package dashboard.store;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads calendar files when other tools change them.
+ * The directories of the files are watched with a {@link WatchService};
+ * the events of a file are collected until it has been quiet for
+ * {@value #DEBOUNCE_MILLIS} ms, so a burst of writes, or an editor saving
+ * through a temporary file and a rename, costs a single reload. Only the
+ * changed files are parsed again, and the listener receives the differences
+ * to apply. Everything happens on one daemon thread.
+ */
+public class CalendarFileWatcher implements AutoCloseable {
+    public static final long DEBOUNCE_MILLIS = 300;
+
+    /**
+     * Receives the outcome of the reloads, on the watcher's thread.
+     */
+    public interface Listener {
+        /**
+         * The file changed and the provider already holds the differences.
+         */
+        void fileChanged(CalendarFileProvider provider, CalendarDiff diff);
+
+        /**
+         * The file could not be read; the provider keeps its previous contents.
+         */
+        void fileFailed(CalendarFileProvider provider, RuntimeException error);
+    }
+
+    private final Listener listener;
+    private final WatchService watchService;
+    // Providers by absolute file path, and directories being watched
+    private final Map<Path, CalendarFileProvider> providers = new HashMap<>();
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+    // Files waiting for their burst of events to end, with the time of their reload
+    private final Map<Path, Long> due = new HashMap<>();
+    private final Thread thread;
+
+    public CalendarFileWatcher(Listener listener) throws IOException {
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        thread = new Thread(this::run, "calendar-file-watcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Watches the file of a provider; the watcher starts with the first one.
+     *
+     * @throws IOException if its directory cannot be watched
+     */
+    public synchronized void watch(CalendarFileProvider provider) throws IOException {
+        Path file = provider.getFile().toAbsolutePath().normalize();
+        Path directory = file.getParent();
+        if (!directories.containsKey(directory)) {
+            directories.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                                          StandardWatchEventKinds.ENTRY_MODIFY,
+                                                          StandardWatchEventKinds.ENTRY_DELETE));
+        }
+        providers.put(file, provider);
+        if (!thread.isAlive()) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops watching.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = nextKey();
+                if (key != null) {
+                    collect(key);
+                }
+                reloadDue();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed: the thread ends
+        }
+    }
+
+    // Waits for events until the next reload is due
+    private WatchKey nextKey() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            if (due.isEmpty()) {
+                wait = -1;
+            } else {
+                wait = Math.max(0, due.values().stream().mapToLong(Long::longValue).min().getAsLong()
+                                   - System.currentTimeMillis());
+            }
+        }
+        return wait < 0 ? watchService.take() : watchService.poll(wait, TimeUnit.MILLISECONDS);
+    }
+
+    // Postpones the reload of every watched file the key has events for
+    private synchronized void collect(WatchKey key) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost: every file of the directory is read again
+                for (Path file : providers.keySet()) {
+                    if (file.getParent().equals(directory)) {
+                        due.put(file, System.currentTimeMillis() + DEBOUNCE_MILLIS);
+                    }
+                }
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            if (providers.containsKey(file)) {
+                due.put(file, System.currentTimeMillis() + DEBOUNCE_MILLIS);
+            }
+        }
+        key.reset();
+    }
+
+    private void reloadDue() {
+        List<CalendarFileProvider> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Map.Entry<Path, Long>> entries = due.entrySet().iterator(); entries.hasNext(); ) {
+                Map.Entry<Path, Long> entry = entries.next();
+                if (entry.getValue() <= now) {
+                    ready.add(providers.get(entry.getKey()));
+                    entries.remove();
+                }
+            }
+        }
+        for (CalendarFileProvider provider : ready) {
+            CalendarDiff diff;
+            try {
+                diff = provider.reload();
+            } catch (RuntimeException e) {
+                listener.fileFailed(provider, e);
+                continue;
+            }
+            if (!diff.isEmpty()) {
+                listener.fileChanged(provider, diff);
+            }
+        }
+    }
+}
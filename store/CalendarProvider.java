@@ -0,0 +1,52 @@
+package dashboard.store;
+
+import java.util.List;
+
+/**
+ * A source of appointments shown beside the personal calendar: a team or
+ * room calendar, an imported file, another repository.
+ * Providers are read by the {@link CalendarAggregator} on background threads
+ * and may be slow, so {@link #findRange} is free to block.
+ */
+public interface CalendarProvider extends AutoCloseable {
+
+    /**
+     * @return The name shown next to the visibility toggle
+     */
+    String getName();
+
+    /**
+     * Returns the appointments overlapping the interval [from, to), sorted by start time.
+     *
+     * @param from Start of the interval in epoch minutes (inclusive)
+     * @param to End of the interval in epoch minutes (exclusive)
+     * @throws RepositoryException If the calendar cannot be read
+     */
+    List<Appointment> findRange(long from, long to);
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Shows the appointments of a repository as a calendar.
+     */
+    static CalendarProvider of(String name, AppointmentRepository repository) {
+        return new CalendarProvider() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public List<Appointment> findRange(long from, long to) {
+                return repository.findRange(from, to);
+            }
+
+            @Override
+            public void close() {
+                repository.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,378 @@
+package dashboard.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import dashboard.Category;
+
+/**
+ * Compact binary encoding of appointments, used by the write-ahead log, by
+ * the snapshots and to exchange appointments between processes.
+ * <p>
+ * Numbers are varints: ids, start minutes and durations are written as the
+ * zigzag-encoded difference from the previous appointment, which takes one
+ * or two bytes for appointments sorted by start. Titles and categories are
+ * dictionary-encoded: the first occurrence writes the text and assigns it
+ * the next index, later occurrences write only the index. Categories are
+ * stored by name, so reordering the enum does not break existing files.
+ * Time zones, since version 2, are dictionary-encoded by id as well, with
+ * a reserved index for appointments without a zone.
+ * <p>
+ * A block written by {@link #write(OutputStream, Collection)} starts with a
+ * magic number and a format version, followed by the number of appointments.
+ */
+public final class CompactFormat {
+    private static final int MAGIC = 0x43415046; // "CAPF"
+    private static final int VERSION = 2;
+    // Version 1 has no time zones
+    private static final int VERSION_WITHOUT_ZONES = 1;
+    // Longest title accepted when decoding, in bytes
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private CompactFormat() {
+    }
+
+    /**
+     * Encodes appointments in a self-contained block.
+     * They take the least room when sorted by start time.
+     *
+     * @param appointments The appointments to encode
+     * @return The encoded block
+     */
+    public static byte[] encode(Collection<Appointment> appointments) {
+        Output out = new Output(16 + appointments.size() * 8);
+        out.writeInt(MAGIC);
+        out.writeVarint(VERSION);
+        out.writeVarint(appointments.size());
+        Encoder encoder = new Encoder();
+        for (Appointment appointment : appointments) {
+            encoder.encode(out, appointment);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a block written by {@link #encode(Collection)}, starting at the
+     * position of the buffer and leaving it after the block.
+     *
+     * @param buffer The buffer holding the block
+     * @return The appointments, in the order they were encoded
+     * @throws IOException if the data is not a valid block
+     */
+    public static List<Appointment> decode(ByteBuffer buffer) throws IOException {
+        List<Appointment> appointments = new ArrayList<>();
+        decode(buffer, appointments::add);
+        return appointments;
+    }
+
+    /**
+     * Decodes a block written by {@link #encode(Collection)}, passing every
+     * appointment to the sink as soon as it is read, so that a large block
+     * never needs a list of all its appointments.
+     *
+     * @param buffer The buffer holding the block, left after it
+     * @param sink Receives the appointments, in the order they were encoded
+     * @return The number of appointments decoded
+     * @throws IOException if the data is not a valid block
+     */
+    public static int decode(ByteBuffer buffer, Consumer<? super Appointment> sink) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a compact appointment block");
+            }
+            int version = readVarint(buffer);
+            if (version != VERSION && version != VERSION_WITHOUT_ZONES) {
+                throw new IOException("Unsupported compact format version: " + version);
+            }
+            int count = readVarint(buffer);
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IOException("Invalid appointment count: " + count);
+            }
+            Decoder decoder = new Decoder(version == VERSION);
+            for (int i = 0; i < count; i++) {
+                sink.accept(decoder.decode(buffer));
+            }
+            return count;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated compact appointment block", e);
+        }
+    }
+
+    /**
+     * Writes appointments to a stream, as a self-contained block.
+     */
+    public static void write(OutputStream out, Collection<Appointment> appointments) throws IOException {
+        out.write(encode(appointments));
+    }
+
+    /**
+     * Reads a block written by {@link #write(OutputStream, Collection)}, up to the end of the stream.
+     */
+    public static List<Appointment> read(InputStream in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(in.readAllBytes());
+        List<Appointment> appointments = decode(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IOException("Unexpected data after the appointments");
+        }
+        return appointments;
+    }
+
+    /**
+     * Encodes a sequence of appointments, each one relative to the previous
+     * ones. The sequence must be decoded from the start by a new {@link Decoder}.
+     */
+    static final class Encoder {
+        private final Map<String, Integer> titles = new HashMap<>();
+        private final Map<Category, Integer> categories = new EnumMap<>(Category.class);
+        private final Map<ZoneId, Integer> zones = new HashMap<>();
+        private long previousId;
+        private long previousStart;
+        private int previousDuration;
+
+        void encode(Output out, Appointment appointment) {
+            out.writeVarlong(zigzag(appointment.getId() - previousId));
+            out.writeVarlong(zigzag(appointment.getStart() - previousStart));
+            out.writeVarlong(zigzag((long) appointment.getDuration() - previousDuration));
+            Integer category = categories.get(appointment.getCategory());
+            if (category == null) {
+                out.writeVarint(0);
+                out.writeString(appointment.getCategory().name());
+                categories.put(appointment.getCategory(), categories.size());
+            } else {
+                out.writeVarint(category + 1);
+            }
+            Integer title = titles.get(appointment.getTitle());
+            if (title == null) {
+                out.writeVarint(0);
+                out.writeString(appointment.getTitle());
+                titles.put(appointment.getTitle(), titles.size());
+            } else {
+                out.writeVarint(title + 1);
+            }
+            // 0 for no zone, 1 for a new zone followed by its id, otherwise the index + 2
+            ZoneId zone = appointment.getZone();
+            Integer zoneIndex = zone == null ? null : zones.get(zone);
+            if (zone == null) {
+                out.writeVarint(0);
+            } else if (zoneIndex == null) {
+                out.writeVarint(1);
+                out.writeString(zone.getId());
+                zones.put(zone, zones.size());
+            } else {
+                out.writeVarint(zoneIndex + 2);
+            }
+            previousId = appointment.getId();
+            previousStart = appointment.getStart();
+            previousDuration = appointment.getDuration();
+        }
+    }
+
+    /**
+     * Decodes a sequence written by an {@link Encoder}. Every title is
+     * created once and shared by all the appointments having it.
+     */
+    static final class Decoder {
+        private final List<String> titles = new ArrayList<>();
+        private final List<Category> categories = new ArrayList<>();
+        private final List<ZoneId> zones = new ArrayList<>();
+        private final boolean withZones;
+        private long previousId;
+        private long previousStart;
+        private int previousDuration;
+
+        Decoder() {
+            this(true);
+        }
+
+        /**
+         * @param withZones false to read data written before time zones were encoded
+         */
+        Decoder(boolean withZones) {
+            this.withZones = withZones;
+        }
+
+        Appointment decode(ByteBuffer in) throws IOException {
+            long id = previousId + unzigzag(readVarlong(in));
+            long start = previousStart + unzigzag(readVarlong(in));
+            long duration = previousDuration + unzigzag(readVarlong(in));
+            if (duration < 0 || duration > Integer.MAX_VALUE) {
+                throw new IOException("Invalid duration: " + duration);
+            }
+            int categoryIndex = readVarint(in);
+            Category category;
+            if (categoryIndex == 0) {
+                String name = readString(in);
+                try {
+                    category = Category.valueOf(name);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown category: " + name, e);
+                }
+                categories.add(category);
+            } else if (categoryIndex > 0 && categoryIndex <= categories.size()) {
+                category = categories.get(categoryIndex - 1);
+            } else {
+                throw new IOException("Invalid category index: " + categoryIndex);
+            }
+            int titleIndex = readVarint(in);
+            String title;
+            if (titleIndex == 0) {
+                title = readString(in);
+                titles.add(title);
+            } else if (titleIndex > 0 && titleIndex <= titles.size()) {
+                title = titles.get(titleIndex - 1);
+            } else {
+                throw new IOException("Invalid title index: " + titleIndex);
+            }
+            ZoneId zone = null;
+            int zoneIndex = withZones ? readVarint(in) : 0;
+            if (zoneIndex == 1) {
+                String zoneId = readString(in);
+                try {
+                    zone = ZoneId.of(zoneId);
+                } catch (DateTimeException e) {
+                    throw new IOException("Unknown time zone: " + zoneId, e);
+                }
+                zones.add(zone);
+            } else if (zoneIndex >= 2 && zoneIndex - 2 < zones.size()) {
+                zone = zones.get(zoneIndex - 2);
+            } else if (zoneIndex != 0) {
+                throw new IOException("Invalid time zone index: " + zoneIndex);
+            }
+            previousId = id;
+            previousStart = start;
+            previousDuration = (int) duration;
+            return new Appointment(id, start, (int) duration, title, category, zone);
+        }
+    }
+
+    /**
+     * Growable byte array with the primitive writers used by the format.
+     */
+    static final class Output {
+        private byte[] bytes;
+        private int size;
+
+        Output(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        byte[] array() {
+            return bytes;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            bytes[size++] = (byte) (value >>> 24);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            writeVarlong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+
+        void write(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+            }
+        }
+    }
+
+    static int readVarint(ByteBuffer in) throws IOException {
+        long value = readVarlong(in);
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Varint too large");
+        }
+        return (int) value;
+    }
+
+    static long readVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = readVarint(in);
+        if (length < 0 || length > MAX_STRING_BYTES || length > in.remaining()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] utf8 = new byte[length];
+            in.get(utf8);
+            value = new String(utf8, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,119 @@
+package dashboard.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the appointments of a calendar overlapping a proposed time, fast
+ * enough to check at every keystroke of an editor.
+ * The detector keeps an {@link IntervalTree} of the appointments in the
+ * store, built once and then updated by the store changes, so a check does
+ * not scan the calendar. Calendars shared by several people, such as the
+ * calendar of a room, get a detector each and are checked together with
+ * {@link #findConflicts(List, long, long, long)}.
+ */
+public class ConflictDetector implements AppointmentStore.Listener, AutoCloseable {
+    private final AppointmentStore store;
+    // Guarded by this
+    private final IntervalTree tree = new IntervalTree();
+
+    /**
+     * A stored appointment overlapping the proposed time, with its calendar.
+     */
+    public static final class Conflict {
+        private final AppointmentStore calendar;
+        private final Appointment appointment;
+
+        Conflict(AppointmentStore calendar, Appointment appointment) {
+            this.calendar = calendar;
+            this.appointment = appointment;
+        }
+
+        public AppointmentStore getCalendar() {
+            return calendar;
+        }
+
+        public Appointment getAppointment() {
+            return appointment;
+        }
+    }
+
+    /**
+     * Creates a detector holding the appointments of the store and following its changes.
+     */
+    public ConflictDetector(AppointmentStore store) {
+        this.store = store;
+        // No change can slip between the copy and the registration
+        synchronized (store) {
+            List<Appointment> appointments = store.getAll();
+            synchronized (this) {
+                tree.build(appointments);
+            }
+            store.addListener(this);
+        }
+    }
+
+    public AppointmentStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the appointments overlapping [start, end), sorted by start time.
+     *
+     * @param start Start of the proposed time in epoch minutes
+     * @param end End of the proposed time in epoch minutes; a zero-minute time checks its start minute
+     * @param excludedId Id of the appointment being edited, which cannot conflict with itself
+     */
+    public synchronized List<Appointment> findConflicts(long start, long end, long excludedId) {
+        List<Appointment> conflicts = new ArrayList<>();
+        tree.forEachOverlapping(start, Math.max(end, start + 1), appointment -> {
+            if (appointment.getId() != excludedId) {
+                conflicts.add(appointment);
+            }
+        });
+        return conflicts;
+    }
+
+    /**
+     * Checks a proposed time against several calendars.
+     *
+     * @return The conflicts of every calendar, in the order of the detectors
+     */
+    public static List<Conflict> findConflicts(List<ConflictDetector> detectors, long start, long end, long excludedId) {
+        List<Conflict> conflicts = new ArrayList<>();
+        for (ConflictDetector detector : detectors) {
+            for (Appointment appointment : detector.findConflicts(start, end, excludedId)) {
+                conflicts.add(new Conflict(detector.store, appointment));
+            }
+        }
+        return conflicts;
+    }
+
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    @Override
+    public synchronized void appointmentAdded(Appointment appointment) {
+        tree.insert(appointment);
+    }
+
+    @Override
+    public synchronized void appointmentRemoved(Appointment appointment) {
+        tree.remove(appointment);
+    }
+
+    @Override
+    public synchronized void appointmentUpdated(Appointment previous, Appointment current) {
+        tree.remove(previous);
+        tree.insert(current);
+    }
+
+    /**
+     * Stops following the store.
+     */
+    @Override
+    public void close() {
+        store.removeListener(this);
+    }
+}
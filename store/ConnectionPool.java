@@ -0,0 +1,137 @@
+package dashboard.store;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small fixed-size JDBC connection pool.
+ * Connections are opened lazily, up to the maximum size, and reused;
+ * a borrowed connection that turns out to be closed is replaced.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Creates a pool.
+     *
+     * @param url JDBC url
+     * @param user Database user, may be null
+     * @param password Database password, may be null
+     * @param maxSize Maximum number of open connections
+     */
+    public ConnectionPool(String url, String user, String password, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * Takes a connection from the pool, opening one if the pool is not full.
+     * The connection must be given back with {@link #release(Connection)}.
+     */
+    public Connection borrow() throws SQLException {
+        Connection connection = idle.poll();
+        if (connection == null) {
+            connection = openIfRoom();
+        }
+        if (connection == null) {
+            try {
+                connection = idle.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection", e);
+            }
+            if (connection == null) {
+                throw new SQLException("No connection available after " + BORROW_TIMEOUT_SECONDS + " seconds");
+            }
+        }
+        if (connection.isClosed()) {
+            synchronized (this) {
+                all.remove(connection);
+            }
+            return borrow();
+        }
+        return connection;
+    }
+
+    /**
+     * Gives a connection back to the pool.
+     */
+    public void release(Connection connection) {
+        boolean reuse;
+        synchronized (this) {
+            reuse = !closed;
+        }
+        try {
+            if (reuse && !connection.isClosed()) {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                idle.offer(connection);
+                return;
+            }
+        } catch (SQLException e) {
+            // Broken connection: drop it, a new one will be opened when needed
+        }
+        synchronized (this) {
+            all.remove(connection);
+        }
+        closeQuietly(connection);
+    }
+
+    private synchronized Connection openIfRoom() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        if (all.size() >= maxSize) {
+            return null;
+        }
+        Connection connection = user == null
+            ? DriverManager.getConnection(url)
+            : DriverManager.getConnection(url, user, password);
+        all.add(connection);
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        List<Connection> connections;
+        synchronized (this) {
+            closed = true;
+            connections = new ArrayList<>(all);
+            all.clear();
+        }
+        idle.clear();
+        for (Connection connection : connections) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Nothing left to do with a connection that cannot be closed
+        }
+    }
+}
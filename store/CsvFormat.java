@@ -0,0 +1,116 @@
+package dashboard.store;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import dashboard.Category;
+
+/**
+ * Reads appointments from comma-separated values, as exported by
+ * spreadsheets and simple scripts. Each line holds one appointment:
+ * <pre>
+ * uid,start,duration,title,category
+ * 42,2026-10-19 09:30,60,Riunione di reparto,meeting
+ * </pre>
+ * The start is a local time in the default zone ({@code T} is accepted
+ * between date and time), the duration is in minutes and the category, by
+ * name or display name, is optional. Fields may be quoted, with doubled
+ * quotes inside. A first line starting with {@code uid} is a header; empty
+ * lines are skipped. UIDs are mapped to ids as in {@link ICalendarFormat}.
+ */
+public final class CsvFormat {
+    private static final DateTimeFormatter START = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm", Locale.ROOT);
+
+    private CsvFormat() {
+    }
+
+    /**
+     * Reads the appointments of a CSV stream.
+     *
+     * @param reader The stream
+     * @param defaultZone Zone of the start times
+     * @return One appointment per line, in file order
+     * @throws IOException if the stream cannot be read or a line is malformed
+     */
+    public static List<Appointment> parse(Reader reader, ZoneId defaultZone) throws IOException {
+        List<Appointment> appointments = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        int lineNumber = 0;
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = split(line, lineNumber);
+            if (lineNumber == 1 && fields.get(0).trim().equalsIgnoreCase("uid")) {
+                continue;
+            }
+            if (fields.size() < 4) {
+                throw new IOException("Line " + lineNumber + ": expected uid, start, duration and title");
+            }
+            try {
+                long start = LocalDateTime.parse(fields.get(1).trim().replace('T', ' '), START)
+                                          .atZone(defaultZone).toEpochSecond() / 60;
+                int duration = Integer.parseInt(fields.get(2).trim());
+                if (duration < 0) {
+                    throw new NumberFormatException(fields.get(2));
+                }
+                Category category = fields.size() > 4 ? parseCategory(fields.get(4).trim()) : Category.MEETING;
+                appointments.add(new Appointment(ICalendarFormat.idOf(fields.get(0)), start, duration,
+                                                 fields.get(3).trim(), category));
+            } catch (DateTimeException | NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return appointments;
+    }
+
+    // Fields of a line, with quotes removed
+    private static List<String> split(String line, int lineNumber) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IOException("Line " + lineNumber + ": unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static Category parseCategory(String name) {
+        for (Category candidate : Category.values()) {
+            if (candidate.name().equalsIgnoreCase(name) || candidate.getDisplayName().equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+        return Category.MEETING;
+    }
+}
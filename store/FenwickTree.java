@@ -0,0 +1,55 @@
+package dashboard.store;
+
+/**
+ * Binary indexed (Fenwick) tree over long values.
+ * Both point updates and prefix/range sums cost O(log n).
+ */
+public class FenwickTree {
+    private final long[] tree;
+
+    /**
+     * Creates a tree of the given size, with all values set to zero.
+     *
+     * @param size Number of positions (0 to size - 1)
+     */
+    public FenwickTree(int size) {
+        tree = new long[size + 1];
+    }
+
+    public int size() {
+        return tree.length - 1;
+    }
+
+    /**
+     * Adds a value to one position.
+     *
+     * @param index The position (0-based)
+     * @param delta The value to add, may be negative
+     */
+    public void add(int index, long delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return The sum of the positions 0 to index (inclusive)
+     */
+    public long prefixSum(int index) {
+        long sum = 0;
+        for (int i = Math.min(index + 1, tree.length - 1); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return The sum of the positions from to to (both inclusive)
+     */
+    public long rangeSum(int from, int to) {
+        if (to < from) {
+            return 0;
+        }
+        return prefixSum(to) - (from > 0 ? prefixSum(from - 1) : 0);
+    }
+}
@@ -0,0 +1,225 @@
+package dashboard.store;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Free/busy engine working across several calendars.
+ * The busy intervals of every calendar are read in sorted chunks from its
+ * {@link AppointmentStore} and combined with a k-way merge, so a query only
+ * touches the appointments that precede the last slot it returns.
+ */
+public class FreeBusyFinder {
+    // Number of days fetched from a store at a time
+    private static final int CHUNK_MINUTES = 7 * 24 * 60;
+
+    private final LocalTime workStart;
+    private final LocalTime workEnd;
+    private final ZoneId zone;
+
+    /**
+     * Creates a finder restricted to the given working hours.
+     *
+     * @param workStart Start of the working day
+     * @param workEnd End of the working day
+     * @param zone Time zone the working hours refer to
+     */
+    public FreeBusyFinder(LocalTime workStart, LocalTime workEnd, ZoneId zone) {
+        if (!workStart.isBefore(workEnd)) {
+            throw new IllegalArgumentException("Working hours must end after they start");
+        }
+        this.workStart = workStart;
+        this.workEnd = workEnd;
+        this.zone = zone;
+    }
+
+    /**
+     * Finds the first free slots that are free in every calendar.
+     *
+     * @param calendars The calendars whose appointments count as busy time
+     * @param from First day to search (inclusive)
+     * @param to Last day to search (inclusive)
+     * @param duration Length of each slot in minutes
+     * @param maxResults Maximum number of slots to return
+     * @return The free slots, in chronological order
+     */
+    public List<Slot> findFreeSlots(List<AppointmentStore> calendars, LocalDate from, LocalDate to,
+                                    int duration, int maxResults) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Slot duration must be positive: " + duration);
+        }
+        List<Slot> slots = new ArrayList<>();
+        if (maxResults <= 0 || to.isBefore(from)) {
+            return slots;
+        }
+
+        BusyMerger busy = new BusyMerger(calendars, toEpochMinute(from, workStart), toEpochMinute(to, workEnd));
+        for (LocalDate date = from; !date.isAfter(to) && slots.size() < maxResults; date = date.plusDays(1)) {
+            long t = toEpochMinute(date, workStart);
+            long windowEnd = toEpochMinute(date, workEnd);
+            while (t + duration <= windowEnd && slots.size() < maxResults) {
+                busy.skipEndingBefore(t);
+                if (busy.hasCurrent() && busy.currentStart() < t + duration) {
+                    // The candidate slot overlaps a busy interval: restart right after it
+                    t = Math.max(t, busy.currentEnd());
+                } else {
+                    slots.add(new Slot(t, t + duration));
+                    t += duration;
+                }
+            }
+        }
+        return slots;
+    }
+
+    private long toEpochMinute(LocalDate date, LocalTime time) {
+        return date.atTime(time).atZone(zone).toEpochSecond() / 60;
+    }
+
+    /**
+     * A free interval, in epoch minutes.
+     */
+    public static final class Slot {
+        private final long start;
+        private final long end;
+
+        public Slot(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "Slot[" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * Merges the sorted appointments of several stores into a single stream
+     * of coalesced busy intervals.
+     */
+    private static final class BusyMerger {
+        private final PriorityQueue<Cursor> queue =
+                new PriorityQueue<>(Comparator.comparingLong(Cursor::headStart));
+        private boolean hasCurrent;
+        private long currentStart;
+        private long currentEnd;
+
+        BusyMerger(List<AppointmentStore> calendars, long from, long to) {
+            for (AppointmentStore store : calendars) {
+                Cursor cursor = new Cursor(store, from, to);
+                if (cursor.hasHead()) {
+                    queue.add(cursor);
+                }
+            }
+            advance();
+        }
+
+        boolean hasCurrent() {
+            return hasCurrent;
+        }
+
+        long currentStart() {
+            return currentStart;
+        }
+
+        long currentEnd() {
+            return currentEnd;
+        }
+
+        void skipEndingBefore(long t) {
+            while (hasCurrent && currentEnd <= t) {
+                advance();
+            }
+        }
+
+        private void advance() {
+            hasCurrent = !queue.isEmpty();
+            if (!hasCurrent) {
+                return;
+            }
+            Cursor cursor = queue.poll();
+            currentStart = cursor.headStart();
+            currentEnd = cursor.headEnd();
+            requeue(cursor);
+            // Coalesce every interval touching the current one, whatever calendar it comes from
+            while (!queue.isEmpty() && queue.peek().headStart() <= currentEnd) {
+                cursor = queue.poll();
+                currentEnd = Math.max(currentEnd, cursor.headEnd());
+                requeue(cursor);
+            }
+        }
+
+        private void requeue(Cursor cursor) {
+            cursor.next();
+            if (cursor.hasHead()) {
+                queue.add(cursor);
+            }
+        }
+    }
+
+    /**
+     * Reads the appointments of one store in chunks, in start order.
+     */
+    private static final class Cursor {
+        private final AppointmentStore store;
+        private final long to;
+        private long chunkTo;
+        private List<Appointment> chunk;
+        private int index;
+
+        Cursor(AppointmentStore store, long from, long to) {
+            this.store = store;
+            this.to = to;
+            this.chunkTo = Math.min(to, from + CHUNK_MINUTES);
+            // The first chunk also returns appointments that started before 'from'
+            this.chunk = store.query(from, chunkTo);
+            fill();
+        }
+
+        boolean hasHead() {
+            return index < chunk.size();
+        }
+
+        long headStart() {
+            return chunk.get(index).getStart();
+        }
+
+        long headEnd() {
+            return chunk.get(index).getEnd();
+        }
+
+        void next() {
+            index++;
+            fill();
+        }
+
+        // Loads the following chunks until one has appointments or the range is over
+        private void fill() {
+            while (index >= chunk.size() && chunkTo < to) {
+                long chunkFrom = chunkTo;
+                chunkTo = Math.min(to, chunkFrom + CHUNK_MINUTES);
+                List<Appointment> next = store.query(chunkFrom, chunkTo);
+                // Appointments starting before the chunk were already returned by the previous one
+                int skip = 0;
+                while (skip < next.size() && next.get(skip).getStart() < chunkFrom) {
+                    skip++;
+                }
+                chunk = next.subList(skip, next.size());
+                index = 0;
+            }
+        }
+    }
+}
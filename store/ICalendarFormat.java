@@ -0,0 +1,354 @@
+package dashboard.store;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import dashboard.Category;
+
+/**
+ * Reads and writes appointments as iCalendar (RFC 5545) events, the format
+ * used by calendar servers and by .ics files.
+ * <p>
+ * Each appointment is a VEVENT with UID, DTSTART, DURATION, SUMMARY and
+ * CATEGORIES. The start is written in UTC, or as a local time with TZID for
+ * appointments with a time zone. When reading, DTEND is accepted instead of
+ * DURATION, all-day events (VALUE=DATE) last the whole day and floating
+ * times are taken in a default zone; recurrence rules and other properties
+ * are ignored. UIDs that are not numbers are mapped to ids by a 64-bit hash,
+ * so an event always gets the same id.
+ */
+public final class ICalendarFormat {
+    private static final String CRLF = "\r\n";
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss", Locale.ROOT);
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyyMMdd", Locale.ROOT);
+    // Content lines longer than this, in octets, are folded
+    private static final int MAX_LINE_OCTETS = 75;
+
+    private ICalendarFormat() {
+    }
+
+    /**
+     * @return A VCALENDAR object holding the appointment
+     */
+    public static String format(Appointment appointment) {
+        StringBuilder out = new StringBuilder(256);
+        beginCalendar(out);
+        appendEvent(out, appointment);
+        out.append("END:VCALENDAR").append(CRLF);
+        return out.toString();
+    }
+
+    /**
+     * Writes one VCALENDAR object holding all the appointments.
+     */
+    public static void write(Collection<Appointment> appointments, Writer writer) throws IOException {
+        StringBuilder out = new StringBuilder(256);
+        beginCalendar(out);
+        writer.write(out.toString());
+        for (Appointment appointment : appointments) {
+            out.setLength(0);
+            appendEvent(out, appointment);
+            writer.write(out.toString());
+        }
+        writer.write("END:VCALENDAR" + CRLF);
+    }
+
+    public static List<Appointment> parse(String text, ZoneId defaultZone) throws IOException {
+        return parse(new StringReader(text), defaultZone);
+    }
+
+    /**
+     * Reads the events of an iCalendar stream.
+     *
+     * @param reader The stream, possibly holding several VCALENDAR objects
+     * @param defaultZone Zone of floating times and all-day events
+     * @return One appointment per VEVENT, in file order
+     * @throws IOException if the stream cannot be read or an event is malformed
+     */
+    public static List<Appointment> parse(Reader reader, ZoneId defaultZone) throws IOException {
+        List<Appointment> appointments = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        EventBuilder event = null;
+        int lineNumber = 0;
+        int eventLine = 0;
+        String pending = lines.readLine();
+        while (pending != null) {
+            // Unfold: lines starting with a space or a tab continue the previous one
+            StringBuilder line = new StringBuilder(pending);
+            lineNumber++;
+            String next = lines.readLine();
+            while (next != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                line.append(next, 1, next.length());
+                lineNumber++;
+                next = lines.readLine();
+            }
+            pending = next;
+            if (line.length() == 0) {
+                continue;
+            }
+            ContentLine content = ContentLine.parse(line.toString(), lineNumber);
+            if (content.name.equals("BEGIN") && content.value.equalsIgnoreCase("VEVENT")) {
+                event = new EventBuilder();
+                eventLine = lineNumber;
+            } else if (content.name.equals("END") && content.value.equalsIgnoreCase("VEVENT") && event != null) {
+                appointments.add(event.build(defaultZone, eventLine));
+                event = null;
+            } else if (event != null) {
+                event.set(content, defaultZone);
+            }
+        }
+        return appointments;
+    }
+
+    /**
+     * @return The id of the appointment with the given UID: the number itself, or a hash of the text
+     */
+    public static long idOf(String uid) {
+        String trimmed = uid.trim();
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException e) {
+            // FNV-1a, cleared sign bit so hashed ids stay positive
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : trimmed.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return hash & Long.MAX_VALUE;
+        }
+    }
+
+    private static void beginCalendar(StringBuilder out) {
+        out.append("BEGIN:VCALENDAR").append(CRLF)
+           .append("VERSION:2.0").append(CRLF)
+           .append("PRODID:-//Calendario Appuntamenti//IT").append(CRLF);
+    }
+
+    private static void appendEvent(StringBuilder out, Appointment appointment) {
+        out.append("BEGIN:VEVENT").append(CRLF);
+        appendLine(out, "UID:" + appointment.getId());
+        LocalDateTime utcStart = LocalDateTime.ofEpochSecond(appointment.getStart() * 60, 0, ZoneOffset.UTC);
+        appendLine(out, "DTSTAMP:" + DATE_TIME.format(LocalDateTime.now(ZoneOffset.UTC)) + "Z");
+        ZoneId zone = appointment.getZone();
+        if (zone == null) {
+            appendLine(out, "DTSTART:" + DATE_TIME.format(utcStart) + "Z");
+        } else {
+            LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochSecond(appointment.getStart() * 60), zone);
+            appendLine(out, "DTSTART;TZID=" + zone.getId() + ":" + DATE_TIME.format(local));
+        }
+        appendLine(out, "DURATION:PT" + appointment.getDuration() + "M");
+        appendLine(out, "SUMMARY:" + escape(appointment.getTitle()));
+        appendLine(out, "CATEGORIES:" + appointment.getCategory().name());
+        out.append("END:VEVENT").append(CRLF);
+    }
+
+    // Appends a content line, folded at 75 octets without splitting a character
+    private static void appendLine(StringBuilder out, String line) {
+        int octets = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            int size = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 2 : 3;
+            if (octets + size > MAX_LINE_OCTETS) {
+                out.append(CRLF).append(' ');
+                octets = 1;
+            }
+            out.append(c);
+            octets += size;
+        }
+        out.append(CRLF);
+    }
+
+    private static String escape(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case ';': out.append("\\;"); break;
+                case ',': out.append("\\,"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String unescape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char escaped = text.charAt(++i);
+                out.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * A property: name, parameters and value.
+     */
+    private static final class ContentLine {
+        final String name;
+        final String parameters;
+        final String value;
+
+        private ContentLine(String name, String parameters, String value) {
+            this.name = name;
+            this.parameters = parameters;
+            this.value = value;
+        }
+
+        static ContentLine parse(String line, int lineNumber) throws IOException {
+            // The value starts at the first colon outside a quoted parameter value
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == ':' && !quoted) {
+                    String head = line.substring(0, i);
+                    int semicolon = head.indexOf(';');
+                    String name = (semicolon < 0 ? head : head.substring(0, semicolon)).toUpperCase(Locale.ROOT);
+                    return new ContentLine(name, semicolon < 0 ? "" : head.substring(semicolon + 1), line.substring(i + 1));
+                }
+            }
+            throw new IOException("Line " + lineNumber + ": missing ':' in \"" + line + "\"");
+        }
+
+        /**
+         * @return The value of a parameter, without quotes, or null
+         */
+        String parameter(String parameterName) {
+            for (String parameter : parameters.split(";")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0 && parameter.substring(0, equals).equalsIgnoreCase(parameterName)) {
+                    String value = parameter.substring(equals + 1);
+                    return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                        ? value.substring(1, value.length() - 1) : value;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Collects the properties of a VEVENT.
+     */
+    private static final class EventBuilder {
+        String uid;
+        Long start;
+        Long end;
+        Integer duration;
+        boolean allDay;
+        ZoneId zone;
+        String summary = "";
+        Category category = Category.MEETING;
+
+        void set(ContentLine line, ZoneId defaultZone) throws IOException {
+            try {
+                switch (line.name) {
+                    case "UID":
+                        uid = line.value;
+                        break;
+                    case "DTSTART":
+                        start = parseTime(line, defaultZone, true);
+                        break;
+                    case "DTEND":
+                        end = parseTime(line, defaultZone, false);
+                        break;
+                    case "DURATION":
+                        duration = parseDuration(line.value);
+                        break;
+                    case "SUMMARY":
+                        summary = unescape(line.value);
+                        break;
+                    case "CATEGORIES":
+                        category = parseCategory(line.value);
+                        break;
+                    default:
+                        // Other properties are not stored
+                }
+            } catch (DateTimeException | ArithmeticException e) {
+                throw new IOException("Invalid " + line.name + ": " + line.value, e);
+            }
+        }
+
+        Appointment build(ZoneId defaultZone, int lineNumber) throws IOException {
+            if (uid == null || start == null) {
+                throw new IOException("Line " + lineNumber + ": event without UID or DTSTART");
+            }
+            int minutes = duration != null ? duration
+                        : end != null ? (int) Math.max(0, end - start)
+                        : allDay ? 24 * 60 : 0;
+            return new Appointment(idOf(uid), start, minutes, summary, category, zone);
+        }
+
+        private Long parseTime(ContentLine line, ZoneId defaultZone, boolean isStart) {
+            String value = line.value.trim();
+            if ("DATE".equalsIgnoreCase(line.parameter("VALUE")) || value.length() == 8) {
+                if (isStart) {
+                    allDay = true;
+                }
+                return LocalDate.parse(value, DATE).atStartOfDay(defaultZone).toEpochSecond() / 60;
+            }
+            if (value.endsWith("Z")) {
+                return LocalDateTime.parse(value.substring(0, value.length() - 1), DATE_TIME).toEpochSecond(ZoneOffset.UTC) / 60;
+            }
+            String tzid = line.parameter("TZID");
+            ZoneId eventZone = tzid == null ? defaultZone : ZoneId.of(tzid);
+            if (isStart && tzid != null) {
+                zone = eventZone;
+            }
+            return LocalDateTime.parse(value, DATE_TIME).atZone(eventZone).toEpochSecond() / 60;
+        }
+
+        private static int parseDuration(String value) {
+            String text = value.trim().toUpperCase(Locale.ROOT);
+            boolean negative = text.startsWith("-");
+            if (negative || text.startsWith("+")) {
+                text = text.substring(1);
+            }
+            long minutes;
+            int week = text.indexOf('W');
+            if (week > 0) {
+                minutes = Long.parseLong(text.substring(1, week)) * 7 * 24 * 60;
+            } else {
+                minutes = Duration.parse(text).toMinutes();
+            }
+            // Negative durations make no sense for an appointment
+            return negative ? 0 : Math.toIntExact(minutes);
+        }
+
+        private static Category parseCategory(String value) {
+            for (String name : value.split(",")) {
+                String trimmed = unescape(name).trim();
+                for (Category candidate : Category.values()) {
+                    if (candidate.name().equalsIgnoreCase(trimmed) || candidate.getDisplayName().equalsIgnoreCase(trimmed)) {
+                        return candidate;
+                    }
+                }
+            }
+            return Category.MEETING;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package dashboard.store;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Augmented interval tree of appointments.
+ * An AVL tree ordered by start time and id, where every node also keeps the
+ * latest end in its subtree: an overlap query descends only into subtrees
+ * that end after the interval starts and that do not start after it ends,
+ * so it costs O(log n) plus the overlapping appointments it reports.
+ * <p>
+ * An appointment of zero minutes occupies its starting minute, so it can
+ * still overlap others. Instances are not thread-safe.
+ */
+final class IntervalTree {
+    private Node root;
+    private int size;
+
+    private static final class Node {
+        final Appointment appointment;
+        final long start;
+        final long end;
+        long maxEnd;
+        int height = 1;
+        Node left;
+        Node right;
+
+        Node(Appointment appointment) {
+            this.appointment = appointment;
+            this.start = appointment.getStart();
+            this.end = Math.max(appointment.getEnd(), appointment.getStart() + 1);
+            this.maxEnd = end;
+        }
+    }
+
+    /**
+     * Replaces the contents with the given appointments, building a balanced
+     * tree in linear time once they are sorted.
+     */
+    void build(List<Appointment> appointments) {
+        List<Appointment> sorted = new ArrayList<>(appointments);
+        // Already sorted by start when read from a store: the sort is then a single pass
+        sorted.sort(Comparator.comparingLong(Appointment::getStart).thenComparingLong(Appointment::getId));
+        root = build(sorted, 0, sorted.size() - 1);
+        size = sorted.size();
+    }
+
+    private static Node build(List<Appointment> sorted, int low, int high) {
+        if (low > high) {
+            return null;
+        }
+        int middle = (low + high) >>> 1;
+        Node node = new Node(sorted.get(middle));
+        node.left = build(sorted, low, middle - 1);
+        node.right = build(sorted, middle + 1, high);
+        update(node);
+        return node;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void insert(Appointment appointment) {
+        root = insert(root, new Node(appointment));
+        size++;
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.appointment.getId(), node) < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return balance(node);
+    }
+
+    /**
+     * Removes an appointment, found by the start and id it was inserted with.
+     *
+     * @return true if it was in the tree
+     */
+    boolean remove(Appointment appointment) {
+        int before = size;
+        root = remove(root, appointment.getStart(), appointment.getId());
+        return size < before;
+    }
+
+    private Node remove(Node node, long start, long id) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = compare(start, id, node);
+        if (comparison < 0) {
+            node.left = remove(node.left, start, id);
+        } else if (comparison > 0) {
+            node.right = remove(node.right, start, id);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            // Replaced by its successor, the leftmost node of the right subtree
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeLeftmost(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private static Node removeLeftmost(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeLeftmost(node.left);
+        return balance(node);
+    }
+
+    /**
+     * Passes to the action, sorted by start, the appointments overlapping [from, to).
+     */
+    void forEachOverlapping(long from, long to, Consumer<Appointment> action) {
+        forEachOverlapping(root, from, to, action);
+    }
+
+    private static void forEachOverlapping(Node node, long from, long to, Consumer<Appointment> action) {
+        // Nothing in this subtree ends after the interval starts
+        if (node == null || node.maxEnd <= from) {
+            return;
+        }
+        forEachOverlapping(node.left, from, to, action);
+        // This node and its right subtree start at or after the end of the interval
+        if (node.start >= to) {
+            return;
+        }
+        if (node.end > from) {
+            action.accept(node.appointment);
+        }
+        forEachOverlapping(node.right, from, to, action);
+    }
+
+    private static int compare(long start, long id, Node node) {
+        int comparison = Long.compare(start, node.start);
+        return comparison != 0 ? comparison : Long.compare(id, node.appointment.getId());
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static void update(Node node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        long maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd > maxEnd) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > maxEnd) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static Node balance(Node node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+}
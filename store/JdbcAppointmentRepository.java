@@ -0,0 +1,241 @@
+package dashboard.store;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dashboard.Category;
+
+/**
+ * Appointment repository backed by a relational database through JDBC.
+ * The SQL is kept portable (plain statements accepted by H2, SQLite and other
+ * embedded databases): writes use prepared-statement batches inside one
+ * transaction and range queries are served by indexes on the start and end
+ * columns. A range query scans the start index only from the range start
+ * minus the longest duration stored, read from an index on the duration.
+ */
+public class JdbcAppointmentRepository implements AppointmentRepository {
+    // Number of rows sent to the database in a single batch
+    private static final int BATCH_SIZE = 500;
+
+    private static final String CREATE_TABLE =
+        "CREATE TABLE IF NOT EXISTS appointment ("
+        + "id BIGINT PRIMARY KEY, "
+        + "start_minute BIGINT NOT NULL, "
+        + "end_minute BIGINT NOT NULL, "
+        + "duration INTEGER NOT NULL, "
+        + "title VARCHAR(255) NOT NULL, "
+        + "category VARCHAR(32) NOT NULL, "
+        + "zone VARCHAR(64))";
+    // Tables created before appointments had a time zone
+    private static final String ADD_ZONE_COLUMN =
+        "ALTER TABLE appointment ADD COLUMN zone VARCHAR(64)";
+    private static final String CREATE_START_INDEX =
+        "CREATE INDEX IF NOT EXISTS idx_appointment_start ON appointment (start_minute)";
+    private static final String CREATE_END_INDEX =
+        "CREATE INDEX IF NOT EXISTS idx_appointment_end ON appointment (end_minute)";
+    // Makes MAX(duration) an index lookup instead of a table scan
+    private static final String CREATE_DURATION_INDEX =
+        "CREATE INDEX IF NOT EXISTS idx_appointment_duration ON appointment (duration)";
+    private static final String MAX_DURATION =
+        "SELECT MAX(duration) FROM appointment";
+    private static final String DELETE =
+        "DELETE FROM appointment WHERE id = ?";
+    private static final String INSERT =
+        "INSERT INTO appointment (id, start_minute, end_minute, duration, title, category, zone) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_COLUMNS =
+        "SELECT id, start_minute, duration, title, category, zone FROM appointment ";
+    private static final String FIND_BY_ID =
+        SELECT_COLUMNS + "WHERE id = ?";
+    // Same semantics as AppointmentStore.query: zero-length appointments inside the range are kept.
+    // The lower bound on the start keeps the index scan to the range plus the longest duration.
+    private static final String FIND_RANGE =
+        SELECT_COLUMNS + "WHERE start_minute >= ? AND start_minute < ? AND (end_minute > ? OR start_minute >= ?) "
+        + "ORDER BY start_minute, id";
+
+    private final ConnectionPool pool;
+
+    /**
+     * Creates the repository, creating the table and its indexes if needed.
+     *
+     * @param pool The pool connections are taken from
+     */
+    public JdbcAppointmentRepository(ConnectionPool pool) {
+        this.pool = pool;
+        execute(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+                if (!hasZoneColumn(connection.getMetaData())) {
+                    statement.execute(ADD_ZONE_COLUMN);
+                }
+                statement.execute(CREATE_START_INDEX);
+                statement.execute(CREATE_END_INDEX);
+                statement.execute(CREATE_DURATION_INDEX);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        saveAll(Collections.singletonList(appointment));
+    }
+
+    @Override
+    public void saveAll(Collection<Appointment> appointments) {
+        if (appointments.isEmpty()) {
+            return;
+        }
+        // The deletes of a batch run before its inserts: two versions of one id would
+        // both be inserted, so only the last one is kept
+        Map<Long, Appointment> latest = new LinkedHashMap<>(appointments.size() * 2);
+        for (Appointment appointment : appointments) {
+            latest.put(appointment.getId(), appointment);
+        }
+        execute(connection -> {
+            connection.setAutoCommit(false);
+            // Portable upsert: delete then insert, both batched, in one transaction
+            try (PreparedStatement delete = connection.prepareStatement(DELETE);
+                 PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                int pending = 0;
+                for (Appointment appointment : latest.values()) {
+                    delete.setLong(1, appointment.getId());
+                    delete.addBatch();
+                    insert.setLong(1, appointment.getId());
+                    insert.setLong(2, appointment.getStart());
+                    insert.setLong(3, appointment.getEnd());
+                    insert.setInt(4, appointment.getDuration());
+                    insert.setString(5, appointment.getTitle());
+                    insert.setString(6, appointment.getCategory().name());
+                    if (appointment.getZone() == null) {
+                        insert.setNull(7, Types.VARCHAR);
+                    } else {
+                        insert.setString(7, appointment.getZone().getId());
+                    }
+                    insert.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        delete.executeBatch();
+                        insert.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    delete.executeBatch();
+                    insert.executeBatch();
+                }
+            }
+            connection.commit();
+            return null;
+        });
+    }
+
+    @Override
+    public boolean delete(long id) {
+        return execute(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                statement.setLong(1, id);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    @Override
+    public Appointment findById(long id) {
+        return execute(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(FIND_BY_ID)) {
+                statement.setLong(1, id);
+                try (ResultSet rows = statement.executeQuery()) {
+                    return rows.next() ? read(rows) : null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public List<Appointment> findRange(long from, long to) {
+        if (to <= from) {
+            return new ArrayList<>();
+        }
+        return execute(connection -> {
+            long longest = 0;
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery(MAX_DURATION)) {
+                if (rows.next()) {
+                    longest = rows.getLong(1);
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(FIND_RANGE)) {
+                statement.setLong(1, from >= Long.MIN_VALUE + longest ? from - longest : Long.MIN_VALUE);
+                statement.setLong(2, to);
+                statement.setLong(3, from);
+                statement.setLong(4, from);
+                statement.setFetchSize(BATCH_SIZE);
+                List<Appointment> result = new ArrayList<>();
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        result.add(read(rows));
+                    }
+                }
+                return result;
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    private static Appointment read(ResultSet rows) throws SQLException {
+        String zone = rows.getString(6);
+        return new Appointment(rows.getLong(1), rows.getLong(2), rows.getInt(3), rows.getString(4),
+                               Category.valueOf(rows.getString(5)), zone == null ? null : ZoneId.of(zone));
+    }
+
+    // Identifiers may be stored in upper or lower case, depending on the database
+    private static boolean hasZoneColumn(DatabaseMetaData metaData) throws SQLException {
+        for (String table : new String[] {"appointment", "APPOINTMENT"}) {
+            for (String column : new String[] {"zone", "ZONE"}) {
+                try (ResultSet columns = metaData.getColumns(null, null, table, column)) {
+                    if (columns.next()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Work done with a pooled connection.
+     */
+    private interface SqlWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    private <T> T execute(SqlWork<T> work) {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            return work.run(connection);
+        } catch (SQLException e) {
+            throw new RepositoryException("Database error: " + e.getMessage(), e);
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+}
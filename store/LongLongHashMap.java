@@ -0,0 +1,146 @@
+package dashboard.store;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long to long, with linear probing.
+ * It stores keys and values in two plain arrays: no entry objects and no
+ * boxing, so millions of mappings cost a few bytes each and give the
+ * garbage collector nothing to trace.
+ */
+final class LongLongHashMap {
+    // Marks a free slot; a real key with this value is kept outside the arrays
+    private static final long FREE = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private boolean hasFreeKey;
+    private long freeKeyValue;
+
+    LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR) + 1) - 1) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(long key) {
+        if (key == FREE) {
+            return hasFreeKey;
+        }
+        return keys[find(key)] == key;
+    }
+
+    /**
+     * @return The value mapped to the key, or missing if there is none
+     */
+    long get(long key, long missing) {
+        if (key == FREE) {
+            return hasFreeKey ? freeKeyValue : missing;
+        }
+        int slot = find(key);
+        return keys[slot] == key ? values[slot] : missing;
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped, with a single lookup.
+     *
+     * @return true if the mapping was added
+     */
+    boolean putIfAbsent(long key, long value) {
+        if (key == FREE) {
+            if (hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = true;
+            freeKeyValue = value;
+            size++;
+            return true;
+        }
+        int slot = find(key);
+        if (keys[slot] == key) {
+            return false;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > mask * LOAD_FACTOR) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the key was mapped
+     */
+    boolean remove(long key) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = false;
+            size--;
+            return true;
+        }
+        int slot = find(key);
+        if (keys[slot] != key) {
+            return false;
+        }
+        size--;
+        // Backward-shift deletion: move up the following keys of the probe chain, so no tombstone is needed
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (keys[next] == FREE) {
+                break;
+            }
+            int home = hash(keys[next]) & mask;
+            boolean between = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if (!between) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                slot = next;
+            }
+        }
+        keys[slot] = FREE;
+        return true;
+    }
+
+    // Slot holding the key, or the free slot where it would go
+    private int find(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,115 @@
+package dashboard.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import dashboard.Category;
+
+/**
+ * Measures how long {@link WalAppointmentRepository} takes to reopen after a crash.
+ * It fills a repository with a long history, takes a snapshot, logs a tail
+ * of further changes, appends a torn record to the log as a crash would and
+ * then times the recovery.
+ * <p>
+ * Usage: {@code java dashboard.store.RecoveryBenchmark [events] [tail] [directory]}
+ */
+public class RecoveryBenchmark {
+    private static final String[] TITLES = {
+        "Riunione di reparto", "Pranzo con il cliente", "Conferenza", "Revisione budget", "Chiamata fornitore",
+        "Colloquio", "Formazione", "Stand-up"
+    };
+    private static final int BATCH_SIZE = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int tail = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        Path directory = args.length > 2 ? Path.of(args[2]) : Files.createTempDirectory("calendario-wal");
+
+        Random random = new Random(42);
+        // Ten years of history, starting on 1 January 2020
+        long origin = 26_297_280L;
+        long span = 10L * 365 * 24 * 60;
+
+        long start = System.nanoTime();
+        WalAppointmentRepository repository = new WalAppointmentRepository(directory, Integer.MAX_VALUE);
+        List<Appointment> batch = new ArrayList<>(BATCH_SIZE);
+        for (int id = 1; id <= events; id++) {
+            batch.add(randomAppointment(random, id, origin, span));
+            if (batch.size() == BATCH_SIZE || id == events) {
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.snapshot();
+        for (int i = 0; i < tail; i++) {
+            long id = 1 + random.nextInt(events);
+            if (i % 10 == 9) {
+                repository.delete(id);
+            } else {
+                repository.save(randomAppointment(random, id, origin, span));
+            }
+        }
+        int expected = repository.size();
+        System.out.printf("Written %,d events and %,d tail changes in %d ms%n",
+                events, tail, (System.nanoTime() - start) / 1_000_000);
+
+        // Crash: the repository is abandoned without closing it, with half a record at the end of the log
+        tearLastSegment(directory);
+        repository.abandon();
+        repository = null;
+        System.gc();
+
+        start = System.nanoTime();
+        WalAppointmentRepository recovered = new WalAppointmentRepository(directory);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("Recovered %,d appointments in %d ms (expected %,d)%n", recovered.size(), millis, expected);
+        recovered.close();
+        if (recovered.size() != expected) {
+            System.exit(1);
+        }
+        if (args.length <= 2) {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static Appointment randomAppointment(Random random, long id, long origin, long span) {
+        // Appointments start on a quarter of an hour and last up to four hours
+        long start = origin + (long) (random.nextDouble() * span) / 15 * 15;
+        int duration = 15 * (1 + random.nextInt(16));
+        Category category = Category.values()[random.nextInt(Category.values().length)];
+        return new Appointment(id, start, duration, TITLES[random.nextInt(TITLES.length)], category);
+    }
+
+    private static void tearLastSegment(Path directory) throws IOException {
+        Path last = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "wal-*.log")) {
+            for (Path path : stream) {
+                if (last == null || path.compareTo(last) > 0) {
+                    last = path;
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.APPEND)) {
+            // A record header announcing 40 bytes, followed by only 3 of them
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 5, 6, 7}));
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package dashboard.store;
+
+/**
+ * Unchecked exception thrown when a repository cannot read or write its data.
+ */
+public class RepositoryException extends RuntimeException {
+
+    public RepositoryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public RepositoryException(String message) {
+        super(message);
+    }
+}
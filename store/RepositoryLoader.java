@@ -0,0 +1,289 @@
+package dashboard.store;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dashboard.metrics.CacheStatistics;
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.FlightRecording;
+import dashboard.metrics.ImportEvent;
+
+/**
+ * Connects an {@link AppointmentStore} to an {@link AppointmentRepository}.
+ * Months are loaded into the store only when the calendar needs them, so the
+ * heap holds the months that were viewed and not the whole history; changes
+ * made to the store are written through to the repository, unless it is
+ * read-only. With a limit on the loaded months, the months used least
+ * recently are dropped from the store when others are loaded: they are
+ * already in the repository and are loaded again if needed. Months a view
+ * is showing are pinned through a {@link Pin} and never dropped.
+ * <p>
+ * The repository is read without holding the lock of the loader, so a
+ * thread needing a loaded month does not wait for the background loads of
+ * other months; a thread needing a month another one is loading waits for it.
+ */
+public class RepositoryLoader implements AppointmentStore.Listener {
+    private static final CacheStatistics CACHE = CalendarMetrics.get().cache("store");
+
+    private final AppointmentRepository repository;
+    private final AppointmentStore store;
+    private final ZoneId zone;
+    private final int maxMonths;
+    // In order of use, the least recently used first
+    private final Set<YearMonth> loadedMonths = new LinkedHashSet<>();
+    // Months being read from the repository
+    private final Set<YearMonth> loadingMonths = new HashSet<>();
+    // Number of pins holding each pinned month; changed without the lock, so that pinning never waits for a load
+    private final Map<YearMonth, Integer> pinnedMonths = new ConcurrentHashMap<>();
+    // Ids removed while a month was being read, whose copy read from the repository may be stale
+    private final Set<Long> removedWhileLoading = ConcurrentHashMap.newKeySet();
+    // Whether loadingMonths is not empty, read by the listener without the lock
+    private volatile boolean loading;
+
+    // Thread currently copying data from the repository, whose changes must not be written back
+    private volatile Thread loadingThread;
+
+    public RepositoryLoader(AppointmentRepository repository, AppointmentStore store, ZoneId zone) {
+        this(repository, store, zone, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxMonths Maximum number of months kept in the store
+     */
+    public RepositoryLoader(AppointmentRepository repository, AppointmentStore store, ZoneId zone, int maxMonths) {
+        this.repository = repository;
+        this.store = store;
+        this.zone = zone;
+        this.maxMonths = maxMonths;
+        if (!repository.isReadOnly()) {
+            store.addListener(this);
+        }
+    }
+
+    public AppointmentRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Makes sure the appointments of the given month are in the store.
+     * Returns without loading it if the thread is interrupted while waiting
+     * for another thread loading the same month.
+     */
+    public void ensureMonth(YearMonth month) {
+        synchronized (this) {
+            while (loadingMonths.contains(month)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            // Moved to the end of the use order
+            if (loadedMonths.remove(month)) {
+                loadedMonths.add(month);
+                CACHE.hit();
+                return;
+            }
+            CACHE.miss();
+            loadingMonths.add(month);
+            loading = true;
+        }
+        long started = System.nanoTime();
+        // Created only while recording: the first event loads the flight recorder
+        ImportEvent event = FlightRecording.isRecording() ? new ImportEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        List<Appointment> appointments = null;
+        try {
+            appointments = repository.findRange(start(month), start(month.plusMonths(1)));
+        } finally {
+            // Left unloaded if the repository failed; the threads waiting for it try again
+            add(month, appointments);
+        }
+        CalendarMetrics.get().recordImport(appointments.size(), System.nanoTime() - started);
+        if (event != null && event.shouldCommit()) {
+            event.source = "repository " + month;
+            event.appointments = appointments.size();
+            event.commit();
+        }
+    }
+
+    // Copies the appointments read for a month into the store, or only ends the load if they are null
+    private synchronized void add(YearMonth month, List<Appointment> appointments) {
+        loadingThread = Thread.currentThread();
+        try {
+            if (appointments != null) {
+                for (Appointment appointment : appointments) {
+                    // Appointments spanning two months may already come from the other one
+                    if (!removedWhileLoading.contains(appointment.getId())) {
+                        store.addIfAbsent(appointment);
+                    }
+                }
+                loadedMonths.add(month);
+                evict();
+            }
+        } finally {
+            loadingThread = null;
+            loadingMonths.remove(month);
+            if (loadingMonths.isEmpty()) {
+                loading = false;
+                removedWhileLoading.clear();
+            }
+            notifyAll();
+        }
+    }
+
+    // Drops the least recently used months that are not pinned, down to the limit
+    private void evict() {
+        Iterator<YearMonth> eldest = loadedMonths.iterator();
+        int excess = loadedMonths.size() - maxMonths;
+        while (excess > 0 && eldest.hasNext()) {
+            YearMonth month = eldest.next();
+            if (!pinnedMonths.containsKey(month)) {
+                eldest.remove();
+                unload(month);
+                excess--;
+            }
+        }
+    }
+
+    // Removes from the store the appointments of a month that no other loaded month needs
+    private void unload(YearMonth month) {
+        for (Appointment appointment : store.query(start(month), start(month.plusMonths(1)))) {
+            YearMonth last = monthOf(Math.max(appointment.getStart(), appointment.getEnd() - 1));
+            boolean needed = false;
+            for (YearMonth other = monthOf(appointment.getStart()); !other.isAfter(last); other = other.plusMonths(1)) {
+                needed |= loadedMonths.contains(other);
+            }
+            if (!needed) {
+                store.remove(appointment.getId());
+            }
+        }
+    }
+
+    private YearMonth monthOf(long epochMinute) {
+        return YearMonth.from(Instant.ofEpochSecond(epochMinute * 60).atZone(zone));
+    }
+
+    private long start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(zone).toEpochSecond() / 60;
+    }
+
+    /**
+     * @return A new pin, holding no month
+     */
+    public Pin newPin() {
+        return new Pin();
+    }
+
+    // Months released are dropped by the next load, on the thread loading, and not by the one unpinning
+    private void pin(Set<YearMonth> added, Set<YearMonth> removed) {
+        for (YearMonth month : added) {
+            pinnedMonths.merge(month, 1, Integer::sum);
+        }
+        for (YearMonth month : removed) {
+            // Counted down, and forgotten at zero
+            pinnedMonths.computeIfPresent(month, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * The months a view is showing, kept in the store while pinned. Each
+     * view or window holds its own pin; a month stays pinned while any pin
+     * holds it. Pinning does not load a month. A pin is used by one thread,
+     * as the EDT of its view.
+     */
+    public final class Pin {
+        private Set<YearMonth> months = Collections.emptySet();
+        private YearMonth first;
+        private YearMonth last;
+
+        private Pin() {
+        }
+
+        /**
+         * Holds the months between the two given ones (inclusive), and
+         * releases the ones held before and not among them.
+         */
+        public void set(YearMonth from, YearMonth to) {
+            // Called on every paint of a view: nothing to do while it shows the same months
+            if (from.equals(first) && to.equals(last)) {
+                return;
+            }
+            first = from;
+            last = to;
+            Set<YearMonth> wanted = new HashSet<>();
+            for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+                wanted.add(month);
+            }
+            if (wanted.equals(months)) {
+                return;
+            }
+            Set<YearMonth> added = new HashSet<>(wanted);
+            added.removeAll(months);
+            Set<YearMonth> removed = new HashSet<>(months);
+            removed.removeAll(wanted);
+            months = wanted;
+            pin(added, removed);
+        }
+
+        /**
+         * Releases every month held; the months no longer pinned may be
+         * dropped by the next load.
+         */
+        public void release() {
+            Set<YearMonth> removed = months;
+            months = Collections.emptySet();
+            first = null;
+            last = null;
+            pin(Collections.emptySet(), removed);
+        }
+    }
+
+    /**
+     * Makes sure every month between the two dates (inclusive) is loaded.
+     */
+    public void ensureRange(LocalDate from, LocalDate to) {
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            ensureMonth(month);
+        }
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        if (loadingThread != Thread.currentThread()) {
+            repository.save(appointment);
+            removedWhileLoading.remove(appointment.getId());
+        }
+    }
+
+    @Override
+    public void appointmentRemoved(Appointment appointment) {
+        if (loadingThread != Thread.currentThread()) {
+            repository.delete(appointment.getId());
+            // Deleted after a load read it, or after the load started: its copy must not come back
+            if (loading) {
+                removedWhileLoading.add(appointment.getId());
+            }
+        }
+    }
+
+    @Override
+    public void appointmentUpdated(Appointment previous, Appointment current) {
+        if (loadingThread != Thread.currentThread()) {
+            repository.save(current);
+        }
+    }
+}
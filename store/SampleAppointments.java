@@ -0,0 +1,129 @@
+package dashboard.store;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import dashboard.Category;
+
+/**
+ * Read-only repository generating the example appointments shown by the
+ * calendar when no database is configured: a meeting every 3 days, a
+ * business lunch every 5 days and a conference every 7 days, the
+ * conference being held in London and tagged with its time zone.
+ */
+public class SampleAppointments implements AppointmentRepository {
+    private static final LocalTime MEETING_TIME = LocalTime.of(10, 0);
+    private static final LocalTime LUNCH_TIME = LocalTime.of(14, 30);
+    private static final LocalTime CONFERENCE_TIME = LocalTime.of(16, 0);
+    private static final ZoneId CONFERENCE_ZONE = ZoneId.of("Europe/London");
+
+    private final ZoneId zone;
+
+    public SampleAppointments(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    @Override
+    public List<Appointment> findRange(long from, long to) {
+        List<Appointment> result = new ArrayList<>();
+        if (to <= from) {
+            return result;
+        }
+        // Start one day early, for appointments crossing midnight into the range
+        LocalDate first = toDate(from).minusDays(1);
+        LocalDate last = toDate(to - 1);
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            for (Appointment appointment : forDay(date)) {
+                if (appointment.getStart() < to
+                        && (appointment.getEnd() > from || appointment.getStart() >= from)) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Appointment findById(long id) {
+        int category = (int) (id % 4);
+        long rest = id / 4;
+        int day = (int) (rest % 32);
+        long months = rest / 32;
+        if (category >= Category.values().length || day == 0) {
+            return null;
+        }
+        LocalDate date;
+        try {
+            date = LocalDate.of((int) (months / 12), (int) (months % 12) + 1, day);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        for (Appointment appointment : forDay(date)) {
+            if (appointment.getId() == id) {
+                return appointment;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        throw new UnsupportedOperationException("Example appointments are read-only");
+    }
+
+    @Override
+    public void saveAll(Collection<Appointment> appointments) {
+        throw new UnsupportedOperationException("Example appointments are read-only");
+    }
+
+    @Override
+    public boolean delete(long id) {
+        throw new UnsupportedOperationException("Example appointments are read-only");
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    /**
+     * Generates the example appointments of one day, sorted by start time.
+     */
+    private List<Appointment> forDay(LocalDate date) {
+        List<Appointment> appointments = new ArrayList<>(3);
+        int day = date.getDayOfMonth();
+        if (day % 3 == 0) {
+            appointments.add(create(date, MEETING_TIME, 60, Category.MEETING));
+        }
+        if (day % 5 == 0) {
+            appointments.add(create(date, LUNCH_TIME, 90, Category.LUNCH));
+        }
+        if (day % 7 == 0) {
+            appointments.add(create(date, CONFERENCE_TIME, 120, Category.CONFERENCE));
+        }
+        return appointments;
+    }
+
+    private Appointment create(LocalDate date, LocalTime time, int duration, Category category) {
+        // Deterministic id, so that the same example appointment always has the same id
+        long id = (((long) date.getYear() * 12 + date.getMonthValue() - 1) * 32 + date.getDayOfMonth()) * 4
+                + category.ordinal();
+        long start = date.atTime(time).atZone(zone).toEpochSecond() / 60;
+        ZoneId own = category == Category.CONFERENCE ? CONFERENCE_ZONE : null;
+        return new Appointment(id, start, duration, category.getDisplayName(), category, own);
+    }
+
+    private LocalDate toDate(long epochMinute) {
+        return Instant.ofEpochSecond(epochMinute * 60).atZone(zone).toLocalDate();
+    }
+}
@@ -0,0 +1,154 @@
+package dashboard.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of every appointment, taken at a given LSN of the
+ * {@link WriteAheadLog}. Appointments moved to an {@link AppointmentArchive}
+ * are not repeated: the snapshot records the generation of the archive
+ * holding them.
+ * A snapshot is written to a temporary file and renamed only once complete
+ * and on disk, and ends with a CRC of its content: a snapshot interrupted by
+ * a crash is never mistaken for a valid one.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x43534E50; // "CSNP"
+    private static final int VERSION = 3;
+    // Version 2 snapshots have no archive generation in their header
+    private static final int VERSION_WITHOUT_ARCHIVE = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final Path path;
+    private final long lsn;
+
+    private SnapshotFile(Path path, long lsn) {
+        this.path = path;
+        this.lsn = lsn;
+    }
+
+    /**
+     * @return The LSN of the last log record included in the snapshot
+     */
+    long getLsn() {
+        return lsn;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes a snapshot in a directory.
+     *
+     * @param directory The directory holding the snapshots
+     * @param lsn LSN of the last change included in the appointments
+     * @param archiveGeneration Generation of the {@link AppointmentArchive} holding the other appointments
+     * @param appointments Every appointment not archived, sorted by start time
+     * @return The new snapshot
+     */
+    static SnapshotFile write(Path directory, long lsn, long archiveGeneration, List<Appointment> appointments)
+            throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, lsn, SUFFIX));
+        Path temporary = directory.resolve(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] block = CompactFormat.encode(appointments);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(lsn).putLong(archiveGeneration).flip();
+            CRC32 crc = new CRC32();
+            crc.update(header.array());
+            crc.update(block);
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            trailer.putInt((int) crc.getValue()).flip();
+            ByteBuffer[] buffers = {header, ByteBuffer.wrap(block), trailer};
+            while (trailer.hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new SnapshotFile(path, lsn);
+    }
+
+    /**
+     * Reads the appointments of the snapshot, sorted by start time.
+     * The whole file is checked before the first appointment is passed on.
+     *
+     * @param sink Receives the appointments
+     * @return The generation of the archive the snapshot goes with, 0 if none
+     * @throws IOException if the file is unreadable or damaged
+     */
+    long read(Consumer<? super Appointment> sink) throws IOException {
+        // The compact encoding keeps the file small enough to be read and checked at once
+        byte[] bytes = Files.readAllBytes(path);
+        int length = bytes.length - 4;
+        if (length < 16) {
+            throw new IOException("Not a snapshot: " + path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt(length) != (int) crc.getValue()) {
+            throw new IOException("Damaged snapshot: " + path);
+        }
+        int version = buffer.getInt() == MAGIC ? buffer.getInt() : -1;
+        if ((version != VERSION && version != VERSION_WITHOUT_ARCHIVE) || (version == VERSION && length < HEADER_SIZE)) {
+            throw new IOException("Not a snapshot: " + path);
+        }
+        if (buffer.getLong() != lsn) {
+            throw new IOException("Snapshot LSN does not match its name: " + path);
+        }
+        long archiveGeneration = version == VERSION ? buffer.getLong() : 0;
+        buffer.limit(length);
+        CompactFormat.decode(buffer, sink);
+        if (buffer.hasRemaining()) {
+            throw new IOException("Damaged snapshot: " + path);
+        }
+        return archiveGeneration;
+    }
+
+    /**
+     * Lists the snapshots of a directory, newest first.
+     * Temporary files left by an interrupted write are deleted.
+     */
+    static List<SnapshotFile> list(Path directory) throws IOException {
+        return list(directory, true);
+    }
+
+    /**
+     * Lists the snapshots of a directory, newest first.
+     *
+     * @param removeTemporary Whether to delete the temporary files left by an interrupted write;
+     *                        false when the writer may still be writing them
+     */
+    static List<SnapshotFile> list(Path directory, boolean removeTemporary) throws IOException {
+        List<SnapshotFile> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    long lsn = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                    snapshots.add(new SnapshotFile(path, lsn));
+                } else if (removeTemporary) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        snapshots.sort(Collections.reverseOrder((a, b) -> Long.compare(a.lsn, b.lsn)));
+        return snapshots;
+    }
+}
@@ -0,0 +1,272 @@
+package dashboard.store;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import dashboard.Category;
+
+/**
+ * Read-only repository generating a large calendar for load tests.
+ * The events are spread over a number of years, more on working days than
+ * at weekends; a share of them belongs to weekly series, repeated at the
+ * same time with the same title, and another share starts together with an
+ * event of the same day, so that days have overlaps. Every day is generated
+ * from the seed and its date alone: any range gives the same appointments
+ * whatever was read before, and ten million events never need to be in
+ * memory at once.
+ * <p>
+ * A specification such as {@code 1000000,seed=7,recurring=0.2,overlap=0.1,years=10}
+ * creates one with {@link #parse}.
+ */
+public class SyntheticAppointments implements AppointmentRepository {
+    public static final LocalDate DEFAULT_FIRST_DAY = LocalDate.of(2020, 1, 1);
+    public static final int DEFAULT_YEARS = 10;
+    public static final long DEFAULT_SEED = 42;
+    public static final double DEFAULT_RECURRING = 0.2;
+    public static final double DEFAULT_OVERLAP = 0.1;
+    // Ids are the day index times the stride plus the position in the day
+    private static final int MAX_PER_DAY = 1 << 16;
+    private static final String[] TITLES = {
+        "Riunione di reparto", "Pranzo con il cliente", "Conferenza", "Revisione budget", "Chiamata fornitore",
+        "Colloquio", "Formazione", "Stand-up", "Sala riunioni 2", "Presentazione trimestrale"
+    };
+    private static final String[] SERIES_TITLES = {
+        "Riunione settimanale", "Pranzo del venerdì", "Aggiornamento progetto", "Revisione settimanale"
+    };
+    // Monday to Sunday
+    private static final double[] WEEKDAY_WEIGHTS = { 1.2, 1.2, 1.2, 1.2, 1.1, 0.3, 0.2 };
+    private static final double MEAN_WEIGHT = 6.4 / 7;
+    private static final int DAY_START = 7 * 60;
+    private static final int SLOTS = 52;
+
+    private final ZoneOffsetCache offsets;
+    private final long events;
+    private final long seed;
+    private final double recurring;
+    private final double overlap;
+    private final long firstDay;
+    private final long endDay;
+    private final double perDay;
+
+    public SyntheticAppointments(ZoneId zone, long events) {
+        this(zone, events, DEFAULT_SEED, DEFAULT_RECURRING, DEFAULT_OVERLAP, DEFAULT_FIRST_DAY, DEFAULT_YEARS);
+    }
+
+    /**
+     * @param events Number of events, about
+     * @param seed Seed of the generator; the same seed gives the same calendar
+     * @param recurring Share of the events belonging to weekly series, from 0 to 1
+     * @param overlap Share of the other events starting together with an earlier one of the day, from 0 to 1
+     * @param first First day with events
+     * @param years Years with events
+     */
+    public SyntheticAppointments(ZoneId zone, long events, long seed, double recurring, double overlap,
+                                 LocalDate first, int years) {
+        if (events < 0 || years < 1 || !(recurring >= 0 && recurring <= 1) || !(overlap >= 0 && overlap <= 1)) {
+            throw new IllegalArgumentException("Invalid synthetic calendar");
+        }
+        this.offsets = ZoneOffsetCache.of(zone);
+        this.events = events;
+        this.seed = seed;
+        this.recurring = recurring;
+        this.overlap = overlap;
+        this.firstDay = first.toEpochDay();
+        this.endDay = first.plusYears(years).toEpochDay();
+        this.perDay = (double) events / (endDay - firstDay);
+        if (perDay * WEEKDAY_WEIGHTS[0] / MEAN_WEIGHT >= MAX_PER_DAY) {
+            throw new IllegalArgumentException("Too many events per day: " + events);
+        }
+    }
+
+    /**
+     * Creates a calendar from a specification: the number of events,
+     * optionally followed by {@code seed=}, {@code recurring=},
+     * {@code overlap=}, {@code years=} and {@code from=} (yyyy-mm-dd),
+     * separated by commas.
+     *
+     * @throws IllegalArgumentException If the specification is not valid
+     */
+    public static SyntheticAppointments parse(String spec, ZoneId zone) {
+        String[] parts = spec.split(",");
+        try {
+            long events = Long.parseLong(parts[0].trim().replace("_", ""));
+            long seed = DEFAULT_SEED;
+            double recurring = DEFAULT_RECURRING;
+            double overlap = DEFAULT_OVERLAP;
+            int years = DEFAULT_YEARS;
+            LocalDate first = DEFAULT_FIRST_DAY;
+            for (int i = 1; i < parts.length; i++) {
+                String[] option = parts[i].split("=", 2);
+                String value = option.length == 2 ? option[1].trim() : "";
+                switch (option[0].trim()) {
+                    case "seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "recurring":
+                        recurring = Double.parseDouble(value);
+                        break;
+                    case "overlap":
+                        overlap = Double.parseDouble(value);
+                        break;
+                    case "years":
+                        years = Integer.parseInt(value);
+                        break;
+                    case "from":
+                        first = LocalDate.parse(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(spec);
+                }
+            }
+            return new SyntheticAppointments(zone, events, seed, recurring, overlap, first, years);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid synthetic calendar: " + spec, e);
+        }
+    }
+
+    /**
+     * @return The number of events requested; the calendar holds about as many
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    public LocalDate getFirstDay() {
+        return LocalDate.ofEpochDay(firstDay);
+    }
+
+    /**
+     * @return The day after the last one with events
+     */
+    public LocalDate getEndDay() {
+        return LocalDate.ofEpochDay(endDay);
+    }
+
+    @Override
+    public List<Appointment> findRange(long from, long to) {
+        List<Appointment> result = new ArrayList<>();
+        if (to <= from) {
+            return result;
+        }
+        // Start one day early, for appointments crossing midnight into the range
+        long first = Math.max(offsets.getEpochDay(from) - 1, firstDay);
+        long last = Math.min(offsets.getEpochDay(to - 1), endDay - 1);
+        for (long day = first; day <= last; day++) {
+            for (Appointment appointment : forDay(day)) {
+                if (appointment.getStart() < to
+                        && (appointment.getEnd() > from || appointment.getStart() >= from)) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Appointment findById(long id) {
+        if (id < 1) {
+            return null;
+        }
+        long day = firstDay + (id - 1) / MAX_PER_DAY;
+        if (day >= endDay) {
+            return null;
+        }
+        for (Appointment appointment : forDay(day)) {
+            if (appointment.getId() == id) {
+                return appointment;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        throw new UnsupportedOperationException("Synthetic appointments are read-only");
+    }
+
+    @Override
+    public void saveAll(Collection<Appointment> appointments) {
+        throw new UnsupportedOperationException("Synthetic appointments are read-only");
+    }
+
+    @Override
+    public boolean delete(long id) {
+        throw new UnsupportedOperationException("Synthetic appointments are read-only");
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    /**
+     * Generates the appointments of one day, sorted by start time.
+     */
+    List<Appointment> forDay(long day) {
+        if (day < firstDay || day >= endDay) {
+            return Collections.emptyList();
+        }
+        SplittableRandom random = new SplittableRandom(mix(seed, day));
+        // 1970-01-01 was a Thursday
+        int weekday = Math.floorMod(day + 3, 7);
+        double expected = perDay * WEEKDAY_WEIGHTS[weekday] / MEAN_WEIGHT;
+        int count = (int) expected + (random.nextDouble() < expected - (int) expected ? 1 : 0);
+        // Computed from the expected count, so every week has the same series on the same weekday;
+        // a fraction of a series is one repeated every few weeks, so sparse calendars recur too
+        double expectedSeries = expected * recurring;
+        int series = (int) expectedSeries;
+        double fraction = expectedSeries - series;
+        long weeks = Math.min(Math.round(1 / fraction), endDay - firstDay);
+        if (fraction > 0 && (day - firstDay) % (7 * weeks) < 7) {
+            series++;
+        }
+        series = Math.min(count, series);
+        long localDay = day * 24 * 60;
+        long idBase = (day - firstDay) * MAX_PER_DAY + 1;
+
+        List<Appointment> appointments = new ArrayList<>(count);
+        for (int i = 0; i < series; i++) {
+            SplittableRandom seriesRandom = new SplittableRandom(mix(seed, weekday * (long) MAX_PER_DAY + i));
+            int minute = DAY_START + seriesRandom.nextInt(SLOTS) * 15;
+            int duration = 15 * (1 + seriesRandom.nextInt(8));
+            Category category = Category.values()[seriesRandom.nextInt(Category.values().length)];
+            String title = SERIES_TITLES[seriesRandom.nextInt(SERIES_TITLES.length)];
+            appointments.add(new Appointment(idBase + i, offsets.toEpochMinute(localDay + minute), duration, title,
+                                             category));
+        }
+        for (int i = series; i < count; i++) {
+            long start;
+            if (!appointments.isEmpty() && random.nextDouble() < overlap) {
+                start = appointments.get(random.nextInt(appointments.size())).getStart();
+            } else {
+                start = offsets.toEpochMinute(localDay + DAY_START + random.nextInt(SLOTS) * 15);
+            }
+            // Up to four hours
+            int duration = 15 * (1 + random.nextInt(16));
+            Category category = Category.values()[random.nextInt(Category.values().length)];
+            appointments.add(new Appointment(idBase + i, start, duration, TITLES[random.nextInt(TITLES.length)],
+                                             category));
+        }
+        appointments.sort(Comparator.comparingLong(Appointment::getStart).thenComparingLong(Appointment::getId));
+        return appointments;
+    }
+
+    private static long mix(long seed, long value) {
+        // SplitMix64 finalizer, so that close days get unrelated sequences
+        long z = seed * 0x9E3779B97F4A7C15L + value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
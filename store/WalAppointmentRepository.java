@@ -0,0 +1,642 @@
+package dashboard.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Appointment repository kept in memory and made durable by a
+ * {@link WriteAheadLog} in a local directory.
+ * Every change is logged before the call returns, but concurrent writers
+ * share the same fsync (group commit). Every {@code snapshotInterval}
+ * changes the whole index is written to a snapshot by a background thread
+ * and the log segments it covers are deleted, so that opening the
+ * repository only reads the latest snapshot and replays the short log tail.
+ * <p>
+ * The previous snapshot and its log are kept as well: if the latest
+ * snapshot turns out to be damaged, recovery falls back to the previous one.
+ * <p>
+ * With an archive horizon, every snapshot first moves the months older than
+ * the horizon out of the heap into a memory-mapped {@link AppointmentArchive},
+ * which the snapshot then refers to. Archived months are decoded only when
+ * read, and a bounded number of them is cached. Changing an archived
+ * appointment first moves its whole month back into the live index, which
+ * is logged so that recovery does the same.
+ * <p>
+ * A directory has a single writer: opening it takes an exclusive lock on
+ * its {@value #LOCK_FILE} file, and a second writer fails. Other processes,
+ * such as the command line agenda run while the window is open, use
+ * {@link #openReadOnly(Path, ZoneId)}, which reads the data without
+ * changing any file.
+ */
+public class WalAppointmentRepository implements AppointmentRepository {
+    /** Number of logged changes after which a new snapshot is taken */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100_000;
+    /** Number of archived months kept decoded in memory */
+    public static final int ARCHIVE_CACHED_MONTHS = 24;
+    /** File locked by the writer of a directory */
+    public static final String LOCK_FILE = "lock";
+    // Read-only opens retried when the writer replaces a file being read
+    private static final int READ_ONLY_ATTEMPTS = 3;
+    // Directories locked by this process. Checked before the lock file is opened: closing
+    // any channel of that file would release the lock held by the other repository
+    private static final Set<Path> LOCKED_DIRECTORIES = new HashSet<>();
+
+    private final Path directory;
+    private final int snapshotInterval;
+    private final ZoneId zone;
+    private final int archiveMonths;
+    private final boolean readOnly;
+    private final AppointmentStore index;
+    // Null when read only
+    private final WriteAheadLog log;
+    private final ExecutorService snapshotWriter;
+    private FileChannel lockChannel;
+    private Path lockedDirectory;
+
+    // Guarded by this
+    private long changesSinceSnapshot;
+    private Future<?> pendingSnapshot;
+    // LSN of the newest snapshot on disk, and of the one before it
+    private long snapshotLsn;
+    private long previousSnapshotLsn;
+    private long requestedSnapshotLsn;
+    private AppointmentArchive archive;
+    // Archive generation referred to by the newest snapshot on disk, and by the one before it
+    private long snapshotArchiveGeneration;
+    private long previousSnapshotArchiveGeneration;
+    // Archived months moved back into the index since the archive was written
+    private final Set<YearMonth> restoredMonths = new HashSet<>();
+
+    public WalAppointmentRepository(Path directory) {
+        this(directory, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    public WalAppointmentRepository(Path directory, int snapshotInterval) {
+        this(directory, snapshotInterval, ZoneId.systemDefault(), 0);
+    }
+
+    /**
+     * Opens the repository, recovering its content from the directory.
+     *
+     * @param directory The directory holding snapshots and log, created if missing
+     * @param snapshotInterval Number of changes between two snapshots
+     * @param zone Time zone used to split the data into months
+     * @param archiveMonths Months before the current one that stay in the heap,
+     *                      older months are archived; 0 to archive nothing
+     * @throws RepositoryException if the data cannot be recovered, or another process is writing the directory
+     */
+    public WalAppointmentRepository(Path directory, int snapshotInterval, ZoneId zone, int archiveMonths) {
+        this(directory, snapshotInterval, zone, archiveMonths, false);
+    }
+
+    private WalAppointmentRepository(Path directory, int snapshotInterval, ZoneId zone, int archiveMonths,
+                                     boolean readOnly) {
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        this.zone = zone;
+        this.archiveMonths = archiveMonths;
+        this.readOnly = readOnly;
+        snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        WriteAheadLog.RecordHandler replay = new WriteAheadLog.RecordHandler() {
+            @Override
+            public void put(long lsn, Appointment appointment) {
+                apply(appointment);
+            }
+
+            @Override
+            public void delete(long lsn, long id) {
+                index.remove(id);
+            }
+
+            @Override
+            public void unarchive(long lsn, YearMonth month) {
+                restore(month);
+            }
+        };
+        try {
+            if (readOnly) {
+                index = recoverSnapshot();
+                log = null;
+                WriteAheadLog.read(directory, snapshotLsn, replay);
+            } else {
+                Files.createDirectories(directory);
+                lock();
+                index = recoverSnapshot();
+                log = new WriteAheadLog(directory, snapshotLsn, replay);
+                changesSinceSnapshot = log.getLastLsn() - snapshotLsn;
+                requestedSnapshotLsn = snapshotLsn;
+            }
+        } catch (IOException | RepositoryException e) {
+            snapshotWriter.shutdown();
+            unlock();
+            if (e instanceof RepositoryException) {
+                throw (RepositoryException) e;
+            }
+            throw new RepositoryException("Cannot open " + directory + ": " + e.getMessage(), e);
+        }
+        synchronized (this) {
+            if (!readOnly && archiveMonths > 0 && !archivable(horizon()).isEmpty()) {
+                // Months have passed the horizon since the last run
+                startSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Opens the repository of a directory for reading while another process
+     * may be writing it. Nothing is locked, truncated, rolled over, archived
+     * or deleted: the appointments are those on disk when it is opened, and
+     * the changes are rejected.
+     *
+     * @param directory The directory holding snapshots and log; a missing one holds no appointments
+     * @param zone Time zone used to split the data into months
+     * @throws RepositoryException if the data cannot be read
+     */
+    public static WalAppointmentRepository openReadOnly(Path directory, ZoneId zone) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return new WalAppointmentRepository(directory, Integer.MAX_VALUE, zone, 0, true);
+            } catch (RepositoryException e) {
+                // The writer may have replaced the snapshot or the segments being read
+                if (attempt == READ_ONLY_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the repository was opened with {@link #openReadOnly(Path, ZoneId)}
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        saveAll(Collections.singletonList(appointment));
+    }
+
+    @Override
+    public void saveAll(Collection<Appointment> appointments) {
+        checkWritable();
+        long lsn;
+        synchronized (this) {
+            // Changes are applied and logged under the same lock, so the log order is the index order
+            lsn = log.getLastLsn();
+            for (Appointment appointment : appointments) {
+                unarchive(appointment.getId());
+                apply(appointment);
+                lsn = log.appendPut(appointment);
+            }
+            changesLogged(appointments.size());
+        }
+        awaitDurable(lsn);
+    }
+
+    @Override
+    public boolean delete(long id) {
+        checkWritable();
+        long lsn;
+        synchronized (this) {
+            unarchive(id);
+            if (index.remove(id) == null) {
+                return false;
+            }
+            lsn = log.appendDelete(id);
+            changesLogged(1);
+        }
+        awaitDurable(lsn);
+        return true;
+    }
+
+    @Override
+    public synchronized Appointment findById(long id) {
+        Appointment appointment = index.get(id);
+        YearMonth month = appointment == null ? archive.findMonth(id) : null;
+        if (month == null || restoredMonths.contains(month)) {
+            return appointment;
+        }
+        for (Appointment archived : readArchive(month)) {
+            if (archived.getId() == id) {
+                return archived;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<Appointment> findRange(long from, long to) {
+        List<Appointment> result = index.query(from, to);
+        if (archive.isEmpty() || to <= from) {
+            return result;
+        }
+        // Archived appointments are filed under the month of their start, which may precede the range
+        long earliest = from >= Long.MIN_VALUE + archive.getMaxDuration() ? from - archive.getMaxDuration() : from;
+        int live = result.size();
+        for (YearMonth month : archive.getMonths(monthOf(earliest), monthOf(to - 1))) {
+            if (restoredMonths.contains(month)) {
+                continue;
+            }
+            for (Appointment appointment : readArchive(month)) {
+                if (appointment.getStart() < to && (appointment.getEnd() > from || appointment.getStart() >= from)) {
+                    result.add(appointment);
+                }
+            }
+        }
+        if (result.size() > live) {
+            result.sort(Comparator.comparingLong(Appointment::getStart));
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of appointments in the repository, archived ones included
+     */
+    public synchronized int size() {
+        int size = index.size() + archive.getCount();
+        for (YearMonth month : restoredMonths) {
+            size -= archive.getCount(month);
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of appointments kept in the heap
+     */
+    public int liveSize() {
+        return index.size();
+    }
+
+    /**
+     * Writes a snapshot now and waits until it is on disk.
+     */
+    public void snapshot() {
+        checkWritable();
+        Future<?> snapshot;
+        synchronized (this) {
+            snapshot = startSnapshot();
+        }
+        await(snapshot);
+    }
+
+    @Override
+    public void close() {
+        Future<?> snapshot;
+        synchronized (this) {
+            snapshot = pendingSnapshot;
+        }
+        try {
+            if (snapshot != null) {
+                await(snapshot);
+            }
+        } finally {
+            snapshotWriter.shutdown();
+            try {
+                if (log != null) {
+                    log.close();
+                }
+            } catch (IOException e) {
+                throw new RepositoryException("Cannot close the write-ahead log: " + e.getMessage(), e);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Releases the lock of the directory without closing anything, as the
+     * end of the process would after a crash; used by {@link RecoveryBenchmark}.
+     */
+    void abandon() {
+        unlock();
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new RepositoryException(directory + " is open read only");
+        }
+    }
+
+    /**
+     * Takes the writer's lock on the directory, held until {@link #close()}.
+     *
+     * @throws RepositoryException if another process, or another repository in this one, holds it
+     */
+    private void lock() throws IOException {
+        Path key = directory.toRealPath();
+        synchronized (LOCKED_DIRECTORIES) {
+            if (!LOCKED_DIRECTORIES.add(key)) {
+                throw new RepositoryException(directory + " is already open for writing");
+            }
+        }
+        lockedDirectory = key;
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                                               StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException | IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new RepositoryException(directory + " is already open for writing by another process");
+        }
+        lockChannel = channel;
+    }
+
+    // Closing the channel releases its lock
+    private void unlock() {
+        if (lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                // The lock goes with the process anyway
+            }
+            lockChannel = null;
+        }
+        if (lockedDirectory != null) {
+            synchronized (LOCKED_DIRECTORIES) {
+                LOCKED_DIRECTORIES.remove(lockedDirectory);
+            }
+            lockedDirectory = null;
+        }
+    }
+
+    private void apply(Appointment appointment) {
+        if (index.contains(appointment.getId())) {
+            index.update(appointment);
+        } else {
+            index.add(appointment);
+        }
+    }
+
+    /**
+     * Moves the archived month holding an appointment back into the index,
+     * before the appointment is changed. Must hold the lock.
+     */
+    private void unarchive(long id) {
+        if (archive.isEmpty() || index.contains(id)) {
+            return;
+        }
+        YearMonth month = archive.findMonth(id);
+        if (month != null && !restoredMonths.contains(month)) {
+            // Not counted as a change: a snapshot started now would archive the month again
+            log.appendUnarchive(month);
+            restore(month);
+        }
+    }
+
+    private void restore(YearMonth month) {
+        for (Appointment appointment : readArchive(month)) {
+            apply(appointment);
+        }
+        restoredMonths.add(month);
+    }
+
+    private List<Appointment> readArchive(YearMonth month) {
+        try {
+            return archive.read(month);
+        } catch (IOException e) {
+            throw new RepositoryException("Cannot read the archive: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The appointments of the index starting before the horizon, sorted by start. Must hold the lock.
+     */
+    private List<Appointment> archivable(long horizon) {
+        return index.query(Long.MIN_VALUE, horizon);
+    }
+
+    // Start of the oldest month kept in the heap, or the earliest time when nothing is archived
+    private long horizon() {
+        return archiveMonths > 0 ? start(YearMonth.now(zone).minusMonths(archiveMonths)) : Long.MIN_VALUE;
+    }
+
+    /**
+     * Writes the next archive generation with the appointments starting
+     * before the horizon, then drops them from the index. Restored months are
+     * written again from the index, with their changes, or dropped from the
+     * archive if they are no longer past the horizon. Must hold the lock.
+     */
+    private void archive(long horizon, List<Appointment> appointments) throws IOException {
+        Map<YearMonth, List<Appointment>> added = new HashMap<>();
+        for (Appointment appointment : appointments) {
+            added.computeIfAbsent(monthOf(appointment.getStart()), month -> new ArrayList<>()).add(appointment);
+        }
+        archive = AppointmentArchive.write(directory, archive, restoredMonths, added, ARCHIVE_CACHED_MONTHS);
+        index.removeStartingBefore(horizon);
+        restoredMonths.clear();
+    }
+
+    private YearMonth monthOf(long epochMinute) {
+        return YearMonth.from(Instant.ofEpochSecond(epochMinute * 60).atZone(zone));
+    }
+
+    private long start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(zone).toEpochSecond() / 60;
+    }
+
+    private void awaitDurable(long lsn) {
+        try {
+            log.awaitDurable(lsn);
+        } catch (IOException e) {
+            throw new RepositoryException("Cannot write the write-ahead log: " + e.getMessage(), e);
+        }
+    }
+
+    // Must hold the lock
+    private void changesLogged(int count) {
+        changesSinceSnapshot += count;
+        if (changesSinceSnapshot >= snapshotInterval && (pendingSnapshot == null || pendingSnapshot.isDone())) {
+            startSnapshot();
+        }
+    }
+
+    /**
+     * Copies the index and hands it to the background writer. Must hold the lock.
+     */
+    private Future<?> startSnapshot() {
+        long horizon = horizon();
+        List<Appointment> archivable = archivable(horizon);
+        boolean archiving = !archivable.isEmpty() || !restoredMonths.isEmpty();
+        if (log.getLastLsn() == requestedSnapshotLsn && !archiving) {
+            // Nothing changed since the last snapshot
+            return pendingSnapshot != null ? pendingSnapshot : CompletableFuture.completedFuture(null);
+        }
+        long lsn;
+        try {
+            // The new segment starts right after the snapshot, so older segments can be deleted as a whole
+            lsn = log.rollover() - 1;
+        } catch (IOException e) {
+            throw new RepositoryException("Cannot write the write-ahead log: " + e.getMessage(), e);
+        }
+        if (archiving) {
+            try {
+                // A new generation, so the current snapshot keeps referring to an unchanged archive
+                archive(horizon, archivable);
+            } catch (IOException e) {
+                throw new RepositoryException("Cannot write the archive: " + e.getMessage(), e);
+            }
+        }
+        List<Appointment> appointments = index.getAll();
+        long archiveGeneration = archive.getGeneration();
+        changesSinceSnapshot = 0;
+        requestedSnapshotLsn = lsn;
+        pendingSnapshot = snapshotWriter.submit(() -> {
+            writeSnapshot(lsn, archiveGeneration, appointments);
+            return null;
+        });
+        return pendingSnapshot;
+    }
+
+    private void writeSnapshot(long lsn, long archiveGeneration, List<Appointment> appointments) throws IOException {
+        SnapshotFile.write(directory, lsn, archiveGeneration, appointments);
+        long keep;
+        long keepArchive;
+        synchronized (this) {
+            // A snapshot taken only to archive replaces the one with the same LSN
+            if (lsn != snapshotLsn) {
+                previousSnapshotLsn = snapshotLsn;
+                previousSnapshotArchiveGeneration = snapshotArchiveGeneration;
+            }
+            snapshotLsn = lsn;
+            snapshotArchiveGeneration = archiveGeneration;
+            keep = previousSnapshotLsn;
+            keepArchive = previousSnapshotArchiveGeneration;
+        }
+        // Keep the previous snapshot, the log following it and its archive, as a fallback
+        log.deleteSegmentsBefore(keep + 1);
+        for (SnapshotFile snapshot : SnapshotFile.list(directory)) {
+            if (snapshot.getLsn() < keep) {
+                deleteIfUnused(snapshot.getPath());
+            }
+        }
+        for (long generation : AppointmentArchive.list(directory)) {
+            if (generation < keepArchive) {
+                deleteArchiveIfUnused(generation);
+            }
+        }
+    }
+
+    /**
+     * Deletes a file no longer needed. On Windows a file still open or
+     * mapped, such as an old archive generation whose buffer has not been
+     * collected yet or a file a reader has open, cannot be deleted: it is
+     * left in place and the deletion is tried again after the next snapshot,
+     * which lists the old files anew.
+     */
+    private static void deleteIfUnused(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Still in use: retried after the next snapshot
+        }
+    }
+
+    // As deleteIfUnused, for an archive generation
+    private void deleteArchiveIfUnused(long generation) {
+        try {
+            AppointmentArchive.delete(directory, generation);
+        } catch (IOException e) {
+            // Still mapped: retried after the next snapshot
+        }
+    }
+
+    /**
+     * Reads the newest readable snapshot and opens its archive, setting the
+     * snapshot LSNs and the archive.
+     *
+     * @return An index with the appointments of the snapshot, empty if there is none
+     */
+    private AppointmentStore recoverSnapshot() throws IOException {
+        if (readOnly && !Files.isDirectory(directory)) {
+            archive = AppointmentArchive.empty();
+            return new AppointmentStore(directory.toString());
+        }
+        // Read only, the temporary files may be snapshots the writer is writing
+        List<SnapshotFile> snapshots = SnapshotFile.list(directory, !readOnly);
+        IOException failure = null;
+        for (int i = 0; i < snapshots.size(); i++) {
+            SnapshotFile snapshot = snapshots.get(i);
+            AppointmentStore appointments = new AppointmentStore(directory.toString());
+            long archiveGeneration;
+            try {
+                // Snapshots are sorted by start: the appointments are appended to the table
+                archiveGeneration = snapshot.read(appointments::add);
+                archive = AppointmentArchive.open(directory, archiveGeneration, ARCHIVE_CACHED_MONTHS);
+            } catch (IOException e) {
+                failure = e;
+                continue;
+            }
+            snapshotLsn = snapshot.getLsn();
+            previousSnapshotLsn = i + 1 < snapshots.size() ? snapshots.get(i + 1).getLsn() : 0;
+            snapshotArchiveGeneration = archiveGeneration;
+            if (!readOnly) {
+                // Damaged newer snapshots would otherwise be tried first again, after their fallback is gone
+                for (int j = 0; j < i; j++) {
+                    Files.deleteIfExists(snapshots.get(j).getPath());
+                }
+                deleteArchivesAfter(archiveGeneration);
+            }
+            return appointments;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        archive = AppointmentArchive.empty();
+        if (!readOnly) {
+            deleteArchivesAfter(0);
+        }
+        return new AppointmentStore(directory.toString());
+    }
+
+    // Archives written after the snapshot in use were never referred to by a snapshot on disk
+    private void deleteArchivesAfter(long generation) throws IOException {
+        for (long other : AppointmentArchive.list(directory)) {
+            if (other > generation) {
+                deleteArchiveIfUnused(other);
+            }
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while writing a snapshot", e);
+        } catch (ExecutionException e) {
+            throw new RepositoryException("Cannot write a snapshot: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
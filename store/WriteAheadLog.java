@@ -0,0 +1,520 @@
+package dashboard.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of appointment changes, with group commit.
+ * Appending only serializes the change into a memory buffer and assigns it a
+ * log sequence number (LSN); a background flusher writes the buffer and calls
+ * fsync once for every change accumulated in the meantime, so many edits
+ * share a single fsync. Callers that need durability wait with
+ * {@link #awaitDurable(long)}.
+ * <p>
+ * The log is split into segment files named after their first LSN, so that
+ * segments covered by a snapshot can simply be deleted. Every record is
+ * framed with its length and CRC: a torn write at the end of the last
+ * segment is detected and cut off during recovery. Appointments are
+ * written in the {@link CompactFormat} encoding, relative to the previous
+ * records of the same segment.
+ * <p>
+ * A directory has a single writer, see {@link WalAppointmentRepository}.
+ * Other processes read the log with {@link #read(Path, long, RecordHandler)},
+ * which never changes the files: a tail still being written by the writer
+ * is just not read.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte UNARCHIVE = 3;
+
+    private static final int SEGMENT_MAGIC = 0x4357414C; // "CWAL"
+    private static final int SEGMENT_VERSION = 3;
+    // Version 2 segments encode appointments without time zones
+    private static final int SEGMENT_VERSION_WITHOUT_ZONES = 2;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // The flusher writes at least this often, or earlier when the buffer is large
+    private static final long FLUSH_INTERVAL_MILLIS = 20;
+    private static final int FLUSH_THRESHOLD_BYTES = 256 * 1024;
+
+    /**
+     * Receives the records read back from the log.
+     */
+    public interface RecordHandler {
+        void put(long lsn, Appointment appointment);
+
+        void delete(long lsn, long id);
+
+        void unarchive(long lsn, YearMonth month);
+    }
+
+    private final Path directory;
+    private final Object ioLock = new Object();
+    private final Thread flusher;
+
+    // Guarded by this
+    private final CompactFormat.Output pending = new CompactFormat.Output(64 * 1024);
+    private final CompactFormat.Output record = new CompactFormat.Output(256);
+    private final CRC32 crc = new CRC32();
+    // Titles and deltas are relative to the previous records of the same segment
+    private CompactFormat.Encoder encoder = new CompactFormat.Encoder();
+    private long lastLsn;
+    private long durableLsn;
+    private boolean closed;
+    private boolean flushRequested;
+    private IOException failure;
+
+    // Guarded by ioLock
+    private FileChannel channel;
+    private long segmentFirstLsn;
+
+    /**
+     * Opens the log in a directory, recovering the existing segments.
+     * Records with an LSN greater than afterLsn are passed to the handler, in
+     * order; a damaged tail is truncated.
+     *
+     * @param directory The directory holding the segments
+     * @param afterLsn LSN already covered by a snapshot, older records are skipped
+     * @param handler Receives the replayed records
+     * @throws IOException if the log cannot be read or records after afterLsn are missing
+     */
+    public WriteAheadLog(Path directory, long afterLsn, RecordHandler handler) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Path> segments = listSegments(directory);
+        if (!segments.isEmpty() && firstLsn(segments.get(0)) > afterLsn + 1) {
+            throw new IOException("Write-ahead log segments missing after LSN " + afterLsn);
+        }
+        long last = afterLsn;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean lastSegment = i == segments.size() - 1;
+            if (!lastSegment && firstLsn(segments.get(i + 1)) <= afterLsn + 1) {
+                // Entirely covered by the snapshot
+                continue;
+            }
+            last = Math.max(last, replay(segments.get(i), afterLsn, handler, lastSegment, true));
+        }
+        lastLsn = last;
+        durableLsn = last;
+        Path current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        boolean currentEmpty = current != null && firstLsn(current) == last + 1;
+        if (currentEmpty && segmentVersion(current) == SEGMENT_VERSION) {
+            // The last segment holds no record: append to it with a fresh encoder
+            channel = FileChannel.open(current, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            segmentFirstLsn = last + 1;
+        } else {
+            if (currentEmpty) {
+                // Empty, but written in an older version: replaced by a segment in the current one
+                Files.delete(current);
+            }
+            // Records are encoded relative to their segment, so a reopened log starts a new one
+            channel = openSegment(last + 1);
+        }
+
+        flusher = new Thread(this::runFlusher, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Reads the log of a directory without opening it for writing: nothing
+     * is truncated, created or deleted, so the directory may be in use by
+     * its writer. An incomplete record at the end, such as a batch the
+     * writer is flushing, ends the log.
+     *
+     * @param directory The directory holding the segments; a missing one holds no log
+     * @param afterLsn LSN already covered by a snapshot, older records are skipped
+     * @param handler Receives the records read
+     * @return The LSN of the last record read, or afterLsn if there is none
+     * @throws IOException if the log cannot be read or records after afterLsn are missing
+     */
+    public static long read(Path directory, long afterLsn, RecordHandler handler) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return afterLsn;
+        }
+        List<Path> segments = listSegments(directory);
+        if (!segments.isEmpty() && firstLsn(segments.get(0)) > afterLsn + 1) {
+            throw new IOException("Write-ahead log segments missing after LSN " + afterLsn);
+        }
+        long last = afterLsn;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean lastSegment = i == segments.size() - 1;
+            if (!lastSegment && firstLsn(segments.get(i + 1)) <= afterLsn + 1) {
+                continue;
+            }
+            last = Math.max(last, replay(segments.get(i), afterLsn, handler, lastSegment, false));
+        }
+        return last;
+    }
+
+    /**
+     * Logs the insertion or replacement of an appointment.
+     *
+     * @return The LSN of the record
+     */
+    public synchronized long appendPut(Appointment appointment) {
+        return append(PUT, appointment, appointment.getId());
+    }
+
+    /**
+     * Logs the deletion of an appointment.
+     *
+     * @return The LSN of the record
+     */
+    public synchronized long appendDelete(long id) {
+        return append(DELETE, null, id);
+    }
+
+    /**
+     * Logs that the appointments of an archived month were moved back into
+     * the live data, before the first change to one of them.
+     *
+     * @return The LSN of the record
+     */
+    public synchronized long appendUnarchive(YearMonth month) {
+        return append(UNARCHIVE, null, month.getYear() * 12L + month.getMonthValue() - 1);
+    }
+
+    private long append(byte type, Appointment appointment, long id) {
+        checkUsable();
+        long lsn = ++lastLsn;
+        record.reset();
+        record.writeVarlong(lsn);
+        record.writeByte(type);
+        if (type == PUT) {
+            encoder.encode(record, appointment);
+        } else {
+            // The id of a deletion, the month of an unarchive
+            record.writeVarlong(id);
+        }
+        crc.reset();
+        crc.update(record.array(), 0, record.size());
+        pending.writeVarint(record.size());
+        pending.writeInt((int) crc.getValue());
+        pending.write(record.array(), 0, record.size());
+        if (pending.size() >= FLUSH_THRESHOLD_BYTES) {
+            notifyAll();
+        }
+        return lsn;
+    }
+
+    /**
+     * @return The LSN of the last appended record
+     */
+    public synchronized long getLastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * @return The LSN of the last record known to be on disk
+     */
+    public synchronized long getDurableLsn() {
+        return durableLsn;
+    }
+
+    /**
+     * Waits until the record with the given LSN, and all the preceding ones, are on disk.
+     */
+    public synchronized void awaitDurable(long lsn) throws IOException {
+        if (durableLsn < lsn) {
+            flushRequested = true;
+            notifyAll();
+        }
+        while (durableLsn < lsn) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed) {
+                throw new IOException("Write-ahead log closed");
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the log", e);
+            }
+        }
+    }
+
+    /**
+     * Flushes the pending records and starts a new segment.
+     * Called right before taking a snapshot, so that the segments preceding
+     * the snapshot can be deleted as a whole once it is written.
+     *
+     * @return The first LSN of the new segment
+     */
+    public long rollover() throws IOException {
+        synchronized (ioLock) {
+            byte[] bytes;
+            long next;
+            synchronized (this) {
+                bytes = pending.toByteArray();
+                pending.reset();
+                encoder = new CompactFormat.Encoder();
+                next = lastLsn + 1;
+            }
+            writeDurably(bytes, next - 1);
+            if (next != segmentFirstLsn) {
+                channel.close();
+                channel = openSegment(next);
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Deletes the segments whose records all precede the given LSN.
+     *
+     * @param lsn First LSN that must be kept
+     */
+    public void deleteSegmentsBefore(long lsn) throws IOException {
+        synchronized (ioLock) {
+            List<Path> segments = listSegments(directory);
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                if (firstLsn(segments.get(i + 1)) <= lsn) {
+                    Files.deleteIfExists(segments.get(i));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (ioLock) {
+            try {
+                flushLocked();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private synchronized void checkUsable() {
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                // A writer may have asked for a flush while the previous one was running
+                if (!flushRequested && pending.size() < FLUSH_THRESHOLD_BYTES) {
+                    try {
+                        wait(FLUSH_INTERVAL_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                flushRequested = false;
+                if (pending.size() == 0) {
+                    continue;
+                }
+            }
+            synchronized (ioLock) {
+                try {
+                    flushLocked();
+                } catch (IOException e) {
+                    synchronized (this) {
+                        failure = e;
+                        notifyAll();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    // Writes the buffered records with a single fsync. Must hold ioLock.
+    private void flushLocked() throws IOException {
+        byte[] bytes;
+        long lsn;
+        synchronized (this) {
+            if (pending.size() == 0) {
+                return;
+            }
+            bytes = pending.toByteArray();
+            lsn = lastLsn;
+            pending.reset();
+        }
+        writeDurably(bytes, lsn);
+    }
+
+    // Appends records to the current segment and makes them durable. Must hold ioLock.
+    private void writeDurably(byte[] bytes, long lsn) throws IOException {
+        if (bytes.length == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        synchronized (this) {
+            durableLsn = lsn;
+            notifyAll();
+        }
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        FileChannel segment = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).putInt(SEGMENT_VERSION).putLong(firstLsn).flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segment.force(true);
+        segmentFirstLsn = firstLsn;
+        return segment;
+    }
+
+    /**
+     * Reads one segment, passing the records after afterLsn to the handler.
+     * A damaged tail is accepted when this is the last segment, and cut off
+     * if truncate is set.
+     *
+     * @return The LSN of the last valid record, or the LSN preceding the segment if there is none
+     */
+    private static long replay(Path segment, long afterLsn, RecordHandler handler, boolean lastSegment,
+                               boolean truncate) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int version = buffer.remaining() >= SEGMENT_HEADER_SIZE && buffer.getInt() == SEGMENT_MAGIC
+                ? buffer.getInt() : -1;
+        if (version != SEGMENT_VERSION && version != SEGMENT_VERSION_WITHOUT_ZONES) {
+            throw new IOException("Not a write-ahead log segment: " + segment);
+        }
+        long last = buffer.getLong() - 1;
+        int validEnd = SEGMENT_HEADER_SIZE;
+        CompactFormat.Decoder decoder = new CompactFormat.Decoder(version == SEGMENT_VERSION);
+        CRC32 crc = new CRC32();
+        while (buffer.hasRemaining()) {
+            int length;
+            int checksum;
+            try {
+                length = CompactFormat.readVarint(buffer);
+                checksum = buffer.getInt();
+            } catch (BufferUnderflowException | IOException e) {
+                break;
+            }
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            buffer.position(buffer.position() + length);
+            try {
+                long lsn = CompactFormat.readVarlong(payload);
+                byte type = payload.get();
+                // Puts are decoded even when skipped: the following records are relative to them
+                if (type == PUT) {
+                    Appointment appointment = decoder.decode(payload);
+                    if (lsn > afterLsn) {
+                        handler.put(lsn, appointment);
+                    }
+                } else if (type == DELETE) {
+                    long id = CompactFormat.readVarlong(payload);
+                    if (lsn > afterLsn) {
+                        handler.delete(lsn, id);
+                    }
+                } else if (type == UNARCHIVE) {
+                    long month = CompactFormat.readVarlong(payload);
+                    if (lsn > afterLsn) {
+                        handler.unarchive(lsn, YearMonth.of((int) Math.floorDiv(month, 12),
+                                                            Math.floorMod(month, 12) + 1));
+                    }
+                } else {
+                    throw new IOException("Unknown write-ahead log record type " + type + " in " + segment);
+                }
+                last = lsn;
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Damaged write-ahead log record in " + segment, e);
+            }
+            validEnd = buffer.position();
+        }
+        if (validEnd < buffer.limit()) {
+            if (!lastSegment) {
+                throw new IOException("Damaged write-ahead log segment: " + segment);
+            }
+            if (!truncate) {
+                // Read only: the tail may be a batch the writer is still flushing
+                return last;
+            }
+            // Torn write from a crash: drop the incomplete tail
+            try (FileChannel out = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                out.truncate(validEnd);
+                out.force(true);
+            }
+        }
+        return last;
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        // Names are zero-padded LSNs, so the lexical order is the log order
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static int segmentVersion(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            // Magic number, then version
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return -1;
+                }
+            }
+            return header.getInt(4);
+        }
+    }
+
+    private static long firstLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,266 @@
+package dashboard.store;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts epoch minutes to local times of a zone without creating a
+ * {@code ZonedDateTime} for every conversion.
+ * The offset transitions of the zone are computed once per year, the first
+ * time the year is used, and kept in two small arrays: finding the offset of
+ * an instant is then a scan of the two to four transitions of its year.
+ * Days starting in a daylight saving gap start when the gap ends, and days
+ * containing an overlap last 25 hours, as with {@link LocalDate#atStartOfDay(ZoneId)}.
+ * <p>
+ * Instances are immutable once a year is computed and can be shared by
+ * several threads; {@link #of(ZoneId)} returns one shared instance per zone.
+ */
+public final class ZoneOffsetCache {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    // Years cached; instants outside them are converted through the zone rules
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 2199;
+    // Transitions are never this close: enough to find the one around a local time
+    private static final long TRANSITION_WINDOW = 2 * MINUTES_PER_DAY;
+    // First minute of every cached year, in UTC
+    private static final long[] YEAR_STARTS = new long[LAST_YEAR - FIRST_YEAR + 2];
+    private static final Map<ZoneId, ZoneOffsetCache> SHARED = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < YEAR_STARTS.length; i++) {
+            YEAR_STARTS[i] = LocalDate.of(FIRST_YEAR + i, 1, 1).toEpochDay() * MINUTES_PER_DAY;
+        }
+    }
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    private final boolean fixed;
+    private final int fixedOffset;
+    // Filled lazily; a year is computed at most a few times when threads race, always with the same result
+    private final Year[] years = new Year[LAST_YEAR - FIRST_YEAR + 1];
+
+    /**
+     * Transitions of one year: the offset at its start, then every change.
+     */
+    private static final class Year {
+        final long end;
+        final int initialOffset;
+        final long[] transitions;
+        final int[] offsets;
+
+        Year(long end, int initialOffset, long[] transitions, int[] offsets) {
+            this.end = end;
+            this.initialOffset = initialOffset;
+            this.transitions = transitions;
+            this.offsets = offsets;
+        }
+
+        int offsetAt(long epochMinute) {
+            int offset = initialOffset;
+            for (int i = 0; i < transitions.length && transitions[i] <= epochMinute; i++) {
+                offset = offsets[i];
+            }
+            return offset;
+        }
+    }
+
+    public ZoneOffsetCache(ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+        this.fixed = rules.isFixedOffset();
+        this.fixedOffset = fixed ? minutes(rules.getOffset(Instant.EPOCH)) : 0;
+    }
+
+    /**
+     * @return The cache shared by every user of the zone
+     */
+    public static ZoneOffsetCache of(ZoneId zone) {
+        return SHARED.computeIfAbsent(zone, ZoneOffsetCache::new);
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @return The offset from UTC in minutes at the given instant
+     */
+    public int getOffsetMinutes(long epochMinute) {
+        if (fixed) {
+            return fixedOffset;
+        }
+        Year year = year(epochMinute);
+        if (year == null) {
+            return minutes(rules.getOffset(Instant.ofEpochSecond(epochMinute * 60)));
+        }
+        return year.offsetAt(epochMinute);
+    }
+
+    /**
+     * @return The local time of the instant, in minutes since 1970-01-01T00:00 local
+     */
+    public long toLocalMinute(long epochMinute) {
+        return epochMinute + getOffsetMinutes(epochMinute);
+    }
+
+    /**
+     * @return The local date of the instant, as days since 1970-01-01
+     */
+    public long getEpochDay(long epochMinute) {
+        return Math.floorDiv(toLocalMinute(epochMinute), MINUTES_PER_DAY);
+    }
+
+    /**
+     * @return The local time of day of the instant, in minutes since midnight
+     */
+    public int getMinuteOfDay(long epochMinute) {
+        return Math.floorMod(toLocalMinute(epochMinute), MINUTES_PER_DAY);
+    }
+
+    public DayOfWeek getDayOfWeek(long epochMinute) {
+        // 1970-01-01 was a Thursday
+        return DayOfWeek.of(Math.floorMod(getEpochDay(epochMinute) + 3, 7) + 1);
+    }
+
+    /**
+     * @return The local month of the instant, as year * 12 + month - 1
+     */
+    public int getMonthKey(long epochMinute) {
+        return monthKeyOfDay(getEpochDay(epochMinute));
+    }
+
+    /**
+     * Converts a local time to an instant like {@code LocalDateTime.atZone}:
+     * a time skipped by a gap is moved later by the length of the gap, a
+     * time repeated by an overlap takes the earlier instant.
+     *
+     * @param localMinute Minutes since 1970-01-01T00:00 local
+     * @return The instant in epoch minutes
+     */
+    public long toEpochMinute(long localMinute) {
+        if (fixed) {
+            return localMinute - fixedOffset;
+        }
+        int before = getOffsetMinutes(localMinute - TRANSITION_WINDOW);
+        int after = getOffsetMinutes(localMinute + TRANSITION_WINDOW);
+        if (before == after) {
+            return localMinute - before;
+        }
+        long transition = transitionAfter(localMinute - TRANSITION_WINDOW);
+        return localMinute >= transition + Math.max(before, after) ? localMinute - after : localMinute - before;
+    }
+
+    /**
+     * Returns the first instant of a local day like {@link LocalDate#atStartOfDay(ZoneId)}:
+     * a day whose midnight falls in a gap starts when the gap ends.
+     *
+     * @param epochDay Days since 1970-01-01
+     * @return The start of the day in epoch minutes
+     */
+    public long startOfDay(long epochDay) {
+        long midnight = epochDay * MINUTES_PER_DAY;
+        if (fixed) {
+            return midnight - fixedOffset;
+        }
+        int before = getOffsetMinutes(midnight - TRANSITION_WINDOW);
+        int after = getOffsetMinutes(midnight + TRANSITION_WINDOW);
+        if (before == after) {
+            return midnight - before;
+        }
+        long transition = transitionAfter(midnight - TRANSITION_WINDOW);
+        if (after > before && midnight >= transition + before && midnight < transition + after) {
+            return transition;
+        }
+        return midnight >= transition + Math.max(before, after) ? midnight - after : midnight - before;
+    }
+
+    public long startOfDay(LocalDate date) {
+        return startOfDay(date.toEpochDay());
+    }
+
+    /**
+     * @return The month of a local date, as year * 12 + month - 1
+     */
+    public static int monthKeyOfDay(long epochDay) {
+        // Civil calendar from day count (H. Hinnant), with years starting in March
+        long days = epochDay + 719_468;
+        long era = Math.floorDiv(days, 146_097);
+        long dayOfEra = days - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) (year * 12 + month - 1);
+    }
+
+    // First transition after the instant; only called when one is known to be near
+    private long transitionAfter(long epochMinute) {
+        Year year = year(epochMinute);
+        if (year != null) {
+            for (long transition : year.transitions) {
+                if (transition > epochMinute) {
+                    return transition;
+                }
+            }
+            Year next = year(year.end);
+            if (next != null && next.transitions.length > 0) {
+                return next.transitions[0];
+            }
+        }
+        ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochSecond(epochMinute * 60));
+        return transition == null ? Long.MAX_VALUE : Math.floorDiv(transition.toEpochSecond(), 60);
+    }
+
+    private Year year(long epochMinute) {
+        if (epochMinute < YEAR_STARTS[0] || epochMinute >= YEAR_STARTS[YEAR_STARTS.length - 1]) {
+            return null;
+        }
+        // Estimate from the average year length, then correct by one year at most
+        int index = (int) ((epochMinute - YEAR_STARTS[0]) / (MINUTES_PER_DAY * 365_2425L / 10_000));
+        index = Math.min(index, years.length - 1);
+        while (epochMinute < YEAR_STARTS[index]) {
+            index--;
+        }
+        while (epochMinute >= YEAR_STARTS[index + 1]) {
+            index++;
+        }
+        Year year = years[index];
+        if (year == null) {
+            year = computeYear(YEAR_STARTS[index], YEAR_STARTS[index + 1]);
+            years[index] = year;
+        }
+        return year;
+    }
+
+    private Year computeYear(long start, long end) {
+        int initialOffset = minutes(rules.getOffset(Instant.ofEpochSecond(start * 60)));
+        List<ZoneOffsetTransition> found = new ArrayList<>(4);
+        ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochSecond(start * 60 - 1));
+        while (transition != null && transition.toEpochSecond() < end * 60) {
+            found.add(transition);
+            transition = rules.nextTransition(transition.getInstant());
+        }
+        long[] transitions = new long[found.size()];
+        int[] offsets = new int[found.size()];
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = Math.floorDiv(found.get(i).toEpochSecond(), 60);
+            offsets[i] = minutes(found.get(i).getOffsetAfter());
+        }
+        return new Year(end, initialOffset, transitions, offsets);
+    }
+
+    // Historical offsets with seconds are truncated, as epoch minutes cannot represent them
+    private static int minutes(ZoneOffset offset) {
+        return Math.floorDiv(offset.getTotalSeconds(), 60);
+    }
+}
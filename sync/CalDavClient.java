@@ -0,0 +1,398 @@
+package dashboard.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Client of a CalDAV calendar collection, limited to what delta
+ * synchronization needs: the sync-collection report (RFC 6578), which lists
+ * only the events changed since a sync token, the calendar-multiget report,
+ * which downloads many events in one request, and conditional PUT and DELETE
+ * requests, which fail with 412 when the event was changed by someone else.
+ * <p>
+ * Downloads and uploads are asynchronous, so that several requests can be
+ * in flight on the same client; over HTTP/2 they share one connection.
+ */
+public class CalDavClient {
+    static final String DAV = "DAV:";
+    static final String CALDAV = "urn:ietf:params:xml:ns:caldav";
+    private static final String XML_TYPE = "application/xml; charset=utf-8";
+    private static final String CALENDAR_TYPE = "text/calendar; charset=utf-8";
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient http;
+    private final URI collection;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * An event of the collection: its path, its entity tag and, when
+     * downloaded, its iCalendar data.
+     */
+    public static final class Resource {
+        private final String href;
+        private final String etag;
+        private final String data;
+
+        public Resource(String href, String etag, String data) {
+            this.href = href;
+            this.etag = etag;
+            this.data = data;
+        }
+
+        public String getHref() {
+            return href;
+        }
+
+        /**
+         * @return The entity tag, or null if the server did not send one
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return The iCalendar data, or null if not downloaded
+         */
+        public String getData() {
+            return data;
+        }
+    }
+
+    /**
+     * Result of a sync-collection report.
+     */
+    public static final class Changes {
+        private final String token;
+        private final List<Resource> changed;
+        private final List<String> deleted;
+
+        Changes(String token, List<Resource> changed, List<String> deleted) {
+            this.token = token;
+            this.changed = changed;
+            this.deleted = deleted;
+        }
+
+        /**
+         * @return The token to send in the next report
+         */
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * @return Events added or changed, with their entity tags but without data
+         */
+        public List<Resource> getChanged() {
+            return changed;
+        }
+
+        /**
+         * @return Paths of the deleted events
+         */
+        public List<String> getDeleted() {
+            return deleted;
+        }
+    }
+
+    /**
+     * @param collection URL of the calendar collection; a final slash is added if missing
+     */
+    public CalDavClient(URI collection) {
+        String url = collection.toString();
+        this.collection = URI.create(url.endsWith("/") ? url : url + "/");
+        this.http = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    }
+
+    public URI getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return The path of the event with the given id, for events created by this client
+     */
+    public String hrefOf(long id) {
+        return collection.getRawPath() + id + ".ics";
+    }
+
+    /**
+     * @return The number of requests sent so far
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Lists the events changed since a sync token.
+     *
+     * @param token The token returned by the previous report, or "" to list every event
+     * @return The changes, or null if the server no longer accepts the token
+     * @throws SyncException if the request fails
+     */
+    public Changes syncCollection(String token) {
+        String body = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                    + "<d:sync-collection xmlns:d=\"DAV:\">"
+                    + "<d:sync-token>" + escapeXml(token) + "</d:sync-token>"
+                    + "<d:sync-level>1</d:sync-level>"
+                    + "<d:prop><d:getetag/></d:prop>"
+                    + "</d:sync-collection>";
+        HttpResponse<String> response = join(send(report(collection, "0", body)));
+        if (!token.isEmpty() && (response.statusCode() == 403 || response.statusCode() == 409)
+                && response.body().contains("valid-sync-token")) {
+            return null;
+        }
+        Document multistatus = parseMultistatus(response, collection.toString());
+        List<Resource> changed = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (Element entry : children(multistatus.getDocumentElement(), DAV, "response")) {
+            String href = normalize(text(entry, DAV, "href"));
+            if (href.equals(collection.getRawPath())) {
+                continue;
+            }
+            String status = text(entry, DAV, "status");
+            if (status != null && status.contains(" 404")) {
+                deleted.add(href);
+            } else {
+                changed.add(new Resource(href, findProperty(entry, DAV, "getetag"), null));
+            }
+        }
+        String newToken = text(multistatus.getDocumentElement(), DAV, "sync-token");
+        if (newToken == null) {
+            throw new SyncException("No sync-token in the answer of " + collection);
+        }
+        return new Changes(newToken, changed, deleted);
+    }
+
+    /**
+     * Downloads several events in one request.
+     *
+     * @param hrefs Paths of the events
+     * @return The events found, with their data; missing events are left out
+     */
+    public CompletableFuture<List<Resource>> multiget(List<String> hrefs) {
+        if (hrefs.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        StringBuilder body = new StringBuilder(64 * hrefs.size() + 256);
+        body.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
+            .append("<c:calendar-multiget xmlns:d=\"DAV:\" xmlns:c=\"urn:ietf:params:xml:ns:caldav\">")
+            .append("<d:prop><d:getetag/><c:calendar-data/></d:prop>");
+        for (String href : hrefs) {
+            body.append("<d:href>").append(escapeXml(href)).append("</d:href>");
+        }
+        body.append("</c:calendar-multiget>");
+        return send(report(collection, "1", body.toString())).thenApply(response -> {
+            List<Resource> found = new ArrayList<>(hrefs.size());
+            Document multistatus = parseMultistatus(response, collection.toString());
+            for (Element entry : children(multistatus.getDocumentElement(), DAV, "response")) {
+                String data = findProperty(entry, CALDAV, "calendar-data");
+                if (data != null) {
+                    found.add(new Resource(normalize(text(entry, DAV, "href")), findProperty(entry, DAV, "getetag"), data));
+                }
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Uploads an event, unless it was changed on the server in the meantime.
+     *
+     * @param href Path of the event
+     * @param data iCalendar data
+     * @param etag Entity tag of the version being replaced, or null to create the event
+     * @return The uploaded event, without data, or null if the precondition failed
+     */
+    public CompletableFuture<Resource> put(String href, String data, String etag) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(collection.resolve(href))
+            .timeout(TIMEOUT)
+            .header("Content-Type", CALENDAR_TYPE)
+            .PUT(HttpRequest.BodyPublishers.ofString(data, StandardCharsets.UTF_8));
+        if (etag == null) {
+            request.header("If-None-Match", "*");
+        } else {
+            request.header("If-Match", etag);
+        }
+        return send(request.build()).thenApply(response -> {
+            if (response.statusCode() == 412) {
+                return null;
+            }
+            checkStatus(response, href);
+            return new Resource(href, response.headers().firstValue("ETag").orElse(null), null);
+        });
+    }
+
+    /**
+     * Deletes an event, unless it was changed on the server in the meantime.
+     *
+     * @param href Path of the event
+     * @param etag Entity tag of the version being deleted
+     * @return false if the precondition failed; an event already deleted counts as deleted
+     */
+    public CompletableFuture<Boolean> delete(String href, String etag) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(collection.resolve(href)).timeout(TIMEOUT).DELETE();
+        if (etag != null) {
+            request.header("If-Match", etag);
+        }
+        return send(request.build()).thenApply(response -> {
+            if (response.statusCode() == 412) {
+                return false;
+            }
+            if (response.statusCode() != 404) {
+                checkStatus(response, href);
+            }
+            return true;
+        });
+    }
+
+    private HttpRequest report(URI uri, String depth, String body) {
+        return HttpRequest.newBuilder(uri)
+            .timeout(TIMEOUT)
+            .header("Content-Type", XML_TYPE)
+            .header("Depth", depth)
+            .method("REPORT", HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+            .build();
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        requests.incrementAndGet();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+            .exceptionally(e -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                throw new SyncException("Cannot reach " + request.uri() + ": " + cause, cause);
+            });
+    }
+
+    /**
+     * Waits for a request, unwrapping the exception it failed with.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SyncException) {
+                throw (SyncException) e.getCause();
+            }
+            throw new SyncException("Request failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void checkStatus(HttpResponse<String> response, String target) {
+        int status = response.statusCode();
+        if (status < 200 || status >= 300) {
+            throw new SyncException("HTTP " + status + " from the server for " + target);
+        }
+    }
+
+    private static Document parseMultistatus(HttpResponse<String> response, String target) {
+        if (response.statusCode() != 207) {
+            checkStatus(response, target);
+            throw new SyncException("Expected a multistatus answer for " + target + ", got HTTP " + response.statusCode());
+        }
+        try {
+            return parseXml(response.body());
+        } catch (IOException | SAXException e) {
+            throw new SyncException("Invalid multistatus answer for " + target + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses an XML document with namespaces, refusing document type
+     * declarations and therefore external entities.
+     */
+    static Document parseXml(String xml) throws IOException, SAXException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            builder.setErrorHandler(null);
+            return builder.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The direct children of an element with the given name
+     */
+    static List<Element> children(Element parent, String namespace, String name) {
+        List<Element> result = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && name.equals(node.getLocalName()) && namespace.equals(node.getNamespaceURI())) {
+                result.add((Element) node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The text of the first direct child with the given name, trimmed, or null
+     */
+    static String text(Element parent, String namespace, String name) {
+        List<Element> found = children(parent, namespace, name);
+        return found.isEmpty() ? null : found.get(0).getTextContent().trim();
+    }
+
+    // Value of a property in the propstat answered with status 200
+    private static String findProperty(Element response, String namespace, String name) {
+        for (Element propstat : children(response, DAV, "propstat")) {
+            String status = text(propstat, DAV, "status");
+            if (status != null && !status.contains(" 200")) {
+                continue;
+            }
+            for (Element prop : children(propstat, DAV, "prop")) {
+                List<Element> values = children(prop, namespace, name);
+                if (!values.isEmpty()) {
+                    // Calendar data keeps its line breaks; entity tags are trimmed
+                    String value = values.get(0).getTextContent();
+                    return CALDAV.equals(namespace) ? value : value.trim();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The path of an href, which servers may send as a full URL
+     */
+    static String normalize(String href) {
+        return href == null ? "" : URI.create(href).getRawPath();
+    }
+
+    static String escapeXml(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '&': out.append("&amp;"); break;
+                case '"': out.append("&quot;"); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,633 @@
+package dashboard.sync;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dashboard.metrics.CalendarMetrics;
+import dashboard.metrics.FlightRecording;
+import dashboard.metrics.SyncEvent;
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentRepository;
+import dashboard.store.AppointmentStore;
+import dashboard.store.ICalendarFormat;
+
+/**
+ * Two-way delta synchronization of a calendar with a CalDAV collection.
+ * <p>
+ * The sync engine sits in front of the repository of the calendar and
+ * records the ids of the appointments saved or deleted locally. A
+ * {@link #sync()} first uploads those appointments with conditional
+ * requests, in parallel: an upload refused because the event was changed on
+ * the server is a conflict, settled by a {@link ConflictResolver}. It then
+ * asks the server for the events changed since the last sync token: when
+ * nothing changed this is the only request. Changed events whose entity tag
+ * is already known, such as the ones just uploaded, are skipped; the others
+ * are downloaded in batches, several batches at a time, and applied to the
+ * repository and to the store in one transaction.
+ * <p>
+ * The first sync downloads the whole collection; local appointments that
+ * existed before it are not uploaded. The sync token, the entity tags and
+ * the ids of the local changes not uploaded yet can be kept in a state
+ * file, so that the next session starts with a delta and uploads what the
+ * previous one left, even if it ended without closing. Closing uploads the
+ * pending changes once more. Synchronization runs on the calling thread,
+ * which should not be the EDT.
+ */
+public class CalendarSync implements AppointmentRepository {
+    private static final int BATCH_SIZE = 100;
+    private static final int PARALLEL_REQUESTS = 4;
+
+    /**
+     * Settles an appointment changed both locally and on the server.
+     */
+    public interface ConflictResolver {
+        /** The server version is kept. */
+        ConflictResolver REMOTE_WINS = (local, remote) -> remote;
+        /** The local version is uploaded again over the server one. */
+        ConflictResolver LOCAL_WINS = (local, remote) -> local;
+
+        /**
+         * @param local The local version, or null if it was deleted locally
+         * @param remote The server version, or null if it was deleted on the server
+         * @return The version to keep on both sides, or null to delete the appointment
+         */
+        Appointment resolve(Appointment local, Appointment remote);
+    }
+
+    /**
+     * What a sync changed.
+     */
+    public static final class Result {
+        private int pushed;
+        private int pulled;
+        private int removed;
+        private int conflicts;
+
+        /**
+         * @return Appointments uploaded to or deleted from the server
+         */
+        public int getPushed() {
+            return pushed;
+        }
+
+        /**
+         * @return Appointments downloaded from the server
+         */
+        public int getPulled() {
+            return pulled;
+        }
+
+        /**
+         * @return Appointments removed locally because they were deleted on the server
+         */
+        public int getRemoved() {
+            return removed;
+        }
+
+        public int getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * @return true if the local calendar changed
+         */
+        public boolean hasLocalChanges() {
+            return pulled > 0 || removed > 0;
+        }
+
+        @Override
+        public String toString() {
+            return "pushed=" + pushed + " pulled=" + pulled + " removed=" + removed + " conflicts=" + conflicts;
+        }
+    }
+
+    private final CalDavClient client;
+    private final AppointmentRepository repository;
+    private final AppointmentStore store;
+    private final ZoneId zone;
+    private final Path stateFile;
+    private volatile ConflictResolver resolver = ConflictResolver.REMOTE_WINS;
+
+    // Ids saved or deleted locally since they were last uploaded
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    // Thread applying downloaded changes, whose writes must not be uploaded back
+    private volatile Thread applyingThread;
+    // Guards the writes of the state file, which local changes append to without waiting for a sync
+    private final Object stateLock = new Object();
+
+    // Guarded by this
+    private String token = "";
+    private final Map<Long, CalDavClient.Resource> remote = new HashMap<>();
+    private final Map<String, Long> idsByHref = new HashMap<>();
+
+    /**
+     * @param client Client of the collection to synchronize with
+     * @param repository The repository of the calendar
+     * @param store The store showing the calendar, updated with the downloaded changes
+     * @param zone Time zone of floating times and all-day events
+     * @param stateFile File keeping the sync state between sessions, or null
+     */
+    public CalendarSync(CalDavClient client, AppointmentRepository repository, AppointmentStore store,
+                        ZoneId zone, Path stateFile) {
+        this.client = client;
+        this.repository = repository;
+        this.store = store;
+        this.zone = zone;
+        this.stateFile = stateFile;
+        if (stateFile != null && Files.exists(stateFile)) {
+            loadState();
+        }
+    }
+
+    public void setConflictResolver(ConflictResolver resolver) {
+        this.resolver = Objects.requireNonNull(resolver);
+    }
+
+    public CalDavClient getClient() {
+        return client;
+    }
+
+    /**
+     * Uploads the local changes and downloads the changes made on the server.
+     *
+     * @return What was changed
+     * @throws SyncException if the server cannot be reached or answers with an error;
+     *         the changes not uploaded are kept for the next sync
+     */
+    public synchronized Result sync() {
+        long started = System.nanoTime();
+        SyncEvent event = FlightRecording.isRecording() ? new SyncEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long requests = client.getRequestCount();
+        Result result = new Result();
+        boolean succeeded = false;
+        try {
+            push(result, true);
+            pull(result);
+            saveState();
+            succeeded = true;
+        } finally {
+            // Failed cycles are recorded too, with what they did before failing
+            if (event != null && event.shouldCommit()) {
+                event.succeeded = succeeded;
+                event.pushed = result.pushed;
+                event.pulled = result.pulled;
+                event.removed = result.removed;
+                event.conflicts = result.conflicts;
+                event.requests = client.getRequestCount() - requests;
+                event.commit();
+            }
+        }
+        CalendarMetrics.get().recordSync(result.pushed + result.pulled + result.removed, System.nanoTime() - started);
+        return result;
+    }
+
+    /**
+     * @return The number of local changes waiting to be sent to the server
+     */
+    public int getPendingChanges() {
+        return dirty.size();
+    }
+
+    // ---- upload ----
+
+    /**
+     * @param resolve false when uploading the versions that won a conflict,
+     *        whose new conflicts are left for the next sync
+     */
+    private void push(Result result, boolean resolve) {
+        List<Long> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        List<Long> conflicts = new ArrayList<>();
+        int wave = PARALLEL_REQUESTS * BATCH_SIZE;
+        for (int first = 0; first < ids.size(); first += wave) {
+            List<Long> waveIds = ids.subList(first, Math.min(ids.size(), first + wave));
+            List<CompletableFuture<?>> requests = new ArrayList<>(waveIds.size());
+            for (long id : waveIds) {
+                requests.add(upload(id, repository.findById(id)));
+            }
+            SyncException failure = null;
+            for (int i = 0; i < waveIds.size(); i++) {
+                long id = waveIds.get(i);
+                if (requests.get(i) == null) {
+                    continue;
+                }
+                try {
+                    Object outcome = CalDavClient.join(requests.get(i));
+                    if (outcome instanceof CalDavClient.Resource) {
+                        remember(id, (CalDavClient.Resource) outcome);
+                        result.pushed++;
+                    } else if (Boolean.TRUE.equals(outcome)) {
+                        forget(id);
+                        result.pushed++;
+                    } else {
+                        conflicts.add(id);
+                    }
+                } catch (SyncException e) {
+                    dirty.add(id);
+                    failure = failure == null ? e : failure;
+                }
+            }
+            if (failure != null) {
+                // Everything not uploaded is retried by the next sync
+                dirty.addAll(conflicts);
+                dirty.addAll(ids.subList(Math.min(ids.size(), first + wave), ids.size()));
+                throw failure;
+            }
+        }
+        if (resolve) {
+            resolveConflicts(conflicts, result);
+        } else {
+            dirty.addAll(conflicts);
+        }
+    }
+
+    /**
+     * Starts the upload of the current version of an appointment, or its
+     * deletion from the server. The future yields the uploaded resource, or
+     * true for a deletion, or null or false on a conflict; there is no
+     * future when there is nothing to send.
+     */
+    private CompletableFuture<?> upload(long id, Appointment local) {
+        CalDavClient.Resource known = remote.get(id);
+        if (local != null) {
+            String href = known != null ? known.getHref() : client.hrefOf(id);
+            return client.put(href, ICalendarFormat.format(local), known != null ? known.getEtag() : null);
+        }
+        // Never uploaded: nothing to delete on the server
+        return known == null ? null : client.delete(known.getHref(), known.getEtag());
+    }
+
+    private void resolveConflicts(List<Long> ids, Result result) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<String> hrefs = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            CalDavClient.Resource known = remote.get(id);
+            hrefs.add(known != null ? known.getHref() : client.hrefOf(id));
+        }
+        Map<Long, CalDavClient.Resource> current = new HashMap<>();
+        Map<Long, Appointment> remoteVersions = new HashMap<>();
+        for (CalDavClient.Resource resource : download(hrefs)) {
+            Appointment appointment = parse(resource);
+            if (appointment != null) {
+                current.put(appointment.getId(), resource);
+                remoteVersions.put(appointment.getId(), appointment);
+            }
+        }
+        List<Appointment> upserts = new ArrayList<>();
+        List<Long> removals = new ArrayList<>();
+        for (long id : ids) {
+            result.conflicts++;
+            Appointment local = repository.findById(id);
+            Appointment server = remoteVersions.get(id);
+            Appointment kept = resolver.resolve(local, server);
+            // Later uploads are made against the version just downloaded
+            if (server != null) {
+                remember(id, current.get(id));
+            } else {
+                forget(id);
+            }
+            if (kept == server) {
+                if (server != null) {
+                    upserts.add(server);
+                    result.pulled++;
+                } else if (local != null) {
+                    removals.add(id);
+                    result.removed++;
+                }
+                continue;
+            }
+            if (kept == null) {
+                removals.add(id);
+            } else if (kept != local) {
+                upserts.add(kept);
+            }
+            dirty.add(id);
+        }
+        applyLocally(upserts, removals);
+        // The versions that won locally are uploaded now rather than at the next sync
+        if (!dirty.isEmpty()) {
+            push(result, false);
+        }
+    }
+
+    // ---- download ----
+
+    private void pull(Result result) {
+        CalDavClient.Changes changes = client.syncCollection(token);
+        boolean full = token.isEmpty();
+        if (changes == null) {
+            // The server dropped the history of the token: list the whole collection again
+            changes = client.syncCollection("");
+            full = true;
+        }
+        Set<Long> removals = new HashSet<>();
+        for (String href : changes.getDeleted()) {
+            Long id = idsByHref.get(href);
+            if (id != null && !dirty.contains(id)) {
+                removals.add(id);
+            }
+        }
+        Set<String> listed = full ? new HashSet<>() : null;
+        List<String> toFetch = new ArrayList<>();
+        for (CalDavClient.Resource resource : changes.getChanged()) {
+            if (listed != null) {
+                listed.add(resource.getHref());
+            }
+            Long id = idsByHref.get(resource.getHref());
+            CalDavClient.Resource known = id != null ? remote.get(id) : null;
+            if (known == null || known.getEtag() == null || !known.getEtag().equals(resource.getEtag())) {
+                toFetch.add(resource.getHref());
+            }
+        }
+        if (listed != null) {
+            // Events missing from a full listing were deleted while the token was not valid
+            for (Map.Entry<String, Long> entry : idsByHref.entrySet()) {
+                if (!listed.contains(entry.getKey()) && !dirty.contains(entry.getValue())) {
+                    removals.add(entry.getValue());
+                }
+            }
+        }
+
+        List<Appointment> upserts = new ArrayList<>();
+        Set<String> found = new HashSet<>();
+        for (CalDavClient.Resource resource : download(toFetch)) {
+            found.add(resource.getHref());
+            Appointment appointment = parse(resource);
+            // Changed locally too: kept with the old entity tag, so the upload detects the conflict
+            if (appointment != null && !dirty.contains(appointment.getId())) {
+                Long previousId = idsByHref.get(resource.getHref());
+                if (previousId != null && previousId != appointment.getId()) {
+                    removals.add(previousId);
+                }
+                remember(appointment.getId(), resource);
+                upserts.add(appointment);
+            }
+        }
+        for (String href : toFetch) {
+            Long id = idsByHref.get(href);
+            // Deleted between the report and the download
+            if (!found.contains(href) && id != null && !dirty.contains(id)) {
+                removals.add(id);
+            }
+        }
+        for (Appointment appointment : upserts) {
+            removals.remove(appointment.getId());
+        }
+        for (long id : removals) {
+            forget(id);
+        }
+        applyLocally(upserts, removals);
+        result.pulled += upserts.size();
+        result.removed += removals.size();
+        token = changes.getToken();
+    }
+
+    /**
+     * Downloads events in batches, with several batches in flight at a time.
+     */
+    private List<CalDavClient.Resource> download(List<String> hrefs) {
+        List<CalDavClient.Resource> resources = new ArrayList<>(hrefs.size());
+        List<CompletableFuture<List<CalDavClient.Resource>>> batches = new ArrayList<>(PARALLEL_REQUESTS);
+        for (int first = 0; first < hrefs.size(); first += BATCH_SIZE) {
+            batches.add(client.multiget(hrefs.subList(first, Math.min(hrefs.size(), first + BATCH_SIZE))));
+            if (batches.size() == PARALLEL_REQUESTS) {
+                for (CompletableFuture<List<CalDavClient.Resource>> batch : batches) {
+                    resources.addAll(CalDavClient.join(batch));
+                }
+                batches.clear();
+            }
+        }
+        for (CompletableFuture<List<CalDavClient.Resource>> batch : batches) {
+            resources.addAll(CalDavClient.join(batch));
+        }
+        return resources;
+    }
+
+    /**
+     * @return The first event of a downloaded resource, or null if it holds none
+     */
+    private Appointment parse(CalDavClient.Resource resource) {
+        try {
+            List<Appointment> events = ICalendarFormat.parse(resource.getData(), zone);
+            // Further events of the same resource are exceptions of a recurrence, not supported
+            return events.isEmpty() ? null : events.get(0);
+        } catch (IOException e) {
+            throw new SyncException("Invalid event " + resource.getHref() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes downloaded changes to the repository in one batch and then to
+     * the store in one transaction, without recording them as local changes.
+     */
+    private void applyLocally(List<Appointment> upserts, Collection<Long> removals) {
+        if (upserts.isEmpty() && removals.isEmpty()) {
+            return;
+        }
+        applyingThread = Thread.currentThread();
+        try {
+            repository.saveAll(upserts);
+            for (long id : removals) {
+                repository.delete(id);
+            }
+            store.apply(upserts, removals);
+        } finally {
+            applyingThread = null;
+        }
+    }
+
+    private void remember(long id, CalDavClient.Resource resource) {
+        CalDavClient.Resource previous = remote.put(id, new CalDavClient.Resource(resource.getHref(), resource.getEtag(), null));
+        if (previous != null && !previous.getHref().equals(resource.getHref())) {
+            idsByHref.remove(previous.getHref());
+        }
+        idsByHref.put(resource.getHref(), id);
+    }
+
+    private void forget(long id) {
+        CalDavClient.Resource previous = remote.remove(id);
+        if (previous != null) {
+            idsByHref.remove(previous.getHref());
+        }
+    }
+
+    // ---- state file: the token, then one "id href etag" line per event and one "id" line per pending change ----
+
+    private void loadState() {
+        try (BufferedReader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+            String first = reader.readLine();
+            token = first != null ? first : "";
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    remember(Long.parseLong(fields[0]),
+                             new CalDavClient.Resource(fields[1], fields[2].isEmpty() ? null : fields[2], null));
+                } else if (fields.length == 1) {
+                    pendingChange(fields[0]);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // A damaged state only costs a full download; the pending changes read are still uploaded
+            token = "";
+            remote.clear();
+            idsByHref.clear();
+        }
+    }
+
+    private void pendingChange(String id) {
+        try {
+            dirty.add(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            // Torn by a session ending while appending it: the change is lost, the rest of the state is not
+        }
+    }
+
+    private void saveState() {
+        if (stateFile == null) {
+            return;
+        }
+        Path temporary = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        synchronized (stateLock) {
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                    writer.write(token);
+                    writer.newLine();
+                    for (Map.Entry<Long, CalDavClient.Resource> entry : remote.entrySet()) {
+                        CalDavClient.Resource resource = entry.getValue();
+                        writer.write(entry.getKey() + "\t" + resource.getHref() + "\t"
+                                     + (resource.getEtag() != null ? resource.getEtag() : ""));
+                        writer.newLine();
+                    }
+                    for (long id : dirty) {
+                        writer.write(Long.toString(id));
+                        writer.newLine();
+                    }
+                }
+                Files.move(temporary, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new SyncException("Cannot write " + stateFile + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Records a local change in the state file, appending its id rather than
+     * rewriting the file, so that a session ending without a sync does not
+     * lose it. The next {@link #saveState()} rewrites the file without the
+     * ids uploaded by then.
+     */
+    private void recordChange(long id) {
+        dirty.add(id);
+        if (stateFile == null) {
+            return;
+        }
+        synchronized (stateLock) {
+            // Before the first sync there is no state yet: only the empty token
+            boolean created = !Files.exists(stateFile);
+            try (BufferedWriter writer = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (created) {
+                    writer.newLine();
+                }
+                writer.write(Long.toString(id));
+                writer.newLine();
+            } catch (IOException e) {
+                throw new SyncException("Cannot write " + stateFile + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // ---- repository: local changes are recorded and passed on ----
+
+    @Override
+    public void save(Appointment appointment) {
+        // Writes of downloaded changes, coming back through the store, are already in the repository
+        if (applyingThread == Thread.currentThread()) {
+            return;
+        }
+        repository.save(appointment);
+        recordChange(appointment.getId());
+    }
+
+    @Override
+    public void saveAll(Collection<Appointment> appointments) {
+        if (applyingThread == Thread.currentThread()) {
+            return;
+        }
+        repository.saveAll(appointments);
+        for (Appointment appointment : appointments) {
+            recordChange(appointment.getId());
+        }
+    }
+
+    @Override
+    public boolean delete(long id) {
+        if (applyingThread == Thread.currentThread()) {
+            return true;
+        }
+        boolean deleted = repository.delete(id);
+        recordChange(id);
+        return deleted;
+    }
+
+    @Override
+    public Appointment findById(long id) {
+        return repository.findById(id);
+    }
+
+    @Override
+    public List<Appointment> findRange(long from, long to) {
+        return repository.findRange(from, to);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return repository.isReadOnly();
+    }
+
+    /**
+     * Uploads the pending local changes once, without downloading, and
+     * closes the repository. Changes that cannot be uploaded now, and
+     * conflicts, stay in the state file for the next session.
+     */
+    @Override
+    public void close() {
+        try {
+            synchronized (this) {
+                if (!dirty.isEmpty()) {
+                    try {
+                        push(new Result(), false);
+                    } catch (SyncException e) {
+                        // Server not reachable: the changes not uploaded are still pending
+                    }
+                    saveState();
+                }
+            }
+        } finally {
+            repository.close();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package dashboard.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for a CalDAV server, holding one calendar collection
+ * in memory: it answers the requests of {@link CalDavClient} the way a real
+ * server does, with entity tags, preconditions and sync tokens, so that the
+ * synchronization can be tried and measured without a server.
+ * <p>
+ * Every change gets a new revision number: the entity tag of an event is
+ * the revision that wrote it, a sync token is the last revision, and
+ * deleted events are kept as tombstones so that any token can be answered
+ * with a delta.
+ * <p>
+ * {@code java -cp bin dashboard.sync.LocalCalendarServer [porta]} starts a
+ * server to point the calendar at.
+ */
+public class LocalCalendarServer implements AutoCloseable {
+    public static final String COLLECTION_PATH = "/calendars/default/";
+    private static final String TOKEN_PREFIX = "urn:calendario:sync:";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+
+    // Guarded by this
+    private long revision;
+    private final Map<String, Event> events = new HashMap<>();
+    private final Map<String, Long> tombstones = new HashMap<>();
+    // Tokens older than this revision are no longer answered
+    private long historyStart;
+
+    private static final class Event {
+        final String data;
+        final long revision;
+
+        Event(String data, long revision) {
+            this.data = data;
+            this.revision = revision;
+        }
+
+        String etag() {
+            return "\"" + revision + "\"";
+        }
+    }
+
+    /**
+     * Starts a server on the loopback address.
+     *
+     * @param port The port, or 0 for any free port
+     */
+    public LocalCalendarServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "local-calendar-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(COLLECTION_PATH, this::handle);
+        server.start();
+    }
+
+    /**
+     * @return The URL of the calendar collection
+     */
+    public URI getCollectionUrl() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                          + COLLECTION_PATH);
+    }
+
+    /**
+     * @return The number of requests received so far
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return The number of events in the collection
+     */
+    public synchronized int size() {
+        return events.size();
+    }
+
+    /**
+     * Makes the tokens up to the current revision invalid, as servers do
+     * when they drop old history: clients holding one must list everything.
+     */
+    public synchronized void forgetHistory() {
+        tombstones.clear();
+        historyStart = ++revision;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            byte[] body = readAll(exchange.getRequestBody());
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    put(exchange, path, new String(body, StandardCharsets.UTF_8));
+                    break;
+                case "DELETE":
+                    delete(exchange, path);
+                    break;
+                case "GET":
+                    get(exchange, path);
+                    break;
+                case "REPORT":
+                    report(exchange, new String(body, StandardCharsets.UTF_8));
+                    break;
+                default:
+                    send(exchange, 405, null, null);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void put(HttpExchange exchange, String path, String data) throws IOException {
+        synchronized (this) {
+            Event current = events.get(path);
+            if (!preconditionHolds(exchange, current)) {
+                send(exchange, 412, null, null);
+                return;
+            }
+            Event written = new Event(data, ++revision);
+            events.put(path, written);
+            tombstones.remove(path);
+            exchange.getResponseHeaders().set("ETag", written.etag());
+        }
+        send(exchange, 201, null, null);
+    }
+
+    private void delete(HttpExchange exchange, String path) throws IOException {
+        synchronized (this) {
+            Event current = events.get(path);
+            if (current == null) {
+                send(exchange, 404, null, null);
+                return;
+            }
+            if (!preconditionHolds(exchange, current)) {
+                send(exchange, 412, null, null);
+                return;
+            }
+            events.remove(path);
+            tombstones.put(path, ++revision);
+        }
+        send(exchange, 204, null, null);
+    }
+
+    private void get(HttpExchange exchange, String path) throws IOException {
+        Event current;
+        synchronized (this) {
+            current = events.get(path);
+        }
+        if (current == null) {
+            send(exchange, 404, null, null);
+        } else {
+            exchange.getResponseHeaders().set("ETag", current.etag());
+            send(exchange, 200, "text/calendar; charset=utf-8", current.data);
+        }
+    }
+
+    // If-Match must name the current version; If-None-Match: * requires a new event
+    private static boolean preconditionHolds(HttpExchange exchange, Event current) {
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifMatch != null && (current == null || !(ifMatch.equals("*") || ifMatch.equals(current.etag())))) {
+            return false;
+        }
+        return !("*".equals(ifNoneMatch) && current != null);
+    }
+
+    private void report(HttpExchange exchange, String body) throws IOException {
+        Document request;
+        try {
+            request = CalDavClient.parseXml(body);
+        } catch (SAXException e) {
+            send(exchange, 400, null, null);
+            return;
+        }
+        Element root = request.getDocumentElement();
+        if (CalDavClient.DAV.equals(root.getNamespaceURI()) && "sync-collection".equals(root.getLocalName())) {
+            syncCollection(exchange, CalDavClient.text(root, CalDavClient.DAV, "sync-token"));
+        } else if (CalDavClient.CALDAV.equals(root.getNamespaceURI()) && "calendar-multiget".equals(root.getLocalName())) {
+            List<String> hrefs = new ArrayList<>();
+            for (Element href : CalDavClient.children(root, CalDavClient.DAV, "href")) {
+                hrefs.add(CalDavClient.normalize(href.getTextContent().trim()));
+            }
+            multiget(exchange, hrefs);
+        } else {
+            send(exchange, 501, null, null);
+        }
+    }
+
+    private void syncCollection(HttpExchange exchange, String token) throws IOException {
+        StringBuilder answer = new StringBuilder(256);
+        synchronized (this) {
+            long since = 0;
+            if (token != null && !token.isEmpty()) {
+                since = parseToken(token);
+                // Unknown, future or older than the kept history
+                if (since < historyStart || since > revision) {
+                    send(exchange, 403, "application/xml; charset=utf-8",
+                         "<?xml version=\"1.0\" encoding=\"utf-8\"?><d:error xmlns:d=\"DAV:\"><d:valid-sync-token/></d:error>");
+                    return;
+                }
+            }
+            beginMultistatus(answer);
+            for (Map.Entry<String, Event> entry : events.entrySet()) {
+                if (entry.getValue().revision > since) {
+                    answer.append("<d:response><d:href>").append(CalDavClient.escapeXml(entry.getKey())).append("</d:href>")
+                          .append("<d:propstat><d:prop><d:getetag>").append(CalDavClient.escapeXml(entry.getValue().etag()))
+                          .append("</d:getetag></d:prop><d:status>HTTP/1.1 200 OK</d:status></d:propstat></d:response>");
+                }
+            }
+            if (since > 0) {
+                for (Map.Entry<String, Long> entry : tombstones.entrySet()) {
+                    if (entry.getValue() > since) {
+                        answer.append("<d:response><d:href>").append(CalDavClient.escapeXml(entry.getKey()))
+                              .append("</d:href><d:status>HTTP/1.1 404 Not Found</d:status></d:response>");
+                    }
+                }
+            }
+            answer.append("<d:sync-token>").append(TOKEN_PREFIX).append(revision).append("</d:sync-token>");
+        }
+        answer.append("</d:multistatus>");
+        send(exchange, 207, "application/xml; charset=utf-8", answer.toString());
+    }
+
+    private void multiget(HttpExchange exchange, List<String> hrefs) throws IOException {
+        StringBuilder answer = new StringBuilder(1024);
+        beginMultistatus(answer);
+        synchronized (this) {
+            for (String href : hrefs) {
+                Event event = events.get(href);
+                answer.append("<d:response><d:href>").append(CalDavClient.escapeXml(href)).append("</d:href>");
+                if (event == null) {
+                    answer.append("<d:status>HTTP/1.1 404 Not Found</d:status>");
+                } else {
+                    answer.append("<d:propstat><d:prop><d:getetag>").append(CalDavClient.escapeXml(event.etag()))
+                          .append("</d:getetag><c:calendar-data>").append(CalDavClient.escapeXml(event.data))
+                          .append("</c:calendar-data></d:prop><d:status>HTTP/1.1 200 OK</d:status></d:propstat>");
+                }
+                answer.append("</d:response>");
+            }
+        }
+        answer.append("</d:multistatus>");
+        send(exchange, 207, "application/xml; charset=utf-8", answer.toString());
+    }
+
+    private static void beginMultistatus(StringBuilder answer) {
+        answer.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
+              .append("<d:multistatus xmlns:d=\"DAV:\" xmlns:c=\"urn:ietf:params:xml:ns:caldav\">");
+    }
+
+    private static long parseToken(String token) {
+        if (!token.startsWith(TOKEN_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(TOKEN_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5232;
+        LocalCalendarServer server = new LocalCalendarServer(port);
+        System.out.println(server.getCollectionUrl());
+    }
+}
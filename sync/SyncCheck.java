@@ -0,0 +1,178 @@
+package dashboard.sync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import dashboard.Category;
+import dashboard.store.Appointment;
+import dashboard.store.AppointmentRepository;
+import dashboard.store.AppointmentStore;
+
+/**
+ * Checks {@link CalendarSync} against a {@link LocalCalendarServer}: two
+ * clients share one collection and go through a sync with nothing to do, a
+ * delta sync, a conflict refused by the server with 412, a token the server
+ * no longer knows, and a restart with local changes not uploaded yet.
+ * <p>
+ * Usage: {@code java -cp bin dashboard.sync.SyncCheck}; exits with 1 if a check fails.
+ */
+public class SyncCheck {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Rome");
+    // 1 October 2026, 9:00 in Rome, in epoch minutes
+    private static final long NINE = 29_847_300L;
+
+    private static int failures;
+
+    /**
+     * Repository kept in memory; it outlives the sync engines created over
+     * it, as the files of a calendar outlive a session.
+     */
+    private static final class MemoryRepository implements AppointmentRepository {
+        final Map<Long, Appointment> appointments = new ConcurrentHashMap<>();
+
+        @Override
+        public void save(Appointment appointment) {
+            appointments.put(appointment.getId(), appointment);
+        }
+
+        @Override
+        public void saveAll(Collection<Appointment> appointments) {
+            for (Appointment appointment : appointments) {
+                save(appointment);
+            }
+        }
+
+        @Override
+        public boolean delete(long id) {
+            return appointments.remove(id) != null;
+        }
+
+        @Override
+        public Appointment findById(long id) {
+            return appointments.get(id);
+        }
+
+        @Override
+        public List<Appointment> findRange(long from, long to) {
+            List<Appointment> found = new ArrayList<>();
+            for (Appointment appointment : appointments.values()) {
+                if (appointment.getStart() < to && appointment.getEnd() > from) {
+                    found.add(appointment);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("calendario-sync");
+        try (LocalCalendarServer server = new LocalCalendarServer(0)) {
+            MemoryRepository firstRepository = new MemoryRepository();
+            MemoryRepository secondRepository = new MemoryRepository();
+            Path firstState = directory.resolve("first.state");
+            CalendarSync first = open(server, firstRepository, firstState);
+            CalendarSync second = open(server, secondRepository, directory.resolve("second.state"));
+
+            for (int i = 1; i <= 5; i++) {
+                first.save(appointment(i, "Riunione " + i));
+            }
+            CalendarSync.Result result = first.sync();
+            check("first upload", result.getPushed() == 5 && server.size() == 5, result);
+            result = second.sync();
+            check("first download", result.getPulled() == 5 && secondRepository.appointments.size() == 5, result);
+
+            long requests = server.getRequestCount();
+            result = second.sync();
+            check("no-op sync", result.getPulled() == 0 && server.getRequestCount() - requests == 1,
+                  result + " requests=" + (server.getRequestCount() - requests));
+
+            first.save(appointment(2, "Riunione spostata"));
+            first.delete(3);
+            first.sync();
+            result = second.sync();
+            check("delta sync", result.getPulled() == 1 && result.getRemoved() == 1
+                  && title(secondRepository, 2).equals("Riunione spostata") && secondRepository.findById(3) == null,
+                  result);
+
+            second.save(appointment(4, "Versione del secondo"));
+            second.sync();
+            first.save(appointment(4, "Versione del primo"));
+            result = first.sync();
+            check("412 conflict, server wins", result.getConflicts() == 1
+                  && title(firstRepository, 4).equals("Versione del secondo"), result);
+            first.setConflictResolver(CalendarSync.ConflictResolver.LOCAL_WINS);
+            second.save(appointment(4, "Di nuovo il secondo"));
+            second.sync();
+            first.save(appointment(4, "Di nuovo il primo"));
+            result = first.sync();
+            second.sync();
+            check("412 conflict, local wins", result.getConflicts() == 1
+                  && title(secondRepository, 4).equals("Di nuovo il primo"), result);
+
+            second.save(appointment(6, "Dopo l'oblio"));
+            second.delete(5);
+            second.sync();
+            server.forgetHistory();
+            result = first.sync();
+            check("token invalidated", title(firstRepository, 6).equals("Dopo l'oblio")
+                  && firstRepository.findById(5) == null && firstRepository.appointments.size() == 4, result);
+
+            // The session ends without closing: the change was never uploaded
+            first.save(appointment(1, "Modificata prima del riavvio"));
+            first = open(server, firstRepository, firstState);
+            check("pending change restored", first.getPendingChanges() == 1, first.getPendingChanges());
+            result = first.sync();
+            second.sync();
+            check("restart with pending changes", result.getPushed() == 1
+                  && title(secondRepository, 1).equals("Modificata prima del riavvio"), result);
+
+            first.save(appointment(7, "Salvata alla chiusura"));
+            first.close();
+            second.sync();
+            check("push on close", title(secondRepository, 7).equals("Salvata alla chiusura"),
+                  secondRepository.appointments.size());
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static CalendarSync open(LocalCalendarServer server, AppointmentRepository repository, Path state) {
+        return new CalendarSync(new CalDavClient(server.getCollectionUrl()), repository,
+                                new AppointmentStore("sync-check"), ZONE, state);
+    }
+
+    private static Appointment appointment(long id, String title) {
+        return new Appointment(id, NINE + id * 60, 45, title, Category.MEETING);
+    }
+
+    private static String title(AppointmentRepository repository, long id) {
+        Appointment appointment = repository.findById(id);
+        return appointment != null ? appointment.getTitle() : "";
+    }
+
+    private static void check(String name, boolean passed, Object detail) {
+        System.out.println((passed ? "ok     " : "FAILED ") + name + " (" + detail + ")");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package dashboard.sync;
+
+/**
+ * Unchecked exception thrown when a calendar cannot be synchronized with
+ * the server: the server is unreachable or answers with an error.
+ */
+public class SyncException extends RuntimeException {
+
+    public SyncException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public SyncException(String message) {
+        super(message);
+    }
+}